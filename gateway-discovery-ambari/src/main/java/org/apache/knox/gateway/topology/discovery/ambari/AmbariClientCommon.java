@@ -37,6 +37,8 @@ class AmbariClientCommon {
     static final String AMBARI_SERVICECONFIGS_URI =
                                     AMBARI_CLUSTERS_URI + "/%s/configurations/service_config_versions?is_current=true";
 
+    static final String AMBARI_DESIREDCONFIGS_URI = AMBARI_CLUSTERS_URI + "/%s?fields=Clusters/desired_configs";
+
     private RESTInvoker restClient;
 
 
@@ -105,4 +107,39 @@ class AmbariClientCommon {
     }
 
 
+    /**
+     * Get the versions of the desired configurations of the cluster. Unlike the active service configurations, these
+     * don't include the configuration properties, so they are cheap to request.
+     *
+     * @param clusterName The name of the cluster.
+     * @param config      The discovery configuration associated with the cluster.
+     *
+     * @return A Map of configuration types and their corresponding versions, which is empty if they could not be
+     *         determined.
+     */
+    Map<String, String> getDesiredConfigVersions(String clusterName, ServiceDiscoveryConfig config) {
+        Map<String, String> configVersions = new HashMap<>();
+
+        String desiredConfigsURL =
+                        String.format(Locale.ROOT, "%s" + AMBARI_DESIREDCONFIGS_URI, config.getAddress(), clusterName);
+
+        JSONObject clusterJSON = restClient.invoke(desiredConfigsURL, config.getUser(), config.getPasswordAlias());
+        if (clusterJSON != null) {
+            JSONObject clusterInfo = (JSONObject) clusterJSON.get("Clusters");
+            if (clusterInfo != null) {
+                JSONObject desiredConfigs = (JSONObject) clusterInfo.get("desired_configs");
+                if (desiredConfigs != null) {
+                    for (Entry<String, Object> desiredConfig : desiredConfigs.entrySet()) {
+                        Object version = ((JSONObject) desiredConfig.getValue()).get("version");
+                        if (version != null) {
+                            configVersions.put(desiredConfig.getKey(), String.valueOf(version));
+                        }
+                    }
+                }
+            }
+        }
+
+        return configVersions;
+    }
+
 }
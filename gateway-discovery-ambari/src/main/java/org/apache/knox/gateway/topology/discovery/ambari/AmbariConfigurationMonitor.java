@@ -20,7 +20,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.security.AliasService;
-import org.apache.knox.gateway.topology.discovery.ClusterConfigurationMonitor;
+import org.apache.knox.gateway.topology.discovery.AbstractClusterConfigurationMonitor;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscoveryConfig;
 
 import java.io.File;
@@ -35,10 +35,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
+/**
+ * Monitors the configuration of the discovered Ambari clusters. A check costs one request for the versions of the
+ * desired configurations of the cluster, which are compared with the versions recorded when it was discovered.
+ */
+class AmbariConfigurationMonitor extends AbstractClusterConfigurationMonitor {
     private static final String TYPE = "Ambari";
 
     private static final String CLUSTERS_DATA_DIR_NAME = "clusters";
@@ -58,7 +67,8 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
     // Ambari address
     //    clusterName -> ServiceDiscoveryConfig
     //
-    Map<String, Map<String, ServiceDiscoveryConfig>> clusterMonitorConfigurations = new HashMap<>();
+    // Read by the monitor's check threads while discoveries add to it
+    Map<String, Map<String, ServiceDiscoveryConfig>> clusterMonitorConfigurations = new ConcurrentHashMap<>();
 
     // Ambari address
     //    clusterName
@@ -68,12 +78,13 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
 
     ReadWriteLock configVersionsLock = new ReentrantReadWriteLock();
 
-    private List<ConfigurationChangeListener> changeListeners = new ArrayList<>();
+    // The configuration types of each cluster when it was first checked, to notice services that are added or removed
+    //    address#clusterName -> configTypes
+    //
+    private final ConcurrentMap<String, Set<String>> clusterConfigTypes = new ConcurrentHashMap<>();
 
     private AmbariClientCommon ambariClient;
 
-    PollingConfigAnalyzer internalMonitor;
-
     GatewayConfig gatewayConfig;
 
     static String getType() {
@@ -81,9 +92,11 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
     }
 
     AmbariConfigurationMonitor(GatewayConfig config, AliasService aliasService) {
+        super(TYPE);
         this.gatewayConfig   = config;
         this.ambariClient    = new AmbariClientCommon(config, aliasService);
-        this.internalMonitor = new PollingConfigAnalyzer(this);
+
+        setPollingInterval(Integer.getInteger(INTERVAL_PROPERTY_NAME, DEFAULT_POLLING_INTERVAL));
 
         // Override the default polling interval if it has been configured
         int interval = config.getClusterMonitorPollingInterval(getType());
@@ -94,11 +107,6 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
         init();
     }
 
-    @Override
-    public void setPollingInterval(int interval) {
-        internalMonitor.setInterval(interval);
-    }
-
     private void init() {
         loadDiscoveryConfiguration();
         loadClusterVersionData();
@@ -259,22 +267,14 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
         } finally {
             configVersionsLock.writeLock().unlock();
         }
-    }
 
-    @SuppressWarnings("PMD.DoNotUseThreads")
-    @Override
-    public void start() {
-        (new Thread(internalMonitor, "AmbariConfigurationMonitor")).start();
+        // Take the configuration types anew at the next check, the added or removed services have been discovered
+        clusterConfigTypes.remove(getClusterKey(address, clusterName));
+        monitorCluster(address, clusterName);
     }
 
-    @Override
-    public void stop() {
-        internalMonitor.stop();
-    }
-
-    @Override
-    public void addListener(ConfigurationChangeListener listener) {
-        changeListeners.add(listener);
+    private static String getClusterKey(String address, String clusterName) {
+        return address + '#' + clusterName;
     }
 
     @Override
@@ -290,7 +290,7 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
      * @param config      The associated service discovery configuration.
      */
     void addDiscoveryConfig(String clusterName, ServiceDiscoveryConfig config) {
-        clusterMonitorConfigurations.computeIfAbsent(config.getAddress(), k -> new HashMap<>()).put(clusterName, config);
+        clusterMonitorConfigurations.computeIfAbsent(config.getAddress(), k -> new ConcurrentHashMap<>()).put(clusterName, config);
     }
 
     /**
@@ -303,8 +303,9 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
      */
     ServiceDiscoveryConfig getDiscoveryConfig(String address, String clusterName) {
         ServiceDiscoveryConfig config = null;
-        if (clusterMonitorConfigurations.containsKey(address)) {
-            config = clusterMonitorConfigurations.get(address).get(clusterName);
+        Map<String, ServiceDiscoveryConfig> configs = clusterMonitorConfigurations.get(address);
+        if (configs != null) {
+            config = configs.get(clusterName);
         }
         return config;
     }
@@ -350,10 +351,16 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
     Map<String, String> removeClusterConfigVersions(String address, String clusterName) {
         Map<String, String> result = new HashMap<>();
 
+        unmonitorCluster(address, clusterName);
+        clusterConfigTypes.remove(getClusterKey(address, clusterName));
+
         configVersionsLock.writeLock().lock();
         try {
             if (ambariClusterConfigVersions.containsKey(address)) {
-                result.putAll(ambariClusterConfigVersions.get(address).remove(clusterName));
+                Map<String, String> removed = ambariClusterConfigVersions.get(address).remove(clusterName);
+                if (removed != null) {
+                    result.putAll(removed);
+                }
             }
         } finally {
             configVersionsLock.writeLock().unlock();
@@ -382,7 +389,10 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
         configVersionsLock.readLock().lock();
         try {
             if (ambariClusterConfigVersions.containsKey(address)) {
-                result.putAll(ambariClusterConfigVersions.get(address).get(clusterName));
+                Map<String, String> configVersions = ambariClusterConfigVersions.get(address).get(clusterName);
+                if (configVersions != null) {
+                    result.putAll(configVersions);
+                }
             }
         } finally {
             configVersionsLock.readLock().unlock();
@@ -391,139 +401,62 @@ class AmbariConfigurationMonitor implements ClusterConfigurationMonitor {
         return result;
     }
 
-    /**
-     * Get all the clusters the monitor knows about.
-     *
-     * @return A Map of Ambari instance addresses to associated cluster names.
-     */
-    Map<String, List<String>> getClusterNames() {
-        Map<String, List<String>> result = new HashMap<>();
+    @Override
+    protected String getConfigurationChange(String address, String clusterName) throws IOException {
+        Map<String, String> configVersions = getClusterConfigVersions(address, clusterName);
+        if (configVersions.isEmpty()) {
+            return null;
+        }
 
-        configVersionsLock.readLock().lock();
-        try {
-            for (Entry<String, Map<String, Map<String, String>>> ambariClusterConfigVersion : ambariClusterConfigVersions.entrySet()) {
-              List<String> clusterNames = new ArrayList<>(ambariClusterConfigVersion.getValue().keySet());
-                result.put(ambariClusterConfigVersion.getKey(), clusterNames);
-            }
-        } finally {
-            configVersionsLock.readLock().unlock();
+        Map<String, String> updatedVersions = getUpdatedConfigVersions(address, clusterName);
+        if (updatedVersions == null || updatedVersions.isEmpty()) {
+            throw new IOException("No configuration versions were returned for cluster " + clusterName);
         }
 
-        return result;
-    }
+        // Describe the change with the recorded and the current versions, so a change is described the same way for
+        // as long as it lasts
+        List<String> changes = new ArrayList<>();
+        for (Entry<String, String> configVersion : new TreeMap<>(configVersions).entrySet()) {
+            String updatedVersion = updatedVersions.get(configVersion.getKey());
+            if (!configVersion.getValue().equals(updatedVersion)) {
+                changes.add(configVersion.getKey() + " " + configVersion.getValue() + " -> " + updatedVersion);
+            }
+        }
 
-    /**
-     * Notify registered change listeners.
-     *
-     * @param source      The address of the Ambari instance from which the cluster details were determined.
-     * @param clusterName The name of the cluster whose configuration details have changed.
-     */
-    void notifyChangeListeners(String source, String clusterName) {
-        for (ConfigurationChangeListener listener : changeListeners) {
-            listener.onConfigurationChange(source, clusterName);
+        Set<String> configTypes = new TreeSet<>(updatedVersions.keySet());
+        Set<String> knownConfigTypes = clusterConfigTypes.putIfAbsent(getClusterKey(address, clusterName), configTypes);
+        if (knownConfigTypes != null) {
+            for (String configType : configTypes) {
+                if (!knownConfigTypes.contains(configType)) {
+                    changes.add("added " + configType);
+                }
+            }
+            for (String configType : knownConfigTypes) {
+                if (!configTypes.contains(configType)) {
+                    changes.add("removed " + configType);
+                }
+            }
         }
+
+        return changes.isEmpty() ? null : String.join(", ", changes);
     }
 
     /**
-     * Request the current active configuration version info from Ambari.
+     * Request the current configuration versions from Ambari.
      *
      * @param address     The Ambari instance address.
      * @param clusterName The name of the cluster for which the details are desired.
      *
-     * @return A Map of service configuration types and their corresponding versions.
+     * @return A Map of configuration types and their corresponding versions.
      */
     Map<String, String> getUpdatedConfigVersions(String address, String clusterName) {
         Map<String, String> configVersions = new HashMap<>();
 
         ServiceDiscoveryConfig sdc = getDiscoveryConfig(address, clusterName);
         if (sdc != null) {
-            Map<String, Map<String, AmbariCluster.ServiceConfiguration>> serviceConfigs =
-                                                       ambariClient.getActiveServiceConfigurations(clusterName, sdc);
-
-            for (Map<String, AmbariCluster.ServiceConfiguration> serviceConfig : serviceConfigs.values()) {
-                for (AmbariCluster.ServiceConfiguration config : serviceConfig.values()) {
-                    configVersions.put(config.getType(), config.getVersion());
-                }
-            }
+            configVersions.putAll(ambariClient.getDesiredConfigVersions(clusterName, sdc));
         }
 
         return configVersions;
     }
-
-    /**
-     * The thread that polls Ambari for configuration details for clusters associated with discovered topologies,
-     * compares them with the current recorded values, and notifies any listeners when differences are discovered.
-     */
-    @SuppressWarnings("PMD.DoNotUseThreads")
-    static final class PollingConfigAnalyzer implements Runnable {
-
-        private static final int DEFAULT_POLLING_INTERVAL = 60;
-
-        // Polling interval in seconds
-        private int interval;
-
-        private AmbariConfigurationMonitor delegate;
-
-        private boolean isActive;
-
-        PollingConfigAnalyzer(AmbariConfigurationMonitor delegate) {
-            this.delegate = delegate;
-            this.interval = Integer.getInteger(INTERVAL_PROPERTY_NAME, PollingConfigAnalyzer.DEFAULT_POLLING_INTERVAL);
-        }
-
-        void setInterval(int interval) {
-            this.interval = interval;
-        }
-
-
-        void stop() {
-            isActive = false;
-        }
-
-        @Override
-        public void run() {
-            isActive = true;
-
-            log.startedAmbariConfigMonitor(interval);
-
-            while (isActive) {
-                for (Map.Entry<String, List<String>> entry : delegate.getClusterNames().entrySet()) {
-                    String address = entry.getKey();
-                    for (String clusterName : entry.getValue()) {
-                        Map<String, String> configVersions = delegate.getClusterConfigVersions(address, clusterName);
-                        if (configVersions != null && !configVersions.isEmpty()) {
-                            Map<String, String> updatedVersions = delegate.getUpdatedConfigVersions(address, clusterName);
-                            if (updatedVersions != null && !updatedVersions.isEmpty()) {
-                                boolean configHasChanged = false;
-
-                                // If the config sets don't match in size, then something has changed
-                                if (updatedVersions.size() != configVersions.size()) {
-                                    configHasChanged = true;
-                                } else {
-                                    // Perform the comparison of all the config versions
-                                    for (Map.Entry<String, String> configVersion : configVersions.entrySet()) {
-                                        if (!updatedVersions.get(configVersion.getKey()).equals(configVersion.getValue())) {
-                                            configHasChanged = true;
-                                            break;
-                                        }
-                                    }
-                                }
-
-                                // If a change has occurred, notify the listeners
-                                if (configHasChanged) {
-                                    delegate.notifyChangeListeners(address, clusterName);
-                                }
-                            }
-                        }
-                    }
-                }
-
-                try {
-                    Thread.sleep(interval * 1000L);
-                } catch (InterruptedException e) {
-                    // Ignore
-                }
-            }
-        }
-    }
 }
@@ -146,10 +146,6 @@ public interface AmbariServiceDiscoveryMessages {
              text = "Determined the service URL mapping property {0} value: {1}")
     void determinedPropertyValue(String propertyName, String propertyValue);
 
-    @Message(level = MessageLevel.INFO,
-             text = "Started Ambari cluster configuration monitor (checking every {0} seconds)")
-    void startedAmbariConfigMonitor(long pollingInterval);
-
     @Message(level = MessageLevel.WARN,
              text = "The declared nameservice {0} is not defined in the HDFS configuration.")
     void undefinedHDFSNameService(String nameservice);
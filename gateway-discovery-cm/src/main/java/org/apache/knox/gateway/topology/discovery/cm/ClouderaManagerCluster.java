@@ -19,6 +19,7 @@ package org.apache.knox.gateway.topology.discovery.cm;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscovery;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +70,10 @@ public class ClouderaManagerCluster implements ServiceDiscovery.Cluster {
     this.serviceModels.addAll(serviceModels);
   }
 
+  Set<ServiceModel> getServiceModels() {
+    return Collections.unmodifiableSet(serviceModels);
+  }
+
   static class ServiceConfiguration {
 
     private String type;
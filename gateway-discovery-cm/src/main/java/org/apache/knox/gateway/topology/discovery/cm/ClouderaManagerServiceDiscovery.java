@@ -28,6 +28,7 @@ import com.cloudera.api.swagger.model.ApiRoleList;
 import com.cloudera.api.swagger.model.ApiService;
 import com.cloudera.api.swagger.model.ApiServiceConfig;
 import com.cloudera.api.swagger.model.ApiServiceList;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.security.AliasService;
@@ -35,17 +36,41 @@ import org.apache.knox.gateway.topology.discovery.GatewayService;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscovery;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscoveryConfig;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
 /**
  * ClouderaManager-based service discovery implementation.
+ * <p>
+ * The service and role configurations of a cluster are fetched in parallel on a bounded pool, while
+ * the service models are still generated one role at a time. The result for a cluster is reused for
+ * {@link GatewayConfig#getServiceDiscoverySnapshotTTL()}, so descriptors referencing the same cluster
+ * share one discovery, unless its configuration changes, and can be persisted to be used when
+ * Cloudera Manager can't be reached.
  */
 public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
 
@@ -63,6 +88,13 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
   static final String DEFAULT_USER_ALIAS = "cm.discovery.user";
   static final String DEFAULT_PWD_ALIAS  = "cm.discovery.password";
 
+  static final String SNAPSHOT_DIR = "discovery" + File.separator + "cm";
+  private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+  // Bounds the concurrent requests to Cloudera Manager, across all discoveries
+  private static final int FETCH_THREADS = 8;
+  private static final ExecutorService FETCHES = createFetchExecutor();
+
   private static Map<String, List<ServiceModelGenerator>> serviceModelGenerators = new HashMap<>();
   static {
     ServiceLoader<ServiceModelGenerator> loader = ServiceLoader.load(ServiceModelGenerator.class);
@@ -73,6 +105,8 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
     }
   }
 
+  private final ConcurrentMap<String, ClusterSnapshot> snapshots = new ConcurrentHashMap<>();
+
   private boolean debug;
 
   @GatewayService
@@ -87,6 +121,14 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
     this.debug = debug;
   }
 
+  private static ExecutorService createFetchExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new BasicThreadFactory.Builder().namingPattern("CMDiscoveryFetch-%d").daemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   @Override
   public String getType() {
     return TYPE;
@@ -139,11 +181,83 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
     }
 
     try {
-      cluster = discoverCluster(client, clusterName);
+      cluster = getClusterSnapshot(gatewayConfig, discoveryConfig, clusterName, client);
+      if (cluster == null) {
+        // The services of the cluster could not be read
+        cluster = loadClusterSnapshot(gatewayConfig, discoveryConfig, clusterName);
+        if (cluster == null) {
+          cluster = new ClouderaManagerCluster(clusterName);
+        }
+      }
     } catch (ApiException e) {
       log.clusterDiscoveryError(clusterName, e);
+      cluster = loadClusterSnapshot(gatewayConfig, discoveryConfig, clusterName);
+    }
+
+    return cluster;
+  }
+
+  @Override
+  public void clearCache(String address, String clusterName) {
+    // The snapshots of every user that discovered the cluster are outdated
+    String keyPrefix = getSnapshotKey(address, clusterName) + '#';
+    if (snapshots.keySet().removeIf(key -> key.startsWith(keyPrefix))) {
+      log.clearedClusterSnapshot(clusterName);
+    }
+  }
+
+  /**
+   * Returns the recent discovery result for the cluster, if there is one, or discovers the cluster.
+   * Concurrent discoveries of the same cluster wait for a single one.
+   *
+   * @return the cluster, or null if its services could not be read
+   */
+  private ClouderaManagerCluster getClusterSnapshot(GatewayConfig          gatewayConfig,
+                                                    ServiceDiscoveryConfig discoveryConfig,
+                                                    String                 clusterName,
+                                                    DiscoveryApiClient     client) throws ApiException {
+    long ttl = gatewayConfig.getServiceDiscoverySnapshotTTL();
+    if (ttl <= 0) {
+      return discoverAndSave(gatewayConfig, discoveryConfig, clusterName, client);
+    }
+
+    String key = getSnapshotKey(discoveryConfig, clusterName) + '#' + discoveryConfig.getUser();
+    while (true) {
+      ClusterSnapshot snapshot = snapshots.get(key);
+      if (snapshot != null && !snapshot.isExpired(ttl)) {
+        log.reusingClusterSnapshot(clusterName, snapshot.getAge());
+        return snapshot.get();
+      }
+
+      ClusterSnapshot discovery = new ClusterSnapshot();
+      boolean claimed =
+          snapshot == null ? snapshots.putIfAbsent(key, discovery) == null : snapshots.replace(key, snapshot, discovery);
+      if (claimed) {
+        try {
+          ClouderaManagerCluster cluster = discoverAndSave(gatewayConfig, discoveryConfig, clusterName, client);
+          if (cluster == null) {
+            // Don't keep a failed discovery, the next one should try again
+            snapshots.remove(key, discovery);
+          }
+          discovery.complete(cluster);
+          return cluster;
+        } catch (ApiException | RuntimeException e) {
+          snapshots.remove(key, discovery);
+          discovery.fail(e);
+          throw e;
+        }
+      }
     }
+  }
 
+  private static ClouderaManagerCluster discoverAndSave(GatewayConfig          gatewayConfig,
+                                                        ServiceDiscoveryConfig discoveryConfig,
+                                                        String                 clusterName,
+                                                        DiscoveryApiClient     client) throws ApiException {
+    ClouderaManagerCluster cluster = discoverCluster(client, clusterName);
+    if (cluster != null) {
+      saveClusterSnapshot(gatewayConfig, discoveryConfig, cluster);
+    }
     return cluster;
   }
 
@@ -161,42 +275,63 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
     return clusters;
   }
 
-  private static Cluster discoverCluster(DiscoveryApiClient client, String clusterName) throws ApiException {
-    ClouderaManagerCluster cluster = null;
-
+  /**
+   * @return the discovered cluster, or null if its services could not be read
+   */
+  private static ClouderaManagerCluster discoverCluster(DiscoveryApiClient client, String clusterName)
+      throws ApiException {
     ServicesResourceApi servicesResourceApi = new ServicesResourceApi(client);
     RolesResourceApi rolesResourceApi = new RolesResourceApi(client);
 
     log.discoveringCluster(clusterName);
 
-    cluster = new ClouderaManagerCluster(clusterName);
+    ApiServiceList serviceList = getClusterServices(servicesResourceApi, clusterName);
+    if (serviceList == null) {
+      return null;
+    }
 
-    Set<ServiceModel> serviceModels = new HashSet<>();
+    // Fetch the configuration of every service and role in parallel; the role configurations can
+    // only be requested once the roles of their service are known
+    List<ServiceDetails> services = new ArrayList<>();
+    for (ApiService service : serviceList.getItems()) {
+      String serviceName = service.getName();
+      log.discoveredService(serviceName, service.getType());
+      services.add(new ServiceDetails(service,
+          fetch(() -> getServiceConfig(servicesResourceApi, clusterName, serviceName)),
+          fetch(() -> getRoles(rolesResourceApi, clusterName, serviceName))));
+    }
+    for (ServiceDetails details : services) {
+      ApiRoleList roleList = details.roles.join();
+      if (roleList != null) {
+        for (ApiRole role : roleList.getItems()) {
+          String roleName = role.getName();
+          log.discoveredServiceRole(roleName, role.getType());
+          details.roleConfigs.add(
+              fetch(() -> getRoleConfig(rolesResourceApi, clusterName, details.service.getName(), roleName)));
+        }
+      }
+    }
 
-    ApiServiceList serviceList = getClusterServices(servicesResourceApi, clusterName);
-    if (serviceList != null) {
-      for (ApiService service : serviceList.getItems()) {
-        String serviceName = service.getName();
-        log.discoveredService(serviceName, service.getType());
-        ApiServiceConfig serviceConfig =
-            getServiceConfig(servicesResourceApi, clusterName, serviceName);
-        ApiRoleList roleList = getRoles(rolesResourceApi, clusterName, serviceName);
-        if (roleList != null) {
-          for (ApiRole role : roleList.getItems()) {
-            String roleName = role.getName();
-            log.discoveredServiceRole(roleName, role.getType());
-            ApiConfigList roleConfig =
-                getRoleConfig(rolesResourceApi, clusterName, serviceName, roleName);
-
-            List<ServiceModelGenerator> smgList = serviceModelGenerators.get(service.getType());
-            if (smgList != null) {
-              for (ServiceModelGenerator serviceModelGenerator : smgList) {
-                if (serviceModelGenerator != null) {
-                  if (serviceModelGenerator.handles(service, serviceConfig, role, roleConfig)) {
-                    serviceModelGenerator.setApiClient(client);
-                    ServiceModel serviceModel = serviceModelGenerator.generateService(service, serviceConfig, role, roleConfig);
-                    serviceModels.add(serviceModel);
-                  }
+    // The generators are shared, so the models are generated on this thread only
+    Set<ServiceModel> serviceModels = new HashSet<>();
+    for (ServiceDetails details : services) {
+      ApiService service = details.service;
+      ApiServiceConfig serviceConfig = details.serviceConfig.join();
+      ApiRoleList roleList = details.roles.join();
+      if (roleList != null) {
+        List<ApiRole> roles = roleList.getItems();
+        for (int i = 0; i < roles.size(); i++) {
+          ApiRole role = roles.get(i);
+          ApiConfigList roleConfig = details.roleConfigs.get(i).join();
+
+          List<ServiceModelGenerator> smgList = serviceModelGenerators.get(service.getType());
+          if (smgList != null) {
+            for (ServiceModelGenerator serviceModelGenerator : smgList) {
+              if (serviceModelGenerator != null) {
+                if (serviceModelGenerator.handles(service, serviceConfig, role, roleConfig)) {
+                  serviceModelGenerator.setApiClient(client);
+                  ServiceModel serviceModel = serviceModelGenerator.generateService(service, serviceConfig, role, roleConfig);
+                  serviceModels.add(serviceModel);
                 }
               }
             }
@@ -205,11 +340,16 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
       }
     }
 
+    ClouderaManagerCluster cluster = new ClouderaManagerCluster(clusterName);
     cluster.addServiceModels(serviceModels);
 
     return cluster;
   }
 
+  private static <T> CompletableFuture<T> fetch(Supplier<T> request) {
+    return CompletableFuture.supplyAsync(request, FETCHES);
+  }
+
   private static ApiServiceList getClusterServices(final ServicesResourceApi servicesResourceApi,
                                                    final String              clusterName) {
     ApiServiceList services = null;
@@ -258,4 +398,132 @@ public class ClouderaManagerServiceDiscovery implements ServiceDiscovery {
     return configList;
   }
 
+  private static String getSnapshotKey(ServiceDiscoveryConfig discoveryConfig, String clusterName) {
+    return getSnapshotKey(discoveryConfig.getAddress(), clusterName);
+  }
+
+  private static String getSnapshotKey(String address, String clusterName) {
+    return address + '#' + clusterName;
+  }
+
+  private static Path getSnapshotFile(GatewayConfig          gatewayConfig,
+                                      ServiceDiscoveryConfig discoveryConfig,
+                                      String                 clusterName) throws UnsupportedEncodingException {
+    if (!gatewayConfig.isServiceDiscoverySnapshotPersistenceEnabled() || gatewayConfig.getGatewayDataDir() == null) {
+      return null;
+    }
+    String fileName = URLEncoder.encode(getSnapshotKey(discoveryConfig, clusterName), StandardCharsets.UTF_8.name());
+    return new File(new File(gatewayConfig.getGatewayDataDir(), SNAPSHOT_DIR), fileName + SNAPSHOT_EXTENSION).toPath();
+  }
+
+  /**
+   * Saves the service models of the cluster, one tab separated type, service and URL per line.
+   */
+  private static void saveClusterSnapshot(GatewayConfig          gatewayConfig,
+                                          ServiceDiscoveryConfig discoveryConfig,
+                                          ClouderaManagerCluster cluster) {
+    try {
+      Path file = getSnapshotFile(gatewayConfig, discoveryConfig, cluster.getName());
+      if (file == null) {
+        return;
+      }
+      List<String> lines = new ArrayList<>();
+      for (ServiceModel model : cluster.getServiceModels()) {
+        lines.add(model.getType() + "\t" + model.getService() + '\t' + model.getServiceUrl());
+      }
+      Files.createDirectories(file.getParent());
+      Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), null);
+      try {
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      log.failedToPersistClusterSnapshot(cluster.getName(), e);
+    }
+  }
+
+  /**
+   * @return the persisted cluster, or null if there is none
+   */
+  private static ClouderaManagerCluster loadClusterSnapshot(GatewayConfig          gatewayConfig,
+                                                            ServiceDiscoveryConfig discoveryConfig,
+                                                            String                 clusterName) {
+    try {
+      Path file = getSnapshotFile(gatewayConfig, discoveryConfig, clusterName);
+      if (file == null || !Files.exists(file)) {
+        return null;
+      }
+      Set<ServiceModel> serviceModels = new HashSet<>();
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length == 3) {
+          serviceModels.add(
+              new ServiceModel(ServiceModel.Type.valueOf(fields[0].toUpperCase(Locale.ROOT)), fields[1], fields[2]));
+        }
+      }
+      log.usingPersistedClusterSnapshot(clusterName);
+      ClouderaManagerCluster cluster = new ClouderaManagerCluster(clusterName);
+      cluster.addServiceModels(serviceModels);
+      return cluster;
+    } catch (IOException | IllegalArgumentException e) {
+      log.failedToLoadClusterSnapshot(clusterName, e);
+      return null;
+    }
+  }
+
+  private static final class ServiceDetails {
+    private final ApiService service;
+    private final CompletableFuture<ApiServiceConfig> serviceConfig;
+    private final CompletableFuture<ApiRoleList> roles;
+    private final List<CompletableFuture<ApiConfigList>> roleConfigs = new ArrayList<>();
+
+    ServiceDetails(ApiService                          service,
+                   CompletableFuture<ApiServiceConfig> serviceConfig,
+                   CompletableFuture<ApiRoleList>      roles) {
+      this.service = service;
+      this.serviceConfig = serviceConfig;
+      this.roles = roles;
+    }
+  }
+
+  /**
+   * The discovery of a cluster, pending until it is completed by the thread that performs it.
+   */
+  private static final class ClusterSnapshot {
+    private final CompletableFuture<ClouderaManagerCluster> discovery = new CompletableFuture<>();
+    private final long created = System.currentTimeMillis();
+
+    boolean isExpired(long ttl) {
+      return discovery.isDone() && getAge() >= ttl;
+    }
+
+    long getAge() {
+      return System.currentTimeMillis() - created;
+    }
+
+    void complete(ClouderaManagerCluster cluster) {
+      discovery.complete(cluster);
+    }
+
+    void fail(Exception e) {
+      discovery.completeExceptionally(e);
+    }
+
+    ClouderaManagerCluster get() throws ApiException {
+      try {
+        return discovery.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ApiException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof ApiException) {
+          throw (ApiException) e.getCause();
+        }
+        throw new ApiException(e.getCause());
+      }
+    }
+  }
+
 }
@@ -97,4 +97,24 @@ public interface ClouderaManagerServiceDiscoveryMessages {
            text = "No password configured for Cloudera Manager service discovery.")
   void aliasServicePasswordNotFound();
 
+  @Message(level = MessageLevel.DEBUG,
+           text = "Reusing the discovery snapshot of cluster ({0}) taken {1} ms ago.")
+  void reusingClusterSnapshot(String clusterName, long age);
+
+  @Message(level = MessageLevel.DEBUG,
+           text = "Discarded the discovery snapshot of cluster ({0}), as its configuration has changed.")
+  void clearedClusterSnapshot(String clusterName);
+
+  @Message(level = MessageLevel.WARN,
+           text = "Using the persisted discovery snapshot of cluster ({0}) since Cloudera Manager could not be reached.")
+  void usingPersistedClusterSnapshot(String clusterName);
+
+  @Message(level = MessageLevel.WARN,
+           text = "Failed to persist the discovery snapshot of cluster ({0}): {1}")
+  void failedToPersistClusterSnapshot(String clusterName, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.WARN,
+           text = "Failed to load the persisted discovery snapshot of cluster ({0}): {1}")
+  void failedToLoadClusterSnapshot(String clusterName, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
 }
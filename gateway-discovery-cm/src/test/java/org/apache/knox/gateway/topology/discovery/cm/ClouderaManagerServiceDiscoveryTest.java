@@ -33,22 +33,33 @@ import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscovery;
 import org.apache.knox.gateway.topology.discovery.ServiceDiscoveryConfig;
 import org.easymock.EasyMock;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
+import java.io.File;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 public class ClouderaManagerServiceDiscoveryTest {
 
+  @Rule
+  public final TemporaryFolder tempDir = new TemporaryFolder();
+
   @Test
   public void testJobTrackerServiceDiscovery() {
     final String hostName = "resourcemanager-host-1";
@@ -414,6 +425,105 @@ public class ClouderaManagerServiceDiscoveryTest {
     doTestZeppelinDiscovery("ZEPPELINWS", true);
   }
 
+  @Test
+  public void testClusterSnapshotIsReused() {
+    final String clusterName = "cluster-1";
+
+    GatewayConfig gwConf = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(gwConf.getServiceDiscoverySnapshotTTL()).andReturn(TimeUnit.MINUTES.toMillis(1)).anyTimes();
+    EasyMock.replay(gwConf);
+
+    ServiceDiscoveryConfig sdConfig = createMockDiscoveryConfig();
+    TestDiscoveryApiClient mockClient = createMockLivyClient(sdConfig, clusterName);
+
+    ClouderaManagerServiceDiscovery cmsd = new ClouderaManagerServiceDiscovery(true);
+    ServiceDiscovery.Cluster first = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    // The services, the service config, the roles and the role config
+    assertEquals(4, mockClient.getRequestCount());
+
+    ServiceDiscovery.Cluster second = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(4, mockClient.getRequestCount());
+    assertSame(first, second);
+    assertEquals(Collections.singletonList("http://livy-host-1:8998"), second.getServiceURLs("LIVYSERVER"));
+
+    // Another cluster isn't served from the snapshot
+    cmsd.discover(gwConf, sdConfig, "cluster-2", mockClient);
+    assertEquals(8, mockClient.getRequestCount());
+  }
+
+  @Test
+  public void testClusterSnapshotIsClearedOnConfigurationChange() {
+    final String clusterName = "cluster-1";
+
+    GatewayConfig gwConf = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(gwConf.getServiceDiscoverySnapshotTTL()).andReturn(TimeUnit.MINUTES.toMillis(1)).anyTimes();
+    EasyMock.replay(gwConf);
+
+    ServiceDiscoveryConfig sdConfig = createMockDiscoveryConfig();
+    TestDiscoveryApiClient mockClient = createMockLivyClient(sdConfig, clusterName);
+
+    ClouderaManagerServiceDiscovery cmsd = new ClouderaManagerServiceDiscovery(true);
+    ServiceDiscovery.Cluster first = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(4, mockClient.getRequestCount());
+
+    // A change of another cluster leaves the snapshot alone
+    cmsd.clearCache(sdConfig.getAddress(), "cluster-2");
+    assertSame(first, cmsd.discover(gwConf, sdConfig, clusterName, mockClient));
+    assertEquals(4, mockClient.getRequestCount());
+
+    cmsd.clearCache(sdConfig.getAddress(), clusterName);
+    ServiceDiscovery.Cluster second = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(8, mockClient.getRequestCount());
+    assertNotSame(first, second);
+  }
+
+  @Test
+  public void testFailedDiscoveryIsNotReused() {
+    final String clusterName = "cluster-1";
+
+    GatewayConfig gwConf = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(gwConf.getServiceDiscoverySnapshotTTL()).andReturn(TimeUnit.MINUTES.toMillis(1)).anyTimes();
+    EasyMock.replay(gwConf);
+
+    ServiceDiscoveryConfig sdConfig = createMockDiscoveryConfig();
+    TestDiscoveryApiClient mockClient = createMockLivyClient(sdConfig, clusterName);
+
+    ClouderaManagerServiceDiscovery cmsd = new ClouderaManagerServiceDiscovery(true);
+    mockClient.setUnreachable(true);
+    ServiceDiscovery.Cluster cluster = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertTrue(cluster.getServiceURLs("LIVYSERVER").isEmpty());
+
+    mockClient.setUnreachable(false);
+    cluster = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(Collections.singletonList("http://livy-host-1:8998"), cluster.getServiceURLs("LIVYSERVER"));
+  }
+
+  @Test
+  public void testPersistedSnapshotIsUsedWhenUnreachable() {
+    final String clusterName = "cluster-1";
+
+    GatewayConfig gwConf = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(gwConf.isServiceDiscoverySnapshotPersistenceEnabled()).andReturn(true).anyTimes();
+    EasyMock.expect(gwConf.getGatewayDataDir()).andReturn(tempDir.getRoot().getAbsolutePath()).anyTimes();
+    EasyMock.replay(gwConf);
+
+    ServiceDiscoveryConfig sdConfig = createMockDiscoveryConfig();
+    TestDiscoveryApiClient mockClient = createMockLivyClient(sdConfig, clusterName);
+    new ClouderaManagerServiceDiscovery(true).discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(1, new File(tempDir.getRoot(), ClouderaManagerServiceDiscovery.SNAPSHOT_DIR).list().length);
+
+    // As after a restart while Cloudera Manager is down
+    mockClient.setUnreachable(true);
+    ServiceDiscovery.Cluster cluster =
+        new ClouderaManagerServiceDiscovery(true).discover(gwConf, sdConfig, clusterName, mockClient);
+    assertEquals(clusterName, cluster.getName());
+    assertEquals(Collections.singletonList("http://livy-host-1:8998"), cluster.getServiceURLs("LIVYSERVER"));
+
+    // Snapshots are kept per cluster
+    cluster = new ClouderaManagerServiceDiscovery(true).discover(gwConf, sdConfig, "cluster-2", mockClient);
+    assertTrue(cluster.getServiceURLs("LIVYSERVER").isEmpty());
+  }
+
 
   private void doTestOozieDiscovery(final String serviceName, final boolean isSSL) {
     final String hostName = "oozie-host";
@@ -797,6 +907,26 @@ public class ClouderaManagerServiceDiscoveryTest {
     ServiceDiscoveryConfig sdConfig = createMockDiscoveryConfig();
 
     // Create the test client for providing test response content
+    TestDiscoveryApiClient mockClient = createMockClient(sdConfig, clusterName, hostName, serviceName, serviceType,
+                                                         roleName, roleType, serviceProperties, roleProperties);
+
+    // Invoke the service discovery
+    ClouderaManagerServiceDiscovery cmsd = new ClouderaManagerServiceDiscovery(true);
+    ServiceDiscovery.Cluster cluster = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
+    assertNotNull(cluster);
+    assertEquals(clusterName, cluster.getName());
+    return cluster;
+  }
+
+  private TestDiscoveryApiClient createMockClient(final ServiceDiscoveryConfig sdConfig,
+                                                  final String clusterName,
+                                                  final String hostName,
+                                                  final String serviceName,
+                                                  final String serviceType,
+                                                  final String roleName,
+                                                  final String roleType,
+                                                  final Map<String, String> serviceProperties,
+                                                  final Map<String, String> roleProperties) {
     TestDiscoveryApiClient mockClient = new TestDiscoveryApiClient(sdConfig, null);
 
     // Prepare the service list response for the cluster
@@ -822,14 +952,16 @@ public class ClouderaManagerServiceDiscoveryTest {
     ApiConfigList roleConfigList = createMockApiConfigList(roleProperties);
     mockClient.addResponse(ApiConfigList.class, new TestApiConfigListResponse(roleConfigList));
 
-    // Invoke the service discovery
-    ClouderaManagerServiceDiscovery cmsd = new ClouderaManagerServiceDiscovery(true);
-    ServiceDiscovery.Cluster cluster = cmsd.discover(gwConf, sdConfig, clusterName, mockClient);
-    assertNotNull(cluster);
-    assertEquals(clusterName, cluster.getName());
-    return cluster;
+    return mockClient;
   }
 
+  private TestDiscoveryApiClient createMockLivyClient(ServiceDiscoveryConfig sdConfig, String clusterName) {
+    Map<String, String> roleProperties = new HashMap<>();
+    roleProperties.put("livy_server_port", "8998");
+    roleProperties.put("ssl_enabled", "false");
+    return createMockClient(sdConfig, clusterName, "livy-host-1", "LIVY-1", "LIVY", "LIVY-LIVY_SERVER-1",
+                            "LIVY_SERVER", Collections.emptyMap(), roleProperties);
+  }
 
   private static ServiceDiscoveryConfig createMockDiscoveryConfig() {
     return createMockDiscoveryConfig("http://localhost:1234", "itsme");
@@ -907,6 +1039,10 @@ public class ClouderaManagerServiceDiscoveryTest {
 
     private Map<Type, ApiResponse<?>> responseMap = new HashMap<>();
 
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private boolean unreachable;
+
     TestDiscoveryApiClient(ServiceDiscoveryConfig sdConfig, AliasService aliasService) {
       super(sdConfig, aliasService);
     }
@@ -915,6 +1051,14 @@ public class ClouderaManagerServiceDiscoveryTest {
       responseMap.put(type, response);
     }
 
+    void setUnreachable(boolean unreachable) {
+      this.unreachable = unreachable;
+    }
+
+    int getRequestCount() {
+      return requestCount.get();
+    }
+
     @Override
     boolean isKerberos() {
       return false;
@@ -922,6 +1066,10 @@ public class ClouderaManagerServiceDiscoveryTest {
 
     @Override
     public <T> ApiResponse<T> execute(Call call, Type returnType) throws ApiException {
+      requestCount.incrementAndGet();
+      if (unreachable) {
+        throw new ApiException("Connection refused");
+      }
       return (ApiResponse<T>) responseMap.get(returnType);
     }
   }
@@ -142,6 +142,36 @@ public class HaProviderDeploymentContributor extends ProviderDeploymentContribut
          if (zkNamespace != null) {
             config.setZookeeperNamespace(zkNamespace);
          }
+
+         String loadBalancingPolicy = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_LOAD_BALANCING_POLICY);
+         if (loadBalancingPolicy != null) {
+            config.setLoadBalancingPolicy(loadBalancingPolicy);
+         }
+
+         String healthCheckInterval = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_HEALTH_CHECK_INTERVAL);
+         if (healthCheckInterval != null) {
+            config.setHealthCheckInterval(Integer.parseInt(healthCheckInterval));
+         }
+
+         String failoverBackoff = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_FAILOVER_BACKOFF);
+         if (failoverBackoff != null) {
+            config.setFailoverBackoff(Boolean.parseBoolean(failoverBackoff));
+         }
+
+         String maxFailoverSleep = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_MAX_FAILOVER_SLEEP);
+         if (maxFailoverSleep != null) {
+            config.setMaxFailoverSleep(Integer.parseInt(maxFailoverSleep));
+         }
+
+         String hedgeDelayPercentile = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_HEDGE_DELAY_PERCENTILE);
+         if (hedgeDelayPercentile != null) {
+            config.setHedgeDelayPercentile(Integer.parseInt(hedgeDelayPercentile));
+         }
+
+         String minHedgeDelay = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_PARAM_MIN_HEDGE_DELAY);
+         if (minHedgeDelay != null) {
+            config.setMinHedgeDelay(Integer.parseInt(minHedgeDelay));
+         }
       }
    }
 
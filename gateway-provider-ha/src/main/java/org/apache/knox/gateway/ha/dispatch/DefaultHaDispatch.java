@@ -17,7 +17,17 @@
  */
 package org.apache.knox.gateway.ha.dispatch;
 
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.AuditService;
+import org.apache.knox.gateway.audit.api.AuditServiceFactory;
+import org.apache.knox.gateway.audit.api.CorrelationContext;
+import org.apache.knox.gateway.audit.api.CorrelationService;
+import org.apache.knox.gateway.audit.api.CorrelationServiceFactory;
+import org.apache.knox.gateway.config.Alias;
 import org.apache.knox.gateway.config.Configure;
+import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.config.Optional;
 import org.apache.knox.gateway.dispatch.DefaultDispatch;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
@@ -26,18 +36,39 @@ import org.apache.knox.gateway.ha.provider.HaProvider;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
 import org.apache.knox.gateway.ha.provider.impl.HaServiceConfigConstants;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.metrics.MetricsService;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Default HA dispatch class that has a very basic failover mechanism
+ * Default HA dispatch class that has a very basic failover mechanism.
+ * <p>
+ * By default each failover attempt sleeps for the failover sleep on the request thread. With
+ * failover backoff enabled the sleep doubles with every attempt up to the maximum failover sleep,
+ * with random jitter so that the retries of many failed requests are spread out, and failover
+ * stops as soon as the URL manager knows that every URL has failed. If the request has no body
+ * and the container supports asynchronous processing, the request is then suspended during the
+ * sleep and retried on a container thread once a timer fires, instead of holding a request thread.
+ * <p>
+ * With a hedge delay percentile configured, a GET or HEAD request that has not been answered
+ * within that percentile of recent response times is also sent to another URL of the service, and
+ * the first response is used. When metrics are enabled the hedgeable requests, the hedges and the
+ * hedges that won are metered under <code>dispatch.ha.hedging.&lt;topology&gt;.&lt;role&gt;</code>.
  */
 public class DefaultHaDispatch extends DefaultDispatch {
 
@@ -45,16 +76,46 @@ public class DefaultHaDispatch extends DefaultDispatch {
 
   protected static final HaDispatchMessages LOG = MessagesFactory.get(HaDispatchMessages.class);
 
+  private static final String HEDGING_METRICS_PREFIX = MetricRegistry.name("dispatch", "ha", "hedging");
+
+  // The number of retries scheduled for a suspended request that have not finished yet
+  private static final String FAILOVER_PENDING_ATTRIBUTE = "dispatch.ha.failover.pending";
+
+  // Timers only hand retries over to the container, so a single thread serves all the dispatches
+  private static final ScheduledExecutorService FAILOVER_TIMER = Executors.newSingleThreadScheduledExecutor(
+      new BasicThreadFactory.Builder().namingPattern("HaFailoverTimer-%d").daemon(true).build());
+
   private int maxFailoverAttempts = HaServiceConfigConstants.DEFAULT_MAX_FAILOVER_ATTEMPTS;
 
   private int failoverSleep = HaServiceConfigConstants.DEFAULT_FAILOVER_SLEEP;
 
+  private boolean failoverBackoff = HaServiceConfigConstants.DEFAULT_FAILOVER_BACKOFF;
+
+  private int maxFailoverSleep = HaServiceConfigConstants.DEFAULT_MAX_FAILOVER_SLEEP;
+
   private HaProvider haProvider;
 
   @Optional
   @Configure
   private String serviceRole;
 
+  @Optional
+  @Configure
+  @Alias(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)
+  private GatewayServices gatewayServices;
+
+  @Optional
+  @Configure
+  @Alias(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)
+  private GatewayConfig gatewayConfig;
+
+  @Optional
+  @Configure
+  @Alias(GatewayServices.GATEWAY_CLUSTER_ATTRIBUTE)
+  private String topologyName;
+
+  private HedgingPolicy hedging;
+
   @Override
   public void init() {
     super.init();
@@ -63,9 +124,29 @@ public class DefaultHaDispatch extends DefaultDispatch {
       HaServiceConfig serviceConfig = haProvider.getHaDescriptor().getServiceConfig(getServiceRole());
       maxFailoverAttempts = serviceConfig.getMaxFailoverAttempts();
       failoverSleep = serviceConfig.getFailoverSleep();
+      failoverBackoff = serviceConfig.isFailoverBackoff();
+      maxFailoverSleep = serviceConfig.getMaxFailoverSleep();
+      if ( serviceConfig.getHedgeDelayPercentile() > 0 ) {
+        hedging = new HedgingPolicy(serviceConfig.getHedgeDelayPercentile(), serviceConfig.getMinHedgeDelay(),
+            getMetricRegistry(), MetricRegistry.name(HEDGING_METRICS_PREFIX, topologyName, getServiceRole()));
+      }
     }
   }
 
+  HedgingPolicy getHedgingPolicy() {
+    return hedging;
+  }
+
+  private MetricRegistry getMetricRegistry() {
+    if ( gatewayServices != null && gatewayConfig != null && gatewayConfig.isMetricsEnabled() ) {
+      MetricsService metricsService = gatewayServices.getService(ServiceType.METRICS_SERVICE);
+      if ( metricsService != null ) {
+        return metricsService.getRegistry();
+      }
+    }
+    return null;
+  }
+
   public String getServiceRole() {
     return serviceRole;
   }
@@ -86,12 +167,84 @@ public class DefaultHaDispatch extends DefaultDispatch {
   @Override
   protected void executeRequest(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse) throws IOException {
     HttpResponse inboundResponse = null;
+    IOException failure = null;
+    String url = outboundRequest.getURI().toString();
     try {
-      inboundResponse = executeOutboundRequest(outboundRequest);
+      inboundResponse = executeHedgeableRequest(outboundRequest);
       writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
     } catch ( IOException e ) {
-      LOG.errorConnectingToServer(outboundRequest.getURI().toString(), e);
-      failoverRequest(outboundRequest, inboundRequest, outboundResponse, inboundResponse, e);
+      failure = e;
+    }
+    if ( failure != null ) {
+      LOG.errorConnectingToServer(url, failure);
+      failoverRequest(outboundRequest, inboundRequest, outboundResponse, inboundResponse, failure);
+    }
+  }
+
+  private HttpResponse executeHedgeableRequest(HttpUriRequest outboundRequest) throws IOException {
+    String method = outboundRequest.getMethod();
+    if ( hedging != null && ("GET".equals(method) || "HEAD".equals(method)) ) {
+      hedging.getRequests().mark();
+      long delay = hedging.getDelay();
+      if ( delay >= 0 ) {
+        String hedgeUrl = haProvider.getAlternateURL(getServiceRole(), outboundRequest.getURI().toString());
+        HedgedRequest hedgedRequest = hedgeUrl == null ? null : HedgedRequest.create(this, outboundRequest, hedgeUrl, hedging);
+        if ( hedgedRequest != null ) {
+          return hedgedRequest.execute(delay);
+        }
+      }
+    }
+    return executeTimedRequest(outboundRequest);
+  }
+
+  /**
+   * Executes an outbound request, letting the URL manager of the service account for it and
+   * recording the time until the response is received for hedging.
+   */
+  HttpResponse executeTimedRequest(HttpUriRequest outboundRequest) throws IOException {
+    String url = outboundRequest.getURI().toString();
+    markRequestStarted(url);
+    long started = System.nanoTime();
+    try {
+      HttpResponse inboundResponse = executeOutboundRequest(outboundRequest);
+      if ( hedging != null ) {
+        hedging.recordResponseTime(System.nanoTime() - started);
+      }
+      return inboundResponse;
+    } finally {
+      markRequestCompleted(url, System.nanoTime() - started);
+    }
+  }
+
+  @Override
+  protected void auditOutboundFailure(HttpUriRequest outboundRequest, Exception e) {
+    // The request that loses a hedge is aborted on purpose, which is not a dispatch failure
+    if ( hedging != null && outboundRequest.isAborted() ) {
+      LOG.abortedHedgeLoser(outboundRequest.getURI().toString());
+      return;
+    }
+    super.auditOutboundFailure(outboundRequest, e);
+  }
+
+  /**
+   * Lets the URL manager of the service account for a request to one of its URLs, so that
+   * requests can be balanced over them.
+   *
+   * @param url the URL of the outbound request
+   */
+  protected void markRequestStarted(String url) {
+    if ( haProvider != null ) {
+      haProvider.markRequestStarted(getServiceRole(), url);
+    }
+  }
+
+  /**
+   * @param url the URL of the outbound request
+   * @param latency the time in nanoseconds until the response was received, or until the request failed
+   */
+  protected void markRequestCompleted(String url, long latency) {
+    if ( haProvider != null ) {
+      haProvider.markRequestCompleted(getServiceRole(), url, latency);
     }
   }
 
@@ -103,15 +256,26 @@ public class DefaultHaDispatch extends DefaultDispatch {
       counter = new AtomicInteger(0);
     }
     inboundRequest.setAttribute(FAILOVER_COUNTER_ATTRIBUTE, counter);
-    if ( counter.incrementAndGet() <= maxFailoverAttempts ) {
+    int attempt = counter.incrementAndGet();
+    if ( attempt <= maxFailoverAttempts ) {
       haProvider.markFailedURL(getServiceRole(), outboundRequest.getURI().toString());
+      if ( failoverBackoff && !haProvider.hasHealthyURL(getServiceRole()) ) {
+        LOG.noHealthyUrlToFailoverTo(getServiceRole());
+        failRequest(outboundRequest, inboundRequest, outboundResponse, inboundResponse, exception);
+        return;
+      }
       //null out target url so that rewriters run again
       inboundRequest.setAttribute(AbstractGatewayFilter.TARGET_REQUEST_URL_ATTRIBUTE_NAME, null);
       URI uri = getDispatchUrl(inboundRequest);
       ((HttpRequestBase) outboundRequest).setURI(uri);
-      if ( failoverSleep > 0 ) {
+      long sleep = failoverBackoff ? getFailoverBackoff(attempt) : failoverSleep;
+      if ( sleep > 0 && failoverBackoff && isAsyncFailover(outboundRequest, inboundRequest) ) {
+        scheduleFailover(outboundRequest, inboundRequest, outboundResponse, sleep);
+        return;
+      }
+      if ( sleep > 0 ) {
         try {
-          Thread.sleep(failoverSleep);
+          Thread.sleep(sleep);
         } catch ( InterruptedException e ) {
           LOG.failoverSleepFailed(getServiceRole(), e);
         }
@@ -119,11 +283,95 @@ public class DefaultHaDispatch extends DefaultDispatch {
       executeRequest(outboundRequest, inboundRequest, outboundResponse);
     } else {
       LOG.maxFailoverAttemptsReached(maxFailoverAttempts, getServiceRole());
-      if ( inboundResponse != null ) {
-        writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
-      } else {
-        throw new IOException(exception);
+      failRequest(outboundRequest, inboundRequest, outboundResponse, inboundResponse, exception);
+    }
+  }
+
+  private void failRequest(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse, HttpResponse inboundResponse, Exception exception) throws IOException {
+    if ( inboundResponse != null ) {
+      writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
+    } else {
+      throw new IOException(exception);
+    }
+  }
+
+  /**
+   * @param attempt the failover attempt, starting at 1
+   * @return the time in milliseconds to sleep before the attempt: the failover sleep doubled for
+   * every previous attempt and limited to the maximum failover sleep, of which a random part of up
+   * to half is taken off
+   */
+  long getFailoverBackoff(int attempt) {
+    if ( failoverSleep <= 0 ) {
+      return 0;
+    }
+    long limit = Math.max(failoverSleep, maxFailoverSleep);
+    long sleep = Math.min((long) failoverSleep << Math.min(attempt - 1, 30), limit);
+    return sleep - ThreadLocalRandom.current().nextLong(sleep / 2 + 1);
+  }
+
+  /**
+   * Requests with a body are retried on the request thread, as the body is read from the client
+   * while the outbound request is executed.
+   */
+  private boolean isAsyncFailover(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest) {
+    if ( !inboundRequest.isAsyncStarted() && !inboundRequest.isAsyncSupported() ) {
+      return false;
+    }
+    return !(outboundRequest instanceof HttpEntityEnclosingRequest)
+        || ((HttpEntityEnclosingRequest) outboundRequest).getEntity() == null;
+  }
+
+  private void scheduleFailover(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse, long sleep) {
+    AsyncContext asyncContext;
+    AtomicInteger pending;
+    if ( inboundRequest.isAsyncStarted() ) {
+      asyncContext = inboundRequest.getAsyncContext();
+      pending = (AtomicInteger) inboundRequest.getAttribute(FAILOVER_PENDING_ATTRIBUTE);
+    } else {
+      asyncContext = inboundRequest.startAsync(inboundRequest, outboundResponse);
+      // The failover attempts limit how long the request is suspended, not the container's async timeout
+      asyncContext.setTimeout(0);
+      pending = new AtomicInteger();
+      inboundRequest.setAttribute(FAILOVER_PENDING_ATTRIBUTE, pending);
+    }
+    pending.incrementAndGet();
+    LOG.schedulingFailover(sleep, getServiceRole());
+    AuditContext auditContext = AuditServiceFactory.getAuditService().getContext();
+    CorrelationContext correlationContext = CorrelationServiceFactory.getCorrelationService().getContext();
+    FAILOVER_TIMER.schedule(() -> asyncContext.start(
+        () -> retryRequest(outboundRequest, asyncContext, pending, auditContext, correlationContext)),
+        sleep, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Executes a failover attempt for a suspended request on a container thread, and completes the
+   * request unless the attempt scheduled yet another one.
+   */
+  private void retryRequest(HttpUriRequest outboundRequest, AsyncContext asyncContext, AtomicInteger pending,
+                            AuditContext auditContext, CorrelationContext correlationContext) {
+    AuditService auditService = AuditServiceFactory.getAuditService();
+    CorrelationService correlationService = CorrelationServiceFactory.getCorrelationService();
+    auditService.attachContext(auditContext);
+    correlationService.attachContext(correlationContext);
+    HttpServletResponse outboundResponse = (HttpServletResponse) asyncContext.getResponse();
+    try {
+      executeRequest(outboundRequest, (HttpServletRequest) asyncContext.getRequest(), outboundResponse);
+    } catch ( IOException | RuntimeException e ) {
+      LOG.failedToFailoverRequest(getServiceRole(), e);
+      if ( !outboundResponse.isCommitted() ) {
+        try {
+          outboundResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } catch ( IOException | IllegalStateException sendFailure ) {
+          LOG.failedToFailoverRequest(getServiceRole(), sendFailure);
+        }
+      }
+    } finally {
+      if ( pending.decrementAndGet() == 0 ) {
+        asyncContext.complete();
       }
+      correlationService.detachContext();
+      auditService.detachContext();
     }
   }
 
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.dispatch;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.AuditService;
+import org.apache.knox.gateway.audit.api.AuditServiceFactory;
+import org.apache.knox.gateway.audit.api.CorrelationContext;
+import org.apache.knox.gateway.audit.api.CorrelationService;
+import org.apache.knox.gateway.audit.api.CorrelationServiceFactory;
+import org.apache.knox.gateway.ha.dispatch.i18n.HaDispatchMessages;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A request that is sent to a second URL of the service if the first has not responded in time.
+ * <p>
+ * The primary request is executed on the calling thread. Once the hedging delay is over, a copy of
+ * the request for the other URL is executed on a pooled thread. The first of the two to receive a
+ * response wins and aborts the other, and its response is returned to the calling thread, so the
+ * response is always written to the client by the request thread.
+ * <p>
+ * The pool is bounded and does not queue: when all of its threads are busy, the request is not
+ * hedged and waits for the primary response only.
+ */
+class HedgedRequest {
+
+  private static final HaDispatchMessages LOG = MessagesFactory.get(HaDispatchMessages.class);
+
+  private static final int UNDECIDED = 0;
+  private static final int PRIMARY = 1;
+  private static final int HEDGE = 2;
+
+  // The timer only hands hedges over to the pool, so a single thread serves all the dispatches
+  private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(
+      new BasicThreadFactory.Builder().namingPattern("HaHedgeTimer-%d").daemon(true).build());
+
+  private static final int MAX_HEDGE_THREADS = 32;
+
+  private static final ExecutorService HEDGE_EXECUTOR = new ThreadPoolExecutor(0, MAX_HEDGE_THREADS,
+      60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+      new BasicThreadFactory.Builder().namingPattern("HaHedge-%d").daemon(true).build());
+
+  private final DefaultHaDispatch dispatch;
+  private final HttpRequestBase primary;
+  private final HttpRequestBase hedge;
+  private final HedgingPolicy policy;
+  private final AtomicInteger winner = new AtomicInteger(UNDECIDED);
+  private final CompletableFuture<HttpResponse> hedgeResponse = new CompletableFuture<>();
+  private final AuditContext auditContext;
+  private final CorrelationContext correlationContext;
+
+  private HedgedRequest(DefaultHaDispatch dispatch, HttpRequestBase primary, HttpRequestBase hedge, HedgingPolicy policy) {
+    this.dispatch = dispatch;
+    this.primary = primary;
+    this.hedge = hedge;
+    this.policy = policy;
+    this.auditContext = AuditServiceFactory.getAuditService().getContext();
+    this.correlationContext = CorrelationServiceFactory.getCorrelationService().getContext();
+  }
+
+  /**
+   * @param primary the request to hedge
+   * @param url     the URL to send the hedge to
+   * @return a hedged request, or null if the request cannot be copied
+   */
+  static HedgedRequest create(DefaultHaDispatch dispatch, HttpUriRequest primary, String url, HedgingPolicy policy) {
+    if (!(primary instanceof HttpRequestBase)) {
+      return null;
+    }
+    try {
+      HttpRequestBase hedge = (HttpRequestBase) ((HttpRequestBase) primary).clone();
+      hedge.setURI(URI.create(url));
+      return new HedgedRequest(dispatch, (HttpRequestBase) primary, hedge, policy);
+    } catch (CloneNotSupportedException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Executes the request, hedging it once the delay is over.
+   *
+   * @param delay the time in milliseconds to wait for a response before hedging
+   * @return the first response received. If it was received for the hedge, the primary request is
+   * changed to the URL of the hedge, so that a failover that follows marks the right URL as failed.
+   * @throws IOException if neither request received a response
+   */
+  HttpResponse execute(long delay) throws IOException {
+    ScheduledFuture<?> timer = HEDGE_TIMER.schedule(this::submitHedge, delay, TimeUnit.MILLISECONDS);
+    HttpResponse response;
+    try {
+      response = dispatch.executeTimedRequest(primary);
+    } catch (IOException e) {
+      if (timer.cancel(false)) {
+        throw e;
+      }
+      return awaitHedge(e);
+    }
+    if (winner.compareAndSet(UNDECIDED, PRIMARY)) {
+      timer.cancel(false);
+      hedge.abort();
+      return response;
+    }
+    close(response);
+    return awaitHedge(null);
+  }
+
+  private HttpResponse awaitHedge(IOException primaryFailure) throws IOException {
+    try {
+      HttpResponse response = hedgeResponse.get();
+      // The primary request was aborted, reset it so that it can be used to fail over
+      primary.reset();
+      primary.setURI(hedge.getURI());
+      return response;
+    } catch (ExecutionException e) {
+      if (primaryFailure != null) {
+        throw primaryFailure;
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      hedge.abort();
+      throw (IOException) new InterruptedIOException().initCause(e);
+    }
+  }
+
+  private void submitHedge() {
+    try {
+      HEDGE_EXECUTOR.execute(this::sendHedge);
+    } catch (RejectedExecutionException e) {
+      LOG.hedgingSkipped(primary.getURI().toString(), MAX_HEDGE_THREADS);
+      hedgeResponse.completeExceptionally(e);
+    }
+  }
+
+  private void sendHedge() {
+    if (winner.get() != UNDECIDED) {
+      return;
+    }
+    policy.getHedges().mark();
+    LOG.hedgingRequest(primary.getURI().toString(), hedge.getURI().toString());
+    AuditService auditService = AuditServiceFactory.getAuditService();
+    CorrelationService correlationService = CorrelationServiceFactory.getCorrelationService();
+    auditService.attachContext(auditContext);
+    correlationService.attachContext(correlationContext);
+    try {
+      HttpResponse response = dispatch.executeTimedRequest(hedge);
+      if (winner.compareAndSet(UNDECIDED, HEDGE)) {
+        policy.getWins().mark();
+        primary.abort();
+        hedgeResponse.complete(response);
+      } else {
+        close(response);
+      }
+    } catch (IOException | RuntimeException e) {
+      hedgeResponse.completeExceptionally(e);
+    } finally {
+      correlationService.detachContext();
+      auditService.detachContext();
+    }
+  }
+
+  private static void close(HttpResponse response) {
+    if (response instanceof Closeable) {
+      try {
+        ((Closeable) response).close();
+      } catch (IOException e) {
+        LOG.failedToCloseHedgeResponse(e);
+      }
+    }
+  }
+}
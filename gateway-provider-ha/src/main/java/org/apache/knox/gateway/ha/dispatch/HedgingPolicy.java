@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.dispatch;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingWindowReservoir;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how long a request to a service may go unanswered before it is hedged, as a percentile
+ * of the response times of recent requests, and meters the hedgeable requests, the hedges sent
+ * and the hedges that won.
+ */
+class HedgingPolicy {
+
+  // Requests are only hedged once this many response times are known, so that the delay reflects the service
+  static final int MIN_SAMPLES = 100;
+
+  private static final int WINDOW_SIZE = 1024;
+
+  // The delay is recomputed from the window every this many response times
+  private static final int RECOMPUTE_INTERVAL = 64;
+
+  private final double quantile;
+  private final long minDelay;
+  private final Histogram responseTimes = new Histogram(new SlidingWindowReservoir(WINDOW_SIZE));
+  private final AtomicLong samples = new AtomicLong();
+  private final AtomicLong delay = new AtomicLong(-1);
+  private final Meter requests;
+  private final Meter hedges;
+  private final Meter wins;
+
+  /**
+   * @param percentile the percentile of the response times to wait for before hedging
+   * @param minDelay   the least time in milliseconds to wait before hedging
+   * @param metrics    the registry to add the meters to, or null to not publish them
+   * @param name       the name of the meters in the registry
+   */
+  HedgingPolicy(int percentile, int minDelay, MetricRegistry metrics, String name) {
+    this.quantile = Math.min(percentile, 100) / 100.0;
+    this.minDelay = Math.max(minDelay, 0);
+    requests = meter(metrics, name, "requests");
+    hedges = meter(metrics, name, "hedges");
+    wins = meter(metrics, name, "wins");
+  }
+
+  private static Meter meter(MetricRegistry metrics, String name, String meter) {
+    return metrics == null ? new Meter() : metrics.meter(MetricRegistry.name(name, meter));
+  }
+
+  /**
+   * @return the time in milliseconds to wait for a response before hedging, or -1 while too few
+   * response times are known to hedge
+   */
+  long getDelay() {
+    return delay.get();
+  }
+
+  /**
+   * @param responseTime the time in nanoseconds until the response to a request was received
+   */
+  void recordResponseTime(long responseTime) {
+    responseTimes.update(responseTime);
+    long count = samples.incrementAndGet();
+    if (count == MIN_SAMPLES || count > MIN_SAMPLES && count % RECOMPUTE_INTERVAL == 0) {
+      long percentile = TimeUnit.NANOSECONDS.toMillis((long) responseTimes.getSnapshot().getValue(quantile));
+      delay.set(Math.max(minDelay, percentile));
+    }
+  }
+
+  Meter getRequests() {
+    return requests;
+  }
+
+  Meter getHedges() {
+    return hedges;
+  }
+
+  Meter getWins() {
+    return wins;
+  }
+}
@@ -41,4 +41,25 @@ public interface HaDispatchMessages {
 
   @Message(level = MessageLevel.INFO, text = "Error occurred while trying to sleep for failover : {0} {1}")
   void failoverSleepFailed(String service, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.INFO, text = "No healthy server is left to failover to for service: {0}")
+  void noHealthyUrlToFailoverTo(String service);
+
+  @Message(level = MessageLevel.DEBUG, text = "Retrying request in {0} ms for service: {1}")
+  void schedulingFailover(long sleep, String service);
+
+  @Message(level = MessageLevel.ERROR, text = "Failed to failover request for service: {0} {1}")
+  void failedToFailoverRequest(String service, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.DEBUG, text = "Hedging request to {0} with a request to {1}")
+  void hedgingRequest(String uri, String hedgeUri);
+
+  @Message(level = MessageLevel.DEBUG, text = "Not hedging request to {0}, all {1} hedging threads are busy")
+  void hedgingSkipped(String uri, int threads);
+
+  @Message(level = MessageLevel.DEBUG, text = "Request to {0} was aborted as it lost a hedge")
+  void abortedHedgeLoser(String uri);
+
+  @Message(level = MessageLevel.DEBUG, text = "Failed to close the response to a request that lost a hedge: {0}")
+  void failedToCloseHedgeResponse(@StackTrace(level = MessageLevel.DEBUG) Exception e);
 }
@@ -64,4 +64,52 @@ public interface HaProvider {
    */
   void markFailedURL(String serviceName, String url);
 
+  /**
+   * Notifies the URL manager of the service that a request is being dispatched to the URL.
+   *
+   * @param serviceName the name of the service
+   * @param url         the URL of the request
+   * @since 1.4.0
+   */
+  void markRequestStarted(String serviceName, String url);
+
+  /**
+   * Notifies the URL manager of the service that a request dispatched to the URL has completed.
+   *
+   * @param serviceName the name of the service
+   * @param url         the URL of the request
+   * @param latency     the time in nanoseconds until the response was received, or until the request failed
+   * @since 1.4.0
+   */
+  void markRequestCompleted(String serviceName, String url, long latency);
+
+  /**
+   * Returns whether any URL of the service may still be healthy, so that failover can stop early
+   * when none is.
+   *
+   * @param serviceName the name of the service
+   * @return false if the URL manager of the service knows that every URL has failed, true otherwise
+   * @since 1.4.0
+   */
+  boolean hasHealthyURL(String serviceName);
+
+  /**
+   * Returns the URL of a request to the service as it would be if the request were sent to
+   * another URL of the service, so that the request can be hedged.
+   *
+   * @param serviceName the name of the service
+   * @param url         the URL of the request
+   * @return the request URL for another URL of the service, or null if there is none
+   * @since 1.4.0
+   */
+  String getAlternateURL(String serviceName, String url);
+
+  /**
+   * Stops the background work of the URL managers of all the services, when the topology that
+   * uses this provider is undeployed.
+   *
+   * @since 1.4.0
+   */
+  void stop();
+
 }
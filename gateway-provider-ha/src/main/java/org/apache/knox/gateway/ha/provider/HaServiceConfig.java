@@ -49,4 +49,52 @@ public interface HaServiceConfig {
   String getZookeeperNamespace();
 
   void setZookeeperNamespace(String zookeeperNamespace);
+
+  /**
+   * @return how requests are spread over the URLs of the service: none, which sends all requests to
+   * the active URL until it fails, round-robin, least-outstanding or ewma
+   */
+  String getLoadBalancingPolicy();
+
+  void setLoadBalancingPolicy(String loadBalancingPolicy);
+
+  /**
+   * @return the interval in milliseconds at which failed URLs are checked for recovery when
+   * requests are load balanced, or 0 to not check them, in which case a failed URL is only used
+   * again once it is set as the active URL or every URL has failed
+   */
+  int getHealthCheckInterval();
+
+  void setHealthCheckInterval(int healthCheckInterval);
+
+  /**
+   * @return true if the sleep before each failover attempt doubles from the failover sleep up to
+   * the maximum failover sleep, with random jitter, and is waited out without holding a request
+   * thread where the request allows it
+   */
+  boolean isFailoverBackoff();
+
+  void setFailoverBackoff(boolean failoverBackoff);
+
+  /**
+   * @return the limit in milliseconds of the sleep before a failover attempt when failover backoff is enabled
+   */
+  int getMaxFailoverSleep();
+
+  void setMaxFailoverSleep(int maxFailoverSleep);
+
+  /**
+   * @return the percentile of recent response times after which a GET or HEAD request that has not
+   * been answered yet is also sent to another URL of the service, or 0 to not hedge requests
+   */
+  int getHedgeDelayPercentile();
+
+  void setHedgeDelayPercentile(int hedgeDelayPercentile);
+
+  /**
+   * @return the least time in milliseconds to wait for a response before hedging a request
+   */
+  int getMinHedgeDelay();
+
+  void setMinHedgeDelay(int minHedgeDelay);
 }
@@ -53,6 +53,10 @@ public class HaServletContextListener implements ServletContextListener {
 
    @Override
    public void contextDestroyed(ServletContextEvent event) {
+      HaProvider provider = getHaProvider(event.getServletContext());
+      if (provider != null) {
+         provider.stop();
+      }
       event.getServletContext().removeAttribute(PROVIDER_ATTRIBUTE_NAME);
    }
 
@@ -33,4 +33,66 @@ public interface URLManager {
   void setURLs(List<String> urls);
 
   void markFailed(String url);
+
+  /**
+   * Notifies the manager that a request is being dispatched to a URL, so that managers which
+   * balance requests over the URLs can account for it.
+   *
+   * @param url the URL of the request
+   * @since 1.4.0
+   */
+  default void markRequestStarted(String url) {
+  }
+
+  /**
+   * Notifies the manager that a request dispatched to a URL has completed, whether or not it
+   * succeeded. Every call to {@link #markRequestStarted(String)} is followed by a call to this.
+   *
+   * @param url the URL of the request
+   * @param latency the time in nanoseconds until the response was received, or until the request failed
+   * @since 1.4.0
+   */
+  default void markRequestCompleted(String url, long latency) {
+  }
+
+  /**
+   * @return false if the manager knows that every URL has failed and none has recovered yet,
+   * true otherwise, which includes managers that don't track the health of URLs
+   * @since 1.4.0
+   */
+  default boolean hasHealthyURL() {
+    return true;
+  }
+
+  /**
+   * Returns the URL of a request to one of the URLs of the manager as it would be if the request
+   * were sent to the next URL instead, so that the request can be sent to both.
+   *
+   * @param url the URL of the request
+   * @return the request URL for another URL of the manager, or null if there is none
+   * @since 1.4.0
+   */
+  default String getAlternateURL(String url) {
+    List<String> urls = getURLs();
+    if (url == null || urls == null || urls.size() < 2) {
+      return null;
+    }
+    int next = 0;
+    for (String base : urls) {
+      next++;
+      if (url.startsWith(base)) {
+        return urls.get(next % urls.size()) + url.substring(base.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Stops any background work of the manager, such as health checks, once its HA provider is no
+   * longer used.
+   *
+   * @since 1.4.0
+   */
+  default void close() {
+  }
 }
@@ -18,25 +18,21 @@
 
 package org.apache.knox.gateway.ha.provider.impl;
 
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
-import org.apache.knox.gateway.ha.provider.impl.i18n.HaMessages;
-import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
-public class AtlasZookeeperURLManager extends DefaultURLManager {
+/**
+ * Implementation of URLManager intended for query of Zookeeper for the active Atlas server. The
+ * active server is looked up again in the background when a URL is marked failed, or when Atlas
+ * records another active server.
+ */
+public class AtlasZookeeperURLManager extends BaseZookeeperURLManager {
     private static final String DEFAULT_ZOOKEEPER_NAMESPACE = "/apache_atlas";
     private static final String APACHE_ATLAS_ACTIVE_SERVER_INFO = "/active_server_info";
 
-    private static final HaMessages LOG = MessagesFactory.get(HaMessages.class);
-
-    private String zooKeeperEnsemble;
     private String zooKeeperNamespace;
 
     @Override
@@ -50,7 +46,6 @@ public class AtlasZookeeperURLManager extends DefaultURLManager {
 
     @Override
     public void setConfig(HaServiceConfig config) {
-        zooKeeperEnsemble = config.getZookeeperEnsemble();
         zooKeeperNamespace = config.getZookeeperNamespace();
         if (zooKeeperNamespace != null && !zooKeeperNamespace.isEmpty()) {
             if (!zooKeeperNamespace.startsWith("/")) {
@@ -59,20 +54,14 @@ public class AtlasZookeeperURLManager extends DefaultURLManager {
         } else {
             zooKeeperNamespace = DEFAULT_ZOOKEEPER_NAMESPACE;
         }
-        setURLs(lookupURLs());
+        super.setConfig(config);
     }
 
+    @Override
     public List<String> lookupURLs() {
         List<String> serverHosts = new ArrayList<>();
-        try (CuratorFramework zooKeeperClient = CuratorFrameworkFactory.builder()
-            .connectString(zooKeeperEnsemble)
-            .retryPolicy(new ExponentialBackoffRetry(1000, 3))
-            .build()) {
-
-            zooKeeperClient.start();
-            zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS);
-
-            byte[] bytes = zooKeeperClient.getData().forPath(zooKeeperNamespace + APACHE_ATLAS_ACTIVE_SERVER_INFO);
+        try {
+            byte[] bytes = getData(zooKeeperNamespace + APACHE_ATLAS_ACTIVE_SERVER_INFO);
 
             String activeURL = new String(bytes, StandardCharsets.UTF_8);
 
@@ -85,8 +74,7 @@ public class AtlasZookeeperURLManager extends DefaultURLManager {
     }
 
     @Override
-    public synchronized void markFailed(String url) {
-        setURLs(lookupURLs());
-        super.markFailed(url);
+    protected String getServiceName() {
+        return "ATLAS";
     }
 }
@@ -18,11 +18,25 @@
 package org.apache.knox.gateway.ha.provider.impl;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.dispatch.KnoxSpnegoAuthSchemeFactory;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
@@ -41,11 +55,15 @@ import org.apache.http.config.RegistryBuilder;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 
 /**
- * Base implementation of URLManager intended for query of Zookeeper active hosts. In
- * the event of a failure via markFailed, Zookeeper is queried again for active
- * host information.
+ * Base implementation of URLManager intended for query of Zookeeper active hosts. The hosts are
+ * looked up once when the manager is configured, and again in the background whenever the
+ * Zookeeper nodes they were read from change or a URL is marked failed. Request threads only read
+ * the current list of URLs, which is replaced as a whole, so they never wait for Zookeeper or for
+ * the hosts to be validated.
  *
  * When configuring the HAProvider in the topology, the zookeeperEnsemble attribute must be set to a
  * comma delimited list of the host and port number, i.e. host1:2181,host2:2181.
@@ -57,9 +75,20 @@ public abstract class BaseZookeeperURLManager implements URLManager {
    */
   private static final int TIMEOUT = 5000;
 
+  // Runs the lookups, and the pings of the hosts in parallel so a lookup takes at most one ping timeout
+  private static final ExecutorService REFRESHES = Executors.newCachedThreadPool(
+      new BasicThreadFactory.Builder().namingPattern("HaZookeeperRefresh-%d").daemon(true).build());
+
+  // One client per ensemble, shared by the managers of all the topologies and closed with the last of them
+  private static final ConcurrentMap<String, SharedClient> ZOOKEEPER_CLIENTS = new ConcurrentHashMap<>();
+
   private String zooKeeperEnsemble;
   private String zooKeeperNamespace;
-  private ConcurrentLinkedQueue<String> urls = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<List<String>> urls = new AtomicReference<>(Collections.emptyList());
+  private final AtomicReference<CompletableFuture<List<String>>> lookup = new AtomicReference<>();
+  private final CuratorWatcher watcher = new LookupWatcher(this);
+  private final AtomicReference<SharedClient> zooKeeperClient = new AtomicReference<>();
+  private final AtomicBoolean closed = new AtomicBoolean();
 
   // -------------------------------------------------------------------------------------
   // URLManager interface methods
@@ -83,42 +112,66 @@ public abstract class BaseZookeeperURLManager implements URLManager {
   }
 
   @Override
-  public synchronized String getActiveURL() {
-    // None available so refresh
-    if (urls.isEmpty()) {
-      setURLs(lookupURLs());
+  public String getActiveURL() {
+    List<String> current = urls.get();
+
+    // None available so wait for a refresh
+    if (current.isEmpty()) {
+      current = refreshURLs().join();
     }
 
-    return this.urls.peek();
+    return current.isEmpty() ? null : current.get(0);
   }
 
   @Override
-  public synchronized void setActiveURL(String url) {
+  public void setActiveURL(String url) {
     throw new UnsupportedOperationException();
   }
 
   @Override
-  public synchronized List<String> getURLs() {
-    return new ArrayList<>(this.urls);
+  public List<String> getURLs() {
+    return new ArrayList<>(urls.get());
   }
 
   @Override
-  public synchronized void markFailed(String url) {
-    // Capture complete URL of active host
-    String topURL = getActiveURL();
+  public void markFailed(String url) {
+    // Move the failed URL to the bottom right away, the lookup only replaces the URLs once done
+    List<String> current;
+    List<String> updated;
+    do {
+      current = urls.get();
+      updated = new ArrayList<>(current);
+      if (!updated.remove(url)) {
+        break;
+      }
+      updated.add(url);
+    } while (!urls.compareAndSet(current, Collections.unmodifiableList(updated)));
 
     // Refresh URLs from ZooKeeper
-    setURLs(lookupURLs());
+    if (isRefreshNeeded(url)) {
+      refreshURLs();
+    }
 
     // Show failed URL and new URL
-    LOG.markedFailedUrl(topURL, getActiveURL());
+    LOG.markedFailedUrl(url, updated.isEmpty() ? null : updated.get(0));
   }
 
   @Override
-  public synchronized void setURLs(List<String> urls) {
+  public void setURLs(List<String> urls) {
     if ((urls != null) && (!(urls.isEmpty()))) {
-      this.urls.clear();
-      this.urls.addAll(urls);
+      this.urls.set(Collections.unmodifiableList(new ArrayList<>(urls)));
+    }
+  }
+
+  /**
+   * Releases the shared Zookeeper client, which is closed once no other manager uses it.
+   */
+  @Override
+  public void close() {
+    closed.set(true);
+    SharedClient client = zooKeeperClient.getAndSet(null);
+    if (client != null) {
+      releaseClient(client);
     }
   }
 
@@ -142,6 +195,17 @@ public abstract class BaseZookeeperURLManager implements URLManager {
   // Protected methods
   // -------------------------------------------------------------------------------------
 
+  /**
+   * Called when a URL is marked failed, after it was moved to the bottom.
+   *
+   * @param failedUrl The URL marked failed
+   *
+   * @return Whether to look the URLs up again in the background
+   */
+  protected boolean isRefreshNeeded(String failedUrl) {
+    return true;
+  }
+
   protected String getZookeeperEnsemble() {
     return zooKeeperEnsemble;
   }
@@ -150,6 +214,54 @@ public abstract class BaseZookeeperURLManager implements URLManager {
     return zooKeeperNamespace;
   }
 
+  /**
+   * @return A started Zookeeper client for the configured ensemble, which must not be closed
+   *
+   * @throws IllegalStateException if the manager was closed
+   */
+  protected CuratorFramework getZookeeperClient() throws InterruptedException {
+    SharedClient client = zooKeeperClient.get();
+    if (client == null) {
+      client = acquireClient(zooKeeperEnsemble);
+      if (!zooKeeperClient.compareAndSet(null, client)) {
+        // Another lookup got there first
+        releaseClient(client);
+        client = zooKeeperClient.get();
+      } else if (closed.get() && zooKeeperClient.compareAndSet(client, null)) {
+        // Closed while acquiring, so the client wasn't released by close()
+        releaseClient(client);
+        client = null;
+      }
+      if (client == null) {
+        throw new IllegalStateException("The URL manager for " + getServiceName() + " is closed");
+      }
+    }
+    client.client.blockUntilConnected(10, TimeUnit.SECONDS);
+    return client.client;
+  }
+
+  /**
+   * Get the children of a Zookeeper node and look the URLs up again once they change.
+   *
+   * @param path The path of the node (required)
+   *
+   * @return The names of the children
+   */
+  protected List<String> getChildren(String path) throws Exception {
+    return getZookeeperClient().getChildren().usingWatcher(watcher).forPath(path);
+  }
+
+  /**
+   * Get the data of a Zookeeper node and look the URLs up again once it changes.
+   *
+   * @param path The path of the node (required)
+   *
+   * @return The data of the node
+   */
+  protected byte[] getData(String path) throws Exception {
+    return getZookeeperClient().getData().usingWatcher(watcher).forPath(path);
+  }
+
   /**
    * Validate access to hosts using simple light weight ping style REST call.
    *
@@ -160,39 +272,110 @@ public abstract class BaseZookeeperURLManager implements URLManager {
    * @return Hosts with successful access
    */
   protected List<String> validateHosts(List<String> hosts, String suffix, String acceptHeader) {
+    List<CompletableFuture<Boolean>> pings = new ArrayList<>(hosts.size());
+    for(String host: hosts) {
+      pings.add(CompletableFuture.supplyAsync(() -> ping(host + suffix, acceptHeader), REFRESHES));
+    }
+
     List<String> result = new ArrayList<>();
-    try (CloseableHttpClient client = buildHttpClient()) {
-      for(String host: hosts) {
-        try {
-          HttpGet get = new HttpGet(host + suffix);
-
-          if (acceptHeader != null) {
-            get.setHeader("Accept", acceptHeader);
-          }
-
-          // Ping host
-          String response = client.execute(get, new StringResponseHandler());
-
-          if (response != null) {
-            result.add(host);
-          }
-        } catch (IOException e) {
-          // ignore host exception
-        }
+    for (int i = 0; i < hosts.size(); i++) {
+      if (pings.get(i).join()) {
+        result.add(hosts.get(i));
       }
-    } catch (IOException e) {
-      // Ignore errors
     }
 
     return result;
   }
 
+  // -------------------------------------------------------------------------------------
+  // Private methods
+  // -------------------------------------------------------------------------------------
+
+  /**
+   * Look the URLs up in the background, unless a lookup is already in progress.
+   *
+   * @return The URLs once looked up, or the current ones if the lookup failed
+   */
+  private CompletableFuture<List<String>> refreshURLs() {
+    if (closed.get()) {
+      return CompletableFuture.completedFuture(urls.get());
+    }
+
+    CompletableFuture<List<String>> refresh = new CompletableFuture<>();
+    CompletableFuture<List<String>> inProgress;
+    while ((inProgress = lookup.get()) == null) {
+      if (lookup.compareAndSet(null, refresh)) {
+        break;
+      }
+    }
+    if (inProgress != null) {
+      return inProgress;
+    }
+
+    REFRESHES.execute(() -> {
+      try {
+        setURLs(lookupURLs());
+      } catch (RuntimeException e) {
+        // Already logged, keep the current URLs until the next lookup
+      } finally {
+        lookup.set(null);
+        refresh.complete(urls.get());
+      }
+    });
+    return refresh;
+  }
+
+  private static SharedClient acquireClient(String ensemble) {
+    return ZOOKEEPER_CLIENTS.compute(ensemble, (key, shared) -> {
+      SharedClient client = shared;
+      if (client == null) {
+        CuratorFramework curator = CuratorFrameworkFactory.builder()
+            .connectString(ensemble)
+            .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+            .build();
+        curator.start();
+        client = new SharedClient(ensemble, curator);
+      }
+      client.references++;
+      return client;
+    });
+  }
+
+  private static void releaseClient(SharedClient client) {
+    ZOOKEEPER_CLIENTS.computeIfPresent(client.ensemble, (key, shared) -> {
+      if (shared != client) {
+        return shared;
+      }
+      if (--shared.references > 0) {
+        return shared;
+      }
+      shared.client.close();
+      return null;
+    });
+  }
+
+  private static boolean ping(String url, String acceptHeader) {
+    try {
+      HttpGet get = new HttpGet(url);
+
+      if (acceptHeader != null) {
+        get.setHeader("Accept", acceptHeader);
+      }
+
+      // Ping host
+      return PingClient.CLIENT.execute(get, new StringResponseHandler()) != null;
+    } catch (IOException e) {
+      // ignore host exception
+      return false;
+    }
+  }
+
   /**
    * Construct an Apache HttpClient with suitable timeout and authentication.
    *
    * @return Apache HttpClient
    */
-  private CloseableHttpClient buildHttpClient() {
+  private static CloseableHttpClient buildHttpClient() {
     CloseableHttpClient client;
 
     // Construct a HttpClient with short term timeout
@@ -201,6 +384,13 @@ public abstract class BaseZookeeperURLManager implements URLManager {
                                                         .setSocketTimeout(TIMEOUT)
                                                         .setConnectionRequestTimeout(TIMEOUT);
 
+    // Pings of every host may run at the same time
+    HttpClientBuilder builder = HttpClientBuilder.create()
+                                                 .setDefaultRequestConfig(requestBuilder.build())
+                                                 .setMaxConnTotal(Integer.MAX_VALUE)
+                                                 .setMaxConnPerRoute(Integer.MAX_VALUE)
+                                                 .evictIdleConnections(TIMEOUT, TimeUnit.MILLISECONDS);
+
     // If Kerberos is enabled, allow for challenge/response transparent to client
     if (Boolean.getBoolean(GatewayConfig.HADOOP_KERBEROS_SECURED)) {
       CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
@@ -211,20 +401,57 @@ public abstract class BaseZookeeperURLManager implements URLManager {
                                            .register(AuthSchemes.SPNEGO, new KnoxSpnegoAuthSchemeFactory(true))
                                            .build();
 
-      client = HttpClientBuilder.create()
-                                .setDefaultRequestConfig(requestBuilder.build())
-                                .setDefaultAuthSchemeRegistry(authSchemeRegistry)
-                                .setDefaultCredentialsProvider(credentialsProvider)
-                                .build();
+      client = builder.setDefaultAuthSchemeRegistry(authSchemeRegistry)
+                      .setDefaultCredentialsProvider(credentialsProvider)
+                      .build();
     } else {
-      client = HttpClientBuilder.create()
-                                .setDefaultRequestConfig(requestBuilder.build())
-                                .build();
+      client = builder.build();
     }
 
     return client;
   }
 
+  /**
+   * Holds the client shared by all the pings, built on first use once the gateway configured Kerberos.
+   */
+  private static class PingClient {
+    private static final CloseableHttpClient CLIENT = buildHttpClient();
+  }
+
+  /**
+   * A Zookeeper client and the number of managers using it, only counted within the map updates.
+   */
+  private static class SharedClient {
+    private final String ensemble;
+    private final CuratorFramework client;
+    private int references;
+
+    SharedClient(String ensemble, CuratorFramework client) {
+      this.ensemble = ensemble;
+      this.client = client;
+    }
+  }
+
+  /**
+   * Looks the URLs up again when a watched node changes. Zookeeper holds on to the watcher until
+   * then, so it doesn't keep the manager of an undeployed topology from being collected.
+   */
+  private static class LookupWatcher implements CuratorWatcher {
+    private final WeakReference<BaseZookeeperURLManager> manager;
+
+    LookupWatcher(BaseZookeeperURLManager manager) {
+      this.manager = new WeakReference<>(manager);
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      BaseZookeeperURLManager current = manager.get();
+      if (current != null && event.getType() != Watcher.Event.EventType.None) {
+        current.refreshURLs();
+      }
+    }
+  }
+
   private static class NullCredentials implements Credentials {
     @Override
     public Principal getUserPrincipal() {
@@ -54,7 +54,10 @@ public class DefaultHaProvider implements HaProvider {
     HaServiceConfig haServiceConfig = descriptor.getServiceConfig(serviceName);
     URLManager manager = URLManagerLoader.loadURLManager(haServiceConfig);
     manager.setURLs(urls);
-    haServices.put(serviceName, manager);
+    URLManager previous = haServices.put(serviceName, manager);
+    if ( previous != null ) {
+      previous.close();
+    }
   }
 
   @Override
@@ -93,4 +96,39 @@ public class DefaultHaProvider implements HaProvider {
       LOG.noServiceFound(serviceName);
     }
   }
+
+  @Override
+  public void markRequestStarted(String serviceName, String url) {
+    URLManager manager = haServices.get(serviceName);
+    if ( manager != null ) {
+      manager.markRequestStarted(url);
+    }
+  }
+
+  @Override
+  public void markRequestCompleted(String serviceName, String url, long latency) {
+    URLManager manager = haServices.get(serviceName);
+    if ( manager != null ) {
+      manager.markRequestCompleted(url, latency);
+    }
+  }
+
+  @Override
+  public boolean hasHealthyURL(String serviceName) {
+    URLManager manager = haServices.get(serviceName);
+    return manager == null || manager.hasHealthyURL();
+  }
+
+  @Override
+  public String getAlternateURL(String serviceName, String url) {
+    URLManager manager = haServices.get(serviceName);
+    return manager == null ? null : manager.getAlternateURL(url);
+  }
+
+  @Override
+  public void stop() {
+    for ( URLManager manager : haServices.values() ) {
+      manager.close();
+    }
+  }
 }
@@ -37,6 +37,18 @@ public class DefaultHaServiceConfig implements HaServiceConfig, HaServiceConfigC
 
   private String zookeeperNamespace;
 
+  private String loadBalancingPolicy = DEFAULT_LOAD_BALANCING_POLICY;
+
+  private int healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+
+  private boolean failoverBackoff = DEFAULT_FAILOVER_BACKOFF;
+
+  private int maxFailoverSleep = DEFAULT_MAX_FAILOVER_SLEEP;
+
+  private int hedgeDelayPercentile = DEFAULT_HEDGE_DELAY_PERCENTILE;
+
+  private int minHedgeDelay = DEFAULT_MIN_HEDGE_DELAY;
+
   public DefaultHaServiceConfig(String name) {
     this.name = name;
   }
@@ -121,4 +133,64 @@ public class DefaultHaServiceConfig implements HaServiceConfig, HaServiceConfigC
   public void setZookeeperNamespace(String zookeeperNamespace) {
     this.zookeeperNamespace = zookeeperNamespace;
   }
+
+  @Override
+  public String getLoadBalancingPolicy() {
+    return loadBalancingPolicy;
+  }
+
+  @Override
+  public void setLoadBalancingPolicy(String loadBalancingPolicy) {
+    this.loadBalancingPolicy = loadBalancingPolicy;
+  }
+
+  @Override
+  public int getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  @Override
+  public void setHealthCheckInterval(int healthCheckInterval) {
+    this.healthCheckInterval = healthCheckInterval;
+  }
+
+  @Override
+  public boolean isFailoverBackoff() {
+    return failoverBackoff;
+  }
+
+  @Override
+  public void setFailoverBackoff(boolean failoverBackoff) {
+    this.failoverBackoff = failoverBackoff;
+  }
+
+  @Override
+  public int getMaxFailoverSleep() {
+    return maxFailoverSleep;
+  }
+
+  @Override
+  public void setMaxFailoverSleep(int maxFailoverSleep) {
+    this.maxFailoverSleep = maxFailoverSleep;
+  }
+
+  @Override
+  public int getHedgeDelayPercentile() {
+    return hedgeDelayPercentile;
+  }
+
+  @Override
+  public void setHedgeDelayPercentile(int hedgeDelayPercentile) {
+    this.hedgeDelayPercentile = hedgeDelayPercentile;
+  }
+
+  @Override
+  public int getMinHedgeDelay() {
+    return minHedgeDelay;
+  }
+
+  @Override
+  public void setMinHedgeDelay(int minHedgeDelay) {
+    this.minHedgeDelay = minHedgeDelay;
+  }
 }
@@ -17,14 +17,9 @@
  */
 package org.apache.knox.gateway.ha.provider.impl;
 
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of URLManager intended for query of Zookeeper for active HBase RegionServer hosts.
@@ -96,12 +91,7 @@ public class HBaseZookeeperURLManager extends BaseZookeeperURLManager {
   {
     List<String> serverHosts = new ArrayList<>();
 
-    try (CuratorFramework zooKeeperClient = CuratorFrameworkFactory.builder().connectString(getZookeeperEnsemble())
-        .retryPolicy(new ExponentialBackoffRetry(1000, 3))
-        .build()) {
-      zooKeeperClient.start();
-      zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS);
-
+    try {
       List<String> serverNodes = null;
 
       String namespace = getZookeeperNamespace();
@@ -109,18 +99,18 @@ public class HBaseZookeeperURLManager extends BaseZookeeperURLManager {
         if (!namespace.startsWith("/")) {
           namespace = "/" + namespace;
         }
-        serverNodes = zooKeeperClient.getChildren().forPath(namespace + "/rs");
+        serverNodes = getChildren(namespace + "/rs");
       } else {
         // If no namespace is explicitly specified, try the default secure namespace
         try {
-          serverNodes = zooKeeperClient.getChildren().forPath(DEFAULT_ZOOKEEPER_NAMESPACE_SECURE + "/rs");
+          serverNodes = getChildren(DEFAULT_ZOOKEEPER_NAMESPACE_SECURE + "/rs");
         } catch (Exception e) {
           // Ignore -- znode may not exist
         }
 
         if (serverNodes == null || serverNodes.isEmpty()) {
           // Fall back to the default unsecure namespace if no secure nodes are found
-          serverNodes = zooKeeperClient.getChildren().forPath(DEFAULT_ZOOKEEPER_NAMESPACE_UNSECURE + "/rs");
+          serverNodes = getChildren(DEFAULT_ZOOKEEPER_NAMESPACE_UNSECURE + "/rs");
         }
       }
 
@@ -17,80 +17,76 @@
  */
 package org.apache.knox.gateway.ha.provider.impl;
 
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
-import org.apache.knox.gateway.ha.provider.impl.i18n.HaMessages;
-import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class HS2ZookeeperURLManager extends DefaultURLManager {
-
-  private static final HaMessages LOG = MessagesFactory.get(HaMessages.class);
+/**
+ * Implementation of URLManager intended for query of Zookeeper for the HiveServer2 instances
+ * registered under the configured namespace. The instances are looked up again in the background
+ * once every URL has been marked failed, or when instances register or go away.
+ */
+public class HS2ZookeeperURLManager extends BaseZookeeperURLManager {
 
   private static final Pattern kvPattern = Pattern.compile("([^=;]*)=([^;]*)[;]?");
 
-  private String zooKeeperEnsemble;
-
-  private String zooKeeperNamespace;
-
-  private Set<String> failedSet;
-
-  public HS2ZookeeperURLManager() {
-    failedSet = new LinkedHashSet<>();
-  }
+  // URLs marked failed since the last lookup, kept at the bottom by lookups until all have failed
+  private final Set<String> failedSet = ConcurrentHashMap.newKeySet();
 
   @Override
   public boolean supportsConfig(HaServiceConfig config) {
-    if (!config.getServiceName().equalsIgnoreCase("HIVE")) {
-      return false;
-    }
-    String zookeeperEnsemble = config.getZookeeperEnsemble();
     String zookeeperNamespace = config.getZookeeperNamespace();
-    if ( zookeeperEnsemble != null && zookeeperNamespace != null && !zookeeperEnsemble.trim().isEmpty() && !zookeeperNamespace.trim().isEmpty()) {
-      return true;
-    }
-    return false;
+    return super.supportsConfig(config) && zookeeperNamespace != null && !zookeeperNamespace.trim().isEmpty();
   }
 
   @Override
-  public void setConfig(HaServiceConfig config) {
-    zooKeeperEnsemble = config.getZookeeperEnsemble();
-    zooKeeperNamespace = config.getZookeeperNamespace();
-    setURLs(lookupURLs());
-  }
-
   public List<String> lookupURLs() {
     List<String> serverHosts = new ArrayList<>();
-    try (CuratorFramework zooKeeperClient = CuratorFrameworkFactory.builder().connectString(zooKeeperEnsemble)
-        .retryPolicy(new ExponentialBackoffRetry(1000, 3)).build()) {
-      zooKeeperClient.start();
-      zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS);
-      List<String> serverNodes = zooKeeperClient.getChildren().forPath("/" + zooKeeperNamespace);
+    List<String> failedHosts = new ArrayList<>();
+    try {
+      List<String> serverNodes = getChildren("/" + getZookeeperNamespace());
       for (String serverNode : serverNodes) {
         String serverInfo =
             new String(
-                zooKeeperClient.getData().forPath("/" + zooKeeperNamespace + "/" + serverNode),
+                getZookeeperClient().getData().forPath("/" + getZookeeperNamespace() + "/" + serverNode),
                 StandardCharsets.UTF_8);
         String serverURL = constructURL(serverInfo);
-        serverHosts.add(serverURL);
+        if (failedSet.contains(serverURL)) {
+          failedHosts.add(serverURL);
+        } else {
+          serverHosts.add(serverURL);
+        }
       }
     } catch (Exception e) {
       LOG.failedToGetZookeeperUrls(e);
       throw new RuntimeException(e);
     }
+    serverHosts.addAll(failedHosts);
     return serverHosts;
   }
 
+  @Override
+  protected String getServiceName() {
+    return "HIVE";
+  }
+
+  @Override
+  protected boolean isRefreshNeeded(String failedUrl) {
+    failedSet.add(failedUrl);
+    //refresh the list when we have hit all urls once
+    if (failedSet.size() >= getURLs().size()) {
+      failedSet.clear();
+      return true;
+    }
+    return false;
+  }
+
   private String constructURL(String serverInfo) {
     Matcher matcher = kvPattern.matcher(serverInfo);
     String scheme = "http";
@@ -124,15 +120,4 @@ public class HS2ZookeeperURLManager extends DefaultURLManager {
                "/" +
                httpPath;
   }
-
-  @Override
-  public synchronized void markFailed(String url) {
-    failedSet.add(url);
-    //refresh the list when we have hit all urls once
-    if (failedSet.size() >= getURLs().size()) {
-      failedSet.clear();
-      setURLs(lookupURLs());
-    }
-    super.markFailed(url);
-  }
 }
@@ -47,4 +47,16 @@ public interface HaDescriptorConstants {
    String ZOOKEEPER_ENSEMBLE = "zookeeperEnsemble";
 
    String ZOOKEEPER_NAMESPACE = "zookeeperNamespace";
+
+   String LOAD_BALANCING_POLICY = "loadBalancingPolicy";
+
+   String HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+
+   String FAILOVER_BACKOFF = "failoverBackoff";
+
+   String MAX_FAILOVER_SLEEP = "maxFailoverSleep";
+
+   String HEDGE_DELAY_PERCENTILE = "hedgeDelayPercentile";
+
+   String MIN_HEDGE_DELAY = "minHedgeDelay";
 }
@@ -38,20 +38,64 @@ public abstract class HaDescriptorFactory implements HaServiceConfigConstants {
       String retrySleep = configMap.get(CONFIG_PARAM_RETRY_SLEEP);
       String zookeeperEnsemble = configMap.get(CONFIG_PARAM_ZOOKEEPER_ENSEMBLE);
       String zookeeperNamespace = configMap.get(CONFIG_PARAM_ZOOKEEPER_NAMESPACE);
-      return createServiceConfig(serviceName, enabledValue, maxFailoverAttempts,
+      String loadBalancingPolicy = configMap.get(CONFIG_PARAM_LOAD_BALANCING_POLICY);
+      String healthCheckInterval = configMap.get(CONFIG_PARAM_HEALTH_CHECK_INTERVAL);
+      HaServiceConfig serviceConfig = createServiceConfig(serviceName, enabledValue, maxFailoverAttempts,
           failoverSleep, maxRetryAttempts, retrySleep,
-          zookeeperEnsemble, zookeeperNamespace);
+          zookeeperEnsemble, zookeeperNamespace, loadBalancingPolicy, healthCheckInterval);
+      setFailoverBackoff(serviceConfig, configMap.get(CONFIG_PARAM_FAILOVER_BACKOFF),
+          configMap.get(CONFIG_PARAM_MAX_FAILOVER_SLEEP));
+      setHedging(serviceConfig, configMap.get(CONFIG_PARAM_HEDGE_DELAY_PERCENTILE),
+          configMap.get(CONFIG_PARAM_MIN_HEDGE_DELAY));
+      return serviceConfig;
+   }
+
+   /**
+    * Sets the failover backoff parameters of a service config, leaving the defaults for those that are not given.
+    */
+   public static void setFailoverBackoff(HaServiceConfig serviceConfig, String failoverBackoffValue,
+                                         String maxFailoverSleepValue) {
+      if (failoverBackoffValue != null && !failoverBackoffValue.trim().isEmpty()) {
+         serviceConfig.setFailoverBackoff(Boolean.parseBoolean(failoverBackoffValue.trim()));
+      }
+      if (maxFailoverSleepValue != null && !maxFailoverSleepValue.trim().isEmpty()) {
+         serviceConfig.setMaxFailoverSleep(Integer.parseInt(maxFailoverSleepValue.trim()));
+      }
+   }
+
+   /**
+    * Sets the request hedging parameters of a service config, leaving the defaults for those that are not given.
+    */
+   public static void setHedging(HaServiceConfig serviceConfig, String hedgeDelayPercentileValue,
+                                 String minHedgeDelayValue) {
+      if (hedgeDelayPercentileValue != null && !hedgeDelayPercentileValue.trim().isEmpty()) {
+         serviceConfig.setHedgeDelayPercentile(Integer.parseInt(hedgeDelayPercentileValue.trim()));
+      }
+      if (minHedgeDelayValue != null && !minHedgeDelayValue.trim().isEmpty()) {
+         serviceConfig.setMinHedgeDelay(Integer.parseInt(minHedgeDelayValue.trim()));
+      }
    }
 
    public static HaServiceConfig createServiceConfig(String serviceName, String enabledValue,
                                                      String maxFailoverAttemptsValue, String failoverSleepValue,
                                                      String maxRetryAttemptsValue, String retrySleepValue,
                                                      String zookeeperEnsemble, String zookeeperNamespace) {
+      return createServiceConfig(serviceName, enabledValue, maxFailoverAttemptsValue, failoverSleepValue,
+          maxRetryAttemptsValue, retrySleepValue, zookeeperEnsemble, zookeeperNamespace, null, null);
+   }
+
+   public static HaServiceConfig createServiceConfig(String serviceName, String enabledValue,
+                                                     String maxFailoverAttemptsValue, String failoverSleepValue,
+                                                     String maxRetryAttemptsValue, String retrySleepValue,
+                                                     String zookeeperEnsemble, String zookeeperNamespace,
+                                                     String loadBalancingPolicyValue, String healthCheckIntervalValue) {
       boolean enabled = DEFAULT_ENABLED;
       int maxFailoverAttempts = DEFAULT_MAX_FAILOVER_ATTEMPTS;
       int failoverSleep = DEFAULT_FAILOVER_SLEEP;
       int maxRetryAttempts = DEFAULT_MAX_RETRY_ATTEMPTS;
       int retrySleep = DEFAULT_RETRY_SLEEP;
+      String loadBalancingPolicy = DEFAULT_LOAD_BALANCING_POLICY;
+      int healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
       if (enabledValue != null && !enabledValue.trim().isEmpty()) {
          enabled = Boolean.parseBoolean(enabledValue);
       }
@@ -67,6 +111,12 @@ public abstract class HaDescriptorFactory implements HaServiceConfigConstants {
       if (retrySleepValue != null && !retrySleepValue.trim().isEmpty()) {
          retrySleep = Integer.parseInt(retrySleepValue);
       }
+      if (loadBalancingPolicyValue != null && !loadBalancingPolicyValue.trim().isEmpty()) {
+         loadBalancingPolicy = loadBalancingPolicyValue.trim();
+      }
+      if (healthCheckIntervalValue != null && !healthCheckIntervalValue.trim().isEmpty()) {
+         healthCheckInterval = Integer.parseInt(healthCheckIntervalValue);
+      }
       DefaultHaServiceConfig serviceConfig = new DefaultHaServiceConfig(serviceName);
       serviceConfig.setEnabled(enabled);
       serviceConfig.setMaxFailoverAttempts(maxFailoverAttempts);
@@ -75,6 +125,8 @@ public abstract class HaDescriptorFactory implements HaServiceConfigConstants {
       serviceConfig.setRetrySleep(retrySleep);
       serviceConfig.setZookeeperEnsemble(zookeeperEnsemble);
       serviceConfig.setZookeeperNamespace(zookeeperNamespace);
+      serviceConfig.setLoadBalancingPolicy(loadBalancingPolicy);
+      serviceConfig.setHealthCheckInterval(healthCheckInterval);
       return serviceConfig;
    }
 
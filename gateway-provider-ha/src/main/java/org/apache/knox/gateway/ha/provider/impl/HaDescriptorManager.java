@@ -62,6 +62,14 @@ public class HaDescriptorManager implements HaDescriptorConstants {
                if (config.getZookeeperNamespace() != null) {
                  serviceElement.setAttribute(ZOOKEEPER_NAMESPACE, config.getZookeeperNamespace());
                }
+               if (config.getLoadBalancingPolicy() != null) {
+                 serviceElement.setAttribute(LOAD_BALANCING_POLICY, config.getLoadBalancingPolicy());
+               }
+               serviceElement.setAttribute(HEALTH_CHECK_INTERVAL, Integer.toString(config.getHealthCheckInterval()));
+               serviceElement.setAttribute(FAILOVER_BACKOFF, Boolean.toString(config.isFailoverBackoff()));
+               serviceElement.setAttribute(MAX_FAILOVER_SLEEP, Integer.toString(config.getMaxFailoverSleep()));
+               serviceElement.setAttribute(HEDGE_DELAY_PERCENTILE, Integer.toString(config.getHedgeDelayPercentile()));
+               serviceElement.setAttribute(MIN_HEDGE_DELAY, Integer.toString(config.getMinHedgeDelay()));
                root.appendChild(serviceElement);
             }
          }
@@ -89,7 +97,13 @@ public class HaDescriptorManager implements HaDescriptorConstants {
                      element.getAttribute(MAX_RETRY_ATTEMPTS),
                      element.getAttribute(RETRY_SLEEP),
                      element.getAttribute(ZOOKEEPER_ENSEMBLE),
-                     element.getAttribute(ZOOKEEPER_NAMESPACE));
+                     element.getAttribute(ZOOKEEPER_NAMESPACE),
+                     element.getAttribute(LOAD_BALANCING_POLICY),
+                     element.getAttribute(HEALTH_CHECK_INTERVAL));
+               HaDescriptorFactory.setFailoverBackoff(config, element.getAttribute(FAILOVER_BACKOFF),
+                     element.getAttribute(MAX_FAILOVER_SLEEP));
+               HaDescriptorFactory.setHedging(config, element.getAttribute(HEDGE_DELAY_PERCENTILE),
+                     element.getAttribute(MIN_HEDGE_DELAY));
                descriptor.addServiceConfig(config);
             }
          }
@@ -36,6 +36,18 @@ public interface HaServiceConfigConstants {
 
    String CONFIG_PARAM_ZOOKEEPER_NAMESPACE = "zookeeperNamespace";
 
+   String CONFIG_PARAM_LOAD_BALANCING_POLICY = "loadBalancingPolicy";
+
+   String CONFIG_PARAM_HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+
+   String CONFIG_PARAM_FAILOVER_BACKOFF = "failoverBackoff";
+
+   String CONFIG_PARAM_MAX_FAILOVER_SLEEP = "maxFailoverSleep";
+
+   String CONFIG_PARAM_HEDGE_DELAY_PERCENTILE = "hedgeDelayPercentile";
+
+   String CONFIG_PARAM_MIN_HEDGE_DELAY = "minHedgeDelay";
+
    int DEFAULT_MAX_FAILOVER_ATTEMPTS = 3;
 
    int DEFAULT_FAILOVER_SLEEP = 1000;
@@ -45,4 +57,16 @@ public interface HaServiceConfigConstants {
    int DEFAULT_RETRY_SLEEP = 1000;
 
    boolean DEFAULT_ENABLED = true;
+
+   String DEFAULT_LOAD_BALANCING_POLICY = "none";
+
+   int DEFAULT_HEALTH_CHECK_INTERVAL = 10000;
+
+   boolean DEFAULT_FAILOVER_BACKOFF = false;
+
+   int DEFAULT_MAX_FAILOVER_SLEEP = 30000;
+
+   int DEFAULT_HEDGE_DELAY_PERCENTILE = 0;
+
+   int DEFAULT_MIN_HEDGE_DELAY = 50;
 }
@@ -22,14 +22,11 @@ import net.minidev.json.parser.JSONParser;
 import net.minidev.json.parser.ParseException;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of URLManager intended for query of Zookeeper for active Kafka hosts.
@@ -95,15 +92,11 @@ public class KafkaZookeeperURLManager extends BaseZookeeperURLManager {
   {
     List<String> serverHosts = new ArrayList<>();
 
-    try (CuratorFramework zooKeeperClient = CuratorFrameworkFactory.builder()
-        .connectString(getZookeeperEnsemble())
-        .retryPolicy(new ExponentialBackoffRetry(1000, 3))
-        .build()) {
-      zooKeeperClient.start();
-      zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS);
+    try {
+      CuratorFramework zooKeeperClient = getZookeeperClient();
 
       // Retrieve list of host URLs from ZooKeeper
-      List<String> brokers = zooKeeperClient.getChildren().forPath(BASE_PATH);
+      List<String> brokers = getChildren(BASE_PATH);
 
       for (String broker : brokers) {
         String serverInfo = new String(zooKeeperClient.getData().forPath(BASE_PATH + "/" + broker), StandardCharsets.UTF_8);
@@ -0,0 +1,434 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.provider.impl;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.ha.provider.HaServiceConfig;
+import org.apache.knox.gateway.ha.provider.URLManager;
+import org.apache.knox.gateway.ha.provider.impl.i18n.HaMessages;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A URL manager that spreads requests over all the healthy URLs of a service rather than sending
+ * them to a single active URL. It is used for services whose HA configuration sets a
+ * {@link HaServiceConfigConstants#CONFIG_PARAM_LOAD_BALANCING_POLICY load balancing policy}:
+ * <ul>
+ *   <li>round-robin: each healthy URL in turn</li>
+ *   <li>least-outstanding: the healthy URL with the fewest requests in progress</li>
+ *   <li>ewma: the healthy URL with the lowest moving average latency, weighted by the requests in progress</li>
+ * </ul>
+ * A URL that is marked failed no longer receives requests, and is checked in the background every
+ * {@link HaServiceConfigConstants#CONFIG_PARAM_HEALTH_CHECK_INTERVAL health check interval} by
+ * connecting to its host and port until it accepts connections again. The failed URLs are checked in
+ * parallel, each connection attempt bounded by the health check interval, on threads of the manager
+ * that are stopped when the HA provider is. When every URL has failed, the URL that failed first is used.
+ * <p>
+ * The URLs and their health are kept in atomic fields, so none of the methods block.
+ */
+public class LoadBalancingURLManager implements URLManager {
+
+  private static final HaMessages LOG = MessagesFactory.get(HaMessages.class);
+
+  private static final int HEALTH_CHECK_TIMEOUT = 5000;
+
+  // The URLs checked at the same time, the others wait for a thread
+  private static final int HEALTH_CHECK_THREADS = 4;
+
+  // Each new latency sample contributes 1/2^EWMA_SHIFT of the moving average
+  private static final int EWMA_SHIFT = 3;
+
+  enum Policy {
+    ROUND_ROBIN("round-robin"),
+    LEAST_OUTSTANDING("least-outstanding"),
+    EWMA("ewma");
+
+    private final String name;
+
+    Policy(String name) {
+      this.name = name;
+    }
+
+    static Policy of(String name) {
+      if (name != null) {
+        for (Policy policy : values()) {
+          if (policy.name.equalsIgnoreCase(name.trim())) {
+            return policy;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  private final AtomicReference<Backend[]> backends = new AtomicReference<>(new Backend[0]);
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  private Policy policy = Policy.ROUND_ROBIN;
+
+  private long healthCheckInterval = HaServiceConfigConstants.DEFAULT_HEALTH_CHECK_INTERVAL;
+
+  // The threads are only started once a URL fails, and stop again when there is nothing to check
+  private ScheduledThreadPoolExecutor healthChecks;
+
+  @Override
+  public boolean supportsConfig(HaServiceConfig config) {
+    String name = config.getLoadBalancingPolicy();
+    if (name == null || name.trim().isEmpty()
+        || HaServiceConfigConstants.DEFAULT_LOAD_BALANCING_POLICY.equalsIgnoreCase(name.trim())) {
+      return false;
+    }
+    if (Policy.of(name) == null) {
+      LOG.unsupportedLoadBalancingPolicy(name, config.getServiceName());
+      return false;
+    }
+    // The URLs of services registered in ZooKeeper are managed by the ZooKeeper URL managers
+    String zookeeperEnsemble = config.getZookeeperEnsemble();
+    return zookeeperEnsemble == null || zookeeperEnsemble.trim().isEmpty();
+  }
+
+  @Override
+  public void setConfig(HaServiceConfig config) {
+    policy = Policy.of(config.getLoadBalancingPolicy());
+    healthCheckInterval = config.getHealthCheckInterval();
+    if (healthCheckInterval > 0 && healthChecks == null) {
+      healthChecks = createHealthCheckExecutor();
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createHealthCheckExecutor() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(HEALTH_CHECK_THREADS,
+        new BasicThreadFactory.Builder().namingPattern("HaHealthCheck-%d").daemon(true).build());
+    executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+    executor.allowCoreThreadTimeOut(true);
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  @Override
+  public void close() {
+    if (healthChecks != null) {
+      healthChecks.shutdownNow();
+    }
+  }
+
+  @Override
+  public String getActiveURL() {
+    Backend[] all = backends.get();
+    if (all.length == 0) {
+      return null;
+    }
+    int healthy = 0;
+    Backend failedFirst = null;
+    for (Backend backend : all) {
+      long failed = backend.failed.get();
+      if (failed == 0) {
+        healthy++;
+      } else if (failedFirst == null || failed < failedFirst.failed.get()) {
+        failedFirst = backend;
+      }
+    }
+    if (healthy == 0) {
+      return failedFirst.url;
+    }
+    // Start from a different healthy URL each time, so that they take turns and ties are spread evenly
+    int skip = (next.getAndIncrement() & Integer.MAX_VALUE) % healthy;
+    Backend chosen = null;
+    long chosenScore = Long.MAX_VALUE;
+    for (int i = 0, start = -1; i < 2 * all.length; i++) {
+      Backend backend = all[i % all.length];
+      if (backend.failed.get() != 0) {
+        continue;
+      }
+      if (start < 0) {
+        if (skip-- > 0) {
+          continue;
+        }
+        start = i;
+      } else if (i - start >= all.length) {
+        break;
+      }
+      long score = score(backend);
+      if (score < chosenScore) {
+        chosen = backend;
+        chosenScore = score;
+        if (policy == Policy.ROUND_ROBIN) {
+          break;
+        }
+      }
+    }
+    // All the URLs may have failed since they were counted
+    return chosen != null ? chosen.url : all[0].url;
+  }
+
+  private long score(Backend backend) {
+    switch (policy) {
+      case LEAST_OUTSTANDING:
+        return backend.outstanding.get();
+      case EWMA:
+        // URLs without a latency yet are tried first
+        return backend.latency.get() * (backend.outstanding.get() + 1);
+      default:
+        return 0;
+    }
+  }
+
+  @Override
+  public void setActiveURL(String url) {
+    for (Backend backend : backends.get()) {
+      if (backend.url.equalsIgnoreCase(url)) {
+        markHealthy(backend);
+      }
+    }
+  }
+
+  @Override
+  public List<String> getURLs() {
+    Backend[] all = backends.get();
+    List<String> urls = new ArrayList<>(all.length);
+    for (Backend backend : all) {
+      urls.add(backend.url);
+    }
+    return urls;
+  }
+
+  @Override
+  public void setURLs(List<String> urls) {
+    if (urls != null && !urls.isEmpty()) {
+      Backend[] current = backends.get();
+      Backend[] updated = new Backend[urls.size()];
+      for (int i = 0; i < updated.length; i++) {
+        String url = urls.get(i);
+        // Keep the state of the URLs that are still used
+        for (Backend backend : current) {
+          if (backend.url.equals(url)) {
+            updated[i] = backend;
+            break;
+          }
+        }
+        if (updated[i] == null) {
+          updated[i] = new Backend(url);
+        }
+      }
+      backends.set(updated);
+    }
+  }
+
+  @Override
+  public void markFailed(String url) {
+    Backend backend = find(url);
+    if (backend != null && backend.failed.compareAndSet(0, System.currentTimeMillis())) {
+      LOG.markedUnhealthyUrl(backend.url);
+      scheduleHealthCheck(backend);
+    }
+  }
+
+  @Override
+  public boolean hasHealthyURL() {
+    for (Backend backend : backends.get()) {
+      if (backend.failed.get() == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String getAlternateURL(String url) {
+    Backend backend = find(url);
+    if (backend == null || !backend.isPrefixOf(url)) {
+      return null;
+    }
+    // The next healthy URL after the one the request was sent to
+    Backend[] all = backends.get();
+    int index = 0;
+    while (index < all.length && !all[index].equals(backend)) {
+      index++;
+    }
+    // The URLs may have been replaced since the request URL was matched
+    for (int i = 1; index < all.length && i < all.length; i++) {
+      Backend alternate = all[(index + i) % all.length];
+      if (alternate.failed.get() == 0) {
+        return alternate.url + url.substring(backend.url.length());
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void markRequestStarted(String url) {
+    Backend backend = find(url);
+    if (backend != null) {
+      backend.outstanding.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void markRequestCompleted(String url, long latency) {
+    Backend backend = find(url);
+    if (backend != null) {
+      backend.outstanding.updateAndGet(count -> count > 0 ? count - 1 : 0);
+      long sample = Math.max(1, latency);
+      backend.latency.updateAndGet(average -> average == 0 ? sample : average + ((sample - average) >> EWMA_SHIFT));
+    }
+  }
+
+  /**
+   * Finds the URL that a request URL was created from, either as a prefix of the request URL or
+   * by the host and port of the request URL.
+   */
+  private Backend find(String url) {
+    if (url == null) {
+      return null;
+    }
+    Backend[] all = backends.get();
+    for (Backend backend : all) {
+      if (backend.isPrefixOf(url)) {
+        return backend;
+      }
+    }
+    String hostPort = hostPort(url);
+    if (hostPort != null) {
+      for (Backend backend : all) {
+        if (hostPort.equals(backend.hostPort)) {
+          return backend;
+        }
+      }
+    }
+    return null;
+  }
+
+  private void markHealthy(Backend backend) {
+    if (backend.failed.getAndSet(0) != 0) {
+      LOG.recoveredUrl(backend.url);
+    }
+  }
+
+  private void scheduleHealthCheck(Backend backend) {
+    if (healthChecks != null && !healthChecks.isShutdown() && backend.hostPort != null
+        && backend.checking.compareAndSet(false, true)) {
+      WeakReference<LoadBalancingURLManager> manager = new WeakReference<>(this);
+      try {
+        healthChecks.schedule(() -> checkHealth(manager, backend), healthCheckInterval, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // The manager has been closed
+        backend.checking.set(false);
+      }
+    }
+  }
+
+  private static void checkHealth(WeakReference<LoadBalancingURLManager> reference, Backend backend) {
+    backend.checking.set(false);
+    LoadBalancingURLManager manager = reference.get();
+    // Stop checking URLs that are no longer used
+    if (manager == null || backend.failed.get() == 0 || !manager.isCurrent(backend)) {
+      return;
+    }
+    // A check never outlasts the interval, so that the next one starts on time
+    int timeout = (int) Math.min(HEALTH_CHECK_TIMEOUT, manager.healthCheckInterval);
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(backend.host, backend.port), timeout);
+      manager.markHealthy(backend);
+    } catch (IOException e) {
+      LOG.failedHealthCheck(backend.url, e);
+      manager.scheduleHealthCheck(backend);
+    }
+  }
+
+  private boolean isCurrent(Backend backend) {
+    for (Backend current : backends.get()) {
+      if (current.equals(backend)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String hostPort(String url) {
+    try {
+      URI uri = URI.create(url);
+      if (uri.getHost() == null) {
+        return null;
+      }
+      return uri.getHost().toLowerCase(Locale.ROOT) + ":" + port(uri);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static int port(URI uri) {
+    if (uri.getPort() >= 0) {
+      return uri.getPort();
+    }
+    return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+  }
+
+  private static class Backend {
+    private final String url;
+    private final String host;
+    private final int port;
+    private final String hostPort;
+    // The time the URL was marked failed, or 0 if it is healthy
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // The moving average latency in nanoseconds, or 0 if no request has completed yet
+    private final AtomicLong latency = new AtomicLong();
+
+    Backend(String url) {
+      this.url = url;
+      this.hostPort = hostPort(url);
+      if (hostPort != null) {
+        URI uri = URI.create(url);
+        host = uri.getHost();
+        port = port(uri);
+      } else {
+        host = null;
+        port = -1;
+      }
+    }
+
+    boolean isPrefixOf(String requestUrl) {
+      int length = url.length();
+      if (!requestUrl.regionMatches(true, 0, url, 0, length)) {
+        return false;
+      }
+      if (requestUrl.length() == length || url.endsWith("/")) {
+        return true;
+      }
+      char c = requestUrl.charAt(length);
+      return c == '/' || c == '?' || c == '#';
+    }
+  }
+}
@@ -17,14 +17,9 @@
  */
 package org.apache.knox.gateway.ha.provider.impl;
 
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of URLManager intended for query of Zookeeper for active SOLR Cloud hosts.
@@ -75,14 +70,8 @@ public class SOLRZookeeperURLManager extends BaseZookeeperURLManager {
   {
     List<String> serverHosts = new ArrayList<>();
 
-    try (CuratorFramework zooKeeperClient = CuratorFrameworkFactory.builder()
-        .connectString(getZookeeperEnsemble())
-        .retryPolicy(new ExponentialBackoffRetry(1000, 3))
-        .build()) {
-
-      zooKeeperClient.start();
-      zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS);
-      List<String> serverNodes = zooKeeperClient.getChildren().forPath("/live_nodes");
+    try {
+      List<String> serverNodes = getChildren("/live_nodes");
       for (String serverNode : serverNodes) {
         String serverURL = constructURL(serverNode);
         serverHosts.add(serverURL);
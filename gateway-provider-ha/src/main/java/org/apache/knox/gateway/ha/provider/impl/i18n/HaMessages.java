@@ -42,4 +42,16 @@ public interface HaMessages {
   @Message(level = MessageLevel.ERROR, text = "Failed to get Zookeeper URLs : {0}")
   void failedToGetZookeeperUrls(Exception e);
 
+  @Message(level = MessageLevel.WARN, text = "Unsupported load balancing policy {0} for service {1}, the active URL will be used until it fails")
+  void unsupportedLoadBalancingPolicy(String policy, String serviceName);
+
+  @Message(level = MessageLevel.INFO, text = "Marked URL {0} as unhealthy, it will not receive requests until it recovers")
+  void markedUnhealthyUrl(String url);
+
+  @Message(level = MessageLevel.INFO, text = "URL {0} has recovered and will receive requests again")
+  void recoveredUrl(String url);
+
+  @Message(level = MessageLevel.DEBUG, text = "Health check of URL {0} failed: {1}")
+  void failedHealthCheck(String url, Exception e);
+
 }
@@ -23,23 +23,37 @@ import org.apache.knox.gateway.ha.provider.HaServletContextListener;
 import org.apache.knox.gateway.ha.provider.impl.DefaultHaProvider;
 import org.apache.knox.gateway.ha.provider.impl.HaDescriptorFactory;
 import org.apache.knox.gateway.servlet.SynchronousServletOutputStreamAdapter;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class DefaultHaDispatchTest {
@@ -106,4 +120,168 @@ public class DefaultHaDispatchTest {
     //test to make sure the sleep took place
     Assert.assertTrue(elapsedTime > 1000);
   }
+
+  @Test
+  public void testFailoverBackoff() {
+    DefaultHaDispatch dispatch = createBackoffDispatch("OOZIE", "2", "100", "http://host1.invalid", "http://host2.invalid");
+    for (int i = 0; i < 100; i++) {
+      assertBetween(50, 100, dispatch.getFailoverBackoff(1));
+      assertBetween(100, 200, dispatch.getFailoverBackoff(2));
+      assertBetween(200, 400, dispatch.getFailoverBackoff(3));
+      assertBetween(250, 500, dispatch.getFailoverBackoff(4));
+      assertBetween(250, 500, dispatch.getFailoverBackoff(40));
+    }
+  }
+
+  @Test(timeout = 30000)
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  public void testAsyncFailoverBackoff() throws Exception {
+    DefaultHaDispatch dispatch = createBackoffDispatch("OOZIE", "2", "500", "http://host1.invalid", "http://host2.invalid");
+    Map<String, Object> attributes = new HashMap<>();
+    CountDownLatch completed = new CountDownLatch(1);
+
+    AsyncContext asyncContext = EasyMock.createNiceMock(AsyncContext.class);
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock(HttpServletRequest.class);
+    HttpServletResponse outboundResponse = EasyMock.createNiceMock(HttpServletResponse.class);
+    EasyMock.expect(inboundRequest.getRequestURL()).andAnswer(() -> new StringBuffer("http://host2.invalid")).anyTimes();
+    EasyMock.expect(inboundRequest.getAttribute(EasyMock.anyString()))
+        .andAnswer(() -> attributes.get((String) EasyMock.getCurrentArguments()[0])).anyTimes();
+    inboundRequest.setAttribute(EasyMock.anyString(), EasyMock.anyObject());
+    EasyMock.expectLastCall().andAnswer(() -> attributes.put((String) EasyMock.getCurrentArguments()[0],
+        EasyMock.getCurrentArguments()[1])).anyTimes();
+    EasyMock.expect(inboundRequest.isAsyncSupported()).andReturn(true).anyTimes();
+    EasyMock.expect(inboundRequest.isAsyncStarted()).andAnswer(() -> attributes.containsKey("async")).anyTimes();
+    EasyMock.expect(inboundRequest.startAsync(inboundRequest, outboundResponse)).andAnswer(() -> {
+      attributes.put("async", Boolean.TRUE);
+      return asyncContext;
+    }).once();
+    EasyMock.expect(inboundRequest.getAsyncContext()).andReturn(asyncContext).anyTimes();
+    EasyMock.expect(asyncContext.getRequest()).andReturn(inboundRequest).anyTimes();
+    EasyMock.expect(asyncContext.getResponse()).andReturn(outboundResponse).anyTimes();
+    asyncContext.start(EasyMock.anyObject(Runnable.class));
+    EasyMock.expectLastCall().andAnswer(() -> {
+      ((Runnable) EasyMock.getCurrentArguments()[0]).run();
+      return null;
+    }).times(2);
+    asyncContext.complete();
+    EasyMock.expectLastCall().andAnswer(() -> {
+      completed.countDown();
+      return null;
+    }).once();
+    outboundResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(asyncContext, inboundRequest, outboundResponse);
+
+    long startTime = System.currentTimeMillis();
+    dispatch.executeRequest(new HttpGet("http://host1.invalid"), inboundRequest, outboundResponse);
+    //the request thread is released before the first failover sleep is over
+    Assert.assertTrue(System.currentTimeMillis() - startTime < 250);
+    Assert.assertEquals(1, completed.getCount());
+
+    completed.await();
+    //both failover attempts were made, each after a sleep
+    Assert.assertEquals(3, ((AtomicInteger) attributes.get("dispatch.ha.failover.counter")).get());
+    Assert.assertTrue(System.currentTimeMillis() - startTime >= 250 + 250);
+    EasyMock.verify(asyncContext, outboundResponse);
+  }
+
+  @Test
+  public void testHedgeDelayPercentile() {
+    HedgingPolicy policy = new HedgingPolicy(90, 5, null, "test");
+    for (int i = 1; i < HedgingPolicy.MIN_SAMPLES; i++) {
+      policy.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(i));
+      Assert.assertEquals(-1, policy.getDelay());
+    }
+    policy.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(100));
+    assertBetween(89, 91, policy.getDelay());
+
+    policy = new HedgingPolicy(50, 200, null, "test");
+    for (int i = 1; i <= HedgingPolicy.MIN_SAMPLES; i++) {
+      policy.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    Assert.assertEquals(200, policy.getDelay());
+  }
+
+  @Test(timeout = 30000)
+  public void testHedgedRequestToSlowServer() throws Exception {
+    String slowUrl = "http://slow-host.invalid:50070/webhdfs";
+    String fastUrl = "http://fast-host.invalid:50070/webhdfs";
+    // The slow server only returns once the request to it is aborted
+    HttpClient client = EasyMock.createMock(HttpClient.class);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andAnswer(() -> {
+      HttpUriRequest request = (HttpUriRequest) EasyMock.getCurrentArguments()[0];
+      if (request.getURI().toString().startsWith(fastUrl)) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpServletResponse.SC_OK, "OK");
+        response.setEntity(new StringEntity("hedged", StandardCharsets.UTF_8));
+        return response;
+      }
+      while (!request.isAborted()) {
+        Thread.sleep(10L);
+      }
+      throw new IOException("aborted");
+    }).times(2);
+    // The requests are answered at the same time
+    EasyMock.makeThreadSafe(client, false);
+
+    String serviceName = "WEBHDFS";
+    HaDescriptor descriptor = HaDescriptorFactory.createDescriptor();
+    descriptor.addServiceConfig(HaDescriptorFactory.createServiceConfig(serviceName,
+        "enabled=true;hedgeDelayPercentile=90;minHedgeDelay=100"));
+    HaProvider provider = new DefaultHaProvider(descriptor);
+    provider.addHaService(serviceName, new ArrayList<>(Arrays.asList(slowUrl, fastUrl)));
+    DefaultHaDispatch dispatch = new DefaultHaDispatch();
+    dispatch.setHttpClient(client);
+    dispatch.setHaProvider(provider);
+    dispatch.setServiceRole(serviceName);
+    dispatch.init();
+    HedgingPolicy policy = dispatch.getHedgingPolicy();
+    for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) {
+      policy.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock(HttpServletRequest.class);
+    HttpServletResponse outboundResponse = EasyMock.createNiceMock(HttpServletResponse.class);
+    EasyMock.expect(outboundResponse.getOutputStream()).andReturn(new SynchronousServletOutputStreamAdapter() {
+      @Override
+      public void write(int b) {
+        content.write(b);
+      }
+    }).anyTimes();
+    EasyMock.replay(client, inboundRequest, outboundResponse);
+
+    HttpGet outboundRequest = new HttpGet(slowUrl + "/v1/tmp?op=LISTSTATUS");
+    long startTime = System.currentTimeMillis();
+    dispatch.executeRequest(outboundRequest, inboundRequest, outboundResponse);
+    //the hedge was sent after the minimum delay, as the response times are shorter
+    Assert.assertTrue(System.currentTimeMillis() - startTime >= 100);
+    Assert.assertEquals("hedged", new String(content.toByteArray(), StandardCharsets.UTF_8));
+    Assert.assertEquals(fastUrl + "/v1/tmp?op=LISTSTATUS", outboundRequest.getURI().toString());
+    Assert.assertFalse(outboundRequest.isAborted());
+    Assert.assertEquals(1, policy.getRequests().getCount());
+    Assert.assertEquals(1, policy.getHedges().getCount());
+    Assert.assertEquals(1, policy.getWins().getCount());
+    //a slow server is not a failed one
+    Assert.assertEquals(slowUrl, provider.getActiveURL(serviceName));
+    EasyMock.verify(client);
+  }
+
+  private static DefaultHaDispatch createBackoffDispatch(String serviceName, String maxFailoverAttempts, String failoverSleep, String... urls) {
+    HaDescriptor descriptor = HaDescriptorFactory.createDescriptor();
+    descriptor.addServiceConfig(HaDescriptorFactory.createServiceConfig(serviceName,
+        "enabled=true;maxFailoverAttempts=" + maxFailoverAttempts + ";failoverSleep=" + failoverSleep
+            + ";failoverBackoff=true;maxFailoverSleep=500"));
+    HaProvider provider = new DefaultHaProvider(descriptor);
+    provider.addHaService(serviceName, new ArrayList<>(Arrays.asList(urls)));
+    DefaultHaDispatch dispatch = new DefaultHaDispatch();
+    dispatch.setHttpClient(HttpClientBuilder.create().build());
+    dispatch.setHaProvider(provider);
+    dispatch.setServiceRole(serviceName);
+    dispatch.init();
+    return dispatch;
+  }
+
+  private static void assertBetween(long min, long max, long value) {
+    Assert.assertTrue(value + " is not between " + min + " and " + max, value >= min && value <= max);
+  }
 }
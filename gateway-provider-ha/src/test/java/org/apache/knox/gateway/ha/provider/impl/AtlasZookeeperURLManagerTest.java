@@ -87,16 +87,30 @@ public class AtlasZookeeperURLManagerTest {
         assertEquals(atlasNode1, urls.get(0));
     }
 
-    @Test
+    @Test(timeout = 30000)
     public void testMarkFailedCorrectlyResetTheEarlierUrl() throws Exception {
         setAtlasActiveHostURLInZookeeper(atlasNode2);
 
         manager.markFailed("http://atlas.node1:21000");
+        // The active server is looked up in the background
+        while (!atlasNode2.equals(manager.getActiveURL())) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
         List<String> urls = manager.getURLs();
         assertNotEquals(atlasNode1, urls.get(0));
         assertEquals(atlasNode2, urls.get(0));
     }
 
+    @Test(timeout = 30000)
+    public void testActiveServerIsWatched() throws Exception {
+        setAtlasActiveHostURLInZookeeper(atlasNode2);
+
+        while (!atlasNode2.equals(manager.getActiveURL())) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(1, manager.getURLs().size());
+    }
+
     @Test
     public void testAtlasURLManagerLoadingForAtlasApiService() {
         doTestAtlasZooKeeperURLManager("ATLAS-API", true, cluster.getConnectString(), "apache_atlas");
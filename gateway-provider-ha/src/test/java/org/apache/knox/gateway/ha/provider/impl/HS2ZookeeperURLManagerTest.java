@@ -19,6 +19,7 @@ package org.apache.knox.gateway.ha.provider.impl;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.test.TestingCluster;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class HS2ZookeeperURLManagerTest {
@@ -77,6 +79,7 @@ public class HS2ZookeeperURLManagerTest {
 
   @After
   public void tearDown() throws IOException {
+    manager.close();
     if(cluster != null) {
       cluster.close();
     }
@@ -122,6 +125,61 @@ public class HS2ZookeeperURLManagerTest {
     assertEquals(url1, manager.getActiveURL());
   }
 
+  @Test(timeout = 30000)
+  public void testNewInstancesAreWatched() throws Exception {
+    try(CuratorFramework zooKeeperClient =
+        CuratorFrameworkFactory.builder().connectString(cluster.getConnectString())
+            .retryPolicy(new ExponentialBackoffRetry(1000, 3)).build()) {
+
+      String host5 = "hive.server2.authentication=NONE;hive.server2.transport.mode=http;hive.server2.thrift.http.path=cliservice;" +
+                         "hive.server2.thrift.http.port=10005;hive.server2.thrift.bind.host=host5;hive.server2.use.SSL=false";
+      zooKeeperClient.start();
+      assertTrue(zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS));
+      zooKeeperClient.create().forPath("/hiveServer2/host5", host5.getBytes(StandardCharsets.UTF_8));
+    }
+
+    while (!manager.getURLs().contains("http://host5:10005/cliservice")) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(5, manager.getURLs().size());
+  }
+
+  @Test(timeout = 30000)
+  public void testMarkFailedDoesNotWaitForZookeeper() throws Exception {
+    cluster.stop();
+
+    // Failing every URL once triggers a lookup, which must not hold up the request
+    List<String> urls = manager.getURLs();
+    long start = System.currentTimeMillis();
+    for (String url : urls) {
+      manager.markFailed(url);
+    }
+    assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(1));
+
+    // The URLs are kept while Zookeeper can't be reached
+    assertEquals(urls, manager.getURLs());
+  }
+
+  @Test
+  public void testZookeeperClientIsClosedWithLastManager() throws Exception {
+    HS2ZookeeperURLManager other = new HS2ZookeeperURLManager();
+    HaServiceConfig config = new DefaultHaServiceConfig("HIVE");
+    config.setEnabled(true);
+    config.setZookeeperEnsemble(cluster.getConnectString());
+    config.setZookeeperNamespace("hiveServer2");
+    other.setConfig(config);
+
+    CuratorFramework client = manager.getZookeeperClient();
+    assertSame(client, other.getZookeeperClient());
+
+    // Still used by the other manager
+    manager.close();
+    assertEquals(CuratorFrameworkState.STARTED, client.getState());
+
+    other.close();
+    assertEquals(CuratorFrameworkState.STOPPED, client.getState());
+  }
+
   @Test
   public void testHS2URLManagerLoading() {
     HaServiceConfig config = new DefaultHaServiceConfig("HIVE");
@@ -131,5 +189,6 @@ public class HS2ZookeeperURLManagerTest {
     URLManager manager = URLManagerLoader.loadURLManager(config);
     Assert.assertNotNull(manager);
     assertTrue(manager instanceof HS2ZookeeperURLManager);
+    manager.close();
   }
 }
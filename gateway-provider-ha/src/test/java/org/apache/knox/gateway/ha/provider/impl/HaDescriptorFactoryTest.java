@@ -51,6 +51,11 @@ public class HaDescriptorFactoryTest {
       assertEquals(1000, serviceConfig.getFailoverSleep());
       assertEquals(5, serviceConfig.getMaxRetryAttempts());
       assertEquals(3000, serviceConfig.getRetrySleep());
+      assertFalse(serviceConfig.isFailoverBackoff());
+      assertEquals(HaServiceConfigConstants.DEFAULT_MAX_FAILOVER_SLEEP, serviceConfig.getMaxFailoverSleep());
 
+      serviceConfig = HaDescriptorFactory.createServiceConfig("baz", "enabled=true;failoverBackoff=true;maxFailoverSleep=8000");
+      assertTrue(serviceConfig.isFailoverBackoff());
+      assertEquals(8000, serviceConfig.getMaxFailoverSleep());
    }
 }
@@ -18,6 +18,16 @@
 package org.apache.knox.gateway.ha.provider.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.framework.CuratorFramework;
@@ -32,6 +42,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -74,4 +85,63 @@ public class KafkaZookeeperURLManagerTest {
     Assert.assertNotNull(manager);
     Assert.assertTrue(manager instanceof KafkaZookeeperURLManager);
   }
+
+  @Test(timeout = 30000)
+  public void testHostsArePingedInParallel() throws Exception {
+    int hosts = 4;
+    long delay = 1000;
+    List<ServerSocket> servers = new ArrayList<>();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      List<String> urls = new ArrayList<>();
+      for (int i = 0; i < hosts; i++) {
+        ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        servers.add(server);
+        urls.add("http://localhost:" + server.getLocalPort());
+        executor.execute(() -> respondSlowly(server, delay));
+      }
+      // Nothing listens on the port of a closed server
+      ServerSocket closed = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+      closed.close();
+      urls.add("http://localhost:" + closed.getLocalPort());
+
+      long start = System.currentTimeMillis();
+      List<String> validated = new KafkaZookeeperURLManager().validateHosts(urls, "/topics",
+          "application/vnd.kafka.v2+json");
+      long elapsed = System.currentTimeMillis() - start;
+
+      assertEquals(urls.subList(0, hosts), validated);
+      assertTrue("Pinging took " + elapsed + "ms", elapsed < hosts * delay);
+    } finally {
+      for (ServerSocket server : servers) {
+        server.close();
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  private static void respondSlowly(ServerSocket server, long delay) {
+    try (Socket socket = server.accept()) {
+      InputStream in = socket.getInputStream();
+      // Read the request headers
+      int matched = 0;
+      while (matched < 4) {
+        int b = in.read();
+        if (b < 0) {
+          return;
+        }
+        matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : 0;
+      }
+      TimeUnit.MILLISECONDS.sleep(delay);
+      OutputStream out = socket.getOutputStream();
+      out.write("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 2\r\nConnection: close\r\n\r\n[]"
+          .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+    } catch (IOException e) {
+      // The server was closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.provider.impl;
+
+import org.apache.knox.gateway.ha.provider.HaServiceConfig;
+import org.apache.knox.gateway.ha.provider.URLManager;
+import org.apache.knox.gateway.ha.provider.URLManagerLoader;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadBalancingURLManagerTest {
+
+  private static final String URL1 = "http://host1:50070/webhdfs";
+  private static final String URL2 = "http://host2:50070/webhdfs";
+  private static final String URL3 = "http://host3:50070/webhdfs";
+
+  @Test
+  public void testLoadedForLoadBalancingPolicy() {
+    URLManager manager = URLManagerLoader.loadURLManager(
+        HaDescriptorFactory.createServiceConfig("WEBHDFS", "enabled=true;loadBalancingPolicy=round-robin"));
+    assertTrue(manager instanceof LoadBalancingURLManager);
+
+    manager = URLManagerLoader.loadURLManager(HaDescriptorFactory.createServiceConfig("WEBHDFS", "enabled=true"));
+    assertTrue(manager instanceof DefaultURLManager);
+
+    manager = URLManagerLoader.loadURLManager(
+        HaDescriptorFactory.createServiceConfig("WEBHDFS", "enabled=true;loadBalancingPolicy=random"));
+    assertTrue(manager instanceof DefaultURLManager);
+  }
+
+  @Test
+  public void testRoundRobin() {
+    LoadBalancingURLManager manager = createManager("round-robin", 0, URL1, URL2, URL3);
+    Map<String, Integer> counts = countActiveURLs(manager, 300);
+    assertEquals(Integer.valueOf(100), counts.get(URL1));
+    assertEquals(Integer.valueOf(100), counts.get(URL2));
+    assertEquals(Integer.valueOf(100), counts.get(URL3));
+  }
+
+  @Test
+  public void testFailedURLIsSkipped() {
+    LoadBalancingURLManager manager = createManager("round-robin", 0, URL1, URL2, URL3);
+    manager.markFailed(URL2 + "/v1/tmp?op=LISTSTATUS");
+    Map<String, Integer> counts = countActiveURLs(manager, 100);
+    assertFalse(counts.containsKey(URL2));
+    assertEquals(Integer.valueOf(50), counts.get(URL1));
+    assertEquals(Integer.valueOf(50), counts.get(URL3));
+    // Requests are hedged to the next healthy URL
+    assertEquals(URL3 + "/v1/tmp", manager.getAlternateURL(URL1 + "/v1/tmp"));
+    assertEquals(URL1 + "/v1/tmp", manager.getAlternateURL(URL3 + "/v1/tmp"));
+
+    // Once every URL has failed the one that failed first is used
+    manager.markFailed(URL1);
+    manager.markFailed(URL3);
+    assertEquals(URL2, manager.getActiveURL());
+
+    manager.setActiveURL(URL3);
+    assertEquals(URL3, manager.getActiveURL());
+    assertEquals(URL3, manager.getActiveURL());
+  }
+
+  @Test
+  public void testFailedURLMatchedByHostAndPort() {
+    LoadBalancingURLManager manager = createManager("round-robin", 0, "http://host1/oozie", URL2);
+    manager.markFailed("http://HOST1:80/other/path");
+    assertEquals(URL2, manager.getActiveURL());
+    assertEquals(URL2, manager.getActiveURL());
+  }
+
+  @Test
+  public void testLeastOutstanding() {
+    LoadBalancingURLManager manager = createManager("least-outstanding", 0, URL1, URL2, URL3);
+    manager.markRequestStarted(URL1 + "/v1/a");
+    manager.markRequestStarted(URL1 + "/v1/b");
+    manager.markRequestStarted(URL3 + "/v1/c");
+    for (int i = 0; i < 10; i++) {
+      assertEquals(URL2, manager.getActiveURL());
+    }
+    manager.markRequestStarted(URL2 + "/v1/d");
+    manager.markRequestStarted(URL2 + "/v1/e");
+    assertEquals(URL3, manager.getActiveURL());
+    manager.markRequestCompleted(URL1 + "/v1/a", 1000L);
+    manager.markRequestCompleted(URL1 + "/v1/b", 1000L);
+    assertEquals(URL1, manager.getActiveURL());
+  }
+
+  @Test
+  public void testEwma() {
+    LoadBalancingURLManager manager = createManager("ewma", 0, URL1, URL2);
+    for (int i = 0; i < 10; i++) {
+      manager.markRequestStarted(URL1);
+      manager.markRequestCompleted(URL1, 50000000L);
+      manager.markRequestStarted(URL2);
+      manager.markRequestCompleted(URL2, 5000000L);
+    }
+    for (int i = 0; i < 10; i++) {
+      assertEquals(URL2, manager.getActiveURL());
+    }
+    // Requests in progress make a fast URL less attractive
+    for (int i = 0; i < 20; i++) {
+      manager.markRequestStarted(URL2);
+    }
+    assertEquals(URL1, manager.getActiveURL());
+  }
+
+  @Test
+  public void testSetURLsKeepsState() {
+    LoadBalancingURLManager manager = createManager("round-robin", 0, URL1, URL2);
+    manager.markFailed(URL1);
+    manager.setURLs(Arrays.asList(URL1, URL2, URL3));
+    assertEquals(Arrays.asList(URL1, URL2, URL3), manager.getURLs());
+    assertFalse(countActiveURLs(manager, 10).containsKey(URL1));
+  }
+
+  @Test(timeout = 30000)
+  public void testFailedURLRecoversAfterHealthCheck() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+      String url = "http://127.0.0.1:" + server.getLocalPort() + "/webhdfs";
+      LoadBalancingURLManager manager = createManager("round-robin", 100, url, URL2);
+      manager.markFailed(url);
+      assertEquals(URL2, manager.getActiveURL());
+      while (!countActiveURLs(manager, 2).containsKey(url)) {
+        Thread.sleep(50L);
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testClosedManagerStopsHealthChecks() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+      String url = "http://127.0.0.1:" + server.getLocalPort() + "/webhdfs";
+      LoadBalancingURLManager manager = createManager("round-robin", 100, url, URL2);
+      manager.close();
+      manager.markFailed(url);
+      Thread.sleep(500L);
+      assertFalse(countActiveURLs(manager, 2).containsKey(url));
+    }
+  }
+
+  private static LoadBalancingURLManager createManager(String policy, int healthCheckInterval, String... urls) {
+    HaServiceConfig config = HaDescriptorFactory.createServiceConfig("WEBHDFS",
+        "enabled=true;loadBalancingPolicy=" + policy + ";healthCheckInterval=" + healthCheckInterval);
+    LoadBalancingURLManager manager = new LoadBalancingURLManager();
+    assertTrue(manager.supportsConfig(config));
+    manager.setConfig(config);
+    manager.setURLs(Arrays.asList(urls));
+    return manager;
+  }
+
+  private static Map<String, Integer> countActiveURLs(URLManager manager, int requests) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < requests; i++) {
+      counts.merge(manager.getActiveURL(), 1, Integer::sum);
+    }
+    return counts;
+  }
+}
@@ -99,6 +99,38 @@ public class SOLRZookeeperURLManagerTest {
     // Unable to test markFailed because the SOLRZookeeperURLManager always does a refresh on Zookeeper contents.
   }
 
+  @Test(timeout = 30000)
+  public void testNewLiveNodesAreWatched() throws Exception {
+    try(CuratorFramework zooKeeperClient =
+        CuratorFrameworkFactory.builder().connectString(cluster.getConnectString())
+            .retryPolicy(new ExponentialBackoffRetry(1000, 3)).build()) {
+
+      zooKeeperClient.start();
+      assertTrue(zooKeeperClient.blockUntilConnected(10, TimeUnit.SECONDS));
+      zooKeeperClient.create().forPath("/live_nodes/host4:8983_solr");
+    }
+
+    while (!manager.getURLs().contains("http://host4:8983/solr")) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(4, manager.getURLs().size());
+  }
+
+  @Test(timeout = 30000)
+  public void testMarkFailedDoesNotWaitForZookeeper() throws Exception {
+    cluster.stop();
+
+    String failed = manager.getActiveURL();
+    long start = System.currentTimeMillis();
+    manager.markFailed(failed);
+    assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(1));
+
+    // The URLs are kept while Zookeeper can't be reached
+    List<String> urls = manager.getURLs();
+    assertEquals(3, urls.size());
+    assertEquals(failed, urls.get(2));
+  }
+
   @Test
   public void testSOLRZookeeperURLManagerLoading() {
     HaServiceConfig config = new DefaultHaServiceConfig("SOLR");
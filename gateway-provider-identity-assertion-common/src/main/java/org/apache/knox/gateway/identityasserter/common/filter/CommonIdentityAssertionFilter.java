@@ -20,17 +20,20 @@ package org.apache.knox.gateway.identityasserter.common.filter;
 import javax.security.auth.Subject;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.knox.gateway.IdentityAsserterMessages;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.security.principal.PrincipalMappingException;
 import org.apache.knox.gateway.security.principal.SimplePrincipalMapper;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.security.GroupLookupService;
 
 import java.io.IOException;
 import java.security.AccessController;
@@ -41,9 +44,18 @@ public class CommonIdentityAssertionFilter extends AbstractIdentityAssertionFilt
   private static final String GROUP_PRINCIPAL_MAPPING = "group.principal.mapping";
   private static final String PRINCIPAL_MAPPING = "principal.mapping";
   private SimplePrincipalMapper mapper = new SimplePrincipalMapper();
+  private GroupLookupService groupLookupService;
 
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
+    ServletContext context = filterConfig.getServletContext();
+    if (context != null) {
+      GatewayServices services = (GatewayServices) context.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE);
+      if (services != null) {
+        groupLookupService = services.getService(ServiceType.GROUP_LOOKUP_SERVICE);
+      }
+    }
+
     String principalMapping = filterConfig.getInitParameter(PRINCIPAL_MAPPING);
     if (principalMapping == null || principalMapping.isEmpty()) {
       principalMapping = filterConfig.getServletContext().getInitParameter(PRINCIPAL_MAPPING);
@@ -84,9 +96,7 @@ public class CommonIdentityAssertionFilter extends AbstractIdentityAssertionFilt
 
     String mappedPrincipalName = mapUserPrincipalBase(principalName);
     mappedPrincipalName = mapUserPrincipal(mappedPrincipalName);
-    String[] mappedGroups = mapGroupPrincipals(mappedPrincipalName, subject);
     String[] groups = mapGroupPrincipals(mappedPrincipalName, subject);
-    groups = combineGroupMappings(mappedGroups, groups);
 
     HttpServletRequestWrapper wrapper = wrapHttpServletRequest(
         request, mappedPrincipalName);
@@ -94,15 +104,6 @@ public class CommonIdentityAssertionFilter extends AbstractIdentityAssertionFilt
     continueChainAsPrincipal(wrapper, response, chain, mappedPrincipalName, groups);
   }
 
-  private String[] combineGroupMappings(String[] mappedGroups, String[] groups) {
-    if (mappedGroups != null && groups != null) {
-      return (String[])ArrayUtils.addAll(mappedGroups, groups);
-    }
-    else {
-      return groups != null ? groups : mappedGroups;
-    }
-  }
-
   public HttpServletRequestWrapper wrapHttpServletRequest(
       ServletRequest request, String mappedPrincipalName) {
     // wrap the request so that the proper principal is returned
@@ -112,6 +113,13 @@ public class CommonIdentityAssertionFilter extends AbstractIdentityAssertionFilt
         mappedPrincipalName);
   }
 
+  /**
+   * @return the gateway-wide cache for group lookups, or null if it is not available
+   */
+  protected GroupLookupService getGroupLookupService() {
+    return groupLookupService;
+  }
+
   protected String[] mapGroupPrincipalsBase(String mappedPrincipalName, Subject subject) {
     return mapper.mapGroupPrincipal(mappedPrincipalName);
   }
@@ -18,16 +18,21 @@
 package org.apache.knox.gateway.identityasserter.hadoop.groups.filter;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.security.auth.Subject;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.identityasserter.common.filter.CommonIdentityAssertionFilter;
+import org.apache.knox.gateway.services.security.GroupLookupService;
 import org.apache.hadoop.security.GroupMappingServiceProvider;
 import org.apache.hadoop.security.Groups;
 
@@ -55,6 +60,12 @@ public class HadoopGroupProviderFilter extends CommonIdentityAssertionFilter {
    */
   private Groups hadoopGroups;
 
+  /**
+   * Identifies the group mapping configuration in the gateway-wide group lookup cache,
+   * shared by the topologies using the same configuration.
+   */
+  private String resolverName;
+
   /* create an instance */
   public HadoopGroupProviderFilter() {
     super();
@@ -66,6 +77,7 @@ public class HadoopGroupProviderFilter extends CommonIdentityAssertionFilter {
 
     try {
       hadoopConfig = new Configuration(false);
+      final Map<String, String> params = new TreeMap<>();
 
       if (filterConfig.getInitParameterNames() != null) {
 
@@ -74,11 +86,13 @@ public class HadoopGroupProviderFilter extends CommonIdentityAssertionFilter {
 
           final String key = keys.nextElement();
           hadoopConfig.set(key, filterConfig.getInitParameter(key));
+          params.put(key, filterConfig.getInitParameter(key));
 
         }
 
       }
       hadoopGroups = new Groups(hadoopConfig);
+      resolverName = HadoopGroupProviderFilter.class.getName() + ":" + DigestUtils.sha256Hex(params.toString());
 
     } catch (final Exception e) {
       throw new ServletException(e);
@@ -96,22 +110,37 @@ public class HadoopGroupProviderFilter extends CommonIdentityAssertionFilter {
     /* return the groups as seen by Hadoop */
     String[] groups;
     try {
-      final List<String> groupList = hadoopGroups
-          .getGroups(mappedPrincipalName);
-      LOG.groupsFound(mappedPrincipalName, groupList.toString());
+      final GroupLookupService groupLookupService = getGroupLookupService();
+      final List<String> groupList = groupLookupService == null
+          ? getHadoopGroups(mappedPrincipalName)
+          : groupLookupService.getGroups(resolverName, mappedPrincipalName, this::getHadoopGroups);
       groups = groupList.toArray(new String[0]);
 
+    } catch (final IOException e) {
+      /* Log the error and return empty group */
+      LOG.errorGettingUserGroups(mappedPrincipalName, e);
+      groups = new String[0];
+    }
+    return groups;
+  }
+
+  /**
+   * Query the Hadoop implementation of {@link Groups}, no groups found for
+   * the user is not an error.
+   */
+  private List<String> getHadoopGroups(final String user) throws IOException {
+    try {
+      final List<String> groupList = hadoopGroups.getGroups(user);
+      LOG.groupsFound(user, groupList.toString());
+      return groupList;
     } catch (final IOException e) {
       if (e.toString().contains("No groups found for user")) {
         /* no groups found move on */
-        LOG.noGroupsFound(mappedPrincipalName);
-      } else {
-        /* Log the error and return empty group */
-        LOG.errorGettingUserGroups(mappedPrincipalName, e);
+        LOG.noGroupsFound(user);
+        return Collections.emptyList();
       }
-      groups = new String[0];
+      throw e;
     }
-    return groups;
   }
 
   @Override
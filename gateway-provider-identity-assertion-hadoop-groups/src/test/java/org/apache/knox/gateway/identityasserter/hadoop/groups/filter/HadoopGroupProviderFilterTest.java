@@ -31,6 +31,9 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 
 import org.apache.knox.gateway.security.PrimaryPrincipal;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.security.GroupLookupService;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
@@ -201,4 +204,33 @@ public class HadoopGroupProviderFilterTest {
 
   }
 
+  /*
+   * Test that groups are resolved through the gateway-wide group lookup service
+   * when it is available.
+   */
+  @Test
+  public void testGroupLookupService() throws Exception {
+    final GroupLookupService groupLookupService = EasyMock.createNiceMock(GroupLookupService.class);
+    EasyMock.expect(groupLookupService.getGroups(EasyMock.startsWith(HadoopGroupProviderFilter.class.getName()),
+        EasyMock.eq(username), EasyMock.anyObject(GroupLookupService.GroupResolver.class)))
+        .andReturn(Arrays.asList("admin", "users")).once();
+    final GatewayServices services = EasyMock.createNiceMock(GatewayServices.class);
+    EasyMock.expect(services.getService(ServiceType.GROUP_LOOKUP_SERVICE)).andReturn(groupLookupService).anyTimes();
+
+    final FilterConfig config = EasyMock.createNiceMock(FilterConfig.class);
+    EasyMock.expect(config.getInitParameter("principal.mapping") ).andReturn( "" ).anyTimes();
+    ServletContext context = EasyMock.createNiceMock(ServletContext.class);
+    EasyMock.expect(config.getServletContext() ).andReturn( context ).anyTimes();
+    EasyMock.expect(context.getInitParameter("principal.mapping") ).andReturn( "" ).anyTimes();
+    EasyMock.expect(context.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)).andReturn(services).anyTimes();
+    EasyMock.replay( config, context, services, groupLookupService );
+
+    final HadoopGroupProviderFilter filter = new HadoopGroupProviderFilter();
+    filter.init(config);
+    final String[] groups = filter.mapGroupPrincipals(username, new Subject());
+
+    assertThat(groups, is(new String[] { "admin", "users" }));
+    EasyMock.verify(groupLookupService);
+  }
+
 }
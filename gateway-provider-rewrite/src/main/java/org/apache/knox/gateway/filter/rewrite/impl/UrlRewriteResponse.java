@@ -19,6 +19,7 @@ package org.apache.knox.gateway.filter.rewrite.impl;
 
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.knox.gateway.dispatch.PassthroughStreamer;
 import org.apache.knox.gateway.filter.GatewayResponseWrapper;
 import org.apache.knox.gateway.filter.ResponseStreamer;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
@@ -189,7 +190,12 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
     }
 
     try {
-      IOUtils.copy(inStream, outStream, STREAM_BUFFER_SIZE);
+      if( filter != null ) {
+        IOUtils.copy(inStream, outStream, STREAM_BUFFER_SIZE);
+      } else {
+        // Nothing to rewrite, pass the body through
+        PassthroughStreamer.copy(inStream, outStream);
+      }
     } finally {
       outStream.close();
     }
@@ -24,8 +24,8 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterApplyDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterBufferDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
@@ -38,11 +38,24 @@ import org.apache.knox.gateway.util.JsonPath;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+/**
+ * Filters a JSON document as it is read, one token at a time.
+ * <p>
+ * Outside of the scopes selected by a {@link UrlRewriteFilterBufferDescriptor} only the chain of
+ * containers from the root to the current token is tracked, and the selectors of the filter are
+ * matched against that chain as {@link JsonPath.Expression#evaluate} would match them against a
+ * tree holding only that chain. A buffered scope is read into a {@link JsonNode} tree in one go so
+ * that its selectors can be evaluated against the whole scope before it is written. The filtered
+ * output of each token is written to a reusable buffer that the caller reads from, so the memory
+ * used for an unbuffered document doesn't depend on its size.
+ */
 class JsonFilterReader extends Reader {
 
   private static final UrlRewriteMessages LOG = MessagesFactory.get( UrlRewriteMessages.class );
@@ -50,320 +63,134 @@ class JsonFilterReader extends Reader {
   private static final UrlRewriteFilterPathDescriptor.Compiler<JsonPath.Expression> JPATH_COMPILER = new JsonPathCompiler();
   private static final UrlRewriteFilterPathDescriptor.Compiler<Pattern> REGEX_COMPILER = new RegexCompiler();
 
-  private JsonFactory factory;
-  private JsonParser parser;
-  private JsonGenerator generator;
-  private ObjectMapper mapper;
+  private static final int OBJECT = 0;
+  private static final int ARRAY = 1;
+  private static final int VALUE = 2;
+
+  private final Reader reader;
+  private final JsonParser parser;
+  private final JsonGenerator generator;
+  private final ObjectMapper mapper;
+  private final OutputBuffer buffer;
+  private final UrlRewriteFilterGroupDescriptor config;
+
+  // The containers from the root to the current token. The entries are reused as the depth changes.
+  private Level[] levels = new Level[ 16 ];
+  private int depth;
 
-  private Reader reader;
-  private int offset;
-  private StringWriter writer;
-  private StringBuffer buffer;
-  private Stack<Level> stack;
-  private Level bufferingLevel;
-  private UrlRewriteFilterBufferDescriptor bufferingConfig;
-  private UrlRewriteFilterGroupDescriptor config;
+  // Scratch space for matching paths against the levels.
+  private final Map<JsonPath.Expression, JsonPath.Segment[]> segments = new IdentityHashMap<>();
+  private int[] matches = new int[ 16 ];
+  private int[] candidates = new int[ 16 ];
 
   JsonFilterReader( Reader reader, UrlRewriteFilterContentDescriptor config ) throws IOException {
     this.reader = reader;
-    factory = new JsonFactory();
-    mapper = new ObjectMapper();
+    JsonFactory factory = new JsonFactory();
+    mapper = new ObjectMapper( factory );
     parser = factory.createParser( reader );
-    writer = new StringWriter();
-    buffer = writer.getBuffer();
-    offset = 0;
-    generator = factory.createGenerator( writer );
-    stack = new Stack<>();
-    bufferingLevel = null;
-    bufferingConfig = null;
+    buffer = new OutputBuffer();
+    generator = factory.createGenerator( buffer );
     this.config = config;
   }
 
   @Override
   public int read( char[] destBuffer, int destOffset, int destCount ) throws IOException {
-    int count = 0;
-    int available = buffer.length() - offset;
-
-    if( available == 0 ) {
+    while( buffer.available() == 0 ) {
       JsonToken token = parser.nextToken();
       if( token == null ) {
-        count = -1;
-      } else {
-        processCurrentToken();
-        available = buffer.length() - offset;
+        return -1;
       }
+      processCurrentToken();
     }
-
-    if( available > 0 ) {
-      count = Math.min( destCount, available );
-      buffer.getChars( offset, offset+count, destBuffer, destOffset );
-      offset += count;
-      if( offset == buffer.length() ) {
-        offset = 0;
-        buffer.setLength( 0 );
-      }
-    }
-
-    return count;
+    return buffer.read( destBuffer, destOffset, destCount );
   }
 
   private void processCurrentToken() throws IOException {
     switch( parser.getCurrentToken() ) {
       case START_OBJECT:
-        processStartObject();
-        break;
-      case END_OBJECT:
-        processEndObject();
+        processStartContainer( OBJECT );
         break;
       case START_ARRAY:
-        processStartArray();
+        processStartContainer( ARRAY );
+        break;
+      case END_OBJECT:
+        depth--;
+        generator.writeEndObject();
         break;
       case END_ARRAY:
-        processEndArray();
+        depth--;
+        generator.writeEndArray();
         break;
       case FIELD_NAME:
-        processFieldName(); // Could be the name of an object, array or value.
+        processFieldName();
         break;
       case VALUE_STRING:
         processValueString();
         break;
       case VALUE_NUMBER_INT:
       case VALUE_NUMBER_FLOAT:
-        processValueNumber();
+        nextElement();
+        writeNumber();
         break;
       case VALUE_TRUE:
       case VALUE_FALSE:
-        processValueBoolean();
+        nextElement();
+        generator.writeBoolean( parser.getBooleanValue() );
         break;
       case VALUE_NULL:
-        processValueNull();
+        nextElement();
+        generator.writeNull();
         break;
-      case NOT_AVAILABLE:
+      default:
         // Ignore it.
         break;
     }
     generator.flush();
   }
 
-  private Level pushLevel( String field, JsonNode node, JsonNode scopeNode, UrlRewriteFilterGroupDescriptor scopeConfig ) {
-    if( !stack.isEmpty() ) {
-      Level top = stack.peek();
-      if( scopeNode == null ) {
-        scopeNode = top.scopeNode;
-        scopeConfig = top.scopeConfig;
-      }
-    }
-    Level level = new Level( field, node, scopeNode, scopeConfig );
-    stack.push( level );
-    return level;
-  }
-
-  private void processStartObject() throws IOException {
-    JsonNode node;
-    Level child;
-    Level parent;
-    if( stack.isEmpty() ) {
-      node = mapper.createObjectNode();
-      child = pushLevel( null, node, node, config );
-    } else {
-      child = stack.peek();
-      if( child.node == null ) {
-        child.node = mapper.createObjectNode();
-        parent = stack.get( stack.size()-2 );
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).add( child.node );
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).set( child.field, child.node );
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      } else if( child.isArray() ) {
-        parent = child;
-        node = mapper.createObjectNode();
-        child = pushLevel( null, node, null, null );
-        ((ArrayNode)parent.node ).add( child.node );
+  private void processStartContainer( int type ) throws IOException {
+    pushLevel( type );
+    UrlRewriteFilterBufferDescriptor bufferConfig = findBufferConfig();
+    if( bufferConfig == null ) {
+      if( type == ARRAY ) {
+        generator.writeStartArray();
       } else {
-        throw new IllegalStateException();
-      }
-    }
-    if( bufferingLevel == null ) {
-      if( !startBuffering( child ) ) {
         generator.writeStartObject();
       }
-    }
-  }
-
-  private void processEndObject() throws IOException {
-    Level child;
-    Level parent;
-    child = stack.pop();
-    if( child.equals(bufferingLevel) ) {
-      filterBufferedNode( child );
-      mapper.writeTree( generator, child.node );
-      bufferingLevel = null;
-      bufferingConfig = null;
-    } else if( bufferingLevel == null ) {
-      generator.writeEndObject();
-      if( !stack.isEmpty() ) {
-        parent = stack.peek();
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).removeAll();
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).removeAll();
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      }
-    }
-  }
-
-  private void processStartArray() throws IOException {
-    JsonNode node;
-    Level child;
-    Level parent;
-    if( stack.isEmpty() ) {
-      node = mapper.createArrayNode();
-      child = pushLevel( null, node, node, config );
     } else {
-      child = stack.peek();
-      if( child.node == null ) {
-        child.node = mapper.createArrayNode();
-        parent = stack.get( stack.size() - 2 );
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).add( child.node );
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).set( child.field, child.node );
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      } else if( child.isArray() ) {
-        parent = child;
-        child = pushLevel( null, mapper.createArrayNode(), null, null );
-        ((ArrayNode)parent.node ).add( child.node );
-      } else {
-        throw new IllegalStateException();
-      }
-    }
-    if( bufferingLevel == null ) {
-      if( !startBuffering( child ) ) {
-        generator.writeStartArray();
-      }
-    }
-  }
-
-  private void processEndArray() throws IOException {
-    Level child;
-    Level parent;
-    child = stack.pop();
-    if( child.equals(bufferingLevel) ) {
-      filterBufferedNode( child );
-      mapper.writeTree( generator, child.node );
-      bufferingLevel = null;
-      bufferingConfig = null;
-    } else if( bufferingLevel == null ) {
-      generator.writeEndArray();
-      if( !stack.isEmpty() ) {
-        parent = stack.peek();
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).removeAll();
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).removeAll();
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      }
+      // The whole scope is read now, so the level for it is no longer needed.
+      depth--;
+      JsonNode node = readContainer( type );
+      filterBufferedNode( node, bufferConfig );
+      mapper.writeTree( generator, node );
     }
   }
 
   private void processFieldName() throws IOException {
-    Level child = pushLevel( parser.getCurrentName(), null, null, null );
-    try {
-      child.field = filterFieldName( child.field );
-    } catch( Exception e ) {
-      LOG.failedToFilterFieldName( child.field, e );
-      // Write original name.
-    }
-    if( bufferingLevel == null ) {
-      generator.writeFieldName( child.field );
-    }
+    String field = filterName( parser.getCurrentName() );
+    levels[ depth - 1 ].field = field;
+    generator.writeFieldName( field );
   }
 
   private void processValueString() throws IOException {
-    Level child;
-    Level parent;
-    String value = null;
-    if(stack.isEmpty()) {
-      generator.writeString( parser.getText() );
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      ArrayNode array = (ArrayNode)parent.node;
-      array.add( parser.getText() );
-      if( bufferingLevel == null ) {
-        value = filterStreamValue( parent );
-        array.set( array.size()-1, new TextNode( value ) );
-      } else {
-        array.removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).put( child.field, parser.getText() );
-      if( bufferingLevel == null ) {
-        child.node = parent.node; // Populate the JsonNode of the child for filtering.
-        value = filterStreamValue( child );
-      }
-    }
-    if( bufferingLevel == null ) {
-      if( parent.node.isArray() ) {
-        ((ArrayNode)parent.node).removeAll();
-      } else {
-        ((ObjectNode)parent.node).removeAll();
-      }
-      generator.writeString( value );
-    }
-  }
-
-  private void processValueNumber() throws IOException {
-    Level child;
-    Level parent;
-    if(stack.isEmpty()) {
-      processedUnbufferedValueNumber();
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      if( bufferingLevel != null ) {
-        ArrayNode array = (ArrayNode)parent.node;
-        processBufferedArrayValueNumber( array );
-      }
-    } else {
-      child = stack.pop();
-      if( bufferingLevel != null ) {
-        parent = stack.peek();
-        ObjectNode object = (ObjectNode)parent.node;
-        processBufferedFieldValueNumber( child, object );
+    String value = parser.getText();
+    if( depth > 0 ) {
+      Level parent = levels[ depth - 1 ];
+      // A value in an array is filtered with the name of the array.
+      String name = parent.type == ARRAY ? parent.name : parent.field;
+      pushLevel( VALUE );
+      String rule = findApplyRule();
+      depth--;
+      try {
+        value = filterValueString( name, value, rule );
+      } catch( Exception e ) {
+        LOG.failedToFilterValue( value, rule, e );
       }
     }
-    if( bufferingLevel == null ) {
-      processedUnbufferedValueNumber();
-    }
+    generator.writeString( value );
   }
 
-  private void processedUnbufferedValueNumber() throws IOException {
+  private void writeNumber() throws IOException {
     switch( parser.getNumberType() ) {
       case INT:
         generator.writeNumber( parser.getIntValue() );
@@ -386,172 +213,213 @@ class JsonFilterReader extends Reader {
     }
   }
 
-  private void processBufferedFieldValueNumber( Level child, ObjectNode object ) throws IOException {
-    //object.put( child.field, parser.getDecimalValue() );
-    switch( parser.getNumberType() ) {
-      case INT:
-        object.put( child.field, parser.getIntValue() );
-        break;
-      case LONG:
-        object.put( child.field, parser.getLongValue() );
-        break;
-      case BIG_INTEGER:
-        object.put( child.field, parser.getDecimalValue() );
-        break;
-      case FLOAT:
-        object.put( child.field, parser.getFloatValue() );
-        break;
-      case DOUBLE:
-        object.put( child.field, parser.getDoubleValue() );
-        break;
-      case BIG_DECIMAL:
-        object.put( child.field, parser.getDecimalValue() );
-        break;
+  private String filterName( String field ) {
+    try {
+      return filterFieldName( field );
+    } catch( Exception e ) {
+      LOG.failedToFilterFieldName( field, e );
+      // Use original name.
+      return field;
     }
   }
 
-  private void processBufferedArrayValueNumber( ArrayNode array ) throws IOException {
-    //array.add( parser.getDecimalValue() );
-    switch( parser.getNumberType() ) {
-      case INT:
-        array.add( parser.getIntValue() );
-        break;
-      case LONG:
-        array.add( parser.getLongValue() );
-        break;
-      case BIG_INTEGER:
-        array.add( parser.getDecimalValue() );
-        break;
-      case FLOAT:
-        array.add( parser.getFloatValue() );
-        break;
-      case DOUBLE:
-        array.add( parser.getDoubleValue() );
-        break;
-      case BIG_DECIMAL:
-        array.add( parser.getDecimalValue() );
-        break;
+  // Advances the element index of the current array, if the current container is an array.
+  private int nextElement() {
+    if( depth > 0 ) {
+      Level parent = levels[ depth - 1 ];
+      if( parent.type == ARRAY ) {
+        return parent.count++;
+      }
     }
+    return -1;
   }
 
-  private void processValueBoolean() throws IOException {
-    Level child;
-    Level parent;
-    if(stack.isEmpty()) {
-      generator.writeBoolean(parser.getBooleanValue());
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      ((ArrayNode)parent.node ).add( parser.getBooleanValue() );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ArrayNode)parent.node ).removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).put( child.field, parser.getBooleanValue() );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ObjectNode)parent.node ).remove( child.field );
+  private void pushLevel( int type ) {
+    String name = null;
+    if( depth > 0 && levels[ depth - 1 ].type == OBJECT ) {
+      name = levels[ depth - 1 ].field;
+    }
+    int index = nextElement();
+    if( depth == levels.length ) {
+      levels = Arrays.copyOf( levels, depth * 2 );
+    }
+    Level level = levels[ depth ];
+    if( level == null ) {
+      level = new Level();
+      levels[ depth ] = level;
+    }
+    level.type = type;
+    level.name = name;
+    level.index = index;
+    level.field = null;
+    level.count = 0;
+    depth++;
+  }
+
+  // The first selector that matches the new container decides whether it is buffered.
+  private UrlRewriteFilterBufferDescriptor findBufferConfig() {
+    if( config != null ) {
+      for( UrlRewriteFilterPathDescriptor selector : config.getSelectors() ) {
+        if( firstMatch( selector ) >= 0 ) {
+          return selector instanceof UrlRewriteFilterBufferDescriptor ? (UrlRewriteFilterBufferDescriptor)selector : null;
+        }
       }
     }
-    if( bufferingLevel == null ) {
-      generator.writeBoolean( parser.getBooleanValue() );
-    }
+    return null;
   }
 
-  private void processValueNull() throws IOException {
-    Level child;
-    if(stack.isEmpty()) {
-      generator.writeNull();
-      return;
-    }
-    Level parent = stack.peek();
-    if( parent.isArray() ) {
-      ((ArrayNode)parent.node ).addNull();
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ArrayNode)parent.node ).removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).putNull( child.field );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ObjectNode)parent.node ).remove( child.field );
+  // The rule of the first apply selector whose first match is the current string value.
+  //TODO: Scan the top level apply rules for the first match.
+  private String findApplyRule() {
+    if( config != null ) {
+      int value = depth - 1;
+      for( UrlRewriteFilterPathDescriptor selector : config.getSelectors() ) {
+        if( firstMatch( selector ) == value && selector instanceof UrlRewriteFilterApplyDescriptor ) {
+          return ((UrlRewriteFilterApplyDescriptor)selector).rule();
+        }
       }
     }
-    if( bufferingLevel == null ) {
-      generator.writeNull();
-    }
+    return null;
   }
 
-  protected boolean startBuffering( Level node ) {
-    boolean buffered = false;
-    UrlRewriteFilterGroupDescriptor scope = node.scopeConfig;
-    if( scope != null ) {
-      for( UrlRewriteFilterPathDescriptor selector : scope.getSelectors() ) {
-        JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-        List<JsonPath.Match> matches = path.evaluate( node.scopeNode );
-        if( matches != null && !matches.isEmpty() ) {
-          if( selector instanceof UrlRewriteFilterBufferDescriptor ) {
-            bufferingLevel = node;
-            bufferingConfig = (UrlRewriteFilterBufferDescriptor)selector;
-            buffered = true;
-          }
-          break;
+  /**
+   * Evaluates the path of a selector against the chain of levels, where level 0 is the root and the
+   * last level is the current token. This gives the same matches in the same order as evaluating
+   * the path against a tree where each container only holds the next level.
+   *
+   * @return the depth of the first match or -1 if the path doesn't match
+   */
+  private int firstMatch( UrlRewriteFilterPathDescriptor selector ) {
+    int last = depth - 1;
+    int count = 0;
+    for( JsonPath.Segment segment : getSegments( selector ) ) {
+      if( segment.getType() == JsonPath.Segment.Type.ROOT ) {
+        matches[ 0 ] = 0;
+        count = 1;
+        continue;
+      }
+      int next = 0;
+      for( int i = 0; i < count; i++ ) {
+        int match = matches[ i ];
+        switch( segment.getType() ) {
+          case FIELD:
+            if( match < last && levels[ match ].type == OBJECT && segment.getField().equals( levels[ match + 1 ].name ) ) {
+              next = addCandidate( next, match + 1 );
+            }
+            break;
+          case INDEX:
+            if( match < last && levels[ match ].type == ARRAY && segment.getIndex() == levels[ match + 1 ].index ) {
+              next = addCandidate( next, match + 1 );
+            }
+            break;
+          case GLOB:
+            // The match itself and all of its descendants.
+            for( int descendant = match; descendant <= last; descendant++ ) {
+              next = addCandidate( next, descendant );
+            }
+            break;
+          case WILD:
+            if( match < last ) {
+              next = addCandidate( next, match + 1 );
+            }
+            break;
+          default:
+            throw new IllegalStateException();
         }
       }
+      if( next == 0 ) {
+        return -1;
+      }
+      int[] temp = matches;
+      matches = candidates;
+      candidates = temp;
+      count = next;
     }
-    return buffered;
+    return count > 0 ? matches[ 0 ] : -1;
   }
 
-  protected String filterStreamValue( Level node ) {
-    String value;
-    if( node.isArray() ) {
-      value = node.node.get( 0 ).asText();
-    } else {
-      value = node.node.get( node.field ).asText();
+  private int addCandidate( int count, int match ) {
+    if( count == candidates.length ) {
+      candidates = Arrays.copyOf( candidates, count * 2 );
+      matches = Arrays.copyOf( matches, count * 2 );
     }
-    String rule = null;
-    UrlRewriteFilterGroupDescriptor scope = node.scopeConfig;
-    //TODO: Scan the top level apply rules for the first match.
-    if( scope != null ) {
-      for( UrlRewriteFilterPathDescriptor selector : scope.getSelectors() ) {
-        JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-        List<JsonPath.Match> matches = path.evaluate( node.scopeNode );
-        if( matches != null && !matches.isEmpty() ) {
-          JsonPath.Match match = matches.get( 0 );
-          if( match.getNode().isTextual() ) {
-            if( selector instanceof UrlRewriteFilterApplyDescriptor ) {
-              UrlRewriteFilterApplyDescriptor apply = (UrlRewriteFilterApplyDescriptor)selector;
-              rule = apply.rule();
-              break;
-            }
-          }
+    candidates[ count ] = match;
+    return count + 1;
+  }
+
+  private JsonPath.Segment[] getSegments( UrlRewriteFilterPathDescriptor selector ) {
+    JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
+    return segments.computeIfAbsent( path, JsonPath.Expression::getSegments );
+  }
+
+  // Reads the container that starts with the current token into a tree.
+  private JsonNode readContainer( int type ) throws IOException {
+    JsonNodeFactory factory = mapper.getNodeFactory();
+    if( type == ARRAY ) {
+      ArrayNode array = factory.arrayNode();
+      JsonToken token;
+      while( ( token = parser.nextToken() ) != JsonToken.END_ARRAY && token != null ) {
+        JsonNode node = readNode( factory, token );
+        if( node != null ) {
+          array.add( node );
         }
       }
-    }
-    try {
-      value = filterValueString( node.field, value, rule );
-      if( node.isArray() ) {
-        ((ArrayNode)node.node).set( 0, new TextNode( value ) );
-      } else {
-        ((ObjectNode)node.node).put( node.field, value );
+      return array;
+    } else {
+      ObjectNode object = factory.objectNode();
+      while( parser.nextToken() == JsonToken.FIELD_NAME ) {
+        String field = filterName( parser.getCurrentName() );
+        JsonNode node = readNode( factory, parser.nextToken() );
+        if( node != null ) {
+          object.set( field, node );
+        }
       }
-    } catch( Exception e ) {
-      LOG.failedToFilterValue( value, rule, e );
+      return object;
+    }
+  }
+
+  private JsonNode readNode( JsonNodeFactory factory, JsonToken token ) throws IOException {
+    switch( token ) {
+      case START_OBJECT:
+        return readContainer( OBJECT );
+      case START_ARRAY:
+        return readContainer( ARRAY );
+      case VALUE_STRING:
+        return factory.textNode( parser.getText() );
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return readNumber( factory );
+      case VALUE_TRUE:
+      case VALUE_FALSE:
+        return factory.booleanNode( parser.getBooleanValue() );
+      case VALUE_NULL:
+        return factory.nullNode();
+      default:
+        return null;
+    }
+  }
+
+  private JsonNode readNumber( JsonNodeFactory factory ) throws IOException {
+    switch( parser.getNumberType() ) {
+      case INT:
+        return factory.numberNode( parser.getIntValue() );
+      case LONG:
+        return factory.numberNode( parser.getLongValue() );
+      case FLOAT:
+        return factory.numberNode( parser.getFloatValue() );
+      case DOUBLE:
+        return factory.numberNode( parser.getDoubleValue() );
+      case BIG_INTEGER:
+      case BIG_DECIMAL:
+      default:
+        return factory.numberNode( parser.getDecimalValue() );
     }
-    return value;
   }
 
-  private void filterBufferedNode( Level node ) {
-    for( UrlRewriteFilterPathDescriptor selector : bufferingConfig.getSelectors() ) {
+  private void filterBufferedNode( JsonNode node, UrlRewriteFilterBufferDescriptor bufferConfig ) {
+    for( UrlRewriteFilterPathDescriptor selector : bufferConfig.getSelectors() ) {
       JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-      List<JsonPath.Match> matches = path.evaluate( node.node );
+      List<JsonPath.Match> matches = path.evaluate( node );
       for( JsonPath.Match match : matches ) {
         if( selector instanceof UrlRewriteFilterApplyDescriptor ) {
           if( match.getNode().isTextual() ) {
@@ -560,7 +428,7 @@ class JsonFilterReader extends Reader {
         } else if( selector instanceof UrlRewriteFilterDetectDescriptor ) {
           UrlRewriteFilterDetectDescriptor detectConfig = (UrlRewriteFilterDetectDescriptor)selector;
           JsonPath.Expression detectPath = (JsonPath.Expression)detectConfig.compiledPath( JPATH_COMPILER );
-          List<JsonPath.Match> detectMatches = detectPath.evaluate( node.node );
+          List<JsonPath.Match> detectMatches = detectPath.evaluate( node );
           for( JsonPath.Match detectMatch : detectMatches ) {
             if( detectMatch.getNode().isTextual() ) {
               String detectValue = detectMatch.getNode().asText();
@@ -575,10 +443,10 @@ class JsonFilterReader extends Reader {
     }
   }
 
-  private void filterBufferedValues( Level node, List<UrlRewriteFilterPathDescriptor> selectors ) {
+  private void filterBufferedValues( JsonNode node, List<UrlRewriteFilterPathDescriptor> selectors ) {
     for( UrlRewriteFilterPathDescriptor selector : selectors ) {
       JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-      List<JsonPath.Match> matches = path.evaluate( node.node );
+      List<JsonPath.Match> matches = path.evaluate( node );
       for( JsonPath.Match match : matches ) {
         if( match.getNode().isTextual() ) {
           if( selector instanceof UrlRewriteFilterApplyDescriptor ) {
@@ -611,31 +479,96 @@ class JsonFilterReader extends Reader {
   @Override
   public void close() throws IOException {
     generator.close();
-    writer.close();
     parser.close();
     reader.close();
   }
 
   private static class Level {
+    int type;
+    // The name of the container in its parent object, or its index in its parent array.
+    String name;
+    int index;
+    // The current field of an object, or the number of elements seen so far by an array.
     String field;
-    JsonNode node;
-    JsonNode scopeNode;
-    UrlRewriteFilterGroupDescriptor scopeConfig;
-    Level( String field, JsonNode node, JsonNode scopeNode, UrlRewriteFilterGroupDescriptor scopeConfig ) {
-      this.field = field;
-      this.node = node;
-      this.scopeNode = scopeNode;
-      this.scopeConfig = scopeConfig;
+    int count;
+  }
+
+  /**
+   * Holds the output of the generator until it is read. The output of each token is read before
+   * the next token is processed, so the buffer only grows to hold the largest buffered scope.
+   */
+  private static class OutputBuffer extends Writer {
+    private char[] chars = new char[ 4096 ];
+    private int start;
+    private int end;
+
+    int available() {
+      return end - start;
+    }
+
+    int read( char[] dest, int offset, int count ) {
+      int n = Math.min( count, end - start );
+      System.arraycopy( chars, start, dest, offset, n );
+      start += n;
+      if( start == end ) {
+        start = 0;
+        end = 0;
+      }
+      return n;
+    }
+
+    private void ensureCapacity( int count ) {
+      if( end + count > chars.length ) {
+        int available = end - start;
+        if( available + count > chars.length ) {
+          char[] larger = new char[ Math.max( chars.length * 2, available + count ) ];
+          System.arraycopy( chars, start, larger, 0, available );
+          chars = larger;
+        } else {
+          System.arraycopy( chars, start, chars, 0, available );
+        }
+        start = 0;
+        end = available;
+      }
+    }
+
+    @Override
+    public void write( int c ) {
+      ensureCapacity( 1 );
+      chars[ end++ ] = (char)c;
     }
-    public boolean isArray() {
-      return node != null && node.isArray();
+
+    @Override
+    public void write( char[] source, int offset, int count ) {
+      ensureCapacity( count );
+      System.arraycopy( source, offset, chars, end, count );
+      end += count;
+    }
+
+    @Override
+    public void write( String source, int offset, int count ) {
+      ensureCapacity( count );
+      source.getChars( offset, offset + count, chars, end );
+      end += count;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
     }
   }
 
   private static class JsonPathCompiler implements UrlRewriteFilterPathDescriptor.Compiler<JsonPath.Expression> {
     @Override
     public JsonPath.Expression compile( String expression, JsonPath.Expression compiled ) {
-      return JsonPath.compile( expression );
+      if( compiled != null ) {
+        return compiled;
+      } else {
+        return JsonPath.compile( expression );
+      }
     }
   }
 
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl.json;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRulesDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRulesDescriptorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rewriting large JSON responses in the shape of a YARN application listing and a WebHDFS
+ * directory listing, both with values rewritten as they stream by and with each listed entry
+ * buffered, as the bundled service definitions do.
+ * <p>
+ * This is not run as part of the build. Run the main method from the test classpath, for example
+ * from an IDE after running <code>mvn test-compile</code>. Add <code>-prof gc</code> to the JMH
+ * options to compare allocation rates.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 3, time = 5 )
+@Fork( value = 1, jvmArgs = { "-Xmx2g" } )
+public class JsonFilterReaderBenchmark {
+
+  private static final String YARN_APP = "{\"id\":\"application_1399541193872_%1$04d\",\"user\":\"guest\","
+      + "\"name\":\"word count %1$d\",\"queue\":\"default\",\"state\":\"FINISHED\",\"finalStatus\":\"SUCCEEDED\","
+      + "\"progress\":100.0,\"trackingUI\":\"History\","
+      + "\"trackingUrl\":\"http://host.example.com:8088/proxy/application_1399541193872_%1$04d/jobhistory/job/job_1399541193872_%1$04d\","
+      + "\"diagnostics\":\"\",\"clusterId\":1399541193872,\"applicationType\":\"MAPREDUCE\",\"applicationTags\":\"\","
+      + "\"startedTime\":1399541210000,\"finishedTime\":1399541230000,\"elapsedTime\":20000,"
+      + "\"amContainerLogs\":\"http://host.example.com:8042/node/containerlogs/container_1399541193872_%1$04d_01_000001/guest\","
+      + "\"amHostHttpAddress\":\"host.example.com:8042\",\"allocatedMB\":0,\"allocatedVCores\":0,\"runningContainers\":0}";
+
+  private static final String HDFS_FILE = "{\"accessTime\":1320171722771,\"blockSize\":33554432,\"group\":\"supergroup\","
+      + "\"length\":24930,\"modificationTime\":1320171722771,\"owner\":\"webuser\",\"pathSuffix\":\"part-%1$05d\","
+      + "\"permission\":\"644\",\"replication\":1,\"type\":\"FILE\",\"fileId\":%1$d,\"childrenNum\":0,\"storagePolicy\":0}";
+
+  @Param( { "10", "100" } )
+  public int megabytes;
+
+  @Param( { "yarn", "webhdfs" } )
+  public String payload;
+
+  private String input;
+  private UrlRewriteFilterContentDescriptor streamConfig;
+  private UrlRewriteFilterContentDescriptor bufferConfig;
+
+  @Setup
+  public void createPayload() {
+    boolean yarn = "yarn".equals( payload );
+    input = createListing(
+        yarn ? "{\"apps\":{\"app\":[" : "{\"FileStatuses\":{\"FileStatus\":[",
+        yarn ? YARN_APP : HDFS_FILE,
+        megabytes * 1024 * 1024 );
+
+    String entries = yarn ? "$.apps.app[*]" : "$.FileStatuses.FileStatus[*]";
+    String value = yarn ? "trackingUrl" : "pathSuffix";
+    UrlRewriteRulesDescriptor rules = UrlRewriteRulesDescriptorFactory.create();
+    streamConfig = rules.addFilter( "stream" ).addContent( "application/json" );
+    streamConfig.addApply( entries + "." + value, "test-rule" );
+    bufferConfig = rules.addFilter( "buffer" ).addContent( "application/json" );
+    bufferConfig.addBuffer( entries ).addApply( "$." + value, "test-rule" );
+  }
+
+  private static String createListing( String prefix, String entry, int size ) {
+    StringBuilder builder = new StringBuilder( size + 1024 );
+    builder.append( prefix );
+    for( int i = 0; builder.length() < size; i++ ) {
+      if( i > 0 ) {
+        builder.append( ',' );
+      }
+      builder.append( String.format( Locale.ROOT, entry, i ) );
+    }
+    return builder.append( "]}}" ).toString();
+  }
+
+  @Benchmark
+  public long streamValues() throws IOException {
+    return drain( new RewritingJsonFilterReader( new StringReader( input ), streamConfig ) );
+  }
+
+  @Benchmark
+  public long bufferEntries() throws IOException {
+    return drain( new RewritingJsonFilterReader( new StringReader( input ), bufferConfig ) );
+  }
+
+  private static long drain( Reader reader ) throws IOException {
+    char[] chars = new char[ 8192 ];
+    long total = 0;
+    try( Reader in = reader ) {
+      int count;
+      while( ( count = in.read( chars, 0, chars.length ) ) != -1 ) {
+        total += count;
+      }
+    }
+    return total;
+  }
+
+  private static class RewritingJsonFilterReader extends JsonFilterReader {
+    RewritingJsonFilterReader( Reader reader, UrlRewriteFilterContentDescriptor config ) throws IOException {
+      super( reader, config );
+    }
+
+    @Override
+    protected String filterValueString( String name, String value, String rule ) {
+      return rule == null ? value : "https://gateway.example.com:8443/gateway/sandbox/" + value;
+    }
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    new Runner( new OptionsBuilder().include( JsonFilterReaderBenchmark.class.getSimpleName() ).build() ).run();
+  }
+}
@@ -308,6 +308,42 @@ public class JsonFilterReaderTest {
     JsonAssert.with( output ).assertThat( "name<properties>[2].name<property>.name<property-value>", is( "value:test-rule<test-value-3>" ) );
   }
 
+  @Test
+  public void testBufferedArrayKeepsStringValues() throws Exception {
+    String input = "{\"apps\":{\"app\":[{\"id\":\"one\",\"tags\":[\"a\",\"b\"],\"nested\":[[\"c\"]]}]}}";
+
+    UrlRewriteRulesDescriptor rulesConfig = UrlRewriteRulesDescriptorFactory.create();
+    UrlRewriteFilterDescriptor filterConfig = rulesConfig.addFilter( "filter-1" );
+    UrlRewriteFilterContentDescriptor contentConfig = filterConfig.addContent( "text/json" );
+    UrlRewriteFilterBufferDescriptor bufferConfig = contentConfig.addBuffer( "$.name<apps>.name<app>[*]" );
+    bufferConfig.addApply( "$.name<id>", "test-rule" );
+
+    JsonFilterReader filter = new TestJsonFilterReader( new StringReader( input ), contentConfig );
+    String output = IOUtils.toString( filter );
+
+    JsonAssert.with( output ).assertThat( "name<apps>.name<app>[0].name<id>", is( "value:test-rule<one>" ) );
+    JsonAssert.with( output ).assertThat( "name<apps>.name<app>[0].name<tags>[0]", is( "a" ) );
+    JsonAssert.with( output ).assertThat( "name<apps>.name<app>[0].name<tags>[1]", is( "b" ) );
+    JsonAssert.with( output ).assertThat( "name<apps>.name<app>[0].name<nested>[0][0]", is( "c" ) );
+  }
+
+  @Test
+  public void testArrayIndexSelectsSingleElement() throws Exception {
+    String input = "{\"urls\":[\"a\",\"b\",\"c\"]}";
+
+    UrlRewriteRulesDescriptor rulesConfig = UrlRewriteRulesDescriptorFactory.create();
+    UrlRewriteFilterDescriptor filterConfig = rulesConfig.addFilter( "filter-1" );
+    UrlRewriteFilterContentDescriptor contentConfig = filterConfig.addContent( "text/json" );
+    contentConfig.addApply( "$.name<urls>[1]", "test-rule" );
+
+    JsonFilterReader filter = new TestJsonFilterReader( new StringReader( input ), contentConfig );
+    String output = IOUtils.toString( filter );
+
+    JsonAssert.with( output ).assertThat( "name<urls>[0]", is( "value:null<a>" ) );
+    JsonAssert.with( output ).assertThat( "name<urls>[1]", is( "value:test-rule<b>" ) );
+    JsonAssert.with( output ).assertThat( "name<urls>[2]", is( "value:null<c>" ) );
+  }
+
   @Test
   public void testInvalidConfigShouldThrowException() throws Exception {
     String input = "{\"test-name\":\"test-value\"}";
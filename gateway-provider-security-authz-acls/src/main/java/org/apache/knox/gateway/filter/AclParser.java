@@ -19,7 +19,9 @@ package org.apache.knox.gateway.filter;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.util.IpAddressValidator;
@@ -33,6 +35,12 @@ public class AclParser {
   public boolean anyGroup = true;
   public IpAddressValidator ipv;
 
+  // The parsed users and groups again, so that checking a request doesn't scan the lists
+  private final Set<String> userSet = new HashSet<>();
+  private final Set<String> groupSet = new HashSet<>();
+  private final Set<String> userSetView = Collections.unmodifiableSet(userSet);
+  private final Set<String> groupSetView = Collections.unmodifiableSet(groupSet);
+
 
   public AclParser() {
     users = new ArrayList<>();
@@ -61,18 +69,34 @@ public class AclParser {
 
   private void parseUserAcls(String[] parts) {
     Collections.addAll(users, parts[0].split(","));
-    if (!users.contains("*")) {
+    userSet.addAll(users);
+    if (!userSet.contains("*")) {
       anyUser = false;
     }
   }
 
   private void parseGroupAcls(String[] parts) {
     Collections.addAll(groups, parts[1].split(","));
-    if (!groups.contains("*")) {
+    groupSet.addAll(groups);
+    if (!groupSet.contains("*")) {
       anyGroup = false;
     }
   }
 
+  /**
+   * @return the parsed user ACLs, for lookups
+   */
+  public Set<String> getUserSet() {
+    return userSetView;
+  }
+
+  /**
+   * @return the parsed group ACLs, for lookups
+   */
+  public Set<String> getGroupSet() {
+    return groupSetView;
+  }
+
   private void parseIpAddressAcls(String[] parts) {
     ipv = new IpAddressValidator(parts[2]);
   }
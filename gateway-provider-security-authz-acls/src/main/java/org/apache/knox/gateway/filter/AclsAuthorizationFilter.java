@@ -40,10 +40,10 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.security.AccessController;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 public class AclsAuthorizationFilter implements Filter {
   private static AclsAuthorizationMessages log = MessagesFactory.get( AclsAuthorizationMessages.class );
@@ -53,8 +53,8 @@ public class AclsAuthorizationFilter implements Filter {
   private String resourceRole;
   private String aclProcessingMode;
   private AclParser parser = new AclParser();
-  private List<String> adminGroups = new ArrayList<>();
-  private List<String> adminUsers = new ArrayList<>();
+  private Set<String> adminGroups = new HashSet<>();
+  private Set<String> adminUsers = new HashSet<>();
 
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
@@ -200,10 +200,10 @@ public class AclsAuthorizationFilter implements Filter {
       allowed = true;
     }
     else {
-      if (parser.users.contains(user.getName())) {
+      if (parser.getUserSet().contains(user.getName())) {
         allowed = true;
       }
-      else if (parser.users.contains("KNOX_ADMIN_USERS") &&
+      else if (parser.getUserSet().contains("KNOX_ADMIN_USERS") &&
           adminUsers.contains(user.getName())) {
         allowed = true;
       }
@@ -220,15 +220,15 @@ public class AclsAuthorizationFilter implements Filter {
       allowed = true;
     }
     else {
-      allowed = hasAllowedPrincipal(parser.groups, userGroups);
-      if (!allowed && parser.groups.contains("KNOX_ADMIN_GROUPS")) {
+      allowed = hasAllowedPrincipal(parser.getGroupSet(), userGroups);
+      if (!allowed && parser.getGroupSet().contains("KNOX_ADMIN_GROUPS")) {
         allowed = hasAllowedPrincipal(adminGroups, userGroups);
       }
     }
     return allowed;
   }
 
-  private boolean hasAllowedPrincipal(List<String> allowed, Object[] userGroups) {
+  private boolean hasAllowedPrincipal(Set<String> allowed, Object[] userGroups) {
     boolean rc = false;
     for (Object userGroup : userGroups) {
       if (allowed.contains(((Principal) userGroup).getName())) {
@@ -37,12 +37,15 @@ public class AclParserTest {
     assertTrue(p.anyGroup);
     assertTrue(p.ipv.allowsAnyIP());
 
+    assertTrue(p.getUserSet().contains("guest"));
+
     p = new AclParser();
     p.parseAcls("test", "*;admins;*");
     assertFalse(p.users.contains("guest"));
     assertTrue(p.anyUser);
     assertFalse(p.anyGroup);
     assertTrue(p.groups.contains("admins"));
+    assertTrue(p.getGroupSet().contains("admins"));
     assertTrue(p.ipv.allowsAnyIP());
 
     p = new AclParser();
@@ -48,16 +48,20 @@ import org.apache.knox.gateway.audit.api.AuditServiceFactory;
 import org.apache.knox.gateway.audit.api.Auditor;
 import org.apache.knox.gateway.audit.api.ResourceType;
 import org.apache.knox.gateway.audit.log4j.audit.AuditConstants;
+import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.provider.federation.jwt.JWTMessages;
 import org.apache.knox.gateway.security.PrimaryPrincipal;
 import org.apache.knox.gateway.services.ServiceType;
 import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.metrics.MetricsService;
 import org.apache.knox.gateway.services.security.token.JWTokenAuthority;
 import org.apache.knox.gateway.services.security.token.TokenServiceException;
 import org.apache.knox.gateway.services.security.token.impl.JWT;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.nimbusds.jose.JWSHeader;
 
 public abstract class AbstractJWTFilter implements Filter {
@@ -75,6 +79,24 @@ public abstract class AbstractJWTFilter implements Filter {
   public static final String JWT_EXPECTED_SIGALG = "jwt.expected.sigalg";
   public static final String JWT_DEFAULT_SIGALG = "RS256";
 
+  /**
+   * If specified, this configuration property limits the number of validated tokens which are
+   * remembered so that further requests with the same token skip validation. A value of 0
+   * disables the cache. Otherwise, the default value 10000 is used
+   */
+  public static final String JWT_VERIFIED_CACHE_MAX_SIZE = "jwt.verified.cache.max.size";
+  public static final int JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE = 10000;
+
+  /**
+   * If specified, this configuration property refers to the time in milliseconds for which a
+   * validated token is remembered, unless the token expires earlier. Otherwise, the default value
+   * of five minutes is used
+   */
+  public static final String JWT_VERIFIED_CACHE_TTL = "jwt.verified.cache.ttl";
+  public static final long JWT_DEFAULT_VERIFIED_CACHE_TTL = 300000L;
+
+  private static final String VERIFIED_CACHE_METRICS_PREFIX = MetricRegistry.name("jwt", "verified-token-cache");
+
   static JWTMessages log = MessagesFactory.get( JWTMessages.class );
   private static AuditService auditService = AuditServiceFactory.getAuditService();
   private static Auditor auditor = auditService.getAuditor(
@@ -86,6 +108,7 @@ public abstract class AbstractJWTFilter implements Filter {
   protected RSAPublicKey publicKey;
   private String expectedIssuer;
   private String expectedSigAlg;
+  private VerifiedTokenCache verifiedTokens;
 
   @Override
   public abstract void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -100,12 +123,50 @@ public abstract class AbstractJWTFilter implements Filter {
 
   @Override
   public void init( FilterConfig filterConfig ) throws ServletException {
+    MetricRegistry metrics = null;
+    String topologyName = null;
     ServletContext context = filterConfig.getServletContext();
     if (context != null) {
       GatewayServices services = (GatewayServices) context.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE);
       if (services != null) {
         authority = services.getService(ServiceType.TOKEN_SERVICE);
+        GatewayConfig config = (GatewayConfig) context.getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE);
+        MetricsService metricsService = services.getService(ServiceType.METRICS_SERVICE);
+        if (config != null && config.isMetricsEnabled() && metricsService != null) {
+          metrics = metricsService.getRegistry();
+        }
       }
+      topologyName = (String) context.getAttribute(GatewayServices.GATEWAY_CLUSTER_ATTRIBUTE);
+    }
+    configureVerifiedTokenCache(filterConfig, metrics, topologyName);
+  }
+
+  private void configureVerifiedTokenCache(FilterConfig filterConfig, MetricRegistry metrics, String topologyName) {
+    int maxSize = JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE;
+    String maxSizeValue = filterConfig.getInitParameter(JWT_VERIFIED_CACHE_MAX_SIZE);
+    if (maxSizeValue != null) {
+      maxSize = Integer.parseInt(maxSizeValue.trim());
+    }
+    long ttl = JWT_DEFAULT_VERIFIED_CACHE_TTL;
+    String ttlValue = filterConfig.getInitParameter(JWT_VERIFIED_CACHE_TTL);
+    if (ttlValue != null) {
+      ttl = Long.parseLong(ttlValue.trim());
+    }
+
+    if (maxSize > 0 && ttl > 0) {
+      Counter hits;
+      Counter misses;
+      if (metrics != null) {
+        String name = MetricRegistry.name(VERIFIED_CACHE_METRICS_PREFIX, topologyName, filterConfig.getFilterName());
+        hits = metrics.counter(MetricRegistry.name(name, "hits"));
+        misses = metrics.counter(MetricRegistry.name(name, "misses"));
+      } else {
+        hits = new Counter();
+        misses = new Counter();
+      }
+      verifiedTokens = new VerifiedTokenCache(maxSize, ttl, hits, misses);
+    } else {
+      verifiedTokens = null;
     }
   }
 
@@ -232,6 +293,30 @@ public abstract class AbstractJWTFilter implements Filter {
     return new Subject(true, principals, emptySet, emptySet);
   }
 
+  /**
+   * Looks up a token which has already been validated by this filter.
+   *
+   * @param wireToken the serialized token as received in the request
+   * @return the subject created when the token was validated, or null if the token needs to be validated
+   */
+  protected Subject getVerifiedSubject(String wireToken) {
+    return verifiedTokens == null ? null : verifiedTokens.get(wireToken);
+  }
+
+  /**
+   * Remembers a token which has passed {@link #validateToken}, so that further requests with the
+   * same token can use {@link #getVerifiedSubject} instead of validating it again.
+   *
+   * @param wireToken the serialized token as received in the request
+   * @param token the parsed token
+   * @param subject the subject created for the token
+   */
+  protected void cacheVerifiedSubject(String wireToken, JWT token, Subject subject) {
+    if (verifiedTokens != null) {
+      verifiedTokens.put(wireToken, token, subject);
+    }
+  }
+
   protected boolean validateToken(HttpServletRequest request, HttpServletResponse response,
       FilterChain chain, JWT token)
       throws IOException, ServletException {
@@ -87,9 +87,15 @@ public class JWTFederationFilter extends AbstractJWTFilter {
 
     if (wireToken != null) {
       try {
-        JWT token = new JWTToken(wireToken);
-        if (validateToken((HttpServletRequest)request, (HttpServletResponse)response, chain, token)) {
-          Subject subject = createSubjectFromToken(token);
+        Subject subject = getVerifiedSubject(wireToken);
+        if (subject == null) {
+          JWT token = new JWTToken(wireToken);
+          if (validateToken((HttpServletRequest)request, (HttpServletResponse)response, chain, token)) {
+            subject = createSubjectFromToken(token);
+            cacheVerifiedSubject(wireToken, token, subject);
+          }
+        }
+        if (subject != null) {
           continueWithEstablishedSecurityContext(subject, (HttpServletRequest)request, (HttpServletResponse)response, chain);
         }
       } catch (ParseException ex) {
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.provider.federation.jwt.filter;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.Subject;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.knox.gateway.services.security.token.impl.JWT;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * A bounded cache of the tokens which have passed all the checks of a federation filter, along with
+ * the {@link Subject} created for them. Entries are keyed by a SHA-256 digest of the serialized
+ * token and expire at the token's expiration time or after the configured time-to-live, whichever
+ * comes first. Once full, expired entries are purged and, if that doesn't free enough room, a
+ * portion of the remaining entries is dropped.
+ */
+class VerifiedTokenCache {
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final int maxSize;
+  private final long ttl;
+  private final Counter hits;
+  private final Counter misses;
+
+  VerifiedTokenCache(int maxSize, long ttl, Counter hits, Counter misses) {
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  /**
+   * @param serializedToken the token as received in the request
+   * @return the subject for the token if it has been validated and hasn't expired since, otherwise null
+   */
+  Subject get(String serializedToken) {
+    String key = digest(serializedToken);
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      if (entry.expires > System.currentTimeMillis()) {
+        hits.inc();
+        return entry.subject;
+      }
+      entries.remove(key, entry);
+    }
+    misses.inc();
+    return null;
+  }
+
+  /**
+   * Remembers a token that has passed validation.
+   *
+   * @param serializedToken the token as received in the request
+   * @param token the parsed token, used for its expiration time
+   * @param subject the subject created for the token
+   */
+  void put(String serializedToken, JWT token, Subject subject) {
+    long now = System.currentTimeMillis();
+    long expires = now + ttl;
+    Date expiresDate = token.getExpiresDate();
+    if (expiresDate != null) {
+      expires = Math.min(expires, expiresDate.getTime());
+    }
+    if (expires <= now) {
+      return;
+    }
+    if (entries.size() >= maxSize) {
+      evict(now);
+    }
+    entries.put(digest(serializedToken), new Entry(subject, expires));
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  long getHitCount() {
+    return hits.getCount();
+  }
+
+  long getMissCount() {
+    return misses.getCount();
+  }
+
+  private void evict(long now) {
+    entries.values().removeIf(entry -> entry.expires <= now);
+    // Make room for a tenth of the capacity at once rather than scanning on every insert
+    int target = maxSize - Math.max(1, maxSize / 10);
+    Iterator<String> keys = entries.keySet().iterator();
+    while (entries.size() > target && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  private static String digest(String serializedToken) {
+    return DigestUtils.sha256Hex(serializedToken);
+  }
+
+  private static class Entry {
+    private final Subject subject;
+    private final long expires;
+
+    Entry(Subject subject, long expires) {
+      this.subject = subject;
+      this.expires = expires;
+    }
+  }
+}
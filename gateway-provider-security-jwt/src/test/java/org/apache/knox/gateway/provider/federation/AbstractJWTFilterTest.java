@@ -75,6 +75,7 @@ public abstract class AbstractJWTFilterTest  {
   private static final String dnTemplate = "CN={0},OU=Test,O=Hadoop,L=Test,ST=Test,C=US";
 
   protected AbstractJWTFilter handler;
+  protected TestJWTokenAuthority tokenAuthority;
   protected static RSAPublicKey publicKey;
   protected static RSAPrivateKey privateKey;
   protected static String pem;
@@ -681,6 +682,57 @@ public abstract class AbstractJWTFilterTest  {
     }
   }
 
+  @Test
+  public void testVerifiedTokenIsCached() throws Exception {
+    Properties props = getProperties();
+    handler.init(new TestFilterConfig(props));
+
+    SignedJWT jwt = getJWT(AbstractJWTFilter.JWT_DEFAULT_ISSUER, "alice",
+                           new Date(new Date().getTime() + 5000), privateKey);
+
+    for (int i = 0; i < 3; i++) {
+      TestFilterChain chain = new TestFilterChain();
+      handler.doFilter(getRequestWithToken(jwt), EasyMock.createNiceMock(HttpServletResponse.class), chain);
+      Assert.assertTrue("doFilterCalled should not be false.", chain.doFilterCalled);
+      Set<PrimaryPrincipal> principals = chain.subject.getPrincipals(PrimaryPrincipal.class);
+      Assert.assertEquals("Not the expected principal", "alice", ((Principal)principals.toArray()[0]).getName());
+    }
+    Assert.assertEquals("The token should only be verified once", 1, tokenAuthority.verifications);
+
+    // A different token is verified again
+    SignedJWT other = getJWT(AbstractJWTFilter.JWT_DEFAULT_ISSUER, "bob",
+                             new Date(new Date().getTime() + 5000), privateKey);
+    TestFilterChain chain = new TestFilterChain();
+    handler.doFilter(getRequestWithToken(other), EasyMock.createNiceMock(HttpServletResponse.class), chain);
+    Assert.assertTrue("doFilterCalled should not be false.", chain.doFilterCalled);
+    Assert.assertEquals(2, tokenAuthority.verifications);
+  }
+
+  @Test
+  public void testVerifiedTokenCacheDisabled() throws Exception {
+    Properties props = getProperties();
+    props.put(AbstractJWTFilter.JWT_VERIFIED_CACHE_MAX_SIZE, "0");
+    handler.init(new TestFilterConfig(props));
+
+    SignedJWT jwt = getJWT(AbstractJWTFilter.JWT_DEFAULT_ISSUER, "alice",
+                           new Date(new Date().getTime() + 5000), privateKey);
+
+    for (int i = 0; i < 3; i++) {
+      TestFilterChain chain = new TestFilterChain();
+      handler.doFilter(getRequestWithToken(jwt), EasyMock.createNiceMock(HttpServletResponse.class), chain);
+      Assert.assertTrue("doFilterCalled should not be false.", chain.doFilterCalled);
+    }
+    Assert.assertEquals(3, tokenAuthority.verifications);
+  }
+
+  private HttpServletRequest getRequestWithToken(SignedJWT jwt) {
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    setTokenOnRequest(request, jwt);
+    EasyMock.expect(request.getRequestURL()).andReturn(new StringBuffer(SERVICE_URL)).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
   protected Properties getProperties() {
     Properties props = new Properties();
     props.setProperty(
@@ -764,6 +816,7 @@ public abstract class AbstractJWTFilterTest  {
   protected static class TestJWTokenAuthority implements JWTokenAuthority {
 
     private PublicKey verifyingKey;
+    int verifications;
 
     TestJWTokenAuthority(PublicKey verifyingKey) {
       this.verifyingKey = verifyingKey;
@@ -786,6 +839,7 @@ public abstract class AbstractJWTFilterTest  {
 
     @Override
     public boolean verifyToken(JWT token) {
+      verifications++;
       JWSVerifier verifier = new RSASSAVerifier((RSAPublicKey) verifyingKey);
       return token.verify(verifier);
     }
@@ -840,6 +894,7 @@ public abstract class AbstractJWTFilterTest  {
 
     @Override
     public boolean verifyToken(JWT token, RSAPublicKey publicKey) {
+      verifications++;
       JWSVerifier verifier = new RSASSAVerifier(publicKey);
       return token.verify(verifier);
     }
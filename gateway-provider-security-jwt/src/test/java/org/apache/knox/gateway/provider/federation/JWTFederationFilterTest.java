@@ -30,7 +30,7 @@ public class JWTFederationFilterTest extends AbstractJWTFilterTest {
   @Before
   public void setUp() {
     handler = new TestJWTFederationFilter();
-    ((TestJWTFederationFilter) handler).setTokenService(new TestJWTokenAuthority(publicKey));
+    ((TestJWTFederationFilter) handler).setTokenService(tokenAuthority = new TestJWTokenAuthority(publicKey));
   }
 
   @Override
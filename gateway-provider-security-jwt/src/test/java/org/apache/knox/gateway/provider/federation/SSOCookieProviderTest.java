@@ -46,7 +46,7 @@ public class SSOCookieProviderTest extends AbstractJWTFilterTest {
   @Before
   public void setUp() {
     handler = new TestSSOCookieFederationProvider();
-    ((TestSSOCookieFederationProvider) handler).setTokenService(new TestJWTokenAuthority(publicKey));
+    ((TestSSOCookieFederationProvider) handler).setTokenService(tokenAuthority = new TestJWTokenAuthority(publicKey));
   }
 
   @Override
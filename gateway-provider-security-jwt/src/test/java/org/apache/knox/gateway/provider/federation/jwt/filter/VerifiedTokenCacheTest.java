@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.provider.federation.jwt.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import javax.security.auth.Subject;
+
+import org.apache.knox.gateway.services.security.token.impl.JWT;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class VerifiedTokenCacheTest {
+
+  @Test
+  public void testHitsAndMisses() {
+    VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000L, new Counter(), new Counter());
+    Subject subject = new Subject();
+
+    assertNull(cache.get("token"));
+    cache.put("token", token(null), subject);
+    assertSame(subject, cache.get("token"));
+    assertSame(subject, cache.get("token"));
+    assertNull(cache.get("other-token"));
+
+    assertEquals(2L, cache.getHitCount());
+    assertEquals(2L, cache.getMissCount());
+  }
+
+  @Test
+  public void testEntryExpiresWithToken() throws Exception {
+    VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000L, new Counter(), new Counter());
+
+    cache.put("expired", token(new Date(System.currentTimeMillis() - 1000L)), new Subject());
+    assertEquals(0, cache.size());
+
+    cache.put("expiring", token(new Date(System.currentTimeMillis() + 100L)), new Subject());
+    Thread.sleep(200L);
+    assertNull(cache.get("expiring"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEntryExpiresWithTtl() throws Exception {
+    VerifiedTokenCache cache = new VerifiedTokenCache(10, 100L, new Counter(), new Counter());
+    cache.put("token", token(new Date(System.currentTimeMillis() + 60000L)), new Subject());
+    Thread.sleep(200L);
+    assertNull(cache.get("token"));
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    VerifiedTokenCache cache = new VerifiedTokenCache(20, 60000L, new Counter(), new Counter());
+    for (int i = 0; i < 100; i++) {
+      cache.put("token-" + i, token(null), new Subject());
+      assertTrue(cache.size() <= 20);
+    }
+    // The most recently added token is always kept
+    assertNotNull(cache.get("token-99"));
+  }
+
+  private static JWT token(Date expires) {
+    JWT token = EasyMock.createNiceMock(JWT.class);
+    EasyMock.expect(token.getExpiresDate()).andReturn(expires).anyTimes();
+    EasyMock.replay(token);
+    return token;
+  }
+}
@@ -25,6 +25,7 @@ import org.apache.knox.gateway.aws.AwsSamlHandler;
 import org.apache.knox.gateway.aws.utils.SamlUtils;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.pac4j.Pac4jMessages;
+import org.apache.knox.gateway.pac4j.session.KnoxServerSessionStore;
 import org.apache.knox.gateway.pac4j.session.KnoxSessionStore;
 import org.apache.knox.gateway.services.ServiceType;
 import org.apache.knox.gateway.services.GatewayServices;
@@ -72,7 +73,9 @@ import java.util.Map;
  *     <li>to the {@link SecurityFilter} otherwise: it starts the authentication process (redirection to the identity provider) if the user is not authenticated</li>
  * </ul>
  * <p>It uses the {@link KnoxSessionStore} to manage session data. The generated cookies are defined on a domain name
- * which can be configured via the domain suffix parameter: <code>pac4j.cookie.domain.suffix</code>.</p>
+ * which can be configured via the domain suffix parameter: <code>pac4j.cookie.domain.suffix</code>.
+ * With <code>pac4j.session.store=server</code>, the {@link KnoxServerSessionStore} keeps the session data on the
+ * gateway instead, and only a signed session id is sent as a cookie.</p>
  * <p>The callback url must be defined to the current protected url (KnoxSSO service for example) via the parameter: <code>pac4j.callbackUrl</code>.</p>
  *
  * @since 0.8.0
@@ -97,6 +100,16 @@ public class Pac4jDispatcherFilter implements Filter {
 
   private static final String PAC4J_SESSION_STORE = "pac4j.session.store";
 
+  private static final String PAC4J_SESSION_STORE_SERVER = "server";
+
+  private static final String PAC4J_SESSION_STORE_MAX_ENTRIES = "pac4j.session.store.max.entries";
+
+  private static final String PAC4J_SESSION_STORE_TIMEOUT = "pac4j.session.store.timeout";
+
+  private static final String PAC4J_SESSION_STORE_DISK_PATH = "pac4j.session.store.disk.path";
+
+  private static final String PAC4J_SESSION_STORE_DISK_MAX_ENTRIES = "pac4j.session.store.disk.max.entries";
+
   private static final String PAC4J_CLIENT_NAME_PARAM = "clientName";
 
   private static final String PAC4J_OIDC_TYPE = "oidc.type";
@@ -109,6 +122,7 @@ public class Pac4jDispatcherFilter implements Filter {
   private AliasService aliasService;
   private AwsSamlHandler awsSamlHandler;
   private String domainSuffix;
+  private KnoxServerSessionStore serverSessionStore;
 
   @Override
   public void init( FilterConfig filterConfig ) throws ServletException {
@@ -131,8 +145,9 @@ public class Pac4jDispatcherFilter implements Filter {
       log.cryptoServiceAndAliasServiceAndClusterNameRequired();
       throw new ServletException("The crypto service, alias service and cluster name are required.");
     }
+    final char[] password;
     try {
-      aliasService.getPasswordFromAliasForCluster(clusterName, KnoxSessionStore.PAC4J_PASSWORD, true);
+      password = aliasService.getPasswordFromAliasForCluster(clusterName, KnoxSessionStore.PAC4J_PASSWORD, true);
     } catch (AliasServiceException e) {
       log.unableToGenerateAPasswordForEncryption(e);
       throw new ServletException("Unable to generate a password for encryption.");
@@ -218,7 +233,15 @@ public class Pac4jDispatcherFilter implements Filter {
 
     SessionStore sessionStore;
 
-    if(!StringUtils.isBlank(sessionStoreVar) && J2ESessionStore.class.getName().contains(sessionStoreVar) ) {
+    if(PAC4J_SESSION_STORE_SERVER.equalsIgnoreCase(sessionStoreVar)
+        || KnoxServerSessionStore.class.getName().equals(sessionStoreVar)) {
+      serverSessionStore = new KnoxServerSessionStore(clusterName, password, domainSuffix,
+          getIntParameter(filterConfig, PAC4J_SESSION_STORE_MAX_ENTRIES, KnoxServerSessionStore.DEFAULT_MAX_ENTRIES),
+          getIntParameter(filterConfig, PAC4J_SESSION_STORE_TIMEOUT, (int) KnoxServerSessionStore.DEFAULT_TIMEOUT),
+          filterConfig.getInitParameter(PAC4J_SESSION_STORE_DISK_PATH),
+          getIntParameter(filterConfig, PAC4J_SESSION_STORE_DISK_MAX_ENTRIES, KnoxServerSessionStore.DEFAULT_MAX_DISK_ENTRIES));
+      sessionStore = serverSessionStore;
+    } else if(!StringUtils.isBlank(sessionStoreVar) && J2ESessionStore.class.getName().contains(sessionStoreVar) ) {
       sessionStore = new J2ESessionStore();
     } else {
       sessionStore = new KnoxSessionStore(cryptoService, clusterName, domainSuffix);
@@ -317,5 +340,14 @@ public class Pac4jDispatcherFilter implements Filter {
 
 
   @Override
-  public void destroy() { }
+  public void destroy() {
+    if (serverSessionStore != null) {
+      serverSessionStore.destroy();
+    }
+  }
+
+  private static int getIntParameter(FilterConfig filterConfig, String name, int defaultValue) {
+    final String value = filterConfig.getInitParameter(name);
+    return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+  }
 }
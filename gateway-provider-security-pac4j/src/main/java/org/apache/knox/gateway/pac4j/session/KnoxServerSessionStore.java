@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.pac4j.session;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.commons.codec.binary.Base64;
+import org.pac4j.core.context.ContextHelper;
+import org.pac4j.core.context.Cookie;
+import org.pac4j.core.context.Pac4jConstants;
+import org.pac4j.core.context.WebContext;
+import org.pac4j.core.context.session.SessionStore;
+import org.pac4j.core.exception.TechnicalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session store keeping the session data on the gateway (and not in cookies).
+ * The session data are kept in a bounded in-memory cache, evicted after a period of inactivity,
+ * which can overflow to a local disk store. The only cookie is a random session id signed with
+ * the pac4j password of the topology, so requests of an authenticated user are served without
+ * deserializing or decrypting any session data. Sessions are local to a gateway instance.
+ *
+ * @since 1.4.0
+ */
+public class KnoxServerSessionStore implements SessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnoxServerSessionStore.class);
+
+    public static final String PAC4J_SESSION_ID = KnoxSessionStore.PAC4J_SESSION_PREFIX + "id";
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    public static final long DEFAULT_TIMEOUT = 1800;
+
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 100000;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int SESSION_ID_LENGTH = 16;
+
+    private static final String SIGNATURE_SEPARATOR = ".";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CacheManager cacheManager;
+
+    private final Cache sessions;
+
+    private final SecretKeySpec signingKey;
+
+    private final String domainSuffix;
+
+    /**
+     * @param clusterName name of the topology
+     * @param password pac4j password of the topology, used to sign the session ids
+     * @param domainSuffix configured cookie domain suffix, may be null
+     * @param maxEntries maximum number of sessions kept in memory
+     * @param timeout seconds of inactivity after which a session is evicted
+     * @param diskStorePath directory of the disk tier, or null to keep sessions in memory only
+     * @param maxDiskEntries maximum number of sessions kept on disk
+     */
+    public KnoxServerSessionStore(final String clusterName, final char[] password, final String domainSuffix,
+                                  final int maxEntries, final long timeout,
+                                  final String diskStorePath, final int maxDiskEntries) {
+        this.signingKey = new SecretKeySpec(new String(password).getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.domainSuffix = domainSuffix;
+
+        final String name = "pac4j-sessions-" + clusterName + "-" + System.identityHashCode(this);
+        final Configuration configuration = new Configuration().name(name);
+        final CacheConfiguration cacheConfiguration = new CacheConfiguration(name, maxEntries)
+            .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+            .timeToIdleSeconds(timeout);
+        if (diskStorePath != null) {
+            configuration.diskStore(new DiskStoreConfiguration().path(diskStorePath));
+            cacheConfiguration.maxEntriesLocalDisk(maxDiskEntries)
+                .persistence(new PersistenceConfiguration().strategy(PersistenceConfiguration.Strategy.LOCALTEMPSWAP));
+        } else {
+            cacheConfiguration.persistence(new PersistenceConfiguration().strategy(PersistenceConfiguration.Strategy.NONE));
+        }
+        configuration.addCache(cacheConfiguration);
+        this.cacheManager = new CacheManager(configuration);
+        this.sessions = cacheManager.getCache(name);
+    }
+
+    @Override
+    public String getOrCreateSessionId(final WebContext context) {
+        String sessionId = getSessionId(context);
+        if (sessionId == null) {
+            sessionId = createSession(context);
+        }
+        return sessionId;
+    }
+
+    @Override
+    public Object get(final WebContext context, final String key) {
+        Object value = null;
+        final Map<String, Object> attributes = getAttributes(getSessionId(context));
+        if (attributes != null) {
+            value = attributes.get(key);
+        }
+        logger.debug("Get from session: {} = {}", key, value);
+        return value;
+    }
+
+    @Override
+    public void set(final WebContext context, final String key, final Object value) {
+        String sessionId = getSessionId(context);
+        if (sessionId == null) {
+            if (value == null) {
+                return;
+            }
+            sessionId = createSession(context);
+        }
+
+        Object attribute = value;
+        if (value != null && key.contentEquals(Pac4jConstants.USER_PROFILES)) {
+            /* keep the profile as small as in the cookie session store */
+            attribute = KnoxSessionStore.clearUserProfile(value);
+        }
+        logger.debug("Save in session: {} = {}", key, attribute);
+
+        sessions.acquireWriteLockOnKey(sessionId);
+        try {
+            final Map<String, Object> attributes = getAttributes(sessionId);
+            /* session data are replaced rather than updated so that they are also updated in the disk tier */
+            final HashMap<String, Object> updated = attributes == null ? new HashMap<>() : new HashMap<>(attributes);
+            if (attribute == null) {
+                updated.remove(key);
+            } else {
+                updated.put(key, attribute);
+            }
+            sessions.put(new Element(sessionId, updated));
+        } finally {
+            sessions.releaseWriteLockOnKey(sessionId);
+        }
+    }
+
+    @Override
+    public boolean destroySession(final WebContext context) {
+        final String sessionId = getSessionId(context);
+        if (sessionId != null) {
+            sessions.remove(sessionId);
+            context.setRequestAttribute(PAC4J_SESSION_ID, null);
+            final Cookie cookie = new Cookie(PAC4J_SESSION_ID, "");
+            cookie.setMaxAge(0);
+            KnoxSessionStore.setCookieAttributes(context, cookie, domainSuffix);
+            context.addResponseCookie(cookie);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean renewSession(final WebContext context) {
+        final String sessionId = getSessionId(context);
+        if (sessionId != null) {
+            final Element element = sessions.get(sessionId);
+            sessions.remove(sessionId);
+            final String renewed = createSession(context);
+            if (element != null) {
+                sessions.put(new Element(renewed, element.getObjectValue()));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Object getTrackableSession(final WebContext context) {
+        return null;
+    }
+
+    @Override
+    public SessionStore buildFromTrackableSession(final WebContext context, final Object trackableSession) {
+        return null;
+    }
+
+    /**
+     * Release the sessions of this store, and its disk tier.
+     */
+    public void destroy() {
+        cacheManager.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getAttributes(final String sessionId) {
+        if (sessionId != null) {
+            final Element element = sessions.get(sessionId);
+            if (element != null) {
+                return (Map<String, Object>) element.getObjectValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The session id of the request, set by an earlier call for this request or
+     * taken from the session cookie if its signature is valid.
+     */
+    private String getSessionId(final WebContext context) {
+        final Object current = context.getRequestAttribute(PAC4J_SESSION_ID);
+        if (current != null) {
+            return (String) current;
+        }
+        final Cookie cookie = ContextHelper.getCookie(context, PAC4J_SESSION_ID);
+        if (cookie != null && cookie.getValue() != null) {
+            final String value = cookie.getValue();
+            final int separator = value.indexOf(SIGNATURE_SEPARATOR);
+            if (separator > 0) {
+                final String sessionId = value.substring(0, separator);
+                final byte[] signature = value.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+                if (MessageDigest.isEqual(signature, sign(sessionId).getBytes(StandardCharsets.US_ASCII))) {
+                    context.setRequestAttribute(PAC4J_SESSION_ID, sessionId);
+                    return sessionId;
+                }
+            }
+            logger.debug("Ignoring session cookie with invalid signature");
+        }
+        return null;
+    }
+
+    private String createSession(final WebContext context) {
+        final byte[] bytes = new byte[SESSION_ID_LENGTH];
+        RANDOM.nextBytes(bytes);
+        final String sessionId = Base64.encodeBase64URLSafeString(bytes);
+        context.setRequestAttribute(PAC4J_SESSION_ID, sessionId);
+
+        final Cookie cookie = new Cookie(PAC4J_SESSION_ID, sessionId + SIGNATURE_SEPARATOR + sign(sessionId));
+        KnoxSessionStore.setCookieAttributes(context, cookie, domainSuffix);
+        context.addResponseCookie(cookie);
+        return sessionId;
+    }
+
+    private String sign(final String sessionId) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            return Base64.encodeBase64URLSafeString(mac.doFinal(sessionId.getBytes(StandardCharsets.US_ASCII)));
+        } catch (final GeneralSecurityException e) {
+            throw new TechnicalException(e);
+        }
+    }
+}
@@ -149,9 +149,20 @@ public class KnoxSessionStore implements SessionStore {
             cookie = new Cookie(PAC4J_SESSION_PREFIX + key,
                 compressEncryptBase64(profile));
         }
+        setCookieAttributes(context, cookie, this.domainSuffix);
+        context.addResponseCookie(cookie);
+    }
+
+    /**
+     * Set the domain, path and security attributes of a session cookie.
+     * @param context web context of the request
+     * @param cookie cookie to update
+     * @param domainSuffix configured cookie domain suffix, may be null
+     */
+    static void setCookieAttributes(final WebContext context, final Cookie cookie, final String domainSuffix) {
         try {
             String domain = Urls
-                .getDomainName(context.getFullRequestURL(), this.domainSuffix);
+                .getDomainName(context.getFullRequestURL(), domainSuffix);
             if (domain == null) {
                 domain = context.getServerName();
             }
@@ -177,7 +188,6 @@ public class KnoxSessionStore implements SessionStore {
             cookie.setPath(parts[0]);
 
         }
-        context.addResponseCookie(cookie);
     }
 
     /**
@@ -217,7 +227,7 @@ public class KnoxSessionStore implements SessionStore {
      * @return trimmed profile object
      * @since 1.3.0
      */
-    private Object clearUserProfile(final Object value) {
+    static Object clearUserProfile(final Object value) {
         if(value instanceof Map<?,?>) {
             final Map<String, CommonProfile> profiles = (Map<String, CommonProfile>) value;
             profiles.forEach((name, profile) -> profile.clearSensitiveData());
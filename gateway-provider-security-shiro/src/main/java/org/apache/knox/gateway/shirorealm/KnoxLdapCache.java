@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.shirorealm;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.naming.NamingException;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+/**
+ * A bounded cache of the results of LDAP lookups made by {@link KnoxLdapRealm}. Entries expire after
+ * the configured time-to-live. Concurrent lookups of the same key wait for a single LDAP query and
+ * failed lookups are never cached. Once full, expired entries are purged and, if that doesn't free
+ * enough room, a portion of the remaining entries is dropped.
+ * <p>
+ * When a metric registry is given, the hit ratio, the LDAP query latency and the number of evicted
+ * entries are published under the given name.
+ */
+class KnoxLdapCache<V> {
+
+  /**
+   * Queries LDAP for the value of a key missing from the cache.
+   */
+  interface Loader<V> {
+    V load() throws NamingException;
+  }
+
+  private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final int maxEntries;
+  private final long ttl;
+  private final Counter hits;
+  private final Counter misses;
+  private final Meter evictions;
+  private final Timer latency;
+
+  KnoxLdapCache(int maxEntries, long ttl, MetricRegistry metrics, String name) {
+    this.maxEntries = maxEntries;
+    this.ttl = ttl;
+    if (metrics != null) {
+      hits = metrics.counter(MetricRegistry.name(name, "hits"));
+      misses = metrics.counter(MetricRegistry.name(name, "misses"));
+      evictions = metrics.meter(MetricRegistry.name(name, "evictions"));
+      latency = metrics.timer(MetricRegistry.name(name, "ldap-latency"));
+      String ratioName = MetricRegistry.name(name, "hit-ratio");
+      metrics.remove(ratioName);
+      metrics.register(ratioName, new HitRatio(hits, misses));
+    } else {
+      hits = new Counter();
+      misses = new Counter();
+      evictions = new Meter();
+      latency = new Timer();
+    }
+  }
+
+  /**
+   * @param key the cache key, which must identify everything the lookup depends on
+   * @param loader queries LDAP if the key isn't cached or has expired
+   * @return the cached value or the value returned by the loader
+   * @throws NamingException if the loader, or the lookup this call waited for, failed
+   */
+  V get(String key, Loader<V> loader) throws NamingException {
+    long now = System.currentTimeMillis();
+    Entry<V> entry = entries.get(key);
+    if (entry != null && entry.isValid(now)) {
+      hits.inc();
+      return join(entry.value);
+    }
+
+    Entry<V> created = new Entry<>(now + ttl);
+    entry = entries.compute(key, (k, current) -> current != null && current.isValid(now) ? current : created);
+    if (entry != created) {
+      hits.inc();
+      return join(entry.value);
+    }
+
+    misses.inc();
+    if (entries.size() > maxEntries) {
+      evict(now);
+    }
+    try (Timer.Context ignored = latency.time()) {
+      V value = loader.load();
+      created.value.complete(value);
+      return value;
+    } catch (NamingException | RuntimeException e) {
+      entries.remove(key, created);
+      created.value.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  long getHitCount() {
+    return hits.getCount();
+  }
+
+  long getMissCount() {
+    return misses.getCount();
+  }
+
+  long getEvictionCount() {
+    return evictions.getCount();
+  }
+
+  private void evict(long now) {
+    int size = entries.size();
+    entries.values().removeIf(entry -> !entry.isValid(now));
+    // Make room for a tenth of the capacity at once rather than scanning on every insert
+    int target = maxEntries - Math.max(1, maxEntries / 10);
+    Iterator<Entry<V>> values = entries.values().iterator();
+    while (entries.size() > target && values.hasNext()) {
+      Entry<V> entry = values.next();
+      // Entries being loaded have waiters; leave them in place
+      if (entry.value.isDone()) {
+        values.remove();
+      }
+    }
+    evictions.mark(Math.max(0, size - entries.size()));
+  }
+
+  private static <V> V join(CompletableFuture<V> value) throws NamingException {
+    try {
+      return value.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      NamingException interrupted = new NamingException("Interrupted while waiting for an LDAP lookup");
+      interrupted.setRootCause(e);
+      throw interrupted;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof NamingException) {
+        throw (NamingException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static class Entry<V> {
+    private final CompletableFuture<V> value = new CompletableFuture<>();
+    private final long expires;
+
+    Entry(long expires) {
+      this.expires = expires;
+    }
+
+    boolean isValid(long now) {
+      return expires > now && !value.isCompletedExceptionally();
+    }
+  }
+
+  private static class HitRatio extends RatioGauge {
+    private final Counter hits;
+    private final Counter misses;
+
+    HitRatio(Counter hits, Counter misses) {
+      this.hits = hits;
+      this.misses = misses;
+    }
+
+    @Override
+    protected Ratio getRatio() {
+      return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+    }
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.knox.gateway.services.GatewayServices;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.AliasServiceException;
 import org.apache.shiro.realm.ldap.JndiLdapContextFactory;
+import org.apache.shiro.util.Destroyable;
 
 /**
  * An extension of {@link JndiLdapContextFactory} that allows a different authentication mechanism
@@ -39,15 +40,32 @@ import org.apache.shiro.realm.ldap.JndiLdapContextFactory;
  * compared to regular authentication.
  *
  * <p>
+ * System contexts are pooled by JNDI unless a positive <tt>systemLdapContextPoolSize</tt> is set,
+ * in which case they are borrowed from a bounded pool that validates idle contexts before reuse:
+ *
+ * <pre>
+ * ldapRealm.contextFactory.systemLdapContextPoolSize = 20
+ * ldapRealm.contextFactory.systemLdapContextPoolTimeout = 30000
+ * ldapRealm.contextFactory.systemLdapContextValidationInterval = 30000
+ * </pre>
+ *
+ * <p>
  * See {@link KnoxLdapRealm} for typical configuration within <tt>shiro.ini</tt>.
  */
-public class KnoxLdapContextFactory extends JndiLdapContextFactory {
+public class KnoxLdapContextFactory extends JndiLdapContextFactory implements Destroyable {
 
     private static GatewayMessages LOG = MessagesFactory.get( GatewayMessages.class );
 
+    private static final String JNDI_POOLING_PROPERTY = "com.sun.jndi.ldap.connect.pool";
+
     private String systemAuthenticationMechanism = "simple";
     private String clusterName = "";
 
+    private int systemLdapContextPoolSize;
+    private long systemLdapContextPoolTimeout = 30000L;
+    private long systemLdapContextValidationInterval = 30000L;
+    private KnoxLdapContextPool systemLdapContextPool;
+
     public KnoxLdapContextFactory() {
       setAuthenticationMechanism("simple");
     }
@@ -57,10 +75,73 @@ public class KnoxLdapContextFactory extends JndiLdapContextFactory {
     protected LdapContext createLdapContext(Hashtable env) throws NamingException {
         if(getSystemUsername() != null && getSystemUsername().equals(env.get(Context.SECURITY_PRINCIPAL))) {
             env.put(Context.SECURITY_AUTHENTICATION, getSystemAuthenticationMechanism());
+            if (systemLdapContextPoolSize > 0) {
+              // Pooled by this factory, so JNDI must not keep a pool of its own
+              env.remove(JNDI_POOLING_PROPERTY);
+            }
         }
         return super.createLdapContext(env);
     }
 
+    @Override
+    public LdapContext getSystemLdapContext() throws NamingException {
+      if (systemLdapContextPoolSize <= 0) {
+        return super.getSystemLdapContext();
+      }
+      return getSystemLdapContextPool().borrow();
+    }
+
+    private synchronized KnoxLdapContextPool getSystemLdapContextPool() {
+      if (systemLdapContextPool == null) {
+        systemLdapContextPool = new KnoxLdapContextPool(super::getSystemLdapContext,
+            systemLdapContextPoolSize, systemLdapContextPoolTimeout, systemLdapContextValidationInterval);
+      }
+      return systemLdapContextPool;
+    }
+
+    @Override
+    public synchronized void destroy() {
+      if (systemLdapContextPool != null) {
+        systemLdapContextPool.close();
+        systemLdapContextPool = null;
+      }
+    }
+
+    public int getSystemLdapContextPoolSize() {
+      return systemLdapContextPoolSize;
+    }
+
+    /**
+     * @param systemLdapContextPoolSize the maximum number of system contexts in use at once, or zero to
+     *                                  leave pooling to JNDI
+     */
+    public void setSystemLdapContextPoolSize(int systemLdapContextPoolSize) {
+      this.systemLdapContextPoolSize = systemLdapContextPoolSize;
+    }
+
+    public long getSystemLdapContextPoolTimeout() {
+      return systemLdapContextPoolTimeout;
+    }
+
+    /**
+     * @param systemLdapContextPoolTimeout how long, in milliseconds, to wait for a pooled system context
+     */
+    public void setSystemLdapContextPoolTimeout(long systemLdapContextPoolTimeout) {
+      this.systemLdapContextPoolTimeout = systemLdapContextPoolTimeout;
+    }
+
+    public long getSystemLdapContextValidationInterval() {
+      return systemLdapContextValidationInterval;
+    }
+
+    /**
+     * @param systemLdapContextValidationInterval how long, in milliseconds, a pooled system context may
+     *                                            be idle before it is checked on reuse
+     */
+    public void setSystemLdapContextValidationInterval(long systemLdapContextValidationInterval) {
+      this.systemLdapContextValidationInterval = systemLdapContextValidationInterval;
+    }
+
     public String getSystemAuthenticationMechanism() {
         return systemAuthenticationMechanism != null? systemAuthenticationMechanism: getAuthenticationMechanism();
     }
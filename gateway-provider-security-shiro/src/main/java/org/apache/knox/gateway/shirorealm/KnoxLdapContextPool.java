@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.shirorealm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.shirorealm.impl.i18n.KnoxShiroMessages;
+
+/**
+ * A bounded pool of system LDAP contexts. Closing a borrowed context returns it to the pool after
+ * its request controls and environment have been restored. Contexts idle for longer than the
+ * validation interval are checked by reading the root DSE before being handed out again, and
+ * contexts that failed with a communication error are discarded.
+ */
+class KnoxLdapContextPool {
+
+  private static final KnoxShiroMessages LOG = MessagesFactory.get(KnoxShiroMessages.class);
+
+  private static final String[] NO_ATTRIBUTES = { "1.1" };
+
+  /**
+   * Opens a new system LDAP context when the pool has no idle context to hand out.
+   */
+  interface ContextFactory {
+    LdapContext create() throws NamingException;
+  }
+
+  private final ContextFactory factory;
+  private final Semaphore permits;
+  private final BlockingDeque<PooledContext> idle = new LinkedBlockingDeque<>();
+  private final long borrowTimeout;
+  private final long validationInterval;
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  KnoxLdapContextPool(ContextFactory factory, int maxSize, long borrowTimeout, long validationInterval) {
+    this.factory = factory;
+    this.permits = new Semaphore(maxSize, true);
+    this.borrowTimeout = borrowTimeout;
+    this.validationInterval = validationInterval;
+  }
+
+  LdapContext borrow() throws NamingException {
+    if (closed.get()) {
+      throw new ServiceUnavailableException("The LDAP context pool is closed");
+    }
+    try {
+      if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+        throw new ServiceUnavailableException("Timed out waiting for a pooled LDAP context");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      NamingException interrupted = new ServiceUnavailableException("Interrupted while waiting for a pooled LDAP context");
+      interrupted.setRootCause(e);
+      throw interrupted;
+    }
+
+    try {
+      long now = System.currentTimeMillis();
+      PooledContext pooled;
+      while ((pooled = idle.pollFirst()) != null) {
+        if (now - pooled.lastUsed < validationInterval || isHealthy(pooled.context)) {
+          return pooled.borrow();
+        }
+        discard(pooled);
+      }
+      return new PooledContext(factory.create()).borrow();
+    } catch (NamingException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  int getIdleCount() {
+    return idle.size();
+  }
+
+  void close() {
+    closed.set(true);
+    PooledContext pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      discard(pooled);
+    }
+  }
+
+  private void release(PooledContext pooled, boolean broken) {
+    try {
+      if (!broken && !closed.get() && pooled.reset()) {
+        pooled.lastUsed = System.currentTimeMillis();
+        // Most recently used first, so surplus contexts go idle long enough to be validated or dropped
+        idle.offerFirst(pooled);
+      } else {
+        discard(pooled);
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static boolean isHealthy(LdapContext context) {
+    try {
+      context.getAttributes("", NO_ATTRIBUTES);
+      return true;
+    } catch (NamingException e) {
+      LOG.discardingPooledLdapContext(e);
+      return false;
+    }
+  }
+
+  private static void discard(PooledContext pooled) {
+    try {
+      pooled.context.close();
+    } catch (NamingException e) {
+      // Ignore exception on close.
+    }
+  }
+
+  private class PooledContext {
+    private final LdapContext context;
+    private long lastUsed;
+    private final Map<String, Object> changedEnvironment = new HashMap<>();
+    private boolean changedRequestControls;
+
+    PooledContext(LdapContext context) {
+      this.context = context;
+    }
+
+    LdapContext borrow() {
+      return (LdapContext) Proxy.newProxyInstance(LdapContext.class.getClassLoader(),
+          new Class<?>[] { LdapContext.class }, new Handler(this));
+    }
+
+    void recordEnvironmentChange(String name) throws NamingException {
+      if (!changedEnvironment.containsKey(name)) {
+        changedEnvironment.put(name, context.getEnvironment().get(name));
+      }
+    }
+
+    boolean reset() {
+      try {
+        if (changedRequestControls) {
+          context.setRequestControls((Control[]) null);
+          changedRequestControls = false;
+        }
+        for (Map.Entry<String, Object> original : changedEnvironment.entrySet()) {
+          if (original.getValue() == null) {
+            context.removeFromEnvironment(original.getKey());
+          } else {
+            context.addToEnvironment(original.getKey(), original.getValue());
+          }
+        }
+        changedEnvironment.clear();
+        return true;
+      } catch (NamingException e) {
+        return false;
+      }
+    }
+  }
+
+  private class Handler implements InvocationHandler {
+    private final PooledContext pooled;
+    private boolean released;
+    private boolean broken;
+
+    Handler(PooledContext pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("close".equals(name) && method.getParameterCount() == 0) {
+        if (!released) {
+          released = true;
+          release(pooled, broken);
+        }
+        return null;
+      }
+      if (released) {
+        throw new IllegalStateException("The LDAP context has been returned to the pool");
+      }
+      if ("addToEnvironment".equals(name) || "removeFromEnvironment".equals(name)) {
+        pooled.recordEnvironmentChange((String) args[0]);
+      } else if ("setRequestControls".equals(name)) {
+        pooled.changedRequestControls = true;
+      }
+      try {
+        return method.invoke(pooled.context, args);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CommunicationException || cause instanceof ServiceUnavailableException) {
+          broken = true;
+        }
+        throw cause;
+      }
+    }
+  }
+}
@@ -19,7 +19,9 @@
 
 package org.apache.knox.gateway.shirorealm;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.knox.gateway.GatewayMessages;
+import org.apache.knox.gateway.GatewayServer;
 import org.apache.knox.gateway.audit.api.Action;
 import org.apache.knox.gateway.audit.api.ActionOutcome;
 import org.apache.knox.gateway.audit.api.AuditService;
@@ -28,6 +30,9 @@ import org.apache.knox.gateway.audit.api.Auditor;
 import org.apache.knox.gateway.audit.api.ResourceType;
 import org.apache.knox.gateway.audit.log4j.audit.AuditConstants;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.metrics.MetricsService;
 import org.apache.knox.gateway.shirorealm.impl.i18n.KnoxShiroMessages;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authc.AuthenticationInfo;
@@ -36,15 +41,18 @@ import org.apache.shiro.authc.SimpleAuthenticationInfo;
 import org.apache.shiro.authc.credential.HashedCredentialsMatcher;
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.crypto.SecureRandomNumberGenerator;
 import org.apache.shiro.crypto.hash.DefaultHashService;
 import org.apache.shiro.crypto.hash.Hash;
 import org.apache.shiro.crypto.hash.HashRequest;
 import org.apache.shiro.crypto.hash.HashService;
+import org.apache.shiro.crypto.hash.Sha256Hash;
 import org.apache.shiro.realm.ldap.DefaultLdapRealm;
 import org.apache.shiro.realm.ldap.LdapContextFactory;
 import org.apache.shiro.realm.ldap.LdapUtils;
 import org.apache.shiro.subject.MutablePrincipalCollection;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.util.ByteSource;
 import org.apache.shiro.util.StringUtils;
 
 import javax.naming.AuthenticationException;
@@ -100,6 +108,7 @@ import java.util.regex.Pattern;
  * ldapRealm.searchBase=ou=groups,dc=hadoop,dc=apache,dc=org
  * ldapRealm.groupObjectClass=groupofnames
  * ldapRealm.memberAttribute=member
+ * ldapRealm.groupSearchPageSize=100
  * ldapRealm.memberAttributeValueTemplate=cn={0},ou=people,dc=hadoop,dc=apache,dc=org
  * ldapRealm.contextFactory.systemUsername=uid=guest,ou=people,dc=hadoop,dc=apache,dc=org
  * ldapRealm.contextFactory.clusterName=sandbox
@@ -123,6 +132,11 @@ import java.util.regex.Pattern;
  *
  * securityManager.realms = $ldapRealm
  *
+ * # optional cache of LDAP authentication and group lookups
+ * ldapRealm.ldapCacheEnabled = true
+ * ldapRealm.ldapCacheTtl = 300000
+ * ldapRealm.ldapCacheMaxEntries = 10000
+ *
  * </pre>
  */
 public class KnoxLdapRealm extends DefaultLdapRealm {
@@ -151,6 +165,11 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
 
     private static final String HASHING_ALGORITHM = "SHA-256";
 
+    private static final long DEFAULT_LDAP_CACHE_TTL = 300000L;
+    private static final int DEFAULT_LDAP_CACHE_MAX_ENTRIES = 10000;
+
+    private static final int DEFAULT_GROUP_SEARCH_PAGE_SIZE = 100;
+
     static {
           SUBTREE_SCOPE.setSearchScope(SearchControls.SUBTREE_SCOPE);
           ONELEVEL_SCOPE.setSearchScope(SearchControls.ONELEVEL_SCOPE);
@@ -175,6 +194,9 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
 
     private String groupIdAttribute = "cn";
 
+    private boolean groupSearchByMemberEnabled;
+    private int groupSearchPageSize = DEFAULT_GROUP_SEARCH_PAGE_SIZE;
+
     private String memberAttributeValuePrefix = "uid={0}";
     private String memberAttributeValueSuffix = "";
 
@@ -188,11 +210,70 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
 
     private HashService hashService = new DefaultHashService();
 
+    private boolean ldapCacheEnabled;
+    private long ldapCacheTtl = DEFAULT_LDAP_CACHE_TTL;
+    private int ldapCacheMaxEntries = DEFAULT_LDAP_CACHE_MAX_ENTRIES;
+
+    // Cache keys hash the credentials with a salt that never leaves this realm
+    private final ByteSource credentialsSalt = new SecureRandomNumberGenerator().nextBytes();
+    private KnoxLdapCache<String> userDnCache;
+    private KnoxLdapCache<LdapAuthentication> authenticationCache;
+    private KnoxLdapCache<LdapGroups> authorizationCache;
+
     public KnoxLdapRealm() {
       HashedCredentialsMatcher credentialsMatcher = new HashedCredentialsMatcher(HASHING_ALGORITHM);
       setCredentialsMatcher(credentialsMatcher);
     }
 
+  @Override
+  protected void onInit() {
+    super.onInit();
+    if (ldapCacheEnabled && ldapCacheTtl > 0 && ldapCacheMaxEntries > 0) {
+      MetricRegistry metrics = getMetricRegistry();
+      String prefix = MetricRegistry.name("ldap", "cache", getClusterName(), getName());
+      userDnCache = new KnoxLdapCache<>(ldapCacheMaxEntries, ldapCacheTtl, metrics,
+          MetricRegistry.name(prefix, "user-dn"));
+      authenticationCache = new KnoxLdapCache<>(ldapCacheMaxEntries, ldapCacheTtl, metrics,
+          MetricRegistry.name(prefix, "authentication"));
+      authorizationCache = new KnoxLdapCache<>(ldapCacheMaxEntries, ldapCacheTtl, metrics,
+          MetricRegistry.name(prefix, "authorization"));
+    }
+  }
+
+  private String getClusterName() {
+    LdapContextFactory contextFactory = getContextFactory();
+    if (contextFactory instanceof KnoxLdapContextFactory) {
+      return ((KnoxLdapContextFactory) contextFactory).getClusterName();
+    }
+    return null;
+  }
+
+  private static MetricRegistry getMetricRegistry() {
+    GatewayServices services = GatewayServer.getGatewayServices();
+    if (services != null) {
+      MetricsService metricsService = services.getService(ServiceType.METRICS_SERVICE);
+      if (metricsService != null) {
+        return metricsService.getRegistry();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected AuthenticationInfo queryForAuthenticationInfo(final AuthenticationToken token,
+      final LdapContextFactory ldapContextFactory) throws NamingException {
+    if (authenticationCache == null || token.getCredentials() == null) {
+      return super.queryForAuthenticationInfo(token, ldapContextFactory);
+    }
+    // Only successful binds are cached, so a wrong password always reaches the directory
+    Object userDn = getLdapPrincipal(token);
+    String credentialsHash = new Sha256Hash(ByteSource.Util.bytes(token.getCredentials()), credentialsSalt).toHex();
+    LdapAuthentication authentication = authenticationCache.get(userDn + "#" + credentialsHash,
+        () -> new LdapAuthentication(super.queryForAuthenticationInfo(token, ldapContextFactory)));
+    // The principals are added to once the groups are looked up, so every login gets its own
+    return authentication.newAuthenticationInfo(getName());
+  }
+
   @Override
   //KNOX-534 overriding this method to be able to audit authentication exceptions
   protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws org.apache.shiro.authc.AuthenticationException {
@@ -238,33 +319,74 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
         final LdapContextFactory ldapContextFactory) throws NamingException {
         final String username = (String) getAvailablePrincipal(principals);
 
-        LdapContext systemLdapCtx = null;
+        final String userDn;
+        if (userSearchAttributeName == null || userSearchAttributeName.isEmpty()) {
+          // memberAttributeValuePrefix and memberAttributeValueSuffix were computed from memberAttributeValueTemplate
+          userDn = memberAttributeValuePrefix + username + memberAttributeValueSuffix;
+        } else {
+          userDn = getUserDn(username);
+        }
+
+        LdapGroups groups;
         try {
-            systemLdapCtx = ldapContextFactory.getSystemLdapContext();
-            return rolesFor(principals, username, systemLdapCtx, ldapContextFactory);
+          if (authorizationCache == null) {
+            groups = groupsFor(userDn, ldapContextFactory);
+          } else {
+            groups = authorizationCache.get(userDn, () -> groupsFor(userDn, ldapContextFactory));
+          }
         } catch (AuthenticationException e) {
           LOG.failedToGetSystemLdapConnection(e);
           return Collections.emptySet();
+        }
+
+        // save role names and group names in session so that they can be easily looked up outside of this object
+        Set<String> roleNames = new HashSet<>(groups.roleNames);
+        Set<String> groupNames = new HashSet<>(groups.groupNames);
+        SecurityUtils.getSubject().getSession().setAttribute(SUBJECT_USER_ROLES, roleNames);
+        SecurityUtils.getSubject().getSession().setAttribute(SUBJECT_USER_GROUPS, groupNames);
+        if (!groupNames.isEmpty() && (principals instanceof MutablePrincipalCollection)) {
+          ((MutablePrincipalCollection)principals).addAll(groupNames, getName());
+        }
+        LOG.lookedUpUserRoles(roleNames, username);
+
+        return roleNames;
+    }
+
+    private LdapGroups groupsFor(final String userDn, final LdapContextFactory ldapContextFactory)
+        throws NamingException {
+        LdapContext systemLdapCtx = null;
+        try {
+            systemLdapCtx = ldapContextFactory.getSystemLdapContext();
+            return rolesFor(userDn, systemLdapCtx);
         } finally {
             LdapUtils.closeContext(systemLdapCtx);
         }
     }
 
-    private Set<String> rolesFor(PrincipalCollection principals, final String userName, final LdapContext ldapCtx,
-        final LdapContextFactory ldapContextFactory) throws NamingException {
+    private LdapGroups rolesFor(final String userDn, final LdapContext ldapCtx) throws NamingException {
       final Set<String> roleNames = new HashSet<>();
       final Set<String> groupNames = new HashSet<>();
 
-      String userDn;
-      if (userSearchAttributeName == null || userSearchAttributeName.isEmpty()) {
-        // memberAttributeValuePrefix and memberAttributeValueSuffix were computed from memberAttributeValueTemplate
-        userDn = memberAttributeValuePrefix + userName + memberAttributeValueSuffix;
+      // Let the directory match the member attribute rather than returning every group with all its members.
+      // Dynamic groups and posix groups, whose members are not DNs, are still matched here.
+      final boolean filterByMember = groupSearchByMemberEnabled
+          && !MEMBER_URL.equalsIgnoreCase(memberAttribute)
+          && !POSIX_GROUP.equalsIgnoreCase(groupObjectClass);
+      final String searchFilter;
+      final Object[] searchFilterArgs;
+      final SearchControls searchControls;
+      if (filterByMember) {
+        searchFilter = "(&(objectClass={0})(" + memberAttribute + "={1}))";
+        searchFilterArgs = new Object[] { groupObjectClass, userDn };
+        searchControls = groupSearchControls(getGroupIdAttribute());
       } else {
-        userDn = getUserDn(userName);
+        searchFilter = "(objectClass={0})";
+        searchFilterArgs = new Object[] { groupObjectClass };
+        searchControls = groupSearchControls(getGroupIdAttribute(), memberAttribute);
       }
 
       // Activate paged results
-      int pageSize = 100;
+      int pageSize = groupSearchPageSize;
       int numResults = 0;
       byte[] cookie = null;
       try {
@@ -280,13 +402,18 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
           try {
             searchResultEnum = ldapCtx.search(
                 getGroupSearchBase(),
-                "objectClass=" + groupObjectClass,
-                SUBTREE_SCOPE);
+                searchFilter,
+                searchFilterArgs,
+                searchControls);
 
             while (searchResultEnum != null && searchResultEnum.hasMore()) { // searchResults contains all the groups in search scope
               numResults++;
               final SearchResult group = searchResultEnum.next();
-              addRoleIfMember(userDn, group, roleNames, groupNames, ldapContextFactory);
+              if (filterByMember) {
+                addGroup(group.getAttributes().get(getGroupIdAttribute()).get().toString(), roleNames, groupNames);
+              } else {
+                addRoleIfMember(userDn, group, roleNames, groupNames, ldapCtx);
+              }
             }
           } catch (PartialResultException e) {
             LOG.ignoringPartialResultException();
@@ -316,20 +443,29 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
         LOG.unableToSetupPagedResults();
       }
 
-      // save role names and group names in session so that they can be easily looked up outside of this object
-      SecurityUtils.getSubject().getSession().setAttribute(SUBJECT_USER_ROLES, roleNames);
-      SecurityUtils.getSubject().getSession().setAttribute(SUBJECT_USER_GROUPS, groupNames);
-      if (!groupNames.isEmpty() && (principals instanceof MutablePrincipalCollection)) {
-        ((MutablePrincipalCollection)principals).addAll(groupNames, getName());
-      }
-      LOG.lookedUpUserRoles(roleNames, userName);
+      return new LdapGroups(roleNames, groupNames);
+    }
+
+    private static SearchControls groupSearchControls(String... returningAttributes) {
+      SearchControls searchControls = new SearchControls();
+      searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+      searchControls.setReturningAttributes(returningAttributes);
+      return searchControls;
+    }
 
-      return roleNames;
+    private void addGroup(final String groupName, final Set<String> roleNames, final Set<String> groupNames) {
+      groupNames.add(groupName);
+      String roleName = roleNameFor(groupName);
+      if (roleName != null) {
+        roleNames.add(roleName);
+      } else {
+        roleNames.add(groupName);
+      }
     }
 
   private void addRoleIfMember(final String userDn, final SearchResult group,
       final Set<String> roleNames, final Set<String> groupNames,
-      final LdapContextFactory ldapContextFactory) throws NamingException {
+      final LdapContext ldapCtx) throws NamingException {
 
     NamingEnumeration<? extends Attribute> attributeEnum = null;
     NamingEnumeration<?> e = null;
@@ -351,28 +487,16 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
           if (memberAttribute.equalsIgnoreCase(MEMBER_URL)) {
             boolean dynamicGroupMember = isUserMemberOfDynamicGroup(userLdapDn,
                 attrValue, // memberUrl value
-                ldapContextFactory);
+                ldapCtx);
             if (dynamicGroupMember) {
-              groupNames.add(groupName);
-              String roleName = roleNameFor(groupName);
-              if (roleName != null) {
-                roleNames.add(roleName);
-              } else {
-                roleNames.add(groupName);
-              }
+              addGroup(groupName, roleNames, groupNames);
             }
           } else {
             if (groupObjectClass.equalsIgnoreCase(POSIX_GROUP)){
               attrValue = memberAttributeValuePrefix + attrValue + memberAttributeValueSuffix;
             }
             if (userLdapDn.equals(new LdapName(attrValue))) {
-              groupNames.add(groupName);
-              String roleName = roleNameFor(groupName);
-              if (roleName != null) {
-                roleNames.add(roleName);
-              } else {
-                roleNames.add(groupName);
-              }
+              addGroup(groupName, roleNames, groupNames);
               break;
             }
           }
@@ -459,6 +583,29 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
         this.groupIdAttribute = groupIdAttribute;
     }
 
+    public boolean isGroupSearchByMemberEnabled() {
+      return groupSearchByMemberEnabled;
+    }
+
+    /**
+     * @param groupSearchByMemberEnabled whether group searches ask the directory for the groups whose
+     *                                   member attribute holds the user's DN, instead of reading every
+     *                                   group and its members. The directory then matches the DN by its
+     *                                   own rules, e.g. ignoring case, rather than comparing it as an
+     *                                   LDAP name here. Disabled by default.
+     */
+    public void setGroupSearchByMemberEnabled(boolean groupSearchByMemberEnabled) {
+      this.groupSearchByMemberEnabled = groupSearchByMemberEnabled;
+    }
+
+    public int getGroupSearchPageSize() {
+      return groupSearchPageSize;
+    }
+
+    public void setGroupSearchPageSize(int groupSearchPageSize) {
+      this.groupSearchPageSize = groupSearchPageSize > 0 ? groupSearchPageSize : DEFAULT_GROUP_SEARCH_PAGE_SIZE;
+    }
+
     public void setMemberAttributeValueTemplate(String template) {
         if (!StringUtils.hasText(template)) {
             String msg = "User DN template cannot be null or empty.";
@@ -504,6 +651,33 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
       this.userSearchAttributeName = userSearchAttributeName;
     }
 
+    public boolean isLdapCacheEnabled() {
+      return ldapCacheEnabled;
+    }
+
+    public void setLdapCacheEnabled(boolean ldapCacheEnabled) {
+      this.ldapCacheEnabled = ldapCacheEnabled;
+    }
+
+    public long getLdapCacheTtl() {
+      return ldapCacheTtl;
+    }
+
+    /**
+     * @param ldapCacheTtl how long, in milliseconds, authentication and group lookups are cached
+     */
+    public void setLdapCacheTtl(long ldapCacheTtl) {
+      this.ldapCacheTtl = ldapCacheTtl;
+    }
+
+    public int getLdapCacheMaxEntries() {
+      return ldapCacheMaxEntries;
+    }
+
+    public void setLdapCacheMaxEntries(int ldapCacheMaxEntries) {
+      this.ldapCacheMaxEntries = ldapCacheMaxEntries;
+    }
+
     public String getUserObjectClass() {
       return userObjectClass;
     }
@@ -536,7 +710,7 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
   }
 
   boolean isUserMemberOfDynamicGroup(LdapName userLdapDn, String memberUrl,
-      final LdapContextFactory ldapContextFactory) throws NamingException {
+      final LdapContext ldapCtx) throws NamingException {
 
     // ldap://host:port/dn?attributes?scope?filter?extensions
 
@@ -570,11 +744,13 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
     }
     // search for the filter, substituting base with userDn
     // search for base_dn=userDn, scope=base, filter=filter
-    LdapContext systemLdapCtx;
-    systemLdapCtx = ldapContextFactory.getSystemLdapContext();
+    // Search on the connection of the group search rather than borrowing another system context, which could
+    // exhaust the pool when many logins resolve dynamic groups at once. The new instance shares the connection
+    // without the paged results controls of the group search.
+    LdapContext memberLdapCtx = ldapCtx.newInstance(null);
     NamingEnumeration<SearchResult> searchResultEnum = null;
     try {
-      searchResultEnum = systemLdapCtx
+      searchResultEnum = memberLdapCtx
         .search(userLdapDn, searchFilter,
             "sub".equalsIgnoreCase(searchScope) ? SUBTREE_SCOPE
                 : ONELEVEL_SCOPE);
@@ -589,7 +765,7 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
           }
         }
         finally {
-          LdapUtils.closeContext(systemLdapCtx);
+          LdapUtils.closeContext(memberLdapCtx);
         }
     }
     return member;
@@ -674,6 +850,17 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
      */
     @Override
     protected String getUserDn( final String principal ) throws IllegalArgumentException, IllegalStateException {
+      if ( userDnCache == null ) {
+        return lookupUserDn( principal );
+      }
+      try {
+        return userDnCache.get( principal, () -> lookupUserDn( principal ) );
+      } catch (NamingException e) {
+        throw new IllegalArgumentException("Hit NamingException", e);
+      }
+    }
+
+    private String lookupUserDn( final String principal ) throws IllegalArgumentException, IllegalStateException {
       String userDn;
       Matcher matchedPrincipal = matchPrincipal( principal );
       String userSearchBase = getUserSearchBase();
@@ -762,4 +949,31 @@ public class KnoxLdapRealm extends DefaultLdapRealm {
     return output;
   }
 
+  private static class LdapAuthentication {
+    private final Object principal;
+    private final Object credentials;
+    private final ByteSource credentialsSalt;
+
+    LdapAuthentication(AuthenticationInfo info) {
+      this.principal = info.getPrincipals().getPrimaryPrincipal();
+      this.credentials = info.getCredentials();
+      this.credentialsSalt = info instanceof SimpleAuthenticationInfo
+          ? ((SimpleAuthenticationInfo) info).getCredentialsSalt() : null;
+    }
+
+    AuthenticationInfo newAuthenticationInfo(String realmName) {
+      return new SimpleAuthenticationInfo(principal, credentials, credentialsSalt, realmName);
+    }
+  }
+
+  private static class LdapGroups {
+    private final Set<String> roleNames;
+    private final Set<String> groupNames;
+
+    LdapGroups(Set<String> roleNames, Set<String> groupNames) {
+      this.roleNames = Collections.unmodifiableSet(roleNames);
+      this.groupNames = Collections.unmodifiableSet(groupNames);
+    }
+  }
+
 }
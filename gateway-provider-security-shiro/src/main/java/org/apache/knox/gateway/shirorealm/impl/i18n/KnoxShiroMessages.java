@@ -41,4 +41,7 @@ public interface KnoxShiroMessages {
   @Message(level = MessageLevel.INFO, text = "Successfully logged in: {0}, {1}")
   void successfulLoginAttempt(Subject subject, AuthenticationToken authToken);
 
+  @Message(level = MessageLevel.DEBUG, text = "Discarding pooled LDAP context that failed its health check: {0}")
+  void discardingPooledLdapContext(Exception e);
+
 }
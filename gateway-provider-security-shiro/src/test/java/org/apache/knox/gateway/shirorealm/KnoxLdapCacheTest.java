@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.shirorealm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+public class KnoxLdapCacheTest {
+
+  @Test
+  public void testCachedValueIsReturned() throws Exception {
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 60000L, null, "test");
+    AtomicInteger loads = new AtomicInteger();
+
+    KnoxLdapCache.Loader<String> loader = () -> "value" + loads.incrementAndGet();
+
+    assertEquals("value1", cache.get("key", loader));
+    assertEquals("value1", cache.get("key", loader));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testExpiredValueIsReloaded() throws Exception {
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 1L, null, "test");
+    cache.get("key", () -> "first");
+    Thread.sleep(10L);
+    assertEquals("second", cache.get("key", () -> "second"));
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testFailedLookupIsNotCached() throws Exception {
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 60000L, null, "test");
+    try {
+      cache.get("key", () -> {
+        throw new NamingException("unavailable");
+      });
+      fail("Expected the lookup failure to be rethrown");
+    } catch (NamingException e) {
+      assertEquals("unavailable", e.getExplanation());
+    }
+    assertEquals(0, cache.size());
+    assertEquals("value", cache.get("key", () -> "value"));
+  }
+
+  @Test
+  public void testConcurrentLookupsAreCoalesced() throws Exception {
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 60000L, null, "test");
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first = executor.submit(() -> cache.get("key", () -> {
+        loads.incrementAndGet();
+        loading.countDown();
+        release.await();
+        return "value";
+      }));
+      assertTrue(loading.await(10, TimeUnit.SECONDS));
+      Future<String> second = executor.submit(() -> cache.get("key", () -> {
+        loads.incrementAndGet();
+        return "other";
+      }));
+      release.countDown();
+      assertEquals("value", first.get(10, TimeUnit.SECONDS));
+      assertEquals("value", second.get(10, TimeUnit.SECONDS));
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSizeIsBounded() throws Exception {
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 60000L, null, "test");
+    for (int i = 0; i < 100; i++) {
+      String value = Integer.toString(i);
+      cache.get(value, () -> value);
+    }
+    assertTrue(cache.size() <= 11);
+    assertTrue(cache.getEvictionCount() > 0);
+  }
+
+  @Test
+  public void testMetricsArePublished() throws Exception {
+    MetricRegistry metrics = new MetricRegistry();
+    KnoxLdapCache<String> cache = new KnoxLdapCache<>(10, 60000L, metrics, "ldap.cache");
+    cache.get("key", () -> "value");
+    cache.get("key", () -> "value");
+
+    assertEquals(1, metrics.counter("ldap.cache.hits").getCount());
+    assertEquals(1, metrics.counter("ldap.cache.misses").getCount());
+    assertEquals(1, metrics.timer("ldap.cache.ldap-latency").getCount());
+    Gauge<?> ratio = metrics.getGauges().get("ldap.cache.hit-ratio");
+    assertEquals(0.5, (Double) ratio.getValue(), 0.001);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.shirorealm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Hashtable;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class KnoxLdapContextPoolTest {
+
+  @Test
+  public void testClosedContextIsReused() throws Exception {
+    LdapContext context = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.replay(context);
+    Deque<LdapContext> created = new ArrayDeque<>(Arrays.asList(context));
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(created::pop, 2, 1000L, 60000L);
+
+    pool.borrow().close();
+    assertEquals(1, pool.getIdleCount());
+    pool.borrow().close();
+    assertEquals(1, pool.getIdleCount());
+    EasyMock.verify(context);
+  }
+
+  @Test
+  public void testBorrowTimesOutWhenExhausted() throws Exception {
+    LdapContext context = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.replay(context);
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(() -> context, 1, 10L, 60000L);
+
+    LdapContext borrowed = pool.borrow();
+    try {
+      pool.borrow();
+      fail("Expected the pool to be exhausted");
+    } catch (ServiceUnavailableException e) {
+      // Expected
+    }
+    borrowed.close();
+    pool.borrow().close();
+  }
+
+  @Test
+  public void testBrokenContextIsDiscarded() throws Exception {
+    LdapContext broken = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.expect(broken.search(EasyMock.anyString(), EasyMock.anyString(), EasyMock.anyObject(SearchControls.class)))
+        .andThrow(new CommunicationException("connection reset"));
+    broken.close();
+    EasyMock.expectLastCall();
+    EasyMock.replay(broken);
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(() -> broken, 1, 1000L, 60000L);
+
+    LdapContext borrowed = pool.borrow();
+    try {
+      borrowed.search("ou=groups", "(objectClass=*)", new SearchControls());
+      fail("Expected the communication failure to be rethrown");
+    } catch (CommunicationException e) {
+      // Expected
+    }
+    borrowed.close();
+    assertEquals(0, pool.getIdleCount());
+    EasyMock.verify(broken);
+  }
+
+  @Test
+  public void testUnhealthyIdleContextIsReplaced() throws Exception {
+    LdapContext stale = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.expect(stale.getAttributes(EasyMock.eq(""), EasyMock.anyObject(String[].class)))
+        .andThrow(new CommunicationException("connection closed"));
+    stale.close();
+    EasyMock.expectLastCall();
+    LdapContext fresh = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.replay(stale, fresh);
+    Deque<LdapContext> created = new ArrayDeque<>(Arrays.asList(stale, fresh));
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(created::pop, 1, 1000L, 0L);
+
+    pool.borrow().close();
+    pool.borrow().close();
+    assertEquals(0, created.size());
+    EasyMock.verify(stale, fresh);
+  }
+
+  @Test
+  public void testRequestControlsAndEnvironmentAreRestored() throws Exception {
+    Hashtable<Object, Object> environment = new Hashtable<>();
+    environment.put(Context.REFERRAL, "follow");
+    LdapContext context = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.expect(context.getEnvironment()).andReturn(environment).anyTimes();
+    context.setRequestControls(EasyMock.anyObject(Control[].class));
+    EasyMock.expectLastCall();
+    EasyMock.expect(context.addToEnvironment(Context.REFERRAL, "ignore")).andReturn("follow");
+    context.setRequestControls(null);
+    EasyMock.expectLastCall();
+    EasyMock.expect(context.addToEnvironment(Context.REFERRAL, "follow")).andReturn("ignore");
+    EasyMock.replay(context);
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(() -> context, 1, 1000L, 60000L);
+
+    LdapContext borrowed = pool.borrow();
+    borrowed.setRequestControls(new Control[0]);
+    borrowed.addToEnvironment(Context.REFERRAL, "ignore");
+    borrowed.close();
+    assertEquals(1, pool.getIdleCount());
+    EasyMock.verify(context);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReturnedContextCannotBeUsed() throws NamingException {
+    LdapContext context = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.replay(context);
+    KnoxLdapContextPool pool = new KnoxLdapContextPool(() -> context, 1, 1000L, 60000L);
+
+    LdapContext borrowed = pool.borrow();
+    borrowed.close();
+    borrowed.search("ou=groups", "(objectClass=*)", new SearchControls());
+  }
+}
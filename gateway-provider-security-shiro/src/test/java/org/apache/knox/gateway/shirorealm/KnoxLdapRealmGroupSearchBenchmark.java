@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.shirorealm;
+
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.apache.knox.gateway.security.ldap.SimpleLdapDirectoryServer;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.naming.NamingException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the group lookup {@link KnoxLdapRealm} makes for each authorization against the embedded
+ * demo LDAP server, loaded with a synthetic directory of the given number of groups. The
+ * <code>baseline</code> mode reads every group with its members over a JNDI pooled system context.
+ * The <code>optimized</code> mode lets the directory match the member attribute and borrows system
+ * contexts from the {@link KnoxLdapContextFactory} pool.
+ * <p>
+ * This is not run as part of the build. Run the main method from the test classpath, for example
+ * from an IDE after running <code>mvn test-compile</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class KnoxLdapRealmGroupSearchBenchmark {
+
+  private static final String ROOT_DN = "dc=hadoop,dc=apache,dc=org";
+  private static final String PEOPLE_DN = "ou=people," + ROOT_DN;
+  private static final String GROUPS_DN = "ou=groups," + ROOT_DN;
+
+  private static final int USERS = 1000;
+  private static final int MEMBERS_PER_GROUP = 50;
+
+  @Param( { "1000", "10000" } )
+  public int groups;
+
+  @Param( { "baseline", "optimized" } )
+  public String mode;
+
+  private File ldif;
+  private SimpleLdapDirectoryServer ldap;
+  private KnoxLdapContextFactory contextFactory;
+  private KnoxLdapRealm realm;
+  private int next;
+
+  @Setup
+  public void startDirectory() throws Exception {
+    ldif = File.createTempFile( "knox-ldap-benchmark", ".ldif" );
+    writeDirectory( ldif );
+    TcpTransport transport = new TcpTransport( 0 );
+    ldap = new SimpleLdapDirectoryServer( ROOT_DN, ldif, transport );
+    ldap.start();
+    int port = transport.getAcceptor().getLocalAddress().getPort();
+
+    boolean optimized = "optimized".equals( mode );
+    contextFactory = new KnoxLdapContextFactory();
+    contextFactory.setUrl( "ldap://localhost:" + port );
+    contextFactory.setSystemUsername( "uid=guest," + PEOPLE_DN );
+    contextFactory.setSystemPassword( "guest-password" );
+    contextFactory.setSystemLdapContextPoolSize( optimized ? 8 : 0 );
+
+    realm = new KnoxLdapRealm();
+    realm.setContextFactory( contextFactory );
+    realm.setSearchBase( ROOT_DN );
+    realm.setGroupSearchBase( GROUPS_DN );
+    realm.setMemberAttributeValueTemplate( "uid={0}," + PEOPLE_DN );
+    realm.setAuthorizationEnabled( true );
+    realm.setGroupSearchByMemberEnabled( optimized );
+
+    // The realm keeps the looked up groups in the subject's session
+    SecurityUtils.setSecurityManager( new DefaultSecurityManager() );
+  }
+
+  @TearDown
+  public void stopDirectory() throws Exception {
+    SecurityUtils.setSecurityManager( null );
+    contextFactory.destroy();
+    ldap.stop( true );
+    Files.deleteIfExists( ldif.toPath() );
+  }
+
+  private void writeDirectory( File file ) throws IOException {
+    try( PrintWriter out = new PrintWriter( Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8 ) ) ) {
+      out.println( "version: 1" );
+      out.println();
+      entry( out, ROOT_DN, "objectclass: organization", "objectclass: dcObject", "o: Hadoop at Apache.org", "dc: hadoop" );
+      entry( out, PEOPLE_DN, "objectclass: top", "objectclass: organizationalUnit", "ou: people" );
+      entry( out, GROUPS_DN, "objectclass: top", "objectclass: organizationalUnit", "ou: groups" );
+      entry( out, "uid=guest," + PEOPLE_DN, "objectclass: top", "objectclass: person", "objectclass: organizationalPerson",
+          "objectclass: inetOrgPerson", "cn: Guest", "sn: User", "uid: guest", "userPassword: guest-password" );
+      for( int i = 0; i < USERS; i++ ) {
+        entry( out, "uid=user" + i + "," + PEOPLE_DN, "objectclass: top", "objectclass: person",
+            "objectclass: organizationalPerson", "objectclass: inetOrgPerson", "cn: User " + i, "sn: User", "uid: user" + i );
+      }
+      for( int i = 0; i < groups; i++ ) {
+        out.println( "dn: cn=group" + i + "," + GROUPS_DN );
+        out.println( "objectclass: top" );
+        out.println( "objectclass: groupOfNames" );
+        out.println( "cn: group" + i );
+        for( int j = 0; j < MEMBERS_PER_GROUP; j++ ) {
+          out.println( "member: uid=user" + ( ( i + j * 97 ) % USERS ) + "," + PEOPLE_DN );
+        }
+        out.println();
+      }
+    }
+  }
+
+  private static void entry( PrintWriter out, String dn, String... attributes ) {
+    out.println( "dn: " + dn );
+    for( String attribute : attributes ) {
+      out.println( attribute );
+    }
+    out.println();
+  }
+
+  @Benchmark
+  public AuthorizationInfo lookupGroups() throws NamingException {
+    next = ( next + 1 ) % USERS;
+    return realm.queryForAuthorizationInfo( new SimplePrincipalCollection( "user" + next, realm.getName() ), contextFactory );
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    new Runner( new OptionsBuilder().include( KnoxLdapRealmGroupSearchBenchmark.class.getSimpleName() ).build() ).run();
+  }
+}
@@ -19,10 +19,25 @@
 
 package org.apache.knox.gateway.shirorealm;
 
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.realm.ldap.LdapContextFactory;
+import org.apache.shiro.subject.MutablePrincipalCollection;
+import org.easymock.EasyMock;
 import org.junit.Test;
 
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class KnoxLdapRealmTest {
 
@@ -102,4 +117,63 @@ public class KnoxLdapRealmTest {
     realm.setSearchBase("dc=knox,dc=example,dc=com");
     assertEquals(realm.getGroupSearchBase(), "dc=knox,dc=example,dc=com");
   }
+
+  @Test
+  public void verifyDefaultGroupSearchByMember() {
+    KnoxLdapRealm realm = new KnoxLdapRealm();
+    assertFalse(realm.isGroupSearchByMemberEnabled());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void verifyDynamicGroupMembershipUsesGroupSearchContext() throws Exception {
+    LdapName userDn = new LdapName("uid=guest,ou=people,dc=hadoop,dc=apache,dc=org");
+
+    NamingEnumeration<SearchResult> results = EasyMock.createNiceMock(NamingEnumeration.class);
+    EasyMock.expect(results.hasMore()).andReturn(true);
+    LdapContext memberCtx = EasyMock.createNiceMock(LdapContext.class);
+    EasyMock.expect(memberCtx.search(EasyMock.eq(userDn), EasyMock.eq("(uid=guest)"), EasyMock.anyObject(SearchControls.class)))
+        .andReturn(results);
+    memberCtx.close();
+    EasyMock.expectLastCall();
+    // No system context is borrowed for the membership test, the context of the group search is used
+    LdapContext groupSearchCtx = EasyMock.createStrictMock(LdapContext.class);
+    EasyMock.expect(groupSearchCtx.newInstance((Control[]) null)).andReturn(memberCtx);
+    EasyMock.replay(results, memberCtx, groupSearchCtx);
+
+    KnoxLdapRealm realm = new KnoxLdapRealm();
+    assertTrue(realm.isUserMemberOfDynamicGroup(userDn,
+        "ldap:///ou=people,dc=hadoop,dc=apache,dc=org??sub?(uid=guest)", groupSearchCtx));
+    EasyMock.verify(memberCtx, groupSearchCtx);
+  }
+
+  @Test
+  public void verifyCachedLoginsGetDistinctPrincipals() throws Exception {
+    LdapContext userCtx = EasyMock.createNiceMock(LdapContext.class);
+    // Only the first login binds, the second one is served from the cache
+    LdapContextFactory contextFactory = EasyMock.createStrictMock(LdapContextFactory.class);
+    EasyMock.expect(contextFactory.getLdapContext(EasyMock.eq((Object) "uid=guest,ou=people,dc=hadoop,dc=apache,dc=org"),
+        EasyMock.aryEq("guest-password".toCharArray()))).andReturn(userCtx);
+    EasyMock.replay(userCtx, contextFactory);
+
+    KnoxLdapRealm realm = new KnoxLdapRealm();
+    realm.setUserDnTemplate("uid={0},ou=people,dc=hadoop,dc=apache,dc=org");
+    realm.setContextFactory(contextFactory);
+    realm.setLdapCacheEnabled(true);
+    realm.init();
+
+    AuthenticationInfo first = realm.queryForAuthenticationInfo(
+        new UsernamePasswordToken("guest", "guest-password"), contextFactory);
+    AuthenticationInfo second = realm.queryForAuthenticationInfo(
+        new UsernamePasswordToken("guest", "guest-password"), contextFactory);
+    EasyMock.verify(contextFactory);
+
+    assertNotSame(first.getPrincipals(), second.getPrincipals());
+    assertEquals(first.getPrincipals(), second.getPrincipals());
+    assertEquals(first.getCredentials(), second.getCredentials());
+
+    // The groups added to one login don't show up in the other
+    ((MutablePrincipalCollection) first.getPrincipals()).add("analyst", realm.getName());
+    assertEquals(1, second.getPrincipals().asList().size());
+  }
 }
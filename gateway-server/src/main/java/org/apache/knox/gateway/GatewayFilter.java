@@ -17,6 +17,7 @@
  */
 package org.apache.knox.gateway;
 
+import com.codahale.metrics.Timer;
 import org.apache.knox.gateway.audit.api.Action;
 import org.apache.knox.gateway.audit.api.ActionOutcome;
 import org.apache.knox.gateway.audit.api.AuditContext;
@@ -32,6 +33,7 @@ import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
 import org.apache.knox.gateway.topology.Topology;
+import org.apache.knox.gateway.util.urltemplate.LiteralMatcher;
 import org.apache.knox.gateway.util.urltemplate.Matcher;
 import org.apache.knox.gateway.util.urltemplate.Parser;
 import org.apache.knox.gateway.util.urltemplate.Template;
@@ -57,6 +59,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class GatewayFilter implements Filter {
 
@@ -73,9 +77,15 @@ public class GatewayFilter implements Filter {
       AuditConstants.DEFAULT_AUDITOR_NAME, AuditConstants.KNOX_SERVICE_NAME,
       AuditConstants.KNOX_COMPONENT_NAME );
 
+  // Nanoseconds spent in the rest of the chain, as last reported by a timed filter on this thread
+  private static final ThreadLocal<long[]> DOWNSTREAM_NANOS = ThreadLocal.withInitial( () -> new long[ 1 ] );
+
   private Set<Holder> holders;
   private Matcher<Chain> chains;
+  private final List<Chain> chainsInOrder = new ArrayList<>();
+  private final AtomicReference<LiteralMatcher<Chain>> routes = new AtomicReference<>();
   private FilterConfig config;
+  private ChainTimers timers;
 
   public GatewayFilter() {
     holders = new HashSet<>();
@@ -85,6 +95,35 @@ public class GatewayFilter implements Filter {
   @Override
   public void init( FilterConfig filterConfig ) throws ServletException {
     this.config = filterConfig;
+    routes.set( compileRoutes() );
+  }
+
+  private LiteralMatcher<Chain> getRoutes() {
+    LiteralMatcher<Chain> compiled = routes.get();
+    if( compiled == null ) {
+      compiled = compileRoutes();
+      routes.set( compiled );
+    }
+    return compiled;
+  }
+
+  private LiteralMatcher<Chain> compileRoutes() {
+    for( Chain chain : chainsInOrder ) {
+      chain.link( timers );
+    }
+    return chains.compile();
+  }
+
+  /**
+   * Times every request by the service role of the chain it is routed to and every filter of the
+   * chain by its role, excluding the time spent in the filters after it. The timers are resolved
+   * once when the routes are compiled, so this must be called before {@link #init(FilterConfig)}.
+   *
+   * @param timers provides the timers, or null to stop timing
+   */
+  public void setChainTimers( ChainTimers timers ) {
+    this.timers = timers;
+    routes.set( null );
   }
 
   @Override
@@ -107,31 +146,27 @@ public class GatewayFilter implements Filter {
     String requestPath = ( servlet == null ? "" : servlet ) + ( path == null ? "" : path );
     String requestPathWithQuery = requestPath + ( query == null ? "" : "?" + query );
 
-    Template pathWithQueryTemplate;
-    try {
-      pathWithQueryTemplate = Parser.parseLiteral( requestPathWithQuery );
-    } catch( URISyntaxException e ) {
-      throw new ServletException( e );
-    }
     String contextWithPathAndQuery = httpRequest.getContextPath() + requestPathWithQuery;
     LOG.receivedRequest( httpRequest.getMethod(), requestPath );
 
-    servletRequest.setAttribute(
-        AbstractGatewayFilter.SOURCE_REQUEST_URL_ATTRIBUTE_NAME, pathWithQueryTemplate );
+    // The source URL template is only parsed if a filter asks for it.
+    servletRequest = new SourceUrlRequest( httpRequest, requestPathWithQuery );
     servletRequest.setAttribute(
         AbstractGatewayFilter.SOURCE_REQUEST_CONTEXT_URL_ATTRIBUTE_NAME, contextWithPathAndQuery );
 
-    Matcher<Chain>.Match match = chains.match( pathWithQueryTemplate );
-
-    // if there was no match then look for a default service for the topology
-    if (match == null) {
-      Topology topology = (Topology) servletRequest.getServletContext().getAttribute("org.apache.knox.gateway.topology");
-      if (topology != null) {
-        String defaultServicePath = topology.getDefaultServicePath();
-        if (defaultServicePath != null) {
-          try {
-            String newPathWithQuery = defaultServicePath + "/" + pathWithQueryTemplate;
-            match = chains.match(Parser.parseLiteral(newPathWithQuery));
+    LiteralMatcher<Chain> router = getRoutes();
+    Chain chain;
+    try {
+      chain = router.match( requestPathWithQuery );
+
+      // if there was no match then look for a default service for the topology
+      if (chain == null) {
+        Topology topology = (Topology) servletRequest.getServletContext().getAttribute("org.apache.knox.gateway.topology");
+        if (topology != null) {
+          String defaultServicePath = topology.getDefaultServicePath();
+          if (defaultServicePath != null) {
+            String newPathWithQuery = defaultServicePath + "/" + Parser.parseLiteral( requestPathWithQuery );
+            chain = router.match(newPathWithQuery);
             String origUrl = ((HttpServletRequest) servletRequest).getRequestURL().toString();
             String url = origUrl;
             if (path == null || "/".equals(path)) {
@@ -143,25 +178,24 @@ public class GatewayFilter implements Filter {
             servletRequest = new ForwardedRequest((HttpServletRequest) servletRequest,
                 defaultServicePath,
                 url);
-          } catch (URISyntaxException e) {
-            throw new ServletException( e );
           }
         }
       }
+    } catch (URISyntaxException e) {
+      throw new ServletException( e );
     }
 
     assignCorrelationRequestId();
     // Populate Audit/correlation parameters
     AuditContext auditContext = auditService.getContext();
-    auditContext.setTargetServiceName( match == null ? null : match.getValue().getResourceRole() );
+    auditContext.setTargetServiceName( chain == null ? null : chain.getResourceRole() );
     auditContext.setRemoteIp( getRemoteAddress(servletRequest) );
     auditContext.setRemoteHostname( servletRequest.getRemoteHost() );
     auditor.audit(
         Action.ACCESS, contextWithPathAndQuery, ResourceType.URI,
         ActionOutcome.UNAVAILABLE, RES.requestMethod(((HttpServletRequest)servletRequest).getMethod()));
 
-    if( match != null ) {
-      Chain chain = match.getValue();
+    if( chain != null ) {
       servletRequest.setAttribute( AbstractGatewayFilter.TARGET_SERVICE_ROLE, chain.getResourceRole() );
       try {
         chain.doFilter( servletRequest, servletResponse );
@@ -211,23 +245,33 @@ public class GatewayFilter implements Filter {
   }
 
   private void addHolder( Holder holder ) {
+    routes.set( null );
     holders.add( holder );
     Chain chain = chains.get( holder.template );
     if( chain == null ) {
       chain = new Chain();
       chain.setResourceRole( holder.getResourceRole() );
       chains.add( holder.template, chain );
+      chainsInOrder.add( chain );
     }
     chain.chainList.add( holder );
   }
 
   public void addFilter( String path, String name, Filter filter, Map<String,String> params, String resourceRole ) throws URISyntaxException {
-    Holder holder = new Holder( path, name, filter, params, resourceRole );
-    addHolder( holder );
+    addFilter( path, name, filter, params, resourceRole, null );
   }
 
   public void addFilter( String path, String name, String clazz, Map<String,String> params, String resourceRole ) throws URISyntaxException {
-    Holder holder = new Holder( path, name, clazz, params, resourceRole );
+    addFilter( path, name, clazz, params, resourceRole, null );
+  }
+
+  public void addFilter( String path, String name, Filter filter, Map<String,String> params, String resourceRole, String filterRole ) throws URISyntaxException {
+    Holder holder = new Holder( path, name, filter, params, resourceRole, filterRole );
+    addHolder( holder );
+  }
+
+  public void addFilter( String path, String name, String clazz, Map<String,String> params, String resourceRole, String filterRole ) throws URISyntaxException {
+    Holder holder = new Holder( path, name, clazz, params, resourceRole, filterRole );
     addHolder( holder );
   }
 
@@ -243,32 +287,69 @@ public class GatewayFilter implements Filter {
     }
   }
 
+  /**
+   * Provides the timers used by a {@link GatewayFilter} once {@link GatewayFilter#setChainTimers(ChainTimers)} is called.
+   */
+  public interface ChainTimers {
+    /**
+     * @param resourceRole the service role of a chain
+     * @return the timer for requests routed to chains of that service role
+     */
+    Timer getRequestTimer( String resourceRole );
+
+    /**
+     * @param resourceRole the service role of a chain
+     * @param filterRole the role of a filter in the chain, such as authentication or dispatch; may be null
+     * @param filterName the name of the filter
+     * @return the timer for the filter
+     */
+    Timer getFilterTimer( String resourceRole, String filterRole, String filterName );
+  }
+
   private class Chain implements FilterChain {
     private List<Holder> chainList;
     private String resourceRole;
+    private final AtomicReference<FilterChain> head = new AtomicReference<>( EMPTY_CHAIN );
+    private final AtomicReference<Timer> timer = new AtomicReference<>();
 
     Chain() {
       this.chainList = new ArrayList<>();
     }
 
-    Chain( List<Holder> chainList) {
-      this.chainList = chainList;
+    /*
+     * Links the filters once so that a request walks the chain without allocating sub-chains.
+     * Consecutive filters sharing a timer, such as those of one stage, are timed once together
+     * by the first of them, so the timer counts each request once.
+     */
+    void link( ChainTimers timers ) {
+      Timer[] filterTimers = new Timer[ chainList.size() ];
+      if( timers != null ) {
+        for( int i = 0; i < filterTimers.length; i++ ) {
+          Holder holder = chainList.get( i );
+          filterTimers[ i ] = timers.getFilterTimer( resourceRole, holder.getFilterRole(), holder.getFilterName() );
+        }
+      }
+      FilterChain next = EMPTY_CHAIN;
+      for( int i = chainList.size() - 1; i >= 0; i-- ) {
+        Timer filterTimer = i > 0 && filterTimers[ i ] == filterTimers[ i - 1 ] ? null : filterTimers[ i ];
+        next = new Link( chainList.get( i ), next, filterTimer );
+      }
+      timer.set( timers == null ? null : timers.getRequestTimer( resourceRole ) );
+      head.set( next );
     }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse ) throws IOException, ServletException {
-      if( chainList != null && !chainList.isEmpty() ) {
-        final Filter filter = chainList.get( 0 );
-        final FilterChain chain = subChain();
-        filter.doFilter( servletRequest, servletResponse, chain );
+      Timer requestTimer = timer.get();
+      if( requestTimer == null ) {
+        head.get().doFilter( servletRequest, servletResponse );
+        return;
       }
-    }
-
-    private FilterChain subChain() {
-      if( chainList != null && chainList.size() > 1 ) {
-        return new Chain( chainList.subList( 1, chainList.size() ) );
-      } else {
-        return EMPTY_CHAIN;
+      long start = System.nanoTime();
+      try {
+        head.get().doFilter( servletRequest, servletResponse );
+      } finally {
+        requestTimer.update( System.nanoTime() - start, TimeUnit.NANOSECONDS );
       }
     }
 
@@ -281,6 +362,36 @@ public class GatewayFilter implements Filter {
     }
   }
 
+  private static class Link implements FilterChain {
+    private final Filter filter;
+    private final FilterChain next;
+    private final Timer timer;
+
+    Link( Filter filter, FilterChain next, Timer timer ) {
+      this.filter = filter;
+      this.next = next;
+      this.timer = timer;
+    }
+
+    @Override
+    public void doFilter( ServletRequest servletRequest, ServletResponse servletResponse ) throws IOException, ServletException {
+      if( timer == null ) {
+        filter.doFilter( servletRequest, servletResponse, next );
+        return;
+      }
+      long[] downstream = DOWNSTREAM_NANOS.get();
+      downstream[ 0 ] = 0;
+      long start = System.nanoTime();
+      try {
+        filter.doFilter( servletRequest, servletResponse, next );
+      } finally {
+        long elapsed = System.nanoTime() - start;
+        timer.update( Math.max( 0, elapsed - downstream[ 0 ] ), TimeUnit.NANOSECONDS );
+        downstream[ 0 ] = elapsed;
+      }
+    }
+  }
+
   private class Holder implements Filter, FilterConfig {
     private Template template;
     private String name;
@@ -289,8 +400,9 @@ public class GatewayFilter implements Filter {
     private Class<? extends Filter> clazz;
     private String type;
     private String resourceRole;
+    private String filterRole;
 
-    Holder( String path, String name, Filter filter, Map<String,String> params, String resourceRole ) throws URISyntaxException {
+    Holder( String path, String name, Filter filter, Map<String,String> params, String resourceRole, String filterRole ) throws URISyntaxException {
       this.template = Parser.parseTemplate( path );
       this.name = name;
       this.params = params;
@@ -298,9 +410,10 @@ public class GatewayFilter implements Filter {
       this.clazz = filter.getClass();
       this.type = clazz.getCanonicalName();
       this.resourceRole = resourceRole;
+      this.filterRole = filterRole;
     }
 
-    Holder( String path, String name, String clazz, Map<String,String> params, String resourceRole ) throws URISyntaxException {
+    Holder( String path, String name, String clazz, Map<String,String> params, String resourceRole, String filterRole ) throws URISyntaxException {
       this.template = Parser.parseTemplate( path );
       this.name = name;
       this.params = params;
@@ -308,6 +421,7 @@ public class GatewayFilter implements Filter {
       this.clazz = null;
       this.type = clazz;
       this.resourceRole = resourceRole;
+      this.filterRole = filterRole;
     }
 
     @Override
@@ -389,6 +503,41 @@ public class GatewayFilter implements Filter {
       return resourceRole;
     }
 
+    private String getFilterRole() {
+      return filterRole;
+    }
+
+  }
+
+  /**
+   * A request wrapper that parses the source request URL template the first time
+   * it is read from the request attributes.
+   */
+  static class SourceUrlRequest extends HttpServletRequestWrapper {
+
+    private final String pathWithQuery;
+
+    SourceUrlRequest(final HttpServletRequest request, final String pathWithQuery) {
+      super(request);
+      this.pathWithQuery = pathWithQuery;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+      Object value = super.getAttribute(name);
+      if (value == null && AbstractGatewayFilter.SOURCE_REQUEST_URL_ATTRIBUTE_NAME.equals(name)) {
+        Template template;
+        try {
+          template = Parser.parseLiteral(pathWithQuery);
+        } catch (URISyntaxException e) {
+          throw new IllegalStateException(e);
+        }
+        super.setAttribute(name, template);
+        value = template;
+      }
+      return value;
+    }
+
   }
 
   /**
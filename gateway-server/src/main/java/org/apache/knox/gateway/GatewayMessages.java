@@ -658,4 +658,26 @@ public interface GatewayMessages {
 
   @Message(level = MessageLevel.INFO, text = "Stopping service: {0}")
   void stoppingService(String serviceTypeName);
+
+  @Message(level = MessageLevel.INFO,
+           text = "Created shared HTTP connection pool for {0} (max total: {1}, max per route: {2})")
+  void createdSharedHttpConnectionPool(String tlsIdentity, int maxTotal, int maxPerRoute);
+
+  @Message(level = MessageLevel.WARN, text = "The I/O reactor of the shared HTTP connection pool for {0} failed: {1}")
+  void sharedHttpConnectionPoolReactorFailed(String tlsIdentity, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.WARN, text = "Failed to refresh the cached groups of {0}: {1}")
+  void failedToRefreshGroups(String user, String error);
+
+  @Message(level = MessageLevel.INFO, text = "Enabled HTTP/2 on the connector listening on port {0}")
+  void enabledHttp2(int port);
+
+  @Message(level = MessageLevel.WARN, text = "HTTP/2 is not available on the TLS connector listening on port {0}, this JVM does not support ALPN: {1}")
+  void http2AlpnNotAvailable(int port, String error);
+
+  @Message(level = MessageLevel.INFO, text = "Handling requests on virtual threads")
+  void usingVirtualThreads();
+
+  @Message(level = MessageLevel.WARN, text = "Virtual threads are not supported by this JVM, handling requests on at most {0} threads")
+  void virtualThreadsNotSupported(int maxThreads);
 }
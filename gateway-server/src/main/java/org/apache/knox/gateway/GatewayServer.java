@@ -53,6 +53,12 @@ import org.apache.knox.gateway.util.Urls;
 import org.apache.knox.gateway.util.XmlUtils;
 import org.apache.knox.gateway.websockets.GatewayWebsocketHandler;
 import org.apache.log4j.PropertyConfigurator;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
@@ -62,11 +68,13 @@ import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.Configuration;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
@@ -433,7 +441,17 @@ public class GatewayServer {
       httpsConfig.addCustomizer( new SecureRequestCustomizer() );
       SSLService ssl = services.getService(ServiceType.SSL_SERVICE);
       SslContextFactory sslContextFactory = (SslContextFactory)ssl.buildSslContextFactory( config );
-      connector = new ServerConnector( server, sslContextFactory, new HttpConnectionFactory( httpsConfig ) );
+      ServerConnector http2Connector = null;
+      if (config.isHttp2Enabled()) {
+        http2Connector = createHttp2Connector( server, config, sslContextFactory, httpsConfig, connectorPort );
+      }
+      connector = http2Connector != null ? http2Connector
+          : new ServerConnector( server, sslContextFactory, new HttpConnectionFactory( httpsConfig ) );
+    } else if (config.isHttp2Enabled()) {
+      // h2c, either with prior knowledge or upgraded from HTTP/1.1
+      connector = new ServerConnector( server, new HttpConnectionFactory( httpConfig ),
+          configureHttp2( new HTTP2CServerConnectionFactory( httpConfig ), config ) );
+      log.enabledHttp2( connectorPort );
     } else {
       connector = new ServerConnector( server );
     }
@@ -452,6 +470,51 @@ public class GatewayServer {
     return connector;
   }
 
+  private static ThreadPool createThreadPool(final GatewayConfig config) {
+    if (config.isVirtualThreadsEnabled()) {
+      if (VirtualThreadPool.isSupported()) {
+        log.usingVirtualThreads();
+        // Only the acceptors, selectors and non-blocking tasks run on platform threads
+        return new VirtualThreadPool( new QueuedThreadPool( config.getThreadPoolMax() ) );
+      }
+      log.virtualThreadsNotSupported( config.getThreadPoolMax() );
+    }
+    return new QueuedThreadPool( config.getThreadPoolMax() );
+  }
+
+  /**
+   * Create a TLS connector that negotiates HTTP/2 or HTTP/1.1 with ALPN.
+   *
+   * @return the connector, or null if the JVM doesn't support ALPN
+   */
+  private static ServerConnector createHttp2Connector(final Server server, final GatewayConfig config,
+      final SslContextFactory sslContextFactory, final HttpConfiguration httpsConfig, final int port) {
+    ALPNServerConnectionFactory alpn;
+    try {
+      alpn = new ALPNServerConnectionFactory();
+    } catch (IllegalStateException e) {
+      log.http2AlpnNotAvailable( port, e.getMessage() );
+      return null;
+    }
+    alpn.setDefaultProtocol( HttpVersion.HTTP_1_1.asString() );
+    // HTTP/2 forbids some of the ciphers allowed for HTTP/1.1, so prefer the ones it allows
+    sslContextFactory.setCipherComparator( HTTP2Cipher.COMPARATOR );
+    log.enabledHttp2( port );
+    return new ServerConnector( server,
+        new SslConnectionFactory( sslContextFactory, alpn.getProtocol() ),
+        alpn,
+        configureHttp2( new HTTP2ServerConnectionFactory( httpsConfig ), config ),
+        new HttpConnectionFactory( httpsConfig ) );
+  }
+
+  private static AbstractHTTP2ServerConnectionFactory configureHttp2(
+      final AbstractHTTP2ServerConnectionFactory http2, final GatewayConfig config) {
+    http2.setMaxConcurrentStreams( config.getHttp2MaxConcurrentStreams() );
+    http2.setInitialStreamRecvWindow( config.getHttp2InitialStreamRecvWindow() );
+    http2.setInitialSessionRecvWindow( config.getHttp2InitialSessionRecvWindow() );
+    return http2;
+  }
+
   private static HandlerCollection createHandlers(
       final GatewayConfig config,
       final GatewayServices services,
@@ -603,7 +666,7 @@ public class GatewayServer {
     deployments = new ConcurrentHashMap<>();
 
     // Start Jetty.
-    jetty = new Server( new QueuedThreadPool( config.getThreadPoolMax() ) );
+    jetty = new Server( createThreadPool( config ) );
 
     /* topologyName is null because all topology listen on this port */
     jetty.addConnector( createConnector( jetty, config, config.getGatewayPort(), null) );
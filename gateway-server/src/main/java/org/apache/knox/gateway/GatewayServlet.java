@@ -19,6 +19,7 @@ package org.apache.knox.gateway;
 
 import org.apache.knox.gateway.audit.api.Action;
 import org.apache.knox.gateway.audit.api.ActionOutcome;
+import org.apache.knox.gateway.audit.api.AuditContext;
 import org.apache.knox.gateway.audit.api.AuditService;
 import org.apache.knox.gateway.audit.api.AuditServiceFactory;
 import org.apache.knox.gateway.audit.api.Auditor;
@@ -34,6 +35,8 @@ import org.apache.knox.gateway.services.ServiceType;
 import org.apache.knox.gateway.services.GatewayServices;
 import org.apache.knox.gateway.services.metrics.MetricsService;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -140,9 +143,11 @@ public class GatewayServlet implements Servlet, Filter {
       } else {
         ((HttpServletResponse)servletResponse).setStatus( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
       }
-      String requestUri = (String)servletRequest.getAttribute( AbstractGatewayFilter.SOURCE_REQUEST_CONTEXT_URL_ATTRIBUTE_NAME );
-      int status = ((HttpServletResponse)servletResponse).getStatus();
-      auditor.audit( Action.ACCESS, requestUri, ResourceType.URI, ActionOutcome.SUCCESS, res.responseStatus( status ) );
+      if( servletRequest.isAsyncStarted() ) {
+        servletRequest.getAsyncContext().addListener( new AccessAuditListener() );
+      } else {
+        auditAccess( servletRequest, servletResponse );
+      }
     } finally {
       auditService.detachContext();
     }
@@ -170,14 +175,22 @@ public class GatewayServlet implements Servlet, Filter {
       } else {
         ((HttpServletResponse)servletResponse).setStatus( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
       }
-      String requestUri = (String)servletRequest.getAttribute( AbstractGatewayFilter.SOURCE_REQUEST_CONTEXT_URL_ATTRIBUTE_NAME );
-      int status = ((HttpServletResponse)servletResponse).getStatus();
-      auditor.audit( Action.ACCESS, requestUri, ResourceType.URI, ActionOutcome.SUCCESS, res.responseStatus( status ) );
+      if( servletRequest.isAsyncStarted() ) {
+        servletRequest.getAsyncContext().addListener( new AccessAuditListener() );
+      } else {
+        auditAccess( servletRequest, servletResponse );
+      }
     } finally {
       auditService.detachContext();
     }
   }
 
+  private static void auditAccess( ServletRequest servletRequest, ServletResponse servletResponse ) {
+    String requestUri = (String)servletRequest.getAttribute( AbstractGatewayFilter.SOURCE_REQUEST_CONTEXT_URL_ATTRIBUTE_NAME );
+    int status = ((HttpServletResponse)servletResponse).getStatus();
+    auditor.audit( Action.ACCESS, requestUri, ResourceType.URI, ActionOutcome.SUCCESS, res.responseStatus( status ) );
+  }
+
   @Override
   public String getServletInfo() {
     return res.gatewayServletInfo();
@@ -251,6 +264,44 @@ public class GatewayServlet implements Servlet, Filter {
     return filter;
   }
 
+  /**
+   * Audits access for a request whose response was completed asynchronously, once the final
+   * response status is known, within the audit context of the original request.
+   */
+  private static class AccessAuditListener implements AsyncListener {
+    private final AuditContext auditContext = auditService.getContext();
+
+    @Override
+    public void onComplete( AsyncEvent event ) {
+      AuditContext previousContext = auditService.getContext();
+      auditService.attachContext( auditContext );
+      try {
+        auditAccess( event.getSuppliedRequest(), event.getSuppliedResponse() );
+      } finally {
+        if( previousContext != null ) {
+          auditService.attachContext( previousContext );
+        } else {
+          auditService.detachContext();
+        }
+      }
+    }
+
+    @Override
+    public void onTimeout( AsyncEvent event ) {
+      // The dispatch disables the async timeout; completion is always reported via onComplete.
+    }
+
+    @Override
+    public void onError( AsyncEvent event ) {
+      // The dispatch completes the request after an error; completion is reported via onComplete.
+    }
+
+    @Override
+    public void onStartAsync( AsyncEvent event ) {
+      // Not restarted by the dispatch.
+    }
+  }
+
   private static class FilterConfigAdapter implements FilterConfig {
 
     private ServletConfig config;
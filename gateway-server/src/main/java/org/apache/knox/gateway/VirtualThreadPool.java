@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway;
+
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A Jetty thread pool that starts a virtual thread for every job handling a request. A request
+ * blocked on a backend then only holds a virtual thread, so the number of requests in flight is
+ * no longer capped by the size of a platform thread pool.
+ * <p>
+ * The acceptors, the selectors and the non-blocking tasks keep running on a platform thread pool,
+ * which only grows with the number of connectors. A job handles a request if it is an
+ * {@link HttpChannel}, dispatched again by the servlet async API, or a blocking {@link Invocable}
+ * task, such as reading a request once its connection is readable.
+ * <p>
+ * Virtual threads are looked up reflectively, since the gateway is built for Java 8. They don't
+ * inherit inheritable thread locals, so a request never starts with the log4j MDC, and with it
+ * the audit and correlation contexts, of the thread that accepted its connection.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool, TryExecutor {
+
+  private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+  private final QueuedThreadPool platformThreads;
+  private final AtomicInteger threads = new AtomicInteger();
+  private final AtomicReference<ExecutorService> executor = new AtomicReference<>();
+  private final AtomicReference<CountDownLatch> stopped = new AtomicReference<>(new CountDownLatch(0));
+
+  /**
+   * @return true if this JVM supports virtual threads
+   */
+  static boolean isSupported() {
+    return VIRTUAL_THREAD_FACTORY != null;
+  }
+
+  /**
+   * @param platformThreads runs the jobs that don't handle a request, managed by this pool
+   */
+  VirtualThreadPool(QueuedThreadPool platformThreads) {
+    this.platformThreads = platformThreads;
+    addBean(platformThreads);
+  }
+
+  private static ThreadFactory createVirtualThreadFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builderClass.getMethod("name", String.class, long.class).invoke(builder, "knox-request-", 0L);
+      builderClass.getMethod("inheritInheritableThreadLocals", boolean.class).invoke(builder, false);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    if (!isSupported()) {
+      throw new IllegalStateException("Virtual threads are not supported by this JVM");
+    }
+    Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    executor.set((ExecutorService) newThreadPerTaskExecutor.invoke(null, VIRTUAL_THREAD_FACTORY));
+    stopped.set(new CountDownLatch(1));
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    // Requests may hand tasks to the platform threads until they are done
+    ExecutorService service = executor.getAndSet(null);
+    if (service != null) {
+      service.shutdown();
+      long timeout = getStopTimeout();
+      if (timeout <= 0 || !service.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+        service.shutdownNow();
+      }
+    }
+    super.doStop();
+    stopped.get().countDown();
+  }
+
+  @Override
+  public void execute(Runnable job) {
+    if (!isRequestJob(job)) {
+      platformThreads.execute(job);
+      return;
+    }
+    ExecutorService service = executor.get();
+    if (service == null) {
+      throw new RejectedExecutionException("The virtual thread pool is not running");
+    }
+    service.execute(() -> {
+      threads.incrementAndGet();
+      try {
+        job.run();
+      } finally {
+        threads.decrementAndGet();
+      }
+    });
+  }
+
+  /**
+   * No thread is reserved to take over from the caller. A selector then keeps selecting and
+   * executes the tasks it produces, instead of running a blocking task itself and handing the
+   * selection over to another platform thread.
+   *
+   * @return false
+   */
+  @Override
+  public boolean tryExecute(Runnable task) {
+    return false;
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    platformThreads.join();
+    stopped.get().await();
+  }
+
+  /**
+   * @return the platform threads and the virtual threads handling a request
+   */
+  @Override
+  public int getThreads() {
+    return platformThreads.getThreads() + threads.get();
+  }
+
+  /**
+   * @return the idle platform threads, virtual threads are never idle
+   */
+  @Override
+  public int getIdleThreads() {
+    return platformThreads.getIdleThreads();
+  }
+
+  /**
+   * @return true if the platform threads run out, requests never wait for a virtual thread
+   */
+  @Override
+  public boolean isLowOnThreads() {
+    return platformThreads.isLowOnThreads();
+  }
+
+  static boolean isRequestJob(Runnable job) {
+    if (job instanceof HttpChannel) {
+      return true;
+    }
+    return job instanceof Invocable && !(job instanceof ExecutionStrategy)
+        && Invocable.getInvocationType(job) == Invocable.InvocationType.BLOCKING;
+  }
+}
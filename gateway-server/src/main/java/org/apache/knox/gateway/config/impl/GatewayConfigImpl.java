@@ -116,7 +116,19 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
   private static final String HTTP_CLIENT_MAX_CONNECTION = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.maxConnections";
   private static final String HTTP_CLIENT_CONNECTION_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionTimeout";
   private static final String HTTP_CLIENT_SOCKET_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.socketTimeout";
+  private static final String HTTP_CLIENT_SHARED_POOL_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.pool.shared.enabled";
+  private static final String HTTP_CLIENT_SHARED_POOL_MAX_TOTAL = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.pool.maxTotal";
+  private static final String HTTP_CLIENT_SHARED_POOL_MAX_PER_ROUTE = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.pool.maxPerRoute";
+  private static final String HTTP_CLIENT_SHARED_POOL_IDLE_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.pool.idleTimeout";
+  private static final String HTTP_CLIENT_SHARED_POOL_TTL = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.pool.timeToLive";
+  private static final String DISPATCH_ASYNC_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".dispatch.async.enabled";
+  private static final String GROUP_LOOKUP_CACHE_TTL = GATEWAY_CONFIG_FILE_PREFIX + ".group.lookup.cache.ttl";
+  private static final String GROUP_LOOKUP_CACHE_NEGATIVE_TTL = GATEWAY_CONFIG_FILE_PREFIX + ".group.lookup.cache.negative.ttl";
+  private static final String GROUP_LOOKUP_CACHE_MAX_ENTRIES = GATEWAY_CONFIG_FILE_PREFIX + ".group.lookup.cache.max.entries";
+  private static final String DISCOVERY_SNAPSHOT_TTL = GATEWAY_CONFIG_FILE_PREFIX + ".discovery.snapshot.ttl";
+  private static final String DISCOVERY_SNAPSHOT_PERSISTENCE_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".discovery.snapshot.persistence.enabled";
   private static final String THREAD_POOL_MAX = GATEWAY_CONFIG_FILE_PREFIX + ".threadpool.max";
+  public static final String THREAD_POOL_VIRTUAL_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".threadpool.virtual.enabled";
   public static final String HTTP_SERVER_REQUEST_BUFFER = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.requestBuffer";
   public static final String HTTP_SERVER_REQUEST_HEADER_BUFFER = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.requestHeaderBuffer";
   public static final String HTTP_SERVER_RESPONSE_BUFFER = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.responseBuffer";
@@ -130,6 +142,10 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
   public static final String GRAPHITE_METRICS_REPORTING_PORT = GATEWAY_CONFIG_FILE_PREFIX + ".graphite.metrics.reporting.port";
   public static final String GRAPHITE_METRICS_REPORTING_FREQUENCY = GATEWAY_CONFIG_FILE_PREFIX + ".graphite.metrics.reporting.frequency";
   public static final String GATEWAY_IDLE_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".idle.timeout";
+  public static final String HTTP2_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.http2.enabled";
+  public static final String HTTP2_MAX_CONCURRENT_STREAMS = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.http2.maxConcurrentStreams";
+  public static final String HTTP2_INITIAL_STREAM_RECV_WINDOW = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.http2.initialStreamRecvWindow";
+  public static final String HTTP2_INITIAL_SESSION_RECV_WINDOW = GATEWAY_CONFIG_FILE_PREFIX + ".httpserver.http2.initialSessionRecvWindow";
   public static final String REMOTE_IP_HEADER_NAME = GATEWAY_CONFIG_FILE_PREFIX + ".remote.ip.header.name";
 
   /* @since 0.10 Websocket config variables */
@@ -615,6 +631,74 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
     return t;
   }
 
+  @Override
+  public boolean isHttpClientSharedConnectionPoolEnabled() {
+    return getBoolean( HTTP_CLIENT_SHARED_POOL_ENABLED, false );
+  }
+
+  @Override
+  public int getHttpClientSharedConnectionPoolMaxTotal() {
+    return getInt( HTTP_CLIENT_SHARED_POOL_MAX_TOTAL, 1024 );
+  }
+
+  @Override
+  public int getHttpClientSharedConnectionPoolMaxPerRoute() {
+    return getInt( HTTP_CLIENT_SHARED_POOL_MAX_PER_ROUTE, getHttpClientMaxConnections() );
+  }
+
+  @Override
+  public long getHttpClientSharedConnectionPoolIdleTimeout() {
+    return getNetworkTimeout( HTTP_CLIENT_SHARED_POOL_IDLE_TIMEOUT, TimeUnit.SECONDS.toMillis(60) );
+  }
+
+  @Override
+  public long getHttpClientSharedConnectionPoolTimeToLive() {
+    return getNetworkTimeout( HTTP_CLIENT_SHARED_POOL_TTL, -1L );
+  }
+
+  @Override
+  public boolean isAsyncDispatchEnabled() {
+    return getBoolean( DISPATCH_ASYNC_ENABLED, false );
+  }
+
+  @Override
+  public long getGroupLookupCacheTTL() {
+    return getNetworkTimeout( GROUP_LOOKUP_CACHE_TTL, TimeUnit.MINUTES.toMillis(5) );
+  }
+
+  @Override
+  public long getGroupLookupCacheNegativeTTL() {
+    return getNetworkTimeout( GROUP_LOOKUP_CACHE_NEGATIVE_TTL, TimeUnit.SECONDS.toMillis(30) );
+  }
+
+  @Override
+  public int getGroupLookupCacheMaxEntries() {
+    return getInt( GROUP_LOOKUP_CACHE_MAX_ENTRIES, 10000 );
+  }
+
+  @Override
+  public long getServiceDiscoverySnapshotTTL() {
+    return getNetworkTimeout( DISCOVERY_SNAPSHOT_TTL, TimeUnit.SECONDS.toMillis(30) );
+  }
+
+  @Override
+  public boolean isServiceDiscoverySnapshotPersistenceEnabled() {
+    return getBoolean( DISCOVERY_SNAPSHOT_PERSISTENCE_ENABLED, false );
+  }
+
+  private long getNetworkTimeout( String name, long defaultValue ) {
+    long t = defaultValue;
+    String s = get( name );
+    if ( s != null ) {
+      try {
+        t = parseNetworkTimeout( s );
+      } catch ( Exception e ) {
+        // Ignore it and use the default.
+      }
+    }
+    return t;
+  }
+
   @Override
   public String getHttpClientTruststorePath() {
     return get(HTTP_CLIENT_TRUSTSTORE_PATH);
@@ -640,6 +724,11 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
     return i;
   }
 
+  @Override
+  public boolean isVirtualThreadsEnabled() {
+    return getBoolean( THREAD_POOL_VIRTUAL_ENABLED, false );
+  }
+
   @Override
   public int getHttpServerRequestBuffer() {
     return getInt( HTTP_SERVER_REQUEST_BUFFER, 16 * 1024 );
@@ -674,6 +763,26 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
     return getLong(GATEWAY_IDLE_TIMEOUT, 300000L);
   }
 
+  @Override
+  public boolean isHttp2Enabled() {
+    return getBoolean( HTTP2_ENABLED, false );
+  }
+
+  @Override
+  public int getHttp2MaxConcurrentStreams() {
+    return getInt( HTTP2_MAX_CONCURRENT_STREAMS, 128 );
+  }
+
+  @Override
+  public int getHttp2InitialStreamRecvWindow() {
+    return getInt( HTTP2_INITIAL_STREAM_RECV_WINDOW, 512 * 1024 );
+  }
+
+  @Override
+  public int getHttp2InitialSessionRecvWindow() {
+    return getInt( HTTP2_INITIAL_SESSION_RECV_WINDOW, 1024 * 1024 );
+  }
+
   @Override
   public long getGatewayDeploymentsBackupAgeLimit() {
     PeriodFormatter f = new PeriodFormatterBuilder().appendDays().toFormatter();
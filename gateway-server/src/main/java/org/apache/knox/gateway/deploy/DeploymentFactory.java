@@ -378,7 +378,11 @@ public abstract class DeploymentFactory {
     String topoName = context.getTopology().getName();
     if( applications == null ) {
       String servletName = topoName + SERVLET_NAME_SUFFIX;
-      wad.createServlet().servletName( servletName ).servletClass( GatewayServlet.class.getName() );
+      ServletType<WebAppDescriptor> servlet = wad.createServlet().servletName( servletName ).servletClass( GatewayServlet.class.getName() );
+      GatewayConfig gatewayConfig = context.getGatewayConfig();
+      if( gatewayConfig != null && gatewayConfig.isAsyncDispatchEnabled() ) {
+        servlet.asyncSupported( Boolean.TRUE );
+      }
       wad.createServletMapping().servletName( servletName ).urlPattern( "/*" );
     } else {
       String filterName = topoName + FILTER_NAME_SUFFIX;
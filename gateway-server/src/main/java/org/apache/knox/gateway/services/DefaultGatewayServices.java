@@ -25,6 +25,7 @@ import org.apache.knox.gateway.descriptor.ResourceDescriptor;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.service.config.remote.RemoteConfigurationRegistryClientServiceFactory;
 import org.apache.knox.gateway.services.config.client.RemoteConfigurationRegistryClientService;
+import org.apache.knox.gateway.services.dispatch.impl.DefaultHttpConnectionPoolService;
 import org.apache.knox.gateway.services.registry.impl.DefaultServiceDefinitionRegistry;
 import org.apache.knox.gateway.services.metrics.impl.DefaultMetricsService;
 import org.apache.knox.gateway.services.security.KeystoreService;
@@ -36,6 +37,7 @@ import org.apache.knox.gateway.services.registry.impl.DefaultServiceRegistryServ
 import org.apache.knox.gateway.services.security.KeystoreServiceException;
 import org.apache.knox.gateway.services.security.impl.DefaultAliasService;
 import org.apache.knox.gateway.services.security.impl.DefaultCryptoService;
+import org.apache.knox.gateway.services.security.impl.DefaultGroupLookupService;
 import org.apache.knox.gateway.services.security.impl.DefaultKeystoreService;
 import org.apache.knox.gateway.services.security.impl.DefaultMasterService;
 import org.apache.knox.gateway.services.security.impl.JettySSLService;
@@ -143,6 +145,14 @@ public class DefaultGatewayServices extends AbstractGatewayServices {
     DefaultMetricsService metricsService = new DefaultMetricsService();
     metricsService.init( config, options );
     addService(ServiceType.METRICS_SERVICE, metricsService );
+
+    DefaultHttpConnectionPoolService connectionPoolService = new DefaultHttpConnectionPoolService();
+    connectionPoolService.init( config, options );
+    addService(ServiceType.HTTP_CONNECTION_POOL_SERVICE, connectionPoolService );
+
+    DefaultGroupLookupService groupLookupService = new DefaultGroupLookupService();
+    groupLookupService.init( config, options );
+    addService(ServiceType.GROUP_LOOKUP_SERVICE, groupLookupService );
   }
 
   @Override
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.dispatch.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.DefaultHttpClientIODispatch;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.protocol.HttpAsyncRequestExecutor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.knox.gateway.GatewayMessages;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.ServiceLifecycleException;
+import org.apache.knox.gateway.services.dispatch.HttpConnectionPoolService;
+import org.apache.knox.gateway.services.metrics.impl.DefaultMetricsService;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default {@link HttpConnectionPoolService} which keeps one {@link PoolingHttpClientConnectionManager}
+ * per TLS identity, bounded by the gateway-wide total and per-route limits configured in gateway-site.
+ * Idle and expired connections are evicted by a background task. The non-blocking connection managers
+ * used by the async dispatch clients are kept the same way, each running on an I/O reactor of its own.
+ * <p>
+ * When metrics are enabled, the occupancy of each pool and the time spent waiting for a connection
+ * lease are published to the gateway metrics registry under <code>dispatch.connection-pool.&lt;identity&gt;</code>.
+ */
+public class DefaultHttpConnectionPoolService implements HttpConnectionPoolService {
+  private static final GatewayMessages LOG = MessagesFactory.get(GatewayMessages.class);
+
+  static final String METRICS_PREFIX = MetricRegistry.name("dispatch", "connection-pool");
+
+  private static final long MIN_EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+  private static final long MAX_EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+  private final Map<String, PoolingHttpClientConnectionManager> connectionManagers = new ConcurrentHashMap<>();
+  private final Map<String, PoolingNHttpClientConnectionManager> asyncConnectionManagers = new ConcurrentHashMap<>();
+
+  private GatewayConfig config;
+  private MetricRegistry metricRegistry;
+  private ScheduledExecutorService evictor;
+  private ExecutorService reactors;
+
+  @Override
+  public void init(GatewayConfig config, Map<String, String> options) throws ServiceLifecycleException {
+    this.config = config;
+    if (config.isMetricsEnabled()) {
+      metricRegistry = DefaultMetricsService.getMetricRegistry();
+    }
+    reactors = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+        .namingPattern("HttpConnectionPoolReactor-%d")
+        .daemon(true)
+        .build());
+  }
+
+  @Override
+  public void start() throws ServiceLifecycleException {
+    if (!config.isHttpClientSharedConnectionPoolEnabled()) {
+      return;
+    }
+    long idleTimeout = config.getHttpClientSharedConnectionPoolIdleTimeout();
+    long interval = Math.max(MIN_EVICTION_INTERVAL, Math.min(MAX_EVICTION_INTERVAL, idleTimeout / 2));
+    evictor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+        .namingPattern("HttpConnectionPoolEvictor-%d")
+        .daemon(true)
+        .build());
+    evictor.scheduleWithFixedDelay(this::evictConnections, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    if (evictor != null) {
+      evictor.shutdownNow();
+      evictor = null;
+    }
+    for (Map.Entry<String, PoolingHttpClientConnectionManager> entry : connectionManagers.entrySet()) {
+      entry.getValue().shutdown();
+      if (metricRegistry != null) {
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(metricsName(entry.getKey())));
+      }
+    }
+    connectionManagers.clear();
+    for (Map.Entry<String, PoolingNHttpClientConnectionManager> entry : asyncConnectionManagers.entrySet()) {
+      try {
+        entry.getValue().shutdown();
+      } catch (IOException e) {
+        LOG.sharedHttpConnectionPoolReactorFailed(entry.getKey(), e);
+      }
+    }
+    asyncConnectionManagers.clear();
+    reactors.shutdownNow();
+  }
+
+  @Override
+  public HttpClientConnectionManager getConnectionManager(String tlsIdentity, SSLContext sslContext) {
+    return connectionManagers.computeIfAbsent(tlsIdentity, identity -> createConnectionManager(identity, sslContext));
+  }
+
+  @Override
+  public NHttpClientConnectionManager getAsyncConnectionManager(String tlsIdentity, SSLContext sslContext) {
+    return asyncConnectionManagers.computeIfAbsent(tlsIdentity, identity -> createAsyncConnectionManager(identity, sslContext));
+  }
+
+  /**
+   * Closes connections which have exceeded their time-to-live or have been idle for longer than the
+   * configured idle timeout.
+   */
+  void evictConnections() {
+    long idleTimeout = config.getHttpClientSharedConnectionPoolIdleTimeout();
+    for (PoolingHttpClientConnectionManager connectionManager : connectionManagers.values()) {
+      connectionManager.closeExpiredConnections();
+      if (idleTimeout > 0) {
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+      }
+    }
+    for (PoolingNHttpClientConnectionManager connectionManager : asyncConnectionManagers.values()) {
+      connectionManager.closeExpiredConnections();
+      if (idleTimeout > 0) {
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  private PoolingHttpClientConnectionManager createConnectionManager(String identity, SSLContext sslContext) {
+    Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", sslContext == null ? SSLConnectionSocketFactory.getSocketFactory()
+                                              : new SSLConnectionSocketFactory(sslContext))
+        .build();
+
+    long timeToLive = config.getHttpClientSharedConnectionPoolTimeToLive();
+    PoolingHttpClientConnectionManager connectionManager;
+    if (metricRegistry != null) {
+      connectionManager = new MeteredConnectionManager(socketFactoryRegistry, timeToLive,
+          metricRegistry.timer(MetricRegistry.name(metricsName(identity), "lease-wait")));
+      registerGauges(identity, connectionManager);
+    } else {
+      connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null,
+          timeToLive, TimeUnit.MILLISECONDS);
+    }
+    connectionManager.setMaxTotal(config.getHttpClientSharedConnectionPoolMaxTotal());
+    connectionManager.setDefaultMaxPerRoute(config.getHttpClientSharedConnectionPoolMaxPerRoute());
+
+    LOG.createdSharedHttpConnectionPool(identity, connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute());
+    return connectionManager;
+  }
+
+  private PoolingNHttpClientConnectionManager createAsyncConnectionManager(String identity, SSLContext sslContext) {
+    Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+        .register("http", NoopIOSessionStrategy.INSTANCE)
+        .register("https", sslContext == null ? SSLIOSessionStrategy.getDefaultStrategy()
+                                              : new SSLIOSessionStrategy(sslContext))
+        .build();
+
+    PoolingNHttpClientConnectionManager connectionManager;
+    try {
+      connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(), null,
+          sessionStrategyRegistry, null, null, config.getHttpClientSharedConnectionPoolTimeToLive(), TimeUnit.MILLISECONDS);
+    } catch (IOReactorException e) {
+      throw new IllegalStateException("Unable to create the I/O reactor of the shared HTTP connection pool", e);
+    }
+    connectionManager.setMaxTotal(config.getHttpClientSharedConnectionPoolMaxTotal());
+    connectionManager.setDefaultMaxPerRoute(config.getHttpClientSharedConnectionPoolMaxPerRoute());
+
+    // The clients sharing the connection manager don't run its reactor, so it runs here until the service stops
+    DefaultHttpClientIODispatch<HttpAsyncRequestExecutor> ioEventDispatch =
+        new DefaultHttpClientIODispatch<>(new HttpAsyncRequestExecutor(), ConnectionConfig.DEFAULT);
+    reactors.execute(() -> {
+      try {
+        connectionManager.execute(ioEventDispatch);
+      } catch (IOException e) {
+        LOG.sharedHttpConnectionPoolReactorFailed(identity, e);
+      }
+    });
+
+    LOG.createdSharedHttpConnectionPool(identity + " (async)", connectionManager.getMaxTotal(),
+        connectionManager.getDefaultMaxPerRoute());
+    return connectionManager;
+  }
+
+  private void registerGauges(String identity, PoolingHttpClientConnectionManager connectionManager) {
+    String name = metricsName(identity);
+    metricRegistry.register(MetricRegistry.name(name, "leased-connections"),
+        (Gauge<Integer>) () -> connectionManager.getTotalStats().getLeased());
+    metricRegistry.register(MetricRegistry.name(name, "available-connections"),
+        (Gauge<Integer>) () -> connectionManager.getTotalStats().getAvailable());
+    metricRegistry.register(MetricRegistry.name(name, "pending-connections"),
+        (Gauge<Integer>) () -> connectionManager.getTotalStats().getPending());
+    metricRegistry.register(MetricRegistry.name(name, "max-connections"),
+        (Gauge<Integer>) () -> connectionManager.getTotalStats().getMax());
+    metricRegistry.register(MetricRegistry.name(name, "routes"),
+        (Gauge<Integer>) () -> connectionManager.getRoutes().size());
+  }
+
+  private static String metricsName(String identity) {
+    return MetricRegistry.name(METRICS_PREFIX, identity);
+  }
+
+  /**
+   * A {@link PoolingHttpClientConnectionManager} which records how long callers wait to lease a connection.
+   */
+  private static class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+    private final Timer leaseWait;
+
+    MeteredConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry, long timeToLive, Timer leaseWait) {
+      super(socketFactoryRegistry, null, null, null, timeToLive, TimeUnit.MILLISECONDS);
+      this.leaseWait = leaseWait;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+      final ConnectionRequest request = super.requestConnection(route, state);
+      return new ConnectionRequest() {
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+          final Timer.Context context = leaseWait.time();
+          try {
+            return request.get(timeout, timeUnit);
+          } finally {
+            context.stop();
+          }
+        }
+
+        @Override
+        public boolean cancel() {
+          return request.cancel();
+        }
+      };
+    }
+  }
+}
@@ -62,6 +62,11 @@ public class DefaultMetricsService implements MetricsService {
     return metrics;
   }
 
+  @Override
+  public MetricRegistry getRegistry() {
+    return metrics;
+  }
+
   @Override
   public void init(GatewayConfig config, Map<String, String> options) throws
       ServiceLifecycleException {
@@ -20,24 +20,60 @@ package org.apache.knox.gateway.services.metrics.impl.instr;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import org.apache.knox.gateway.GatewayFilter;
+import org.apache.knox.gateway.services.GatewayServices;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
+/**
+ * Times the requests of a topology as a whole, by service role and by filter stage.
+ * <p>
+ * Metric names are bounded by the topology: <code>gateway.{topology}.requests</code>,
+ * <code>gateway.{topology}.service.{role}.requests</code> and
+ * <code>gateway.{topology}.service.{role}.stage.{stage}</code>, where the stage is one of
+ * authentication, identity-assertion, authorization, rewrite or dispatch, or the role of any other
+ * filter. A stage timer measures the time spent in its filters, excluding the filters after them,
+ * and counts a request once however many filters the stage has. All timers are resolved when the
+ * filter is initialized.
+ * <p>
+ * A stage ends when its filters call the next one, so the stages measure the time spent before the
+ * request is dispatched. The rewrite stage covers wrapping the request and response and rewriting
+ * the request URL and headers. Response bodies are rewritten while the dispatch streams them from
+ * the backend to the client, so that rewrite is part of the dispatch stage, together with the time
+ * spent waiting on the backend and the client.
+ */
 public class InstrumentedGatewayFilter extends GatewayFilter {
 
+  private static final String METRICS_PREFIX = "gateway";
+
+  private static final Map<String, String> STAGES = new HashMap<>();
+  static {
+    STAGES.put("authentication", "authentication");
+    STAGES.put("federation", "authentication");
+    STAGES.put("identity-assertion", "identity-assertion");
+    STAGES.put("authorization", "authorization");
+    STAGES.put("rewrite", "rewrite");
+    STAGES.put("dispatch", "dispatch");
+  }
+
   private GatewayFilter gatewayFilter;
 
   private MetricRegistry metricRegistry;
 
+  private String topologyName;
+
+  private Timer requestTimer;
+
   public InstrumentedGatewayFilter(GatewayFilter gatewayFilter, MetricRegistry metricRegistry) {
     this.gatewayFilter = gatewayFilter;
     this.metricRegistry = metricRegistry;
@@ -45,6 +81,12 @@ public class InstrumentedGatewayFilter extends GatewayFilter {
 
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {
+    ServletContext context = filterConfig.getServletContext();
+    if (context != null) {
+      topologyName = (String) context.getAttribute(GatewayServices.GATEWAY_CLUSTER_ATTRIBUTE);
+    }
+    requestTimer = metricRegistry.timer(MetricRegistry.name(METRICS_PREFIX, topologyName, "requests"));
+    gatewayFilter.setChainTimers(new StageTimers());
     gatewayFilter.init(filterConfig);
   }
 
@@ -63,9 +105,24 @@ public class InstrumentedGatewayFilter extends GatewayFilter {
     gatewayFilter.addFilter(path, name, clazz, params, resourceRole);
   }
 
+  @Override
+  public void addFilter(String path, String name, Filter filter, Map<String, String> params, String resourceRole, String filterRole) throws URISyntaxException {
+    gatewayFilter.addFilter(path, name, filter, params, resourceRole, filterRole);
+  }
+
+  @Override
+  public void addFilter(String path, String name, String clazz, Map<String, String> params, String resourceRole, String filterRole) throws URISyntaxException {
+    gatewayFilter.addFilter(path, name, clazz, params, resourceRole, filterRole);
+  }
+
+  @Override
+  public void setChainTimers(ChainTimers timers) {
+    gatewayFilter.setChainTimers(timers);
+  }
+
   @Override
   public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-    Timer.Context timerContext = this.timer(servletRequest).time();
+    Timer.Context timerContext = requestTimer.time();
     try {
       gatewayFilter.doFilter(servletRequest, servletResponse, filterChain);
     } finally {
@@ -75,7 +132,7 @@ public class InstrumentedGatewayFilter extends GatewayFilter {
 
   @Override
   public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse) throws IOException, ServletException {
-    Timer.Context timerContext = this.timer(servletRequest).time();
+    Timer.Context timerContext = requestTimer.time();
     try {
       gatewayFilter.doFilter(servletRequest, servletResponse);
     } finally {
@@ -83,17 +140,24 @@ public class InstrumentedGatewayFilter extends GatewayFilter {
     }
   }
 
-  private Timer timer(ServletRequest request) {
-    StringBuilder builder = new StringBuilder();
-    builder.append("client.")
-        .append(request.getServletContext().getContextPath());
-    if (request instanceof HttpServletRequest) {
-      HttpServletRequest httpServletRequest = (HttpServletRequest) request;
-      builder.append(InstrUtils.getResourcePath(httpServletRequest.getPathInfo()));
-      builder.append('.');
-      builder.append(httpServletRequest.getMethod());
-      builder.append("-requests");
+  static String getStage(String filterRole, String filterName) {
+    if (filterRole == null) {
+      return filterName;
+    }
+    String stage = STAGES.get(filterRole.toLowerCase(Locale.ROOT));
+    return stage == null ? filterRole : stage;
+  }
+
+  private class StageTimers implements ChainTimers {
+    @Override
+    public Timer getRequestTimer(String resourceRole) {
+      return metricRegistry.timer(MetricRegistry.name(METRICS_PREFIX, topologyName, "service", resourceRole, "requests"));
+    }
+
+    @Override
+    public Timer getFilterTimer(String resourceRole, String filterRole, String filterName) {
+      return metricRegistry.timer(MetricRegistry.name(METRICS_PREFIX, topologyName, "service", resourceRole,
+          "stage", getStage(filterRole, filterName)));
     }
-    return metricRegistry.timer(builder.toString());
   }
 }
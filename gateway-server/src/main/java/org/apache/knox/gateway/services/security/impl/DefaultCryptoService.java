@@ -24,8 +24,8 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.knox.gateway.GatewayMessages;
 import org.apache.knox.gateway.config.GatewayConfig;
@@ -43,7 +43,7 @@ public class DefaultCryptoService implements CryptoService {
 
   private AliasService as;
   private KeystoreService ks;
-  private Map<String,ConfigurableEncryptor> encryptorCache = new HashMap<>();
+  private final Map<String,ConfigurableEncryptor> encryptorCache = new ConcurrentHashMap<>();
   private GatewayConfig config;
 
   public void setKeystoreService(KeystoreService ks) {
@@ -92,7 +92,7 @@ public class DefaultCryptoService implements CryptoService {
     }
     if (password != null) {
       try {
-        return getEncryptor(clusterName,password).encrypt( clear );
+        return getEncryptor(clusterName, alias, password).encrypt( clear );
       } catch (Exception e) {
         LOG.failedToEncryptPasswordForCluster( clusterName, e );
       }
@@ -112,7 +112,7 @@ public class DefaultCryptoService implements CryptoService {
       ConfigurableEncryptor encryptor;
         password = as.getPasswordFromAliasForCluster(clusterName, alias);
         if (password != null) {
-          encryptor = getEncryptor(clusterName,password );
+          encryptor = getEncryptor(clusterName, alias, password);
           try {
             return encryptor.decrypt( salt, iv, cipherText);
           } catch (Exception e) {
@@ -159,18 +159,17 @@ public class DefaultCryptoService implements CryptoService {
     return null;
   }
 
-  // The assumption here is that lock contention will be less of a performance issue than the cost of object creation.
-  // We have seen via profiling that AESEncryptor instantiation is very expensive.
-  private ConfigurableEncryptor getEncryptor( final String clusterName, final char[] password ) {
-    synchronized( encryptorCache ) {
-      ConfigurableEncryptor encryptor = encryptorCache.get( clusterName );
-      if( encryptor == null ) {
-        encryptor = new ConfigurableEncryptor( String.valueOf( password ) );
-        encryptor.init(config);
-        encryptorCache.put( clusterName, encryptor );
-      }
-      return encryptor;
+  // Encryptors cache the keys derived from their password, which is far more expensive than the encryption
+  // itself, so keep one per cluster alias and only replace it when the password behind the alias changes.
+  private ConfigurableEncryptor getEncryptor( final String clusterName, final String alias, final char[] password ) {
+    final String cacheKey = clusterName + "/" + alias;
+    ConfigurableEncryptor encryptor = encryptorCache.get( cacheKey );
+    if( encryptor == null || !encryptor.hasPassPhrase( password ) ) {
+      encryptor = new ConfigurableEncryptor( String.valueOf( password ) );
+      encryptor.init(config);
+      encryptorCache.put( cacheKey, encryptor );
     }
+    return encryptor;
   }
 
 }
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.security.impl;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.GatewayMessages;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.ServiceLifecycleException;
+import org.apache.knox.gateway.services.security.GroupLookupService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link GroupLookupService}, caching group memberships in memory for the TTLs configured
+ * in gateway-site. Entries which reach three quarters of their TTL are refreshed in the background
+ * on their next lookup, so that users who keep sending requests never wait for the resolver once
+ * their groups are cached. Expired entries are purged by a background task.
+ */
+public class DefaultGroupLookupService implements GroupLookupService {
+  private static final GatewayMessages LOG = MessagesFactory.get(GatewayMessages.class);
+
+  private static final long MIN_PURGE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+  private final Map<CacheKey, CachedGroups> cache = new ConcurrentHashMap<>();
+
+  private long ttl;
+  private long negativeTtl;
+  private int maxEntries;
+  private ScheduledExecutorService executor;
+
+  @Override
+  public void init(GatewayConfig config, Map<String, String> options) throws ServiceLifecycleException {
+    ttl = config.getGroupLookupCacheTTL();
+    negativeTtl = Math.min(Math.max(config.getGroupLookupCacheNegativeTTL(), 0L), ttl);
+    maxEntries = config.getGroupLookupCacheMaxEntries();
+  }
+
+  @Override
+  public void start() throws ServiceLifecycleException {
+    if (ttl <= 0) {
+      return;
+    }
+    long interval = Math.max(MIN_PURGE_INTERVAL, negativeTtl > 0 ? negativeTtl : ttl);
+    executor = Executors.newScheduledThreadPool(2, new BasicThreadFactory.Builder()
+        .namingPattern("GroupLookupCache-%d")
+        .daemon(true)
+        .build());
+    executor.scheduleWithFixedDelay(this::purgeExpired, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    cache.clear();
+  }
+
+  @Override
+  public List<String> getGroups(String resolverName, String user, GroupResolver resolver) throws IOException {
+    if (executor == null) {
+      return Collections.unmodifiableList(new ArrayList<>(resolver.getGroups(user)));
+    }
+
+    final CacheKey key = new CacheKey(resolverName, user);
+    final long now = System.currentTimeMillis();
+    final CachedGroups entry = cache.compute(key,
+        (k, current) -> current == null || current.isExpired(now) ? new CachedGroups() : current);
+
+    if (entry.claimLoad()) {
+      if (cache.size() > maxEntries) {
+        evict();
+      }
+      load(entry, user, resolver);
+    } else if (entry.claimRefresh(now)) {
+      try {
+        executor.execute(() -> refresh(key, entry, user, resolver));
+      } catch (RejectedExecutionException e) {
+        // Stopping, the cached groups are served until they expire.
+      }
+    }
+    return entry.await();
+  }
+
+  int size() {
+    return cache.size();
+  }
+
+  void purgeExpired() {
+    final long now = System.currentTimeMillis();
+    cache.values().removeIf(entry -> entry.isExpired(now));
+  }
+
+  private void load(CachedGroups entry, String user, GroupResolver resolver) {
+    try {
+      entry.complete(resolver.getGroups(user), System.currentTimeMillis());
+    } catch (IOException | RuntimeException e) {
+      entry.fail(e, System.currentTimeMillis() + negativeTtl);
+    } finally {
+      // Never leave concurrent lookups of the user waiting.
+      if (!entry.isDone()) {
+        entry.fail(new IOException("Failed to resolve the groups of " + user), 0L);
+      }
+    }
+  }
+
+  private void refresh(CacheKey key, CachedGroups entry, String user, GroupResolver resolver) {
+    try {
+      CachedGroups refreshed = new CachedGroups();
+      refreshed.claimLoad();
+      refreshed.complete(resolver.getGroups(user), System.currentTimeMillis());
+      cache.replace(key, entry, refreshed);
+    } catch (IOException | RuntimeException e) {
+      // Keep serving the cached groups until they expire, the next lookup retries the refresh.
+      LOG.failedToRefreshGroups(user, e.toString());
+      entry.refreshFailed();
+    }
+  }
+
+  private void evict() {
+    purgeExpired();
+    final Iterator<CachedGroups> entries = cache.values().iterator();
+    while (cache.size() > maxEntries && entries.hasNext()) {
+      entries.next();
+      entries.remove();
+    }
+  }
+
+  private final class CachedGroups {
+    private final CompletableFuture<List<String>> groups = new CompletableFuture<>();
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong expiresAt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong refreshAt = new AtomicLong(Long.MAX_VALUE);
+
+    boolean claimLoad() {
+      return loading.compareAndSet(false, true);
+    }
+
+    boolean claimRefresh(long now) {
+      return now >= refreshAt.get() && refreshing.compareAndSet(false, true);
+    }
+
+    void refreshFailed() {
+      refreshing.set(false);
+    }
+
+    boolean isDone() {
+      return groups.isDone();
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt.get();
+    }
+
+    void complete(List<String> resolved, long now) {
+      if (resolved == null || resolved.isEmpty()) {
+        expiresAt.set(now + negativeTtl);
+        groups.complete(Collections.emptyList());
+      } else {
+        refreshAt.set(now + ttl - ttl / 4);
+        expiresAt.set(now + ttl);
+        groups.complete(Collections.unmodifiableList(new ArrayList<>(resolved)));
+      }
+    }
+
+    void fail(Exception e, long expiry) {
+      if (!groups.isDone()) {
+        expiresAt.set(expiry);
+        groups.completeExceptionally(e);
+      }
+    }
+
+    List<String> await() throws IOException {
+      try {
+        return groups.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  private static final class CacheKey {
+    private final String resolverName;
+    private final String user;
+
+    CacheKey(String resolverName, String user) {
+      this.resolverName = resolverName;
+      this.user = user;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return Objects.equals(resolverName, other.resolverName) && Objects.equals(user, other.user);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resolverName, user);
+    }
+  }
+}
@@ -35,13 +35,23 @@ import org.apache.zookeeper.ZooDefs;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An {@link AliasService} implementation based on zookeeper remote service registry.
+ * <p>
+ * Looked up aliases are cached in memory, still encrypted, and only decrypted the first time their
+ * password is asked for. The watches on {@link #PATH_KNOX_ALIAS_STORE_TOPOLOGY} keep the cache in
+ * line with the registry: changed entries replace the cached value and removed entries are evicted,
+ * so changes made by any gateway of a fleet are seen by all of them. Evicted passwords are zeroed.
  */
 public class ZookeeperRemoteAliasService implements AliasService {
   public static final String TYPE = "zookeeper";
@@ -90,6 +100,11 @@ public class ZookeeperRemoteAliasService implements AliasService {
   private ConfigurableEncryptor encryptor;
   private GatewayConfig config;
 
+  /* Aliases by cluster and lower case alias name, including those known not to exist */
+  private final ConcurrentMap<String, CachedAlias> aliasCache = new ConcurrentHashMap<>();
+  /* Incremented on every eviction, so a lookup racing with a change doesn't cache the old value */
+  private final AtomicLong aliasCacheGeneration = new AtomicLong();
+
   ZookeeperRemoteAliasService(AliasService localAliasService, MasterService ms,
       RemoteConfigurationRegistryClientService remoteConfigurationRegistryClientService) {
     this.localAliasService = localAliasService;
@@ -105,6 +120,10 @@ public class ZookeeperRemoteAliasService implements AliasService {
     return buildClusterEntryName(clusterName) + PATH_SEPARATOR + alias;
   }
 
+  private static String buildCacheKey(final String clusterName, final String alias) {
+    return clusterName + PATH_SEPARATOR + alias.toLowerCase(Locale.ROOT);
+  }
+
   /**
    * Build an entry path for the given cluster
    */
@@ -191,6 +210,8 @@ public class ZookeeperRemoteAliasService implements AliasService {
         remoteClient.createEntry(aliasEntryPath, encrypt(value));
       } catch (Exception e) {
         throw new AliasServiceException(e);
+      } finally {
+        evictCachedAlias(clusterName, alias);
       }
 
       if (remoteClient.getEntryData(aliasEntryPath) == null) {
@@ -208,6 +229,7 @@ public class ZookeeperRemoteAliasService implements AliasService {
     if (remoteClient != null) {
       final String aliasEntryPath = buildAliasEntryName(clusterName, alias);
 
+      evictCachedAlias(clusterName, alias);
       if (remoteClient.entryExists(aliasEntryPath)) {
         remoteClient.deleteEntry(aliasEntryPath);
 
@@ -237,16 +259,10 @@ public class ZookeeperRemoteAliasService implements AliasService {
 
     /* try to get it from remote registry */
     if (remoteClient != null) {
-      checkPathsExist(remoteClient);
-      String encrypted = null;
-
-      if(remoteClient.entryExists(buildAliasEntryName(clusterName, alias))) {
-        encrypted = remoteClient
-            .getEntryData(buildAliasEntryName(clusterName, alias));
-      }
+      final CachedAlias cached = getCachedAlias(clusterName, alias);
 
       /* Generate a new password */
-      if (encrypted == null) {
+      if (cached.encrypted == null) {
 
         /* Generate a new password  */
         if (generate) {
@@ -255,11 +271,7 @@ public class ZookeeperRemoteAliasService implements AliasService {
         }
 
       } else {
-        try {
-          password = decrypt(encrypted).toCharArray();
-        } catch (final Exception e) {
-          throw new AliasServiceException(e);
-        }
+        password = cached.getPassword();
       }
     }
 
@@ -267,6 +279,58 @@ public class ZookeeperRemoteAliasService implements AliasService {
     return password;
   }
 
+  private CachedAlias getCachedAlias(final String clusterName, final String alias) {
+    final String key = buildCacheKey(clusterName, alias);
+    CachedAlias cached = aliasCache.get(key);
+    if (cached == null) {
+      final long generation = aliasCacheGeneration.get();
+      checkPathsExist(remoteClient);
+      String encrypted = null;
+
+      if(remoteClient.entryExists(buildAliasEntryName(clusterName, alias))) {
+        encrypted = remoteClient
+            .getEntryData(buildAliasEntryName(clusterName, alias));
+      }
+
+      cached = new CachedAlias(encrypted);
+      if (aliasCacheGeneration.get() == generation) {
+        final CachedAlias existing = aliasCache.putIfAbsent(key, cached);
+        if (existing != null) {
+          cached = existing;
+        }
+      }
+    }
+    return cached;
+  }
+
+  private void cacheAlias(final String clusterName, final String alias, final String encrypted) {
+    aliasCacheGeneration.incrementAndGet();
+    final CachedAlias previous = aliasCache.put(buildCacheKey(clusterName, alias), new CachedAlias(encrypted));
+    if (previous != null) {
+      previous.clear();
+    }
+  }
+
+  private void evictCachedAlias(final String clusterName, final String alias) {
+    aliasCacheGeneration.incrementAndGet();
+    final CachedAlias previous = aliasCache.remove(buildCacheKey(clusterName, alias));
+    if (previous != null) {
+      previous.clear();
+    }
+  }
+
+  private void evictCachedAliases(final String clusterName) {
+    aliasCacheGeneration.incrementAndGet();
+    final String prefix = clusterName + PATH_SEPARATOR;
+    for (Iterator<Map.Entry<String, CachedAlias>> it = aliasCache.entrySet().iterator(); it.hasNext();) {
+      final Map.Entry<String, CachedAlias> entry = it.next();
+      if (clusterName == null || entry.getKey().startsWith(prefix)) {
+        it.remove();
+        entry.getValue().clear();
+      }
+    }
+  }
+
   @Override
   public void generateAliasForCluster(final String clusterName, final String alias)
       throws AliasServiceException {
@@ -363,6 +427,7 @@ public class ZookeeperRemoteAliasService implements AliasService {
       } catch (final Exception e) {
         LOG.errorRemovingRemoteListener(PATH_KNOX_ALIAS_STORE_TOPOLOGY, e.toString());
       }
+      evictCachedAliases(null);
     }
   }
 
@@ -435,6 +500,11 @@ public class ZookeeperRemoteAliasService implements AliasService {
 
       switch (type) {
       case REMOVED:
+        if (paths.length > 1) {
+          evictCachedAlias(paths[0], paths[1]);
+        } else if (paths.length == 1) {
+          evictCachedAliases(paths[0]);
+        }
         try {
           /* remove listener */
           client.removeEntryListener(path);
@@ -449,6 +519,8 @@ public class ZookeeperRemoteAliasService implements AliasService {
       case ADDED:
         /* do not set listeners on cluster name but on respective aliases */
         if (paths.length > 1) {
+          /* the alias may have been cached as missing */
+          evictCachedAlias(paths[0], paths[1]);
           LOG.addAliasLocally(paths[0], paths[1]);
           try {
             client.addEntryListener(path,
@@ -458,6 +530,9 @@ public class ZookeeperRemoteAliasService implements AliasService {
             LOG.errorRemovingAliasLocally(paths[0], paths[1], e.toString());
           }
         } else if (subPath != null) {
+          if (paths.length > 0) {
+            evictCachedAliases(paths[0]);
+          }
           /* Add a child listener for the cluster */
           LOG.addRemoteListener(path);
           try {
@@ -494,6 +569,11 @@ public class ZookeeperRemoteAliasService implements AliasService {
     @Override
     public void entryChanged(final RemoteConfigurationRegistryClient client,
         final String path, final byte[] data) {
+      if (data == null) {
+        evictCachedAlias(cluster, alias);
+        return;
+      }
+      cacheAlias(cluster, alias, new String(data, StandardCharsets.UTF_8));
       try {
         localAliasService.addAliasForCluster(cluster, alias,
             decrypt(new String(data, StandardCharsets.UTF_8)));
@@ -503,4 +583,45 @@ public class ZookeeperRemoteAliasService implements AliasService {
       }
     }
   }
+
+  /**
+   * An alias as stored in the registry, decrypted on first use.
+   */
+  private class CachedAlias {
+    /* null if the alias doesn't exist */
+    final String encrypted;
+    private char[] password;
+    private boolean evicted;
+
+    CachedAlias(final String encrypted) {
+      this.encrypted = encrypted;
+    }
+
+    /**
+     * @return a copy of the password, which the caller may zero
+     */
+    synchronized char[] getPassword() throws AliasServiceException {
+      if (password == null) {
+        final char[] clear;
+        try {
+          clear = decrypt(encrypted).toCharArray();
+        } catch (final Exception e) {
+          throw new AliasServiceException(e);
+        }
+        if (evicted) {
+          return clear;
+        }
+        password = clear;
+      }
+      return password.clone();
+    }
+
+    synchronized void clear() {
+      evicted = true;
+      if (password != null) {
+        Arrays.fill(password, '\0');
+        password = null;
+      }
+    }
+  }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.knox.gateway.services.token.impl;
 
+import java.io.File;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -27,11 +28,15 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.security.auth.Subject;
 
@@ -61,6 +66,12 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
   private AliasService as;
   private KeystoreService ks;
   private GatewayConfig config;
+  private File signingKeystoreFile;
+
+  // Signers and the verifier built from the default signing keystore, so that issuing and verifying
+  // tokens doesn't load the keystore for every request. Both are rebuilt when the keystore file changes.
+  private final ConcurrentMap<String, KeyMaterial<JWSSigner>> signers = new ConcurrentHashMap<>();
+  private final AtomicReference<KeyMaterial<JWSVerifier>> verifier = new AtomicReference<>();
 
   static {
       // Only standard RSA signature algorithms are accepted
@@ -145,19 +156,9 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
     JWT token;
     if (SUPPORTED_SIG_ALGS.contains(algorithm)) {
       token = new JWTToken(algorithm, claimArray, customClaims, audiences);
-      char[] passphrase;
-      try {
-        passphrase = getSigningKeyPassphrase(signingKeystorePassphrase);
-      } catch (AliasServiceException e) {
-        throw new TokenServiceException(e);
-      }
       try {
-        RSAPrivateKey key = (RSAPrivateKey) ks.getSigningKey(signingKeystoreName,
-            getSigningKeyAlias(signingKeystoreAlias), passphrase);
-        // allowWeakKey to not break existing 1024 bit certificates
-        JWSSigner signer = new RSASSASigner(key, true);
-        token.sign(signer);
-      } catch (KeystoreServiceException e) {
+        token.sign(getSigner(signingKeystoreName, getSigningKeyAlias(signingKeystoreAlias), signingKeystorePassphrase));
+      } catch (AliasServiceException | KeystoreServiceException e) {
         throw new TokenServiceException(e);
       }
     }
@@ -194,6 +195,60 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
     return issueToken(p, audiences, algorithm, expires, null, null,null, additionalClaims);
   }
 
+  private JWSSigner getSigner(String keystoreName, String alias, char[] signingKeystorePassphrase)
+      throws AliasServiceException, KeystoreServiceException {
+    if (keystoreName != null) {
+      return createSigner(ks.getSigningKey(keystoreName, alias, getSigningKeyPassphrase(signingKeystorePassphrase)));
+    }
+
+    // The modification time is read before the key so that a keystore replaced while it is being
+    // read is picked up by the next call. The signer is cached against the passphrase the caller
+    // provided; the default passphrase can't change without the keystore changing with it.
+    long lastModified = getSigningKeystoreLastModified();
+    KeyMaterial<JWSSigner> cached = signers.get(alias);
+    if (cached != null && cached.isCurrent(alias, lastModified)
+        && Arrays.equals(cached.passphrase, signingKeystorePassphrase)) {
+      return cached.value;
+    }
+
+    Key key = ks.getSigningKey(null, alias, getSigningKeyPassphrase(signingKeystorePassphrase));
+    JWSSigner signer = createSigner(key);
+    if (key != null && lastModified != 0L) {
+      signers.put(alias, new KeyMaterial<>(alias, lastModified,
+          signingKeystorePassphrase == null ? null : signingKeystorePassphrase.clone(), signer));
+    }
+    return signer;
+  }
+
+  private static JWSSigner createSigner(Key key) {
+    // allowWeakKey to not break existing 1024 bit certificates
+    return new RSASSASigner((RSAPrivateKey) key, true);
+  }
+
+  private JWSVerifier getVerifier() throws KeystoreServiceException, KeyStoreException {
+    String alias = getSigningKeyAlias();
+    long lastModified = getSigningKeystoreLastModified();
+    KeyMaterial<JWSVerifier> cached = verifier.get();
+    if (cached != null && cached.isCurrent(alias, lastModified)) {
+      return cached.value;
+    }
+
+    PublicKey key = ks.getSigningKeystore().getCertificate(alias).getPublicKey();
+    JWSVerifier rsaVerifier = new RSASSAVerifier((RSAPublicKey) key);
+    if (lastModified != 0L) {
+      verifier.set(new KeyMaterial<>(alias, lastModified, null, rsaVerifier));
+    }
+    return rsaVerifier;
+  }
+
+  /**
+   * @return the modification time of the default signing keystore file, or 0 if it isn't known in
+   * which case the key material is not cached
+   */
+  private long getSigningKeystoreLastModified() {
+    return signingKeystoreFile == null ? 0L : signingKeystoreFile.lastModified();
+  }
+
   private char[] getSigningKeyPassphrase(char[] signingKeyPassphrase) throws AliasServiceException {
     if(signingKeyPassphrase != null) {
       return signingKeyPassphrase;
@@ -226,15 +281,14 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
   public boolean verifyToken(JWT token, RSAPublicKey publicKey)
       throws TokenServiceException {
     boolean rc;
-    PublicKey key;
     try {
+      JWSVerifier verifier;
       if (publicKey == null) {
-        key = ks.getSigningKeystore().getCertificate(getSigningKeyAlias()).getPublicKey();
+        verifier = getVerifier();
       }
       else {
-        key = publicKey;
+        verifier = new RSASSAVerifier(publicKey);
       }
-      JWSVerifier verifier = new RSASSAVerifier((RSAPublicKey) key);
       // TODO: interrogate the token for issuer claim in order to determine the public key to use for verification
       // consider jwk for specifying the key too
       rc = token.verify(verifier);
@@ -251,6 +305,10 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
       throw new ServiceLifecycleException("Alias or Keystore service is not set");
     }
     this.config = config;
+    String signingKeystorePath = config.getSigningKeystorePath();
+    this.signingKeystoreFile = signingKeystorePath == null ? null : new File(signingKeystorePath);
+    signers.clear();
+    verifier.set(null);
   }
 
   @Override
@@ -313,4 +371,26 @@ public class DefaultTokenAuthorityService implements JWTokenAuthority, Service {
   @Override
   public void stop() throws ServiceLifecycleException {
   }
+
+  /**
+   * Key material derived from the signing keystore along with the alias and the keystore
+   * modification time it was read for.
+   */
+  private static class KeyMaterial<T> {
+    private final String alias;
+    private final long lastModified;
+    private final char[] passphrase;
+    private final T value;
+
+    KeyMaterial(String alias, long lastModified, char[] passphrase, T value) {
+      this.alias = alias;
+      this.lastModified = lastModified;
+      this.passphrase = passphrase;
+      this.value = value;
+    }
+
+    boolean isCurrent(String alias, long lastModified) {
+      return this.lastModified == lastModified && this.alias.equals(alias);
+    }
+  }
 }
@@ -22,6 +22,7 @@ import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.topology.ClusterConfigurationMonitorService;
 import org.apache.knox.gateway.topology.discovery.ClusterConfigurationMonitor;
 import org.apache.knox.gateway.topology.discovery.ClusterConfigurationMonitorProvider;
+import org.apache.knox.gateway.topology.simple.SimpleDescriptorHandler;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -80,6 +81,7 @@ public class DefaultClusterConfigurationMonitorService implements ClusterConfigu
         for (ClusterConfigurationMonitor monitor : monitors.values()) {
             monitor.clearCache(source, clusterName);
         }
+        SimpleDescriptorHandler.clearDiscoveryCache(source, clusterName);
     }
 
     public void setAliasService(AliasService aliasService) {
@@ -81,6 +81,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
 
@@ -597,7 +598,7 @@ public class DefaultTopologyService
     // Register a cluster configuration monitor listener for change notifications
     ClusterConfigurationMonitorService ccms =
                   GatewayServer.getGatewayServices().getService(ServiceType.CLUSTER_CONFIGURATION_MONITOR_SERVICE);
-    ccms.addListener(new TopologyDiscoveryTrigger(this, ccms));
+    ccms.addListener(new TopologyDiscoveryTrigger(this, descriptorsMonitor, ccms));
   }
 
   @Override
@@ -797,6 +798,9 @@ public class DefaultTopologyService
 
     private Map<String, List<String>> providerConfigReferences = new HashMap<>();
 
+    // The descriptors touched to regenerate their topologies after a cluster configuration change
+    private final Set<String> configurationChangeRegenerations = ConcurrentHashMap.newKeySet();
+
 
     static boolean isDescriptorFile(String filename) {
       return SUPPORTED_EXTENSIONS.contains(FilenameUtils.getExtension(filename));
@@ -813,6 +817,20 @@ public class DefaultTopologyService
       return providerConfigReferences.computeIfAbsent(normalizedPath, p -> new ArrayList<>());
     }
 
+    /**
+     * Touches a descriptor to regenerate its topology after a cluster configuration change. Unlike an explicit change
+     * of the descriptor, this leaves the topology alone if its content doesn't change, so it isn't redeployed.
+     *
+     * @param descriptor the descriptor referencing the changed cluster
+     */
+    void regenerateForConfigurationChange(File descriptor) {
+      String descriptorName = FilenameUtils.normalize(descriptor.getAbsolutePath());
+      configurationChangeRegenerations.add(descriptorName);
+      if (!descriptor.setLastModified(System.currentTimeMillis())) {
+        configurationChangeRegenerations.remove(descriptorName);
+      }
+    }
+
     @Override
     public void onFileCreate(File file) {
       onFileChange(file);
@@ -849,7 +867,10 @@ public class DefaultTopologyService
     public void onFileChange(File file) {
       try {
         // When a simple descriptor has been created or modified, generate the new topology descriptor
-        Map<String, File> result = SimpleDescriptorHandler.handle(gatewayConfig, file, topologiesDir, aliasService);
+        boolean configurationChange =
+            configurationChangeRegenerations.remove(FilenameUtils.normalize(file.getAbsolutePath()));
+        Map<String, File> result =
+            SimpleDescriptorHandler.handle(gatewayConfig, file, topologiesDir, configurationChange, aliasService);
         log.generatedTopologyForDescriptorChange(result.get(SimpleDescriptorHandler.RESULT_TOPOLOGY).getName(),
             file.getName());
 
@@ -967,16 +988,21 @@ public class DefaultTopologyService
   private static class TopologyDiscoveryTrigger implements ClusterConfigurationMonitor.ConfigurationChangeListener {
 
     private TopologyService topologyService;
+    private DescriptorsMonitor descriptorsMonitor;
     private ClusterConfigurationMonitorService ccms;
 
-    TopologyDiscoveryTrigger(TopologyService topologyService, ClusterConfigurationMonitorService ccms) {
+    TopologyDiscoveryTrigger(TopologyService topologyService, DescriptorsMonitor descriptorsMonitor,
+                             ClusterConfigurationMonitorService ccms) {
       this.topologyService = topologyService;
+      this.descriptorsMonitor = descriptorsMonitor;
       this.ccms = ccms;
     }
 
     @Override
     public void onConfigurationChange(String source, String clusterName) {
       log.noticedClusterConfigurationChange(source, clusterName);
+      // Don't let the regenerated topologies reuse a discovery of the cluster from before the change
+      SimpleDescriptorHandler.clearDiscoveryCache(source, clusterName);
       try {
         boolean affectedDescriptors = false;
         // Identify any descriptors associated with the cluster configuration change
@@ -987,7 +1013,7 @@ public class DefaultTopologyService
               affectedDescriptors = true;
               log.triggeringTopologyRegeneration(source, clusterName, descriptor.getAbsolutePath());
               // 'Touch' the descriptor to trigger re-generation of the associated topology
-              descriptor.setLastModified(System.currentTimeMillis());
+              descriptorsMonitor.regenerateForConfigurationChange(descriptor);
             }
           }
         }
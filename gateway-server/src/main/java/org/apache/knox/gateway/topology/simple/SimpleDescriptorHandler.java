@@ -47,6 +47,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Processes simple topology descriptors, producing full topology files, which can subsequently be deployed to the
@@ -82,7 +83,19 @@ public class SimpleDescriptorHandler {
 
     private static final String DISCOVERY_PARAM_PREFIX = "discovery-";
 
-    private static Map<String, ServiceDiscovery> discoveryInstances = new HashMap<>();
+    private static Map<String, ServiceDiscovery> discoveryInstances = new ConcurrentHashMap<>();
+
+    /**
+     * Discard the discovery results kept for a cluster, so the next topology generation discovers it again.
+     *
+     * @param address     The address of the discovery source
+     * @param clusterName The name of the cluster
+     */
+    public static void clearDiscoveryCache(String address, String clusterName) {
+        for (ServiceDiscovery sd : discoveryInstances.values()) {
+            sd.clearCache(address, clusterName);
+        }
+    }
 
     public static Map<String, File> handle(GatewayConfig config, File desc) throws IOException {
         return handle(config, desc, NO_GATEWAY_SERVICES);
@@ -97,7 +110,18 @@ public class SimpleDescriptorHandler {
     }
 
     public static Map<String, File> handle(GatewayConfig config, File desc, File destDirectory, Service...gatewayServices) throws IOException {
-        return handle(config, SimpleDescriptorFactory.parse(desc.getAbsolutePath()), desc.getParentFile(), destDirectory, gatewayServices);
+        return handle(config, desc, destDirectory, false, gatewayServices);
+    }
+
+    /**
+     * @param keepUnchangedTopology Whether an existing topology file with the same content as the generated one is
+     *                              left alone, so it isn't redeployed. This is meant for regeneration triggered by a
+     *                              cluster configuration change; an explicit descriptor change always writes it.
+     */
+    public static Map<String, File> handle(GatewayConfig config, File desc, File destDirectory, boolean keepUnchangedTopology,
+                                           Service...gatewayServices) throws IOException {
+        return handle(config, SimpleDescriptorFactory.parse(desc.getAbsolutePath()), desc.getParentFile(), destDirectory,
+                      keepUnchangedTopology, gatewayServices);
     }
 
     public static Map<String, File> handle(GatewayConfig config, SimpleDescriptor desc, File srcDirectory, File destDirectory) {
@@ -105,6 +129,11 @@ public class SimpleDescriptorHandler {
     }
 
     public static Map<String, File> handle(GatewayConfig config, SimpleDescriptor desc, File srcDirectory, File destDirectory, Service...gatewayServices) {
+        return handle(config, desc, srcDirectory, destDirectory, false, gatewayServices);
+    }
+
+    public static Map<String, File> handle(GatewayConfig config, SimpleDescriptor desc, File srcDirectory, File destDirectory,
+                                           boolean keepUnchangedTopology, Service...gatewayServices) {
 
         List<String> declaredServiceNames = new ArrayList<>();
         List<String> validServiceNames = new ArrayList<>();
@@ -193,7 +222,8 @@ public class SimpleDescriptorHandler {
                                 validServiceNames,
                                 serviceVersions,
                                 serviceURLs,
-                                serviceParams);
+                                serviceParams,
+                                keepUnchangedTopology);
     }
 
 
@@ -351,6 +381,7 @@ public class SimpleDescriptorHandler {
      * @param serviceVersions   The versions of the services; optional attribute.
      * @param serviceURLs       The URLs associated with the valid service names.
      * @param serviceParams     The params associated with the valid service names.
+     * @param keepUnchangedTopology Whether an existing topology file with the same content is left alone.
      *
      * @return A Map with the generated topology file and the referenced provider configuration.
      */
@@ -362,7 +393,8 @@ public class SimpleDescriptorHandler {
                                                       final List<String> validServiceNames,
                                                       final Map<String, String> serviceVersions,
                                                       final Map<String, List<String>> serviceURLs,
-                                                      final Map<String, Map<String, String>> serviceParams) {
+                                                      final Map<String, Map<String, String>> serviceParams,
+                                                      final boolean keepUnchangedTopology) {
         Map<String, File> result = new HashMap<>();
         File topologyDescriptor = null;
         try (StringWriter sw = new StringWriter()) {
@@ -575,11 +607,18 @@ public class SimpleDescriptorHandler {
             }
             topologyDescriptor = new File(destDirectory, topologyFilename + ".xml");
 
-            try (OutputStream outputStream = Files.newOutputStream(topologyDescriptor.toPath());
-                 OutputStreamWriter outputStreamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-                 BufferedWriter fw = new BufferedWriter(outputStreamWriter)) {
-              fw.write(sw.toString());
-              fw.flush();
+            // Leave a topology that hasn't changed alone, so it isn't redeployed, when a cluster configuration
+            // change doesn't affect the discovered service URLs
+            if (keepUnchangedTopology && topologyDescriptor.exists()
+                    && sw.toString().equals(new String(Files.readAllBytes(topologyDescriptor.toPath()), StandardCharsets.UTF_8))) {
+                log.unchangedTopology(topologyDescriptor.getName());
+            } else {
+                try (OutputStream outputStream = Files.newOutputStream(topologyDescriptor.toPath());
+                     OutputStreamWriter outputStreamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+                     BufferedWriter fw = new BufferedWriter(outputStreamWriter)) {
+                  fw.write(sw.toString());
+                  fw.flush();
+                }
             }
         } catch (IOException e) {
             log.failedToGenerateTopologyFromSimpleDescriptor(topologyDescriptor.getName(), e);
@@ -61,4 +61,8 @@ public interface SimpleDescriptorMessages {
             text = "Failed to create a password for query string encryption for {0}." )
     void unableCreatePasswordForEncryption(String topologyName);
 
+    @Message(level = MessageLevel.DEBUG,
+            text = "The generated topology {0} is unchanged." )
+    void unchangedTopology(String topologyFile);
+
 }
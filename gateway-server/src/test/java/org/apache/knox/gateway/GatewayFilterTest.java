@@ -17,10 +17,13 @@
  */
 package org.apache.knox.gateway;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.apache.knox.gateway.audit.api.AuditServiceFactory;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.topology.Topology;
+import org.apache.knox.gateway.util.urltemplate.Template;
 import org.apache.knox.test.category.FastTests;
 import org.apache.knox.test.category.UnitTests;
 import org.easymock.EasyMock;
@@ -39,7 +42,9 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URISyntaxException;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 @Category( { UnitTests.class, FastTests.class } )
@@ -218,4 +223,173 @@ public class GatewayFilterTest {
     assertThat(filter.url, is("http://host:8443/gateway/sandbox/test-role/test-path/test-resource"));
 
   }
+
+  @Test
+  public void testSourceRequestUrlAttributeParsedOnDemand() throws Exception {
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.replay( config );
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    GatewayConfig gatewayConfig = EasyMock.createNiceMock( GatewayConfig.class );
+    EasyMock.expect( request.getPathInfo() ).andReturn( "/test-path/test-resource" ).anyTimes();
+    EasyMock.expect( request.getQueryString() ).andReturn( "op=LIST" ).anyTimes();
+    EasyMock.expect( request.getServletContext() ).andReturn( context ).anyTimes();
+    EasyMock.expect( context.getAttribute(
+        GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).anyTimes();
+    EasyMock.expect(gatewayConfig.getHeaderNameForRemoteAddress()).andReturn(
+        "Custom-Forwarded-For").anyTimes();
+    EasyMock.replay( request );
+    EasyMock.replay( context );
+    EasyMock.replay( gatewayConfig );
+
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.replay( response );
+
+    TestSourceUrlFilter other = new TestSourceUrlFilter();
+    TestSourceUrlFilter filter = new TestSourceUrlFilter();
+
+    GatewayFilter gateway = new GatewayFilter();
+    gateway.addFilter( "/other-path/**?**", "other-filter", other, null, "other-role" );
+    gateway.addFilter( "/test-path/**?**", "test-filter", filter, null, "test-role" );
+    gateway.init( config );
+    gateway.doFilter( request, response );
+    gateway.destroy();
+
+    assertThat( other.sourceUrl, nullValue() );
+    assertThat( filter.sourceUrl, instanceOf( Template.class ) );
+    assertThat( filter.sourceUrl.toString(), is( "/test-path/test-resource?op=LIST" ) );
+  }
+
+  @Test
+  public void testChainTimers() throws Exception {
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.replay( config );
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    GatewayConfig gatewayConfig = EasyMock.createNiceMock( GatewayConfig.class );
+    EasyMock.expect( request.getPathInfo() ).andReturn( "/test-path/test-resource" ).anyTimes();
+    EasyMock.expect( request.getServletContext() ).andReturn( context ).anyTimes();
+    EasyMock.expect( context.getAttribute(
+        GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).anyTimes();
+    EasyMock.expect(gatewayConfig.getHeaderNameForRemoteAddress()).andReturn(
+        "Custom-Forwarded-For").anyTimes();
+    EasyMock.replay( request );
+    EasyMock.replay( context );
+    EasyMock.replay( gatewayConfig );
+
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.replay( response );
+
+    TestRoleFilter authentication = new TestRoleFilter() {
+      @Override
+      protected void doFilter( HttpServletRequest request, HttpServletResponse response, FilterChain chain ) throws IOException, ServletException {
+        chain.doFilter( request, response );
+      }
+    };
+    TestRoleFilter dispatch = new TestRoleFilter();
+
+    MetricRegistry metrics = new MetricRegistry();
+    GatewayFilter gateway = new GatewayFilter();
+    gateway.addFilter( "/test-path/**", "test-authentication", authentication, null, "test-role", "authentication" );
+    gateway.addFilter( "/test-path/**", "test-dispatch", dispatch, null, "test-role", "dispatch" );
+    gateway.setChainTimers( new GatewayFilter.ChainTimers() {
+      @Override
+      public Timer getRequestTimer( String resourceRole ) {
+        return metrics.timer( MetricRegistry.name( resourceRole, "requests" ) );
+      }
+
+      @Override
+      public Timer getFilterTimer( String resourceRole, String filterRole, String filterName ) {
+        return metrics.timer( MetricRegistry.name( resourceRole, filterRole, filterName ) );
+      }
+    } );
+    gateway.init( config );
+    gateway.doFilter( request, response );
+    gateway.doFilter( request, response );
+    gateway.destroy();
+
+    assertThat( metrics.timer( "test-role.requests" ).getCount(), is( 2L ) );
+    assertThat( metrics.timer( "test-role.authentication.test-authentication" ).getCount(), is( 2L ) );
+    assertThat( metrics.timer( "test-role.dispatch.test-dispatch" ).getCount(), is( 2L ) );
+    assertThat( metrics.getTimers().size(), is( 3 ) );
+  }
+
+  @Test
+  public void testChainTimersCountStageOnce() throws Exception {
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.replay( config );
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    GatewayConfig gatewayConfig = EasyMock.createNiceMock( GatewayConfig.class );
+    EasyMock.expect( request.getPathInfo() ).andReturn( "/test-path/test-resource" ).anyTimes();
+    EasyMock.expect( request.getServletContext() ).andReturn( context ).anyTimes();
+    EasyMock.expect( context.getAttribute(
+        GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).anyTimes();
+    EasyMock.expect(gatewayConfig.getHeaderNameForRemoteAddress()).andReturn(
+        "Custom-Forwarded-For").anyTimes();
+    EasyMock.replay( request );
+    EasyMock.replay( context );
+    EasyMock.replay( gatewayConfig );
+
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.replay( response );
+
+    TestRoleFilter federation = new TestRoleFilter() {
+      @Override
+      protected void doFilter( HttpServletRequest request, HttpServletResponse response, FilterChain chain ) throws IOException, ServletException {
+        chain.doFilter( request, response );
+      }
+    };
+    TestRoleFilter authentication = new TestRoleFilter() {
+      @Override
+      protected void doFilter( HttpServletRequest request, HttpServletResponse response, FilterChain chain ) throws IOException, ServletException {
+        chain.doFilter( request, response );
+      }
+    };
+    TestRoleFilter dispatch = new TestRoleFilter();
+
+    // Both the federation and the authentication filter belong to the authentication stage
+    MetricRegistry metrics = new MetricRegistry();
+    GatewayFilter gateway = new GatewayFilter();
+    gateway.addFilter( "/test-path/**", "test-federation", federation, null, "test-role", "federation" );
+    gateway.addFilter( "/test-path/**", "test-authentication", authentication, null, "test-role", "authentication" );
+    gateway.addFilter( "/test-path/**", "test-dispatch", dispatch, null, "test-role", "dispatch" );
+    gateway.setChainTimers( new GatewayFilter.ChainTimers() {
+      @Override
+      public Timer getRequestTimer( String resourceRole ) {
+        return metrics.timer( MetricRegistry.name( resourceRole, "requests" ) );
+      }
+
+      @Override
+      public Timer getFilterTimer( String resourceRole, String filterRole, String filterName ) {
+        String stage = "dispatch".equals( filterRole ) ? "dispatch" : "authentication";
+        return metrics.timer( MetricRegistry.name( resourceRole, stage ) );
+      }
+    } );
+    gateway.init( config );
+    gateway.doFilter( request, response );
+    gateway.doFilter( request, response );
+    gateway.destroy();
+
+    assertThat( metrics.timer( "test-role.requests" ).getCount(), is( 2L ) );
+    assertThat( metrics.timer( "test-role.authentication" ).getCount(), is( 2L ) );
+    assertThat( metrics.timer( "test-role.dispatch" ).getCount(), is( 2L ) );
+  }
+
+  public static class TestSourceUrlFilter extends AbstractGatewayFilter {
+
+    public Object sourceUrl;
+
+    @Override
+    protected void doFilter( HttpServletRequest request, HttpServletResponse response, FilterChain chain ) throws IOException, ServletException {
+      this.sourceUrl = request.getAttribute( AbstractGatewayFilter.SOURCE_REQUEST_URL_ATTRIBUTE_NAME );
+    }
+
+  }
 }
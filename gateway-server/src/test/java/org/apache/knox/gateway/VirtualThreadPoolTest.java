@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway;
+
+import org.apache.log4j.MDC;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("PMD.DoNotUseThreads")
+public class VirtualThreadPoolTest {
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Virtual threads are not supported by this JVM", VirtualThreadPool.isSupported());
+  }
+
+  @Test
+  public void testManyBlockedJobsRunConcurrently() throws Exception {
+    VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+    pool.start();
+    try {
+      int jobs = 10000;
+      CountDownLatch started = new CountDownLatch(jobs);
+      CountDownLatch release = new CountDownLatch(1);
+      for (int i = 0; i < jobs; i++) {
+        pool.execute(new RequestJob(() -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }));
+      }
+      assertTrue(started.await(30, TimeUnit.SECONDS));
+      assertTrue(pool.getThreads() >= jobs);
+      assertFalse(pool.isLowOnThreads());
+      release.countDown();
+    } finally {
+      pool.stop();
+    }
+  }
+
+  @Test
+  public void testJobsDontInheritTheMdc() throws Exception {
+    VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+    pool.start();
+    MDC.put("knox.test", "accepting thread");
+    try {
+      AtomicReference<Object> value = new AtomicReference<>("unset");
+      CountDownLatch done = new CountDownLatch(1);
+      pool.execute(new RequestJob(() -> {
+        value.set(MDC.get("knox.test"));
+        done.countDown();
+      }));
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertNull(value.get());
+    } finally {
+      MDC.remove("knox.test");
+      pool.stop();
+    }
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testStoppedPoolRejectsJobs() throws Exception {
+    VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+    pool.start();
+    pool.stop();
+    pool.join();
+    pool.execute(new RequestJob(() -> { }));
+  }
+
+  @Test
+  public void testOnlyRequestJobsRunOnVirtualThreads() throws Exception {
+    VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+    pool.start();
+    try {
+      AtomicReference<String> acceptor = new AtomicReference<>();
+      AtomicReference<String> request = new AtomicReference<>();
+      CountDownLatch done = new CountDownLatch(2);
+      pool.execute(() -> {
+        acceptor.set(Thread.currentThread().getName());
+        done.countDown();
+      });
+      pool.execute(new RequestJob(() -> {
+        request.set(Thread.currentThread().getName());
+        done.countDown();
+      }));
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertFalse(acceptor.get().startsWith("knox-request-"));
+      assertTrue(request.get().startsWith("knox-request-"));
+
+      // A selector must execute the tasks it produces rather than run them itself
+      assertFalse(pool.tryExecute(new RequestJob(() -> { })));
+    } finally {
+      pool.stop();
+    }
+  }
+
+  private static class RequestJob implements Runnable, Invocable {
+    private final Runnable job;
+
+    RequestJob(Runnable job) {
+      this.job = job;
+    }
+
+    @Override
+    public void run() {
+      job.run();
+    }
+  }
+}
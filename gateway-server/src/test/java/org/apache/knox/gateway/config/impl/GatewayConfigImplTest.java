@@ -215,6 +215,26 @@ public class GatewayConfigImplTest {
     assertThat( idleTimeout, is(15000L));
   }
 
+  @Test( timeout = TestUtils.SHORT_TIMEOUT )
+  public void testHttp2Settings() {
+    GatewayConfigImpl config = new GatewayConfigImpl();
+
+    // Check the defaults.
+    assertThat( config.isHttp2Enabled(), is( false ) );
+    assertThat( config.getHttp2MaxConcurrentStreams(), is( 128 ) );
+    assertThat( config.getHttp2InitialStreamRecvWindow(), is( 512*1024 ) );
+    assertThat( config.getHttp2InitialSessionRecvWindow(), is( 1024*1024 ) );
+
+    config.set( GatewayConfigImpl.HTTP2_ENABLED, "true" );
+    config.setInt( GatewayConfigImpl.HTTP2_MAX_CONCURRENT_STREAMS, 256 );
+    config.setInt( GatewayConfigImpl.HTTP2_INITIAL_STREAM_RECV_WINDOW, 1024*1024 );
+    config.setInt( GatewayConfigImpl.HTTP2_INITIAL_SESSION_RECV_WINDOW, 4*1024*1024 );
+    assertThat( config.isHttp2Enabled(), is( true ) );
+    assertThat( config.getHttp2MaxConcurrentStreams(), is( 256 ) );
+    assertThat( config.getHttp2InitialStreamRecvWindow(), is( 1024*1024 ) );
+    assertThat( config.getHttp2InitialSessionRecvWindow(), is( 4*1024*1024 ) );
+  }
+
   @Test( timeout = TestUtils.SHORT_TIMEOUT )
   public void testGatewayServerHeaderEnabled() {
     GatewayConfigImpl config = new GatewayConfigImpl();
@@ -60,6 +60,8 @@ public class AbstractGatewayServicesTest {
         ServiceType.METRICS_SERVICE,
         ServiceType.CRYPTO_SERVICE,
         ServiceType.HOST_MAPPING_SERVICE,
+        ServiceType.HTTP_CONNECTION_POOL_SERVICE,
+        ServiceType.GROUP_LOOKUP_SERVICE,
         ServiceType.SERVICE_DEFINITION_REGISTRY,
         ServiceType.SERVICE_REGISTRY_SERVICE
     };
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.dispatch.impl;
+
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.knox.gateway.config.impl.GatewayConfigImpl;
+import org.apache.knox.gateway.services.metrics.impl.DefaultMetricsService;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultHttpConnectionPoolServiceTest {
+
+  @After
+  public void tearDown() {
+    DefaultMetricsService.getMetricRegistry().removeMatching(MetricFilter.ALL);
+  }
+
+  @Test
+  public void testConnectionManagerIsSharedPerTlsIdentity() throws Exception {
+    GatewayConfigImpl config = new GatewayConfigImpl();
+    config.set("gateway.httpclient.pool.shared.enabled", "true");
+    config.set("gateway.httpclient.pool.maxTotal", "200");
+    config.set("gateway.httpclient.pool.maxPerRoute", "50");
+
+    DefaultHttpConnectionPoolService service = new DefaultHttpConnectionPoolService();
+    service.init(config, null);
+    service.start();
+    try {
+      HttpClientConnectionManager oneWay = service.getConnectionManager("one-way-ssl", null);
+      assertSame(oneWay, service.getConnectionManager("one-way-ssl", null));
+      assertNotSame(oneWay, service.getConnectionManager("two-way-ssl", null));
+
+      PoolingHttpClientConnectionManager pooling = (PoolingHttpClientConnectionManager) oneWay;
+      assertEquals(200, pooling.getMaxTotal());
+      assertEquals(50, pooling.getDefaultMaxPerRoute());
+
+      // Eviction must be safe to run against empty pools
+      service.evictConnections();
+      assertEquals(0, pooling.getTotalStats().getLeased());
+    } finally {
+      service.stop();
+    }
+  }
+
+  @Test
+  public void testAsyncConnectionManagerIsSharedPerTlsIdentity() throws Exception {
+    GatewayConfigImpl config = new GatewayConfigImpl();
+    config.set("gateway.httpclient.pool.shared.enabled", "true");
+    config.set("gateway.httpclient.pool.maxTotal", "200");
+    config.set("gateway.httpclient.pool.maxPerRoute", "50");
+
+    DefaultHttpConnectionPoolService service = new DefaultHttpConnectionPoolService();
+    service.init(config, null);
+    service.start();
+    try {
+      NHttpClientConnectionManager oneWay = service.getAsyncConnectionManager("one-way-ssl", null);
+      assertSame(oneWay, service.getAsyncConnectionManager("one-way-ssl", null));
+      assertNotSame(oneWay, service.getAsyncConnectionManager("two-way-ssl", null));
+
+      PoolingNHttpClientConnectionManager pooling = (PoolingNHttpClientConnectionManager) oneWay;
+      assertEquals(200, pooling.getMaxTotal());
+      assertEquals(50, pooling.getDefaultMaxPerRoute());
+
+      service.evictConnections();
+      assertEquals(0, pooling.getTotalStats().getLeased());
+    } finally {
+      service.stop();
+    }
+  }
+
+  @Test
+  public void testPoolMetricsArePublished() throws Exception {
+    GatewayConfigImpl config = new GatewayConfigImpl();
+    config.set(GatewayConfigImpl.METRICS_ENABLED, "true");
+    config.set("gateway.httpclient.pool.shared.enabled", "true");
+
+    DefaultHttpConnectionPoolService service = new DefaultHttpConnectionPoolService();
+    service.init(config, null);
+    service.start();
+
+    service.getConnectionManager("one-way-ssl", null);
+    MetricRegistry registry = DefaultMetricsService.getMetricRegistry();
+    String prefix = MetricRegistry.name(DefaultHttpConnectionPoolService.METRICS_PREFIX, "one-way-ssl");
+    assertTrue(registry.getGauges().containsKey(MetricRegistry.name(prefix, "leased-connections")));
+    assertTrue(registry.getGauges().containsKey(MetricRegistry.name(prefix, "max-connections")));
+    assertTrue(registry.getTimers().containsKey(MetricRegistry.name(prefix, "lease-wait")));
+
+    service.stop();
+    assertTrue(registry.getNames().stream().noneMatch(name -> name.startsWith(prefix)));
+  }
+}
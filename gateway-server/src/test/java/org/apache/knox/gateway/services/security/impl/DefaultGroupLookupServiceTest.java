@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.security.impl;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.services.security.GroupLookupService.GroupResolver;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultGroupLookupServiceTest {
+  private DefaultGroupLookupService service;
+
+  @After
+  public void tearDown() throws Exception {
+    if (service != null) {
+      service.stop();
+    }
+  }
+
+  private DefaultGroupLookupService createService(long ttl, long negativeTtl, int maxEntries) throws Exception {
+    GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getGroupLookupCacheTTL()).andReturn(ttl).anyTimes();
+    EasyMock.expect(config.getGroupLookupCacheNegativeTTL()).andReturn(negativeTtl).anyTimes();
+    EasyMock.expect(config.getGroupLookupCacheMaxEntries()).andReturn(maxEntries).anyTimes();
+    EasyMock.replay(config);
+
+    service = new DefaultGroupLookupService();
+    service.init(config, Collections.emptyMap());
+    service.start();
+    return service;
+  }
+
+  @Test
+  public void testGroupsAreCachedPerResolver() throws Exception {
+    createService(60000L, 60000L, 100);
+    AtomicInteger lookups = new AtomicInteger();
+    GroupResolver resolver = user -> {
+      lookups.incrementAndGet();
+      return Arrays.asList("admin", "users");
+    };
+
+    assertEquals(Arrays.asList("admin", "users"), service.getGroups("ldap", "guest", resolver));
+    assertEquals(Arrays.asList("admin", "users"), service.getGroups("ldap", "guest", resolver));
+    assertEquals(1, lookups.get());
+
+    service.getGroups("shell", "guest", resolver);
+    service.getGroups("ldap", "admin", resolver);
+    assertEquals(3, lookups.get());
+  }
+
+  @Test
+  public void testNegativeCaching() throws Exception {
+    createService(60000L, 100L, 100);
+    AtomicInteger lookups = new AtomicInteger();
+    GroupResolver resolver = user -> {
+      lookups.incrementAndGet();
+      throw new IOException("No groups found for user " + user);
+    };
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        service.getGroups("ldap", "nobody", resolver);
+        fail("Expected the lookup failure to be reported");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("nobody"));
+      }
+    }
+    assertEquals(1, lookups.get());
+
+    assertEquals(Collections.emptyList(), service.getGroups("ldap", "empty", user -> {
+      lookups.incrementAndGet();
+      return Collections.emptyList();
+    }));
+    assertEquals(2, lookups.get());
+
+    Thread.sleep(150L);
+    try {
+      service.getGroups("ldap", "nobody", resolver);
+      fail("Expected the lookup failure to be reported");
+    } catch (IOException e) {
+      assertEquals(3, lookups.get());
+    }
+  }
+
+  @Test
+  public void testConcurrentMissesAreCoalesced() throws Exception {
+    createService(60000L, 60000L, 100);
+    AtomicInteger lookups = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    GroupResolver resolver = user -> {
+      lookups.incrementAndGet();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return Collections.singletonList("users");
+    };
+
+    List<CompletableFuture<List<String>>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return service.getGroups("ldap", "guest", resolver);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+    }
+    Thread.sleep(200L);
+    release.countDown();
+    for (CompletableFuture<List<String>> result : results) {
+      assertEquals(Collections.singletonList("users"), result.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void testRefreshAhead() throws Exception {
+    createService(400L, 100L, 100);
+    AtomicInteger lookups = new AtomicInteger();
+    GroupResolver resolver = user -> Collections.singletonList("group" + lookups.incrementAndGet());
+
+    assertEquals(Collections.singletonList("group1"), service.getGroups("ldap", "guest", resolver));
+    Thread.sleep(320L);
+    // Past three quarters of the TTL the cached groups are served while they are refreshed
+    assertEquals(Collections.singletonList("group1"), service.getGroups("ldap", "guest", resolver));
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (lookups.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    Thread.sleep(20L);
+    assertEquals(Collections.singletonList("group2"), service.getGroups("ldap", "guest", resolver));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testMaxEntriesAndDisabledCache() throws Exception {
+    createService(60000L, 60000L, 10);
+    for (int i = 0; i < 50; i++) {
+      service.getGroups("ldap", "user" + i, user -> Collections.singletonList("users"));
+    }
+    assertTrue(service.size() <= 11);
+    service.stop();
+
+    createService(0L, 0L, 10);
+    AtomicInteger lookups = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      service.getGroups("ldap", "guest", user -> Collections.singletonList("group" + lookups.incrementAndGet()));
+    }
+    assertEquals(3, lookups.get());
+    assertEquals(0, service.size());
+  }
+}
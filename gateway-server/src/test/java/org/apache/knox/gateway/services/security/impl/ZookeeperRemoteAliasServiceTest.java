@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.easymock.EasyMock.capture;
 
@@ -209,6 +210,79 @@ public class ZookeeperRemoteAliasServiceTest {
         aliases.contains(testAutoGeneratedpasswordAlias));
   }
 
+  @Test
+  public void testCachedAliasesFollowRemoteChanges() throws Exception {
+    final String clusterName = "cached";
+    final String alias = "knox.test.cached.alias";
+
+    final ZookeeperRemoteAliasService zkAlias = createStartedService();
+    final ZookeeperRemoteAliasService otherZkAlias = createStartedService();
+
+    /* Missing aliases are cached too, until another gateway adds them */
+    Assert.assertNull(zkAlias.getPasswordFromAliasForCluster(clusterName, alias));
+    otherZkAlias.addAliasForCluster(clusterName, alias, "firstPassword");
+    waitForPassword(zkAlias, clusterName, alias, "firstPassword");
+
+    /* Lookups are served from the cache and hand out copies */
+    final char[] password = zkAlias.getPasswordFromAliasForCluster(clusterName, alias);
+    password[0] = 'x';
+    Assert.assertEquals("firstPassword",
+        new String(zkAlias.getPasswordFromAliasForCluster(clusterName, alias)));
+
+    /* Removal and re-creation by another gateway is picked up by the watches */
+    otherZkAlias.removeAliasForCluster(clusterName, alias);
+    waitForPassword(zkAlias, clusterName, alias, null);
+    otherZkAlias.addAliasForCluster(clusterName, alias, "secondPassword");
+    waitForPassword(zkAlias, clusterName, alias, "secondPassword");
+
+    /* Local changes are visible immediately */
+    zkAlias.removeAliasForCluster(clusterName, alias);
+    Assert.assertNull(zkAlias.getPasswordFromAliasForCluster(clusterName, alias));
+
+    zkAlias.stop();
+    otherZkAlias.stop();
+  }
+
+  private static ZookeeperRemoteAliasService createStartedService() throws Exception {
+    final DefaultAliasService defaultAlias = EasyMock
+        .createNiceMock(DefaultAliasService.class);
+    EasyMock.expect(defaultAlias.getAliasesForCluster(EasyMock.anyString()))
+        .andReturn(new ArrayList<>()).anyTimes();
+    EasyMock.replay(defaultAlias);
+
+    final DefaultMasterService ms = EasyMock
+        .createNiceMock(DefaultMasterService.class);
+    EasyMock.expect(ms.getMasterSecret()).andReturn("knox".toCharArray())
+        .anyTimes();
+    EasyMock.replay(ms);
+
+    RemoteConfigurationRegistryClientService clientService = (new ZooKeeperClientServiceProvider())
+        .newInstance();
+    clientService.setAliasService(defaultAlias);
+    clientService.init(gc, Collections.emptyMap());
+
+    final ZookeeperRemoteAliasService zkAlias = new ZookeeperRemoteAliasService(defaultAlias, ms,
+        clientService);
+    zkAlias.init(gc, Collections.emptyMap());
+    zkAlias.start();
+    return zkAlias;
+  }
+
+  private static void waitForPassword(final ZookeeperRemoteAliasService zkAlias,
+      final String clusterName, final String alias, final String expected) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    String actual;
+    do {
+      final char[] password = zkAlias.getPasswordFromAliasForCluster(clusterName, alias);
+      actual = password == null ? null : new String(password);
+      if (expected == null ? actual == null : expected.equals(actual)) {
+        return;
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    } while (System.nanoTime() - deadline < 0);
+    Assert.assertEquals(expected, actual);
+  }
+
   @Test
   public void testEncryptDecrypt() throws Exception {
     final String testPassword = "ApacheKnoxPassword123";
@@ -18,6 +18,12 @@
 package org.apache.knox.gateway.services.token.impl;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
 import java.security.Principal;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Collections;
@@ -26,13 +32,16 @@ import java.util.HashMap;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
 import org.apache.knox.gateway.services.security.AliasService;
+import org.apache.knox.gateway.services.security.KeystoreService;
 import org.apache.knox.gateway.services.security.MasterService;
 import org.apache.knox.gateway.services.security.impl.DefaultKeystoreService;
 import org.apache.knox.gateway.services.security.token.impl.JWT;
 import org.apache.knox.gateway.services.security.token.TokenServiceException;
 
 import org.easymock.EasyMock;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -42,6 +51,9 @@ import static org.junit.Assert.assertTrue;
  * Some unit tests for the DefaultTokenAuthorityService.
  */
 public class DefaultTokenAuthorityServiceTest {
+  @Rule
+  public final TemporaryFolder testFolder = new TemporaryFolder();
+
   @Test
   public void testTokenCreation() throws Exception {
     Principal principal = EasyMock.createNiceMock(Principal.class);
@@ -542,4 +554,96 @@ public class DefaultTokenAuthorityServiceTest {
 
     EasyMock.verify(config, ms, as);
   }
+
+  @Test
+  public void testSigningKeyMaterialIsCached() throws Exception {
+    Path keystoreFile = copyServerKeystore();
+
+    GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getSigningKeystorePath()).andReturn(keystoreFile.toString()).anyTimes();
+    EasyMock.expect(config.getSigningKeyAlias()).andReturn("server").anyTimes();
+
+    AliasService as = EasyMock.createMock(AliasService.class);
+    EasyMock.expect(as.getSigningKeyPassphrase()).andReturn("horton".toCharArray()).once();
+
+    // The keystore is only read once for issuing and once for verifying
+    KeystoreService ks = EasyMock.createMock(KeystoreService.class);
+    EasyMock.expect(ks.getSigningKey(null, "server", "horton".toCharArray()))
+        .andAnswer(() -> loadKeystore(keystoreFile).getKey("server", "horton".toCharArray())).once();
+    EasyMock.expect(ks.getSigningKeystore()).andAnswer(() -> loadKeystore(keystoreFile)).once();
+
+    EasyMock.replay(config, as, ks);
+
+    DefaultTokenAuthorityService ta = new DefaultTokenAuthorityService();
+    ta.setAliasService(as);
+    ta.setKeystoreService(ks);
+    ta.init(config, new HashMap<>());
+
+    for (int i = 0; i < 3; i++) {
+      Principal principal = EasyMock.createNiceMock(Principal.class);
+      EasyMock.expect(principal.getName()).andReturn("john.doe@example.com");
+      EasyMock.replay(principal);
+
+      JWT token = ta.issueToken(principal, "RS256");
+      assertEquals("john.doe@example.com", token.getSubject());
+      assertTrue(ta.verifyToken(token));
+    }
+
+    EasyMock.verify(config, as, ks);
+  }
+
+  @Test
+  public void testSigningKeyMaterialReloadedWhenKeystoreChanges() throws Exception {
+    Path keystoreFile = copyServerKeystore();
+
+    GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getSigningKeystorePath()).andReturn(keystoreFile.toString()).anyTimes();
+    EasyMock.expect(config.getSigningKeyAlias()).andReturn("server").anyTimes();
+
+    AliasService as = EasyMock.createNiceMock(AliasService.class);
+    EasyMock.expect(as.getSigningKeyPassphrase()).andReturn("horton".toCharArray()).anyTimes();
+
+    KeystoreService ks = EasyMock.createMock(KeystoreService.class);
+    EasyMock.expect(ks.getSigningKey(null, "server", "horton".toCharArray()))
+        .andAnswer(() -> loadKeystore(keystoreFile).getKey("server", "horton".toCharArray())).times(2);
+    EasyMock.expect(ks.getSigningKeystore()).andAnswer(() -> loadKeystore(keystoreFile)).times(2);
+
+    EasyMock.replay(config, as, ks);
+
+    DefaultTokenAuthorityService ta = new DefaultTokenAuthorityService();
+    ta.setAliasService(as);
+    ta.setKeystoreService(ks);
+    ta.init(config, new HashMap<>());
+
+    Principal principal = EasyMock.createNiceMock(Principal.class);
+    EasyMock.expect(principal.getName()).andReturn("john.doe@example.com").anyTimes();
+    EasyMock.replay(principal);
+
+    assertTrue(ta.verifyToken(ta.issueToken(principal, "RS256")));
+
+    // Replacing the keystore file invalidates the cached key material
+    assertTrue(keystoreFile.toFile().setLastModified(keystoreFile.toFile().lastModified() + 60000L));
+    assertTrue(ta.verifyToken(ta.issueToken(principal, "RS256")));
+
+    EasyMock.verify(config, as, ks);
+  }
+
+  private Path copyServerKeystore() throws Exception {
+    String basedir = System.getProperty("basedir");
+    if (basedir == null) {
+      basedir = new File(".").getCanonicalPath();
+    }
+    Path keystoreFile = testFolder.newFolder().toPath().resolve("server-keystore.jks");
+    Files.copy(Paths.get(basedir, "target", "test-classes", "keystores", "server-keystore.jks"),
+        keystoreFile, StandardCopyOption.REPLACE_EXISTING);
+    return keystoreFile;
+  }
+
+  private static KeyStore loadKeystore(Path keystoreFile) throws Exception {
+    KeyStore keystore = KeyStore.getInstance("jks");
+    try (InputStream input = Files.newInputStream(keystoreFile)) {
+      keystore.load(input, "horton".toCharArray());
+    }
+    return keystore;
+  }
 }
@@ -460,6 +460,67 @@ public class SimpleDescriptorHandlerTest {
         }
     }
 
+    /**
+     * An unchanged topology is only left alone when it is regenerated for a cluster configuration change, so that an
+     * explicit descriptor change still redeploys it.
+     *
+     * N.B. This test depends on the PropertiesFileServiceDiscovery extension being configured:
+     *             org.apache.knox.gateway.topology.discovery.test.extension.PropertiesFileServiceDiscovery
+     */
+    @Test
+    public void testUnchangedTopologyIsKeptForConfigurationChangesOnly() throws Exception {
+        final String CLUSTER_NAME = "myproperties";
+
+        Properties serviceDiscoverySourceProps = new Properties();
+        serviceDiscoverySourceProps.setProperty(CLUSTER_NAME + ".WEBHDFS.url", "http://localhost:9999/webhdfs");
+        File serviceDiscoverySource = File.createTempFile("service-discovery", ".properties");
+        try (OutputStream outputStream = Files.newOutputStream(serviceDiscoverySource.toPath())) {
+          serviceDiscoverySourceProps.store(outputStream, "Test Service Discovery Source");
+        }
+
+        File providerConfig = writeProviderConfig("unchanged-topology-policy.xml", TEST_PROVIDER_CONFIG);
+
+        File topologyFile = null;
+        try {
+            File destDir = (new File(".")).getCanonicalFile();
+
+            GatewayConfig gc = EasyMock.createNiceMock(GatewayConfig.class);
+            EasyMock.replay(gc);
+
+            SimpleDescriptor testDescriptor = EasyMock.createNiceMock(SimpleDescriptor.class);
+            EasyMock.expect(testDescriptor.getName()).andReturn("unchangedtopology").anyTimes();
+            EasyMock.expect(testDescriptor.getDiscoveryAddress()).andReturn(serviceDiscoverySource.getAbsolutePath()).anyTimes();
+            EasyMock.expect(testDescriptor.getDiscoveryType()).andReturn("PROPERTIES_FILE").anyTimes();
+            EasyMock.expect(testDescriptor.getProviderConfig()).andReturn(providerConfig.getAbsolutePath()).anyTimes();
+            EasyMock.expect(testDescriptor.getClusterName()).andReturn(CLUSTER_NAME).anyTimes();
+            SimpleDescriptor.Service svc = EasyMock.createNiceMock(SimpleDescriptor.Service.class);
+            EasyMock.expect(svc.getName()).andReturn("WEBHDFS").anyTimes();
+            EasyMock.replay(svc);
+            EasyMock.expect(testDescriptor.getServices()).andReturn(Collections.singletonList(svc)).anyTimes();
+            EasyMock.replay(testDescriptor);
+
+            topologyFile = SimpleDescriptorHandler.handle(gc, testDescriptor, providerConfig.getParentFile(), destDir)
+                               .get(SimpleDescriptorHandler.RESULT_TOPOLOGY);
+            assertTrue(topologyFile.exists());
+            final long written = 1000L;
+            assertTrue(topologyFile.setLastModified(written));
+
+            // Regenerated for a cluster configuration change, the identical topology is not rewritten
+            SimpleDescriptorHandler.handle(gc, testDescriptor, providerConfig.getParentFile(), destDir, true);
+            assertEquals(written, topologyFile.lastModified());
+
+            // Regenerated for a descriptor change, it is
+            SimpleDescriptorHandler.handle(gc, testDescriptor, providerConfig.getParentFile(), destDir);
+            assertTrue(topologyFile.lastModified() > written);
+        } finally {
+            serviceDiscoverySource.delete();
+            providerConfig.delete();
+            if (topologyFile != null) {
+                topologyFile.delete();
+            }
+        }
+    }
+
     /*
      * KNOX-1216
      */
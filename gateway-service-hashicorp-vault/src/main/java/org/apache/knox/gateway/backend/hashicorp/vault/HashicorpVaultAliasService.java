@@ -17,8 +17,10 @@
  */
 package org.apache.knox.gateway.backend.hashicorp.vault;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.knox.gateway.backend.hashicorp.vault.authentication.HashicorpVaultClientAuthenticationProvider;
 import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.AliasServiceException;
@@ -38,13 +40,42 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link AliasService} backed by the versioned KV secrets engine of Hashicorp Vault.
+ * <p>
+ * Passwords read from Vault are cached for {@link #VAULT_CACHE_TTL_KEY}, including the fact that
+ * an alias doesn't exist. Entries which reach three quarters of their TTL are refreshed in the
+ * background on their next lookup, and an expired entry is still served for
+ * {@link #VAULT_CACHE_STALE_TTL_KEY} while Vault can't be reached. A read never replaces a cached
+ * password with an older version of the secret. The first lookup in a cluster reads all of its
+ * aliases in the background, so a deploying topology doesn't wait for Vault once per alias. When
+ * the aliases can't be listed, e.g. because the token lacks the list capability, the prefetch of
+ * the cluster is retried once per {@link #VAULT_CACHE_TTL_KEY} at most.
+ */
 public class HashicorpVaultAliasService implements AliasService {
+  private static final HashicorpVaultMessages LOG = MessagesFactory.get(HashicorpVaultMessages.class);
+
   public static final String TYPE = "hashicorp.vault";
   public static final String VAULT_CONFIG_PREFIX = "hashicorp.vault.";
   public static final String VAULT_ADDRESS_KEY = VAULT_CONFIG_PREFIX + "address";
+  /* Milliseconds a password is cached for, 0 disables the cache */
+  public static final String VAULT_CACHE_TTL_KEY = VAULT_CONFIG_PREFIX + "cache.ttl";
+  /* Milliseconds an expired password is still served while Vault fails */
+  public static final String VAULT_CACHE_STALE_TTL_KEY = VAULT_CONFIG_PREFIX + "cache.stale.ttl";
+  public static final String VAULT_CACHE_PREFETCH_KEY = VAULT_CONFIG_PREFIX + "cache.prefetch";
 
   private static final String KEY = "data";
+  private static final long DEFAULT_CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+  private static final long DEFAULT_CACHE_STALE_TTL = TimeUnit.HOURS.toMillis(1);
 
   static final String VAULT_SEPARATOR = "/";
   static final String VAULT_SECRETS_ENGINE_KEY = VAULT_CONFIG_PREFIX + "secrets.engine";
@@ -56,6 +87,15 @@ public class HashicorpVaultAliasService implements AliasService {
   private String vaultPathPrefix;
   private GatewayConfig config;
 
+  private final Map<String, CachedSecret> cache = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<CachedSecret>> loads = new ConcurrentHashMap<>();
+  /* When a prefetch of each cluster may be attempted again, Long.MAX_VALUE once started */
+  private final Map<String, Long> prefetchedClusters = new ConcurrentHashMap<>();
+  private long cacheTtl;
+  private long cacheStaleTtl;
+  private boolean prefetch;
+  private ExecutorService refresher;
+
   public HashicorpVaultAliasService(AliasService localAliasService) {
     this.localAliasService = localAliasService;
   }
@@ -95,7 +135,12 @@ public class HashicorpVaultAliasService implements AliasService {
   @Override
   public void addAliasForCluster(String clusterName, String alias, String value) throws AliasServiceException {
     try {
-      vault.put(getPath(clusterName, alias), Collections.singletonMap(KEY, value));
+      String path = getPath(clusterName, alias);
+      Versioned.Metadata metadata = vault.put(path, Collections.singletonMap(KEY, value));
+      if (refresher != null) {
+        store(path, new CachedSecret(value.toCharArray(), metadata == null ? Versioned.Version.unversioned()
+            : metadata.getVersion()));
+      }
     } catch (VaultException e) {
       throw new AliasServiceException(e);
     }
@@ -113,7 +158,14 @@ public class HashicorpVaultAliasService implements AliasService {
     });
      */
     try {
-      vault.delete(getPath(clusterName, alias));
+      String path = getPath(clusterName, alias);
+      vault.delete(path);
+      if (refresher != null) {
+        // Marks the alias removed, so that a read still in flight doesn't cache it again
+        cache.put(path, new CachedSecret(null, Versioned.Version.unversioned(), true));
+      } else {
+        cache.remove(path);
+      }
     } catch (VaultException e) {
       throw new AliasServiceException(e);
     }
@@ -122,19 +174,156 @@ public class HashicorpVaultAliasService implements AliasService {
   @Override
   public char[] getPasswordFromAliasForCluster(String clusterName, String alias) throws AliasServiceException {
     try {
-      Versioned<Map<String, Object>> mapVersioned = vault.get(getPath(clusterName, alias));
-      if(mapVersioned != null && mapVersioned.hasData()) {
-        Map<String, Object> data = mapVersioned.getData();
-        if(data != null && data.containsKey(KEY)) {
-          return String.valueOf(data.get(KEY)).toCharArray();
+      String path = getPath(clusterName, alias);
+      if (refresher == null) {
+        return read(path).getPassword();
+      }
+
+      CachedSecret cached = cache.get(path);
+      if (cached == null && prefetch) {
+        prefetch(clusterName);
+      }
+
+      long now = System.currentTimeMillis();
+      if (cached == null || cached.isExpired(now)) {
+        try {
+          cached = load(path);
+        } catch (VaultException e) {
+          if (cached == null || !cached.isServable(now)) {
+            throw e;
+          }
+          LOG.servingStaleAlias(alias, clusterName, e.toString());
         }
+      } else if (cached.claimRefresh(now)) {
+        refresh(path, alias, clusterName, cached);
       }
-      return null;
+      return cached.getPassword();
     } catch (VaultException e) {
       throw new AliasServiceException(e);
     }
   }
 
+  private CachedSecret read(String path) {
+    Versioned<Map<String, Object>> mapVersioned = vault.get(path);
+    if(mapVersioned != null && mapVersioned.hasData()) {
+      Map<String, Object> data = mapVersioned.getData();
+      if(data != null && data.containsKey(KEY)) {
+        return new CachedSecret(String.valueOf(data.get(KEY)).toCharArray(), mapVersioned.getVersion());
+      }
+    }
+    return new CachedSecret(null,
+        mapVersioned == null ? Versioned.Version.unversioned() : mapVersioned.getVersion());
+  }
+
+  /**
+   * Reads the secret from Vault into the cache. Concurrent loads of the same path share a read.
+   */
+  private CachedSecret load(String path) {
+    return load(path, false);
+  }
+
+  /**
+   * @param ifMissing whether to skip the read when the secret got cached in the meantime
+   */
+  private CachedSecret load(String path, boolean ifMissing) {
+    CompletableFuture<CachedSecret> load = new CompletableFuture<>();
+    CompletableFuture<CachedSecret> inFlight = loads.putIfAbsent(path, load);
+    if (inFlight != null) {
+      try {
+        return inFlight.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+
+    try {
+      CachedSecret before = cache.get(path);
+      CachedSecret loaded = ifMissing && before != null ? before : storeRead(path, before, read(path));
+      load.complete(loaded);
+      return loaded;
+    } catch (RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(path, load);
+    }
+  }
+
+  private CachedSecret store(String path, CachedSecret latest) {
+    return cache.merge(path, latest, HashicorpVaultAliasService::newer);
+  }
+
+  private CachedSecret storeRead(String path, CachedSecret before, CachedSecret read) {
+    // An alias removed while it was being read stays removed
+    return cache.merge(path, read,
+        (current, loaded) -> current != before && current.isRemoved() ? current : newer(current, loaded));
+  }
+
+  private static CachedSecret newer(CachedSecret current, CachedSecret loaded) {
+    // A lagging Vault node may still return an older version than the one already cached
+    return loaded.isOlderThan(current) ? current.renew() : loaded;
+  }
+
+  private void refresh(String path, String alias, String clusterName, CachedSecret cached) {
+    try {
+      refresher.execute(() -> {
+        try {
+          load(path);
+        } catch (RuntimeException e) {
+          // Keep serving the cached password, the next lookup retries the refresh.
+          LOG.failedToRefreshAlias(alias, clusterName, e.toString());
+          cached.refreshFailed();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Stopping, the cached password is served until it expires.
+    }
+  }
+
+  /**
+   * Starts reading all the aliases of a cluster into the cache in the background, once, or again
+   * once the backoff of a failed attempt has passed.
+   */
+  private void prefetch(String clusterName) {
+    Long retryAt = prefetchedClusters.get(clusterName);
+    boolean claimed = retryAt == null
+        ? prefetchedClusters.putIfAbsent(clusterName, Long.MAX_VALUE) == null
+        : System.currentTimeMillis() >= retryAt && prefetchedClusters.replace(clusterName, retryAt, Long.MAX_VALUE);
+    if (!claimed) {
+      return;
+    }
+
+    try {
+      refresher.execute(() -> prefetchAliases(clusterName));
+    } catch (RejectedExecutionException e) {
+      // Stopping
+      prefetchedClusters.remove(clusterName);
+    }
+  }
+
+  private void prefetchAliases(String clusterName) {
+    try {
+      List<String> aliases = vault.list(getPath(clusterName));
+      int count = 0;
+      if (aliases != null) {
+        for (String alias : aliases) {
+          if (!alias.endsWith(VAULT_SEPARATOR)) {
+            load(getPath(clusterName, alias), true);
+            count++;
+          }
+        }
+      }
+      LOG.prefetchedAliases(count, clusterName);
+    } catch (VaultException e) {
+      // Aliases are read one by one until the prefetch is retried.
+      prefetchedClusters.put(clusterName, System.currentTimeMillis() + cacheTtl);
+      LOG.failedToPrefetchAliases(clusterName, e.toString());
+    }
+  }
+
   @Override
   public char[] getPasswordFromAliasForCluster(String clusterName, String alias, boolean generate) throws AliasServiceException {
     if(generate) {
@@ -198,6 +387,9 @@ public class HashicorpVaultAliasService implements AliasService {
     String vaultAddress = vaultConfiguration.get(VAULT_ADDRESS_KEY);
     String vaultSecretsEngine = vaultConfiguration.get(VAULT_SECRETS_ENGINE_KEY);
     vaultPathPrefix = getVaultPathPrefix(vaultConfiguration);
+    cacheTtl = getLong(vaultConfiguration, VAULT_CACHE_TTL_KEY, DEFAULT_CACHE_TTL);
+    cacheStaleTtl = Math.max(getLong(vaultConfiguration, VAULT_CACHE_STALE_TTL_KEY, DEFAULT_CACHE_STALE_TTL), 0L);
+    prefetch = Boolean.parseBoolean(vaultConfiguration.getOrDefault(VAULT_CACHE_PREFETCH_KEY, "true"));
 
     VaultEndpoint vaultEndpoint;
     try {
@@ -210,6 +402,19 @@ public class HashicorpVaultAliasService implements AliasService {
     }
   }
 
+  private static long getLong(Map<String, String> properties, String key, long defaultValue) {
+    String value = properties.get(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.invalidConfigurationValue(key, value, String.valueOf(defaultValue));
+      return defaultValue;
+    }
+  }
+
   private String getVaultPathPrefix(Map<String, String> properties) {
     String vaultPathPrefix = properties.get(VAULT_PATH_PREFIX_KEY);
     if(vaultPathPrefix == null) {
@@ -242,9 +447,79 @@ public class HashicorpVaultAliasService implements AliasService {
 
   @Override
   public void start() throws ServiceLifecycleException {
+    if (cacheTtl <= 0) {
+      return;
+    }
+    refresher = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+        .namingPattern("HashicorpVaultAliasRefresh-%d")
+        .daemon(true)
+        .build());
   }
 
   @Override
   public void stop() throws ServiceLifecycleException {
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+    cache.clear();
+    prefetchedClusters.clear();
+  }
+
+  private final class CachedSecret {
+    /* null if the alias doesn't exist */
+    private final char[] password;
+    private final Versioned.Version version;
+    private final long refreshAt;
+    private final long expiresAt;
+    /* Whether the alias was removed through this service */
+    private final boolean removed;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    CachedSecret(char[] password, Versioned.Version version) {
+      this(password, version, false);
+    }
+
+    CachedSecret(char[] password, Versioned.Version version, boolean removed) {
+      this.password = password;
+      this.version = version;
+      this.removed = removed;
+      long now = System.currentTimeMillis();
+      refreshAt = now + cacheTtl - cacheTtl / 4;
+      expiresAt = now + cacheTtl;
+    }
+
+    char[] getPassword() {
+      return password == null ? null : password.clone();
+    }
+
+    boolean isRemoved() {
+      return removed;
+    }
+
+    boolean isOlderThan(CachedSecret other) {
+      return version.isVersioned() && other.version.isVersioned()
+          && version.getVersion() < other.version.getVersion();
+    }
+
+    CachedSecret renew() {
+      return new CachedSecret(password, version, removed);
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+
+    boolean isServable(long now) {
+      return now < expiresAt + cacheStaleTtl;
+    }
+
+    boolean claimRefresh(long now) {
+      return now >= refreshAt && refreshing.compareAndSet(false, true);
+    }
+
+    void refreshFailed() {
+      refreshing.set(false);
+    }
   }
 }
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.backend.hashicorp.vault;
+
+import org.apache.knox.gateway.i18n.messages.Message;
+import org.apache.knox.gateway.i18n.messages.MessageLevel;
+import org.apache.knox.gateway.i18n.messages.Messages;
+
+@Messages(logger = "org.apache.knox.gateway.backend.hashicorp.vault")
+public interface HashicorpVaultMessages {
+  @Message(level = MessageLevel.WARN, text = "Invalid value {1} for {0}, using {2}")
+  void invalidConfigurationValue(String key, String value, String defaultValue);
+
+  @Message(level = MessageLevel.WARN, text = "Failed to read alias {0} for cluster {1} from Vault, serving the expired cached value: {2}")
+  void servingStaleAlias(String alias, String clusterName, String error);
+
+  @Message(level = MessageLevel.WARN, text = "Failed to refresh alias {0} for cluster {1} from Vault: {2}")
+  void failedToRefreshAlias(String alias, String clusterName, String error);
+
+  @Message(level = MessageLevel.DEBUG, text = "Prefetched {0} aliases for cluster {1} from Vault")
+  void prefetchedAliases(int count, String clusterName);
+
+  @Message(level = MessageLevel.WARN, text = "Failed to prefetch the aliases for cluster {0} from Vault: {1}")
+  void failedToPrefetchAliases(String clusterName, String error);
+}
@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.backend.hashicorp.vault;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.knox.gateway.backend.hashicorp.vault.authentication.HashicorpVaultClientAuthenticationProvider;
+import org.apache.knox.gateway.backend.hashicorp.vault.authentication.TokenHashicorpVaultClientAuthenticationProvider;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.services.security.AliasService;
+import org.apache.knox.gateway.services.security.AliasServiceException;
+import org.easymock.EasyMock;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the alias cache of {@link HashicorpVaultAliasService} against a stand-in for the versioned
+ * KV API of Vault, which counts the requests it gets.
+ */
+public class TestHashicorpVaultAliasCache {
+  private static final Logger LOG = LoggerFactory.getLogger(TestHashicorpVaultAliasCache.class);
+
+  private static final String SECRETS_ENGINE = "knox-secret";
+  private static final String CLUSTER = "sandbox";
+  private static final int ALIASES = 10;
+  private static final int LOOKUPS = 1000;
+
+  private StandInVault vault;
+  private Server server;
+  private String vaultAddress;
+  private final List<AliasService> aliasServices = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    vault = new StandInVault();
+    server = new Server(new InetSocketAddress("localhost", 0));
+    server.setHandler(vault);
+    server.start();
+    vaultAddress = String.format(Locale.ROOT, "http://localhost:%d",
+        ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+
+    for (int i = 0; i < ALIASES; i++) {
+      vault.putSecret(CLUSTER + "/alias" + i, "password" + i);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (AliasService aliasService : aliasServices) {
+      aliasService.stop();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testRemoteCallsPerThousandLookups() throws Exception {
+    AliasService uncached = createAliasService(0L, 0L);
+    assertEquals(LOOKUPS, countRemoteCalls(uncached));
+
+    AliasService cached = createAliasService(TimeUnit.MINUTES.toMillis(5), 0L);
+    int before = vault.requests.get();
+    countRemoteCalls(cached);
+    // One list and one read per alias, shared by the lookups and the prefetch started by the first one
+    awaitRequests(before + 1 + ALIASES);
+    TimeUnit.MILLISECONDS.sleep(100L);
+    int remoteCalls = vault.requests.get() - before;
+    LOG.info("Remote calls per {} lookups of {} aliases: {}", LOOKUPS, ALIASES, remoteCalls);
+    assertEquals(1 + ALIASES, remoteCalls);
+  }
+
+  @Test
+  public void testFailedPrefetchIsNotRetriedOnEveryLookup() throws Exception {
+    // The token lacks the list capability
+    vault.listForbidden.set(true);
+    AliasService aliasService = createAliasService(TimeUnit.MINUTES.toMillis(5), 0L);
+    for (int i = 0; i < ALIASES; i++) {
+      assertEquals("password" + i, String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias" + i)));
+    }
+    awaitRequests(1 + ALIASES);
+    TimeUnit.MILLISECONDS.sleep(100L);
+    assertEquals(1, vault.lists.get());
+    assertEquals(1 + ALIASES, vault.requests.get());
+  }
+
+  private void awaitRequests(int requests) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (vault.requests.get() < requests) {
+      assertTrue("Expected " + requests + " requests, got " + vault.requests.get(),
+          System.currentTimeMillis() < deadline);
+      TimeUnit.MILLISECONDS.sleep(10L);
+    }
+  }
+
+  private int countRemoteCalls(AliasService aliasService) throws Exception {
+    int before = vault.requests.get();
+    for (int i = 0; i < LOOKUPS; i++) {
+      int alias = i % ALIASES;
+      assertEquals("password" + alias,
+          String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias" + alias)));
+    }
+    return vault.requests.get() - before;
+  }
+
+  @Test
+  public void testMissingAliasesAreCached() throws Exception {
+    AliasService aliasService = createAliasService(TimeUnit.MINUTES.toMillis(5), 0L);
+    assertNull(aliasService.getPasswordFromAliasForCluster(CLUSTER, "missing"));
+    // The read of the missing alias, and the prefetch of the others
+    awaitRequests(1 + 1 + ALIASES);
+    int before = vault.requests.get();
+    for (int i = 0; i < LOOKUPS; i++) {
+      assertNull(aliasService.getPasswordFromAliasForCluster(CLUSTER, "missing"));
+    }
+    assertEquals(before, vault.requests.get());
+  }
+
+  @Test
+  public void testWritesUpdateTheCache() throws Exception {
+    AliasService aliasService = createAliasService(TimeUnit.MINUTES.toMillis(5), 0L);
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+    awaitRequests(1 + ALIASES);
+
+    aliasService.addAliasForCluster(CLUSTER, "alias0", "changed");
+    int before = vault.requests.get();
+    assertEquals("changed", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+    assertEquals(before, vault.requests.get());
+
+    aliasService.removeAliasForCluster(CLUSTER, "alias0");
+    assertNull(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0"));
+  }
+
+  @Test
+  public void testExpiredPasswordsAreServedWhileVaultFails() throws Exception {
+    AliasService aliasService = createAliasService(200L, TimeUnit.HOURS.toMillis(1));
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+
+    vault.failing.set(true);
+    TimeUnit.MILLISECONDS.sleep(300L);
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+
+    vault.failing.set(false);
+    vault.putSecret(CLUSTER + "/alias0", "changed");
+    assertEquals("changed", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+  }
+
+  @Test
+  public void testExpiredPasswordsAreNotServedPastTheStaleTtl() throws Exception {
+    AliasService aliasService = createAliasService(200L, 0L);
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+
+    vault.failing.set(true);
+    TimeUnit.MILLISECONDS.sleep(300L);
+    try {
+      aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0");
+      fail("Expected the lookup to fail once the password expired");
+    } catch (AliasServiceException e) {
+      assertTrue(e.getMessage().contains("503"));
+    }
+  }
+
+  @Test
+  public void testPasswordsAreRefreshedBeforeTheyExpire() throws Exception {
+    long ttl = TimeUnit.SECONDS.toMillis(4);
+    AliasService aliasService = createAliasService(ttl, 0L);
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+    vault.putSecret(CLUSTER + "/alias0", "changed");
+
+    // Past three quarters of the TTL the cached password is served and refreshed in the background
+    TimeUnit.MILLISECONDS.sleep(ttl - ttl / 4 + 100L);
+    int before = vault.requests.get();
+    assertEquals("password0", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (!"changed".equals(String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")))) {
+      assertTrue("The password wasn't refreshed", System.currentTimeMillis() < deadline);
+      TimeUnit.MILLISECONDS.sleep(10L);
+    }
+    assertEquals(before + 1, vault.requests.get());
+  }
+
+  @Test
+  public void testOlderVersionsDontReplaceCachedPasswords() throws Exception {
+    AliasService aliasService = createAliasService(200L, 0L);
+    aliasService.addAliasForCluster(CLUSTER, "alias0", "changed");
+
+    // A lagging Vault node still returns the previous version
+    vault.lagging.set(true);
+    TimeUnit.MILLISECONDS.sleep(300L);
+    assertEquals("changed", String.valueOf(aliasService.getPasswordFromAliasForCluster(CLUSTER, "alias0")));
+  }
+
+  private AliasService createAliasService(long ttl, long staleTtl) throws Exception {
+    Map<String, String> remoteAliasServiceConfiguration = new HashMap<>();
+    remoteAliasServiceConfiguration.put(HashicorpVaultAliasService.VAULT_ADDRESS_KEY, vaultAddress);
+    remoteAliasServiceConfiguration.put(HashicorpVaultAliasService.VAULT_SECRETS_ENGINE_KEY, SECRETS_ENGINE);
+    remoteAliasServiceConfiguration.put(HashicorpVaultAliasService.VAULT_CACHE_TTL_KEY, String.valueOf(ttl));
+    remoteAliasServiceConfiguration.put(HashicorpVaultAliasService.VAULT_CACHE_STALE_TTL_KEY,
+        String.valueOf(staleTtl));
+    remoteAliasServiceConfiguration.put(HashicorpVaultClientAuthenticationProvider.AUTHENTICATION_TYPE_KEY,
+        TokenHashicorpVaultClientAuthenticationProvider.TYPE);
+    remoteAliasServiceConfiguration.put(TokenHashicorpVaultClientAuthenticationProvider.TOKEN_KEY, "token");
+
+    GatewayConfig gatewayConfig = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(gatewayConfig.getRemoteAliasServiceConfiguration())
+        .andReturn(remoteAliasServiceConfiguration).anyTimes();
+    EasyMock.replay(gatewayConfig);
+
+    AliasService aliasService = new HashicorpVaultAliasService(EasyMock.createNiceMock(AliasService.class));
+    aliasService.init(gatewayConfig, Collections.emptyMap());
+    aliasService.start();
+    aliasServices.add(aliasService);
+    return aliasService;
+  }
+
+  /**
+   * Serves the read, write, list and delete calls of the versioned KV API from memory.
+   */
+  private static class StandInVault extends AbstractHandler {
+    private static final String DATA_PATH = "/v1/" + SECRETS_ENGINE + "/data/";
+    private static final String METADATA_PATH = "/v1/" + SECRETS_ENGINE + "/metadata/";
+    private static final String CREATED_TIME = "2019-10-01T00:00:00.000000Z";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    /* Versions of each secret, the latest last */
+    private final Map<String, List<Map<String, Object>>> secrets = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final AtomicBoolean lagging = new AtomicBoolean();
+    private final AtomicBoolean listForbidden = new AtomicBoolean();
+    private final AtomicInteger lists = new AtomicInteger();
+
+    void putSecret(String path, String value) {
+      secrets.computeIfAbsent(path, p -> Collections.synchronizedList(new ArrayList<>()))
+          .add(Collections.singletonMap("data", value));
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+      baseRequest.setHandled(true);
+      requests.incrementAndGet();
+      if (failing.get()) {
+        write(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            Collections.singletonMap("errors", Collections.singletonList("Vault is sealed")));
+        return;
+      }
+
+      if (target.startsWith(METADATA_PATH) && "true".equals(request.getParameter("list"))) {
+        lists.incrementAndGet();
+        if (listForbidden.get()) {
+          write(response, HttpServletResponse.SC_FORBIDDEN,
+              Collections.singletonMap("errors", Collections.singletonList("permission denied")));
+          return;
+        }
+        list(target.substring(METADATA_PATH.length()), response);
+      } else if (target.startsWith(DATA_PATH)) {
+        String path = target.substring(DATA_PATH.length());
+        switch (request.getMethod()) {
+          case "GET":
+            read(path, response);
+            break;
+          case "POST":
+          case "PUT":
+            Map<?, ?> body = mapper.readValue(request.getInputStream(), Map.class);
+            putSecret(path, String.valueOf(((Map<?, ?>) body.get("data")).get("data")));
+            write(response, HttpServletResponse.SC_OK, Collections.singletonMap("data", metadata(path)));
+            break;
+          case "DELETE":
+            secrets.remove(path);
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            break;
+          default:
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        }
+      } else {
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      }
+    }
+
+    private void read(String path, HttpServletResponse response) throws IOException {
+      List<Map<String, Object>> versions = secrets.get(path);
+      if (versions == null) {
+        write(response, HttpServletResponse.SC_NOT_FOUND, Collections.singletonMap("errors", Collections.emptyList()));
+        return;
+      }
+      int version = lagging.get() && versions.size() > 1 ? versions.size() - 1 : versions.size();
+      Map<String, Object> data = new HashMap<>();
+      data.put("data", versions.get(version - 1));
+      data.put("metadata", metadata(version));
+      write(response, HttpServletResponse.SC_OK, Collections.singletonMap("data", data));
+    }
+
+    private void list(String cluster, HttpServletResponse response) throws IOException {
+      TreeSet<String> keys = new TreeSet<>();
+      for (String path : secrets.keySet()) {
+        if (path.startsWith(cluster)) {
+          keys.add(path.substring(cluster.length()));
+        }
+      }
+      if (keys.isEmpty()) {
+        write(response, HttpServletResponse.SC_NOT_FOUND, Collections.singletonMap("errors", Collections.emptyList()));
+        return;
+      }
+      write(response, HttpServletResponse.SC_OK,
+          Collections.singletonMap("data", Collections.singletonMap("keys", new ArrayList<>(keys))));
+    }
+
+    private Map<String, Object> metadata(String path) {
+      return metadata(secrets.get(path).size());
+    }
+
+    private static Map<String, Object> metadata(int version) {
+      Map<String, Object> metadata = new HashMap<>();
+      metadata.put("created_time", CREATED_TIME);
+      metadata.put("deletion_time", "");
+      metadata.put("destroyed", false);
+      metadata.put("version", version);
+      return metadata;
+    }
+
+    private void write(HttpServletResponse response, int status, Object body) throws IOException {
+      response.setStatus(status);
+      response.setContentType("application/json");
+      response.getOutputStream().write(mapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
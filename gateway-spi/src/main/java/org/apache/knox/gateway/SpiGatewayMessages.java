@@ -91,4 +91,22 @@ public interface SpiGatewayMessages {
             text = "The dispatch to {0} was disallowed because it fails the dispatch whitelist validation. See documentation for dispatch whitelisting." )
   void dispatchDisallowed(String uri);
 
+  @Message( level = MessageLevel.WARN, text = "Failed to write the response of asynchronously dispatched request {0}: {1}" )
+  void failedToWriteAsyncDispatchResponse( URI uri, @StackTrace(level=MessageLevel.DEBUG) Throwable e );
+
+  @Message( level = MessageLevel.WARN, text = "Failed to read the request body of asynchronously dispatched request {0}: {1}" )
+  void failedToReadAsyncDispatchRequest( URI uri, @StackTrace(level=MessageLevel.DEBUG) Throwable e );
+
+  @Message( level = MessageLevel.INFO, text = "Started {0} cluster configuration monitor (checking every {1} seconds)" )
+  void startedClusterConfigurationMonitor( String type, long pollingInterval );
+
+  @Message( level = MessageLevel.INFO, text = "The {0} cluster configuration monitor noticed a change in cluster {2} at {1}: {3}" )
+  void noticedClusterConfigurationChange( String type, String source, String clusterName, String change );
+
+  @Message( level = MessageLevel.WARN, text = "The {0} cluster configuration monitor failed to check cluster {2} at {1}: {3}" )
+  void failedToCheckClusterConfiguration( String type, String source, String clusterName, @StackTrace(level=MessageLevel.DEBUG) Exception e );
+
+  @Message( level = MessageLevel.ERROR, text = "Failed to notify a listener of the configuration change of cluster {1} at {0}: {2}" )
+  void failedToNotifyClusterConfigurationChange( String source, String clusterName, @StackTrace(level=MessageLevel.DEBUG) Exception e );
+
 }
@@ -633,4 +633,121 @@ public interface GatewayConfig {
    * @return a set of service principal names that indicate which services to ignore doAs request
    */
   Set<String> getServicesToIgnoreDoAs();
+
+  /**
+   * Returns true when dispatch HTTP clients lease their connections from the gateway-wide
+   * connection pool rather than from a pool private to each dispatch filter.
+   *
+   * @return true if the shared dispatch connection pool is enabled
+   * @since 1.4.0
+   */
+  boolean isHttpClientSharedConnectionPoolEnabled();
+
+  /**
+   * @return the maximum number of connections held by the shared dispatch connection pool
+   * @since 1.4.0
+   */
+  int getHttpClientSharedConnectionPoolMaxTotal();
+
+  /**
+   * @return the maximum number of connections held by the shared dispatch connection pool for a single backend route
+   * @since 1.4.0
+   */
+  int getHttpClientSharedConnectionPoolMaxPerRoute();
+
+  /**
+   * @return the time in milliseconds after which idle pooled connections are evicted
+   * @since 1.4.0
+   */
+  long getHttpClientSharedConnectionPoolIdleTimeout();
+
+  /**
+   * @return the maximum lifetime in milliseconds of a pooled connection, or a value &lt;= 0 for no limit
+   * @since 1.4.0
+   */
+  long getHttpClientSharedConnectionPoolTimeToLive();
+
+  /**
+   * Returns true when dispatches may release the container thread while waiting on the backend,
+   * resuming the response on another thread once the backend answers. Request bodies are then read
+   * from the client, and response content that isn't rewritten written to it, without blocking.
+   *
+   * @return true if asynchronous dispatch is enabled
+   * @since 1.4.0
+   */
+  boolean isAsyncDispatchEnabled();
+
+  /**
+   * @return the time in milliseconds for which resolved group memberships are cached by the
+   * gateway-wide group lookup service, or a value &lt;= 0 to disable caching
+   * @since 1.4.0
+   */
+  long getGroupLookupCacheTTL();
+
+  /**
+   * @return the time in milliseconds for which empty or failed group lookups are cached
+   * @since 1.4.0
+   */
+  long getGroupLookupCacheNegativeTTL();
+
+  /**
+   * @return the maximum number of users whose group memberships are cached
+   * @since 1.4.0
+   */
+  int getGroupLookupCacheMaxEntries();
+
+  /**
+   * Returns true when the gateway connectors, including those of port mapped topologies, also speak
+   * HTTP/2; negotiated with ALPN on TLS connectors and as h2c on plaintext connectors.
+   *
+   * @return true if HTTP/2 is enabled
+   * @since 1.4.0
+   */
+  boolean isHttp2Enabled();
+
+  /**
+   * @return the maximum number of concurrent streams a client may open on one HTTP/2 connection
+   * @since 1.4.0
+   */
+  int getHttp2MaxConcurrentStreams();
+
+  /**
+   * @return the initial HTTP/2 flow control window in bytes of a single stream
+   * @since 1.4.0
+   */
+  int getHttp2InitialStreamRecvWindow();
+
+  /**
+   * @return the initial HTTP/2 flow control window in bytes shared by all streams of a connection
+   * @since 1.4.0
+   */
+  int getHttp2InitialSessionRecvWindow();
+
+  /**
+   * Returns true when requests are handled on virtual threads, one per request, instead of on a
+   * pool of at most {@link #getThreadPoolMax()} platform threads. The acceptors and selectors still
+   * run on such a pool. Only honored on JVMs with virtual thread support.
+   *
+   * @return true if virtual threads are enabled
+   * @since 1.4.0
+   */
+  boolean isVirtualThreadsEnabled();
+
+  /**
+   * Returns how long a service discovery result for a cluster is reused, so that descriptors
+   * referencing the same cluster deployed close together share one discovery.
+   *
+   * @return the snapshot time-to-live in milliseconds; 0 or less disables the reuse
+   * @since 1.4.0
+   */
+  long getServiceDiscoverySnapshotTTL();
+
+  /**
+   * Returns true when the last service discovery result of each cluster is saved in the gateway
+   * data directory, to be used when the discovery source can't be reached, e.g. during a restart.
+   *
+   * @return true if discovery snapshots are persisted
+   * @since 1.4.0
+   */
+  boolean isServiceDiscoverySnapshotPersistenceEnabled();
 }
@@ -17,7 +17,6 @@
  */
 package org.apache.knox.gateway.dispatch;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.knox.gateway.filter.GatewayResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -50,7 +49,7 @@ public abstract class AbstractGatewayDispatch implements Dispatch {
       ((GatewayResponse) response).streamResponse(stream);
     } else {
       try(OutputStream output = response.getOutputStream()) {
-        IOUtils.copy(stream, output);
+        PassthroughStreamer.copy(stream, output);
       }
     }
   }
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.knox.gateway.SpiGatewayMessages;
+import org.apache.knox.gateway.SpiGatewayResources;
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.AuditService;
+import org.apache.knox.gateway.audit.api.AuditServiceFactory;
+import org.apache.knox.gateway.audit.api.CorrelationContext;
+import org.apache.knox.gateway.audit.api.CorrelationService;
+import org.apache.knox.gateway.audit.api.CorrelationServiceFactory;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single asynchronously dispatched request/response exchange.
+ * <p>
+ * The exchange captures the audit and correlation contexts of the servlet thread that suspended the
+ * request, and re-attaches them on the container thread that later writes the backend response, so
+ * that audit records and logs are correlated exactly as they are for synchronous dispatch.
+ * <p>
+ * Request bodies read from the container are produced by an {@link AsyncRequestProducer}. Response
+ * content that isn't rewritten is relayed by an {@link AsyncResponseRelay}, and the request completes
+ * once the relay is done; other responses are written by a single container thread.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class AsyncDispatchExchange implements FutureCallback<HttpResponse> {
+
+  private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
+  private static final SpiGatewayResources RES = ResourcesFactory.get(SpiGatewayResources.class);
+
+  private final DefaultDispatch dispatch;
+  private final HttpUriRequest outboundRequest;
+  private final AsyncContext asyncContext;
+  private final AuditContext auditContext;
+  private final CorrelationContext correlationContext;
+  private final AtomicBoolean responding = new AtomicBoolean();
+  private final AtomicBoolean aborted = new AtomicBoolean();
+  private final AtomicReference<Future<HttpResponse>> future = new AtomicReference<>();
+  private AsyncResponseRelay relay;
+
+  AsyncDispatchExchange(DefaultDispatch dispatch, HttpUriRequest outboundRequest, AsyncContext asyncContext) {
+    this.dispatch = dispatch;
+    this.outboundRequest = outboundRequest;
+    this.asyncContext = asyncContext;
+    this.auditContext = AuditServiceFactory.getAuditService().getContext();
+    this.correlationContext = CorrelationServiceFactory.getCorrelationService().getContext();
+  }
+
+  void execute(HttpAsyncClient client, int bufferSize) throws IOException {
+    ServletOutputStream output = AsyncResponseRelay.getRelayableOutput(getResponse());
+    if (output != null) {
+      relay = new AsyncResponseRelay(this, asyncContext, output, bufferSize);
+    }
+    StreamingAsyncResponseConsumer consumer =
+        new StreamingAsyncResponseConsumer(bufferSize, relay, this::onResponseHead, this::abort);
+
+    HttpAsyncRequestProducer producer = HttpAsyncMethods.create(outboundRequest);
+    HttpEntity entity = outboundRequest instanceof HttpEntityEnclosingRequest
+        ? ((HttpEntityEnclosingRequest) outboundRequest).getEntity() : null;
+    if (entity != null) {
+      ServletInputStream input =
+          AsyncRequestProducer.getRelayableInput(entity, (HttpServletRequest) asyncContext.getRequest());
+      if (input != null) {
+        AsyncRequestProducer requestProducer = new AsyncRequestProducer(outboundRequest, asyncContext, input,
+            AsyncRequestProducer.getReplayBufferSize(entity), bufferSize, this::requestFailed);
+        requestProducer.start();
+        producer = requestProducer;
+      }
+    }
+
+    future.set(client.execute(producer, consumer, this));
+    if (aborted.get()) {
+      // Aborted before the exchange could be cancelled
+      abort();
+    }
+  }
+
+  @Override
+  public void completed(HttpResponse inboundResponse) {
+    // Normally the response has already been handed over when its head arrived
+    onResponseHead(inboundResponse);
+  }
+
+  @Override
+  public void failed(Exception e) {
+    if (responding.compareAndSet(false, true)) {
+      asyncContext.start(() -> respondInContext(() -> {
+        dispatch.auditOutboundFailure(outboundRequest, e);
+        getResponse().sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, RES.dispatchConnectionError());
+      }));
+    }
+    // Otherwise the failure surfaces as an IOException to the thread streaming the response content,
+    // or ends the content of the relay
+  }
+
+  @Override
+  public void cancelled() {
+    failed(new CancellationException());
+  }
+
+  /**
+   * Completes the request once the relay has written all the content.
+   */
+  void relayCompleted() {
+    asyncContext.complete();
+  }
+
+  /**
+   * Completes the request once the relay failed to write all the content.
+   *
+   * @param cause the failure
+   * @param backendFailed true if the content wasn't received from the backend in full, false if it
+   *                      couldn't be written to the client
+   */
+  void relayFailed(Throwable cause, boolean backendFailed) {
+    runInContext(() -> LOG.failedToWriteAsyncDispatchResponse(outboundRequest.getURI(), cause));
+    if (!backendFailed) {
+      abort();
+    }
+    asyncContext.complete();
+  }
+
+  private void requestFailed(Throwable cause) {
+    runInContext(() -> LOG.failedToReadAsyncDispatchRequest(outboundRequest.getURI(), cause));
+    // The client callback responds, unless the response is already being written
+    abort();
+  }
+
+  private void onResponseHead(HttpResponse inboundResponse) {
+    if (!responding.compareAndSet(false, true)) {
+      return;
+    }
+    if (relay == null) {
+      asyncContext.start(() -> respondInContext(() -> {
+        dispatch.auditOutboundResponse(outboundRequest, inboundResponse);
+        dispatch.writeOutboundResponse(outboundRequest, (HttpServletRequest) asyncContext.getRequest(),
+            getResponse(), inboundResponse);
+      }));
+    } else {
+      asyncContext.start(() -> relayInContext(inboundResponse));
+    }
+  }
+
+  private void relayInContext(HttpResponse inboundResponse) {
+    try {
+      runInContext(() -> {
+        dispatch.auditOutboundResponse(outboundRequest, inboundResponse);
+        dispatch.writeOutboundResponseHead(getResponse(), inboundResponse);
+      });
+    } catch (RuntimeException e) {
+      relayFailed(e, false);
+      return;
+    }
+    if (inboundResponse.getEntity() == null) {
+      asyncContext.complete();
+    } else {
+      relay.start();
+    }
+  }
+
+  private void abort() {
+    aborted.set(true);
+    Future<HttpResponse> exchange = future.get();
+    if (exchange != null) {
+      exchange.cancel(true);
+    }
+  }
+
+  private HttpServletResponse getResponse() {
+    return (HttpServletResponse) asyncContext.getResponse();
+  }
+
+  private void respondInContext(ResponseWriter writer) {
+    runInContext(() -> {
+      try {
+        writer.write();
+      } catch (IOException | RuntimeException e) {
+        LOG.failedToWriteAsyncDispatchResponse(outboundRequest.getURI(), e);
+        abort();
+      } finally {
+        asyncContext.complete();
+      }
+    });
+  }
+
+  private void runInContext(Runnable task) {
+    AuditService auditService = AuditServiceFactory.getAuditService();
+    CorrelationService correlationService = CorrelationServiceFactory.getCorrelationService();
+    auditService.attachContext(auditContext);
+    correlationService.attachContext(correlationContext);
+    try {
+      task.run();
+    } finally {
+      correlationService.detachContext();
+      auditService.detachContext();
+    }
+  }
+
+  @FunctionalInterface
+  private interface ResponseWriter {
+    void write() throws IOException;
+  }
+}
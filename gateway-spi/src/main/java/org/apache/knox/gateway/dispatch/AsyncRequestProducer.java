@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Produces the body of an asynchronously dispatched request from the client request without blocking
+ * a thread on either side.
+ * <p>
+ * Container threads read the body from {@link #onDataAvailable()} into a bounded buffer, and stop
+ * reading while it is full. The I/O reactor sends the buffered body to the backend, suspending output
+ * while nothing is buffered, and hands reading to a container thread again once the buffer drains.
+ * <p>
+ * As with {@link PartiallyRepeatableHttpEntity}, the start of the body is kept in a replay buffer, so
+ * that the request can be sent again, for example to answer an authentication challenge, until more
+ * than the replay buffer holds has been sent.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class AsyncRequestProducer implements HttpAsyncRequestProducer, ReadListener {
+
+  private static final int READ_SIZE = 8 * 1024;
+
+  private final HttpUriRequest request;
+  private final HttpHost target;
+  private final AsyncContext asyncContext;
+  private final ServletInputStream input;
+  private final Consumer<Throwable> failureHandler;
+  private final byte[] chunk = new byte[READ_SIZE];
+
+  private final Object lock = new Object();
+  // All guarded by the lock; the body starts with the replay buffer, the content buffer follows it
+  // once full and is kept ready to be filled
+  private final byte[] replay;
+  private int replayLength;
+  private int replayPosition;
+  private final ByteBuffer content;
+  private boolean beyondReplay;
+  private boolean endOfContent;
+  private boolean waitingForSpace;
+  private IOControl ioControl;
+  private boolean outputSuspended;
+
+  AsyncRequestProducer(HttpUriRequest request, AsyncContext asyncContext, ServletInputStream input,
+                       int replayBufferSize, int bufferSize, Consumer<Throwable> failureHandler) {
+    this.request = request;
+    this.target = URIUtils.extractHost(request.getURI());
+    this.asyncContext = asyncContext;
+    this.input = input;
+    this.replay = new byte[Math.max(replayBufferSize, 0)];
+    this.content = ByteBuffer.allocate(bufferSize);
+    this.failureHandler = failureHandler;
+  }
+
+  /**
+   * @param entity the entity of the outbound request
+   * @param inboundRequest the request received by the gateway
+   * @return the input of the request if the entity streams it and it can be read without blocking, or null
+   */
+  static ServletInputStream getRelayableInput(HttpEntity entity, HttpServletRequest inboundRequest) {
+    if (!(entity instanceof InputStreamEntity || entity instanceof PartiallyRepeatableHttpEntity)) {
+      return null;
+    }
+    try {
+      ServletInputStream input = inboundRequest.getInputStream();
+      return PassthroughStreamer.isContainerInput(input) ? input : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param entity the entity of the outbound request
+   * @return the number of bytes to keep for sending the body again
+   */
+  static int getReplayBufferSize(HttpEntity entity) {
+    return entity instanceof PartiallyRepeatableHttpEntity
+        ? ((PartiallyRepeatableHttpEntity) entity).getReplayBufferSize() : 0;
+  }
+
+  /**
+   * Starts reading the body, which must be done by the thread that started asynchronous processing.
+   */
+  void start() {
+    input.setReadListener(this);
+  }
+
+  @Override
+  public HttpHost getTarget() {
+    return target;
+  }
+
+  @Override
+  public HttpRequest generateRequest() {
+    // The entity only describes the body, which is produced here
+    return request;
+  }
+
+  @Override
+  public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+    boolean wake = false;
+    synchronized (lock) {
+      this.ioControl = ioControl;
+      if (replayPosition < replayLength) {
+        replayPosition += encoder.write(ByteBuffer.wrap(replay, replayPosition, replayLength - replayPosition));
+        if (replayPosition < replayLength) {
+          return;
+        }
+      }
+      content.flip();
+      if (content.hasRemaining()) {
+        beyondReplay = true;
+        encoder.write(content);
+      }
+      boolean drained = !content.hasRemaining();
+      content.compact();
+      if (waitingForSpace && content.hasRemaining()) {
+        waitingForSpace = false;
+        wake = true;
+      }
+      if (drained) {
+        if (endOfContent) {
+          encoder.complete();
+        } else {
+          ioControl.suspendOutput();
+          outputSuspended = true;
+        }
+      }
+    }
+    if (wake) {
+      asyncContext.start(this::resumeReading);
+    }
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+    while (input.isReady()) {
+      int space;
+      synchronized (lock) {
+        space = replay.length - replayLength + content.remaining();
+        if (space == 0) {
+          waitingForSpace = true;
+          return;
+        }
+      }
+      int count = input.read(chunk, 0, Math.min(space, chunk.length));
+      if (count < 0) {
+        // onAllDataRead follows
+        return;
+      }
+      synchronized (lock) {
+        int replayed = Math.min(count, replay.length - replayLength);
+        System.arraycopy(chunk, 0, replay, replayLength, replayed);
+        replayLength += replayed;
+        content.put(chunk, replayed, count - replayed);
+        resumeOutput();
+      }
+    }
+  }
+
+  @Override
+  public void onAllDataRead() {
+    synchronized (lock) {
+      endOfContent = true;
+      resumeOutput();
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    failureHandler.accept(t);
+  }
+
+  @Override
+  public void requestCompleted(HttpContext context) {
+  }
+
+  @Override
+  public void failed(Exception ex) {
+    // Reported to the exchange by the client
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    synchronized (lock) {
+      return !beyondReplay;
+    }
+  }
+
+  @Override
+  public void resetRequest() throws IOException {
+    synchronized (lock) {
+      if (beyondReplay) {
+        throw new IOException("Request body already past replay buffer capacity.");
+      }
+      replayPosition = 0;
+    }
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private void resumeOutput() {
+    if (outputSuspended) {
+      outputSuspended = false;
+      ioControl.requestOutput();
+    }
+  }
+
+  private void resumeReading() {
+    try {
+      onDataAvailable();
+    } catch (IOException | RuntimeException e) {
+      onError(e);
+    }
+  }
+}
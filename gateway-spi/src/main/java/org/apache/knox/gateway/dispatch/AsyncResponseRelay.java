@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.knox.gateway.filter.GatewayResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Relays the content of a backend response to the client without blocking a thread on either side.
+ * <p>
+ * The I/O reactor decodes the content into a bounded buffer and suspends input from the backend
+ * while it is full. Container threads move the content to a direct buffer leased from the connector
+ * and write it whenever the client is ready, resuming input from the backend as the buffer drains.
+ * A thread returns as soon as the client isn't ready or no content is buffered; the container calls
+ * {@link #onWritePossible()} again once the client is ready, and the reactor hands writing to a
+ * container thread again once content arrives.
+ * <p>
+ * Only the container's own output is relayed. Responses that are rewritten are streamed through
+ * {@link StreamingAsyncResponseConsumer} instead.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class AsyncResponseRelay implements WriteListener {
+
+  private final AsyncDispatchExchange exchange;
+  private final AsyncContext asyncContext;
+  private final ServletOutputStream output;
+
+  private final Object lock = new Object();
+  // All guarded by the lock, the content buffer is kept ready to be filled
+  private final ByteBuffer content;
+  private IOControl ioControl;
+  private boolean inputSuspended;
+  private boolean endOfContent;
+  private Exception failure;
+  private boolean waitingForContent;
+  private boolean closed;
+  private ByteBuffer transfer;
+
+  AsyncResponseRelay(AsyncDispatchExchange exchange, AsyncContext asyncContext, ServletOutputStream output, int bufferSize) {
+    this.exchange = exchange;
+    this.asyncContext = asyncContext;
+    this.output = output;
+    this.content = ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * @param response the response to the client
+   * @return the output of the response if its content can be relayed without blocking, or null
+   * @throws IOException if the output isn't available
+   */
+  static ServletOutputStream getRelayableOutput(HttpServletResponse response) throws IOException {
+    if (response instanceof GatewayResponse) {
+      return null;
+    }
+    ServletOutputStream output = response.getOutputStream();
+    return PassthroughStreamer.isContainerOutput(output) ? output : null;
+  }
+
+  /**
+   * Starts writing the content to the client, once the response head has been set. The exchange
+   * completes the request once all the content has been written or the relay failed.
+   */
+  void start() {
+    synchronized (lock) {
+      transfer = PassthroughStreamer.acquireBuffer(output);
+    }
+    // The container calls back once the output is ready
+    output.setWriteListener(this);
+  }
+
+  /**
+   * Buffers the content the backend has ready. Called by the I/O reactor.
+   *
+   * @param decoder the content decoder
+   * @param ioControl the backend connection
+   * @throws IOException if the content can't be decoded
+   */
+  void consumeContent(ContentDecoder decoder, IOControl ioControl) throws IOException {
+    boolean wake;
+    synchronized (lock) {
+      if (closed) {
+        ioControl.shutdown();
+        return;
+      }
+      this.ioControl = ioControl;
+      decoder.read(content);
+      if (decoder.isCompleted()) {
+        endOfContent = true;
+      } else if (!content.hasRemaining()) {
+        ioControl.suspendInput();
+        inputSuspended = true;
+      }
+      wake = waitingForContent && (content.position() > 0 || endOfContent);
+      if (wake) {
+        waitingForContent = false;
+      }
+    }
+    if (wake) {
+      resumeWriting();
+    }
+  }
+
+  /**
+   * Signals the end of the content, or that it won't be received in full.
+   *
+   * @param cause the failure of the backend exchange, or null if all the content was received
+   */
+  void endContent(Exception cause) {
+    boolean wake;
+    synchronized (lock) {
+      endOfContent = true;
+      if (failure == null) {
+        failure = cause;
+      }
+      wake = waitingForContent && !closed;
+      waitingForContent = false;
+    }
+    if (wake) {
+      resumeWriting();
+    }
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (output.isReady()) {
+      synchronized (lock) {
+        if (closed) {
+          return;
+        }
+        // The previous write is done, so the transfer buffer may be refilled
+        transfer.clear();
+        content.flip();
+        int count = Math.min(content.remaining(), transfer.remaining());
+        int limit = content.limit();
+        content.limit(content.position() + count);
+        transfer.put(content);
+        content.limit(limit);
+        content.compact();
+        transfer.flip();
+        if (inputSuspended && content.hasRemaining()) {
+          inputSuspended = false;
+          ioControl.requestInput();
+        }
+        if (count == 0) {
+          if (!endOfContent) {
+            waitingForContent = true;
+            return;
+          }
+          closed = true;
+        }
+      }
+      if (!transfer.hasRemaining()) {
+        finish();
+        return;
+      }
+      PassthroughStreamer.write(output, transfer);
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    PassthroughStreamer.releaseBuffer(output, transfer);
+    exchange.relayFailed(t, false);
+  }
+
+  private void finish() {
+    PassthroughStreamer.releaseBuffer(output, transfer);
+    Exception cause;
+    synchronized (lock) {
+      cause = failure;
+    }
+    if (cause == null) {
+      exchange.relayCompleted();
+    } else {
+      // Don't let the client take what was written for the whole response
+      PassthroughStreamer.abort(output, cause);
+      exchange.relayFailed(cause, true);
+    }
+  }
+
+  private void resumeWriting() {
+    asyncContext.start(() -> {
+      try {
+        onWritePossible();
+      } catch (IOException | RuntimeException e) {
+        onError(e);
+      }
+    });
+  }
+}
@@ -128,4 +128,9 @@ public class ConfigurableDispatch extends DefaultDispatch {
 
     return super.getDispatchUrl(request);
   }
+
+  @Override
+  protected boolean supportsAsyncDispatch() {
+    return getClass() == ConfigurableDispatch.class;
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.knox.gateway.dispatch;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -29,6 +30,7 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ContentType;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.SpiGatewayResources;
 import org.apache.knox.gateway.audit.api.Action;
@@ -44,6 +46,7 @@ import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
 import org.apache.knox.gateway.util.MimeTypes;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.Closeable;
@@ -76,6 +79,11 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
   //Buffer size in bytes
   private int replayBufferSize = -1;
 
+  // Content buffered ahead of the servlet thread for asynchronously dispatched responses
+  private static final int ASYNC_RESPONSE_BUFFER_SIZE = 64 * 1024;
+
+  private HttpAsyncClient asyncClient;
+
   @Override
   public void destroy() {
 
@@ -105,49 +113,152 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
   }
 
 
+  /**
+   * Dispatches that customize how the outbound request is executed or how the response is written
+   * may rely on doing so on the servlet thread, so a dispatch is only given an asynchronous client
+   * once its class opts in. A subclass opts in by overriding this to return true for instances of
+   * exactly that class, so that its own subclasses have to opt in as well.
+   *
+   * @return true if this dispatch may be used with an asynchronous client
+   */
+  protected boolean supportsAsyncDispatch() {
+    return getClass() == DefaultDispatch.class;
+  }
+
+  public synchronized HttpAsyncClient getAsyncHttpClient() {
+    return asyncClient;
+  }
+
+  /**
+   * Sets the non-blocking client used for asynchronous dispatch. When no client is set, which is the
+   * default, every request is dispatched synchronously on the servlet thread.
+   *
+   * @param asyncClient a started {@link HttpAsyncClient}, or <code>null</code> to disable asynchronous dispatch
+   */
+  public synchronized void setAsyncHttpClient(HttpAsyncClient asyncClient) {
+    this.asyncClient = asyncClient;
+  }
+
   protected void executeRequest(
          HttpUriRequest outboundRequest,
          HttpServletRequest inboundRequest,
          HttpServletResponse outboundResponse)
          throws IOException {
+      if (isAsyncDispatch(outboundRequest, inboundRequest)) {
+        executeAsyncRequest(outboundRequest, inboundRequest, outboundResponse);
+        return;
+      }
       HttpResponse inboundResponse = executeOutboundRequest(outboundRequest);
       writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
    }
 
+  /**
+   * Determines whether the request is dispatched without holding the servlet thread while waiting for
+   * the backend. This requires an asynchronous client, a servlet container request that supports
+   * asynchronous processing, and either a request without a body or a body streamed from the
+   * container's own input, which is then read by container threads as the client sends it.
+   *
+   * @param outboundRequest the request to be dispatched to the backend
+   * @param inboundRequest  the request received by the gateway
+   * @return true if the request should be dispatched asynchronously
+   */
+  protected boolean isAsyncDispatch(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest) {
+    if (getAsyncHttpClient() == null || !inboundRequest.isAsyncSupported() || inboundRequest.isAsyncStarted()) {
+      return false;
+    }
+    if (!(outboundRequest instanceof HttpEntityEnclosingRequest)) {
+      return true;
+    }
+    HttpEntity entity = ((HttpEntityEnclosingRequest) outboundRequest).getEntity();
+    return entity == null || AsyncRequestProducer.getRelayableInput(entity, inboundRequest) != null;
+  }
+
+  /**
+   * Suspends the inbound request and executes the outbound request with the asynchronous client.
+   * Once the backend response head arrives, the response is written by a container thread through
+   * {@link #writeOutboundResponse(HttpUriRequest, HttpServletRequest, HttpServletResponse, HttpResponse)},
+   * unless its content isn't rewritten, in which case it is relayed to the client without blocking.
+   *
+   * @param outboundRequest  the request to dispatch
+   * @param inboundRequest   the request received by the gateway
+   * @param outboundResponse the response to the client
+   * @throws IOException if the request or response streams aren't available
+   */
+  protected void executeAsyncRequest(HttpUriRequest outboundRequest,
+                                     HttpServletRequest inboundRequest,
+                                     HttpServletResponse outboundResponse) throws IOException {
+    prepareOutboundRequest(outboundRequest);
+    AsyncContext asyncContext = inboundRequest.startAsync(inboundRequest, outboundResponse);
+    // The backend socket timeout governs how long to wait, not the container's async timeout
+    asyncContext.setTimeout(0);
+    new AsyncDispatchExchange(this, outboundRequest, asyncContext).execute(getAsyncHttpClient(), ASYNC_RESPONSE_BUFFER_SIZE);
+  }
+
   protected HttpResponse executeOutboundRequest( HttpUriRequest outboundRequest ) throws IOException {
-    LOG.dispatchRequest( outboundRequest.getMethod(), outboundRequest.getURI() );
     HttpResponse inboundResponse;
 
     try {
-      auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.UNAVAILABLE, RES.requestMethod( outboundRequest.getMethod() ) );
-      if( !Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
-        // Hadoop cluster not Kerberos enabled
-        addCredentialsToRequest( outboundRequest );
-      }
+      prepareOutboundRequest( outboundRequest );
       inboundResponse = getHttpClient().execute( outboundRequest );
+      auditOutboundResponse( outboundRequest, inboundResponse );
+    } catch( Exception e ) {
+      auditOutboundFailure( outboundRequest, e );
+      throw new IOException( RES.dispatchConnectionError() );
+    }
+    return inboundResponse;
+  }
+
+  private void prepareOutboundRequest( HttpUriRequest outboundRequest ) {
+    LOG.dispatchRequest( outboundRequest.getMethod(), outboundRequest.getURI() );
+    auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.UNAVAILABLE, RES.requestMethod( outboundRequest.getMethod() ) );
+    if( !Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
+      // Hadoop cluster not Kerberos enabled
+      addCredentialsToRequest( outboundRequest );
+    }
+  }
 
-      int statusCode = inboundResponse.getStatusLine().getStatusCode();
-      if( statusCode != 201 ) {
+  void auditOutboundResponse( HttpUriRequest outboundRequest, HttpResponse inboundResponse ) {
+    int statusCode = inboundResponse.getStatusLine().getStatusCode();
+    if( statusCode != 201 ) {
+      LOG.dispatchResponseStatusCode( statusCode );
+    } else {
+      Header location = inboundResponse.getFirstHeader( "Location" );
+      if( location == null ) {
         LOG.dispatchResponseStatusCode( statusCode );
       } else {
-        Header location = inboundResponse.getFirstHeader( "Location" );
-        if( location == null ) {
-          LOG.dispatchResponseStatusCode( statusCode );
-        } else {
-          LOG.dispatchResponseCreatedStatusCode( statusCode, location.getValue() );
-        }
+        LOG.dispatchResponseCreatedStatusCode( statusCode, location.getValue() );
       }
-      auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.SUCCESS, RES.responseStatus( statusCode ) );
-    } catch( Exception e ) {
-      // We do not want to expose back end host. port end points to clients, see JIRA KNOX-58
-      auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.FAILURE );
-      LOG.dispatchServiceConnectionException( outboundRequest.getURI(), e );
-      throw new IOException( RES.dispatchConnectionError() );
     }
-    return inboundResponse;
+    auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.SUCCESS, RES.responseStatus( statusCode ) );
+  }
+
+  /**
+   * Audits and logs an outbound request that did not receive a response.
+   *
+   * @param outboundRequest the request that failed
+   * @param e the cause of the failure
+   */
+  protected void auditOutboundFailure( HttpUriRequest outboundRequest, Exception e ) {
+    // We do not want to expose back end host. port end points to clients, see JIRA KNOX-58
+    auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.FAILURE );
+    LOG.dispatchServiceConnectionException( outboundRequest.getURI(), e );
   }
 
   protected void writeOutboundResponse(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse, HttpResponse inboundResponse) throws IOException {
+    writeOutboundResponseHead(outboundResponse, inboundResponse);
+
+    HttpEntity entity = inboundResponse.getEntity();
+    if( entity != null ) {
+      InputStream stream = entity.getContent();
+      try {
+        writeResponse( inboundRequest, outboundResponse, stream );
+      } finally {
+        closeInboundResponse( inboundResponse, stream );
+      }
+    }
+  }
+
+  void writeOutboundResponseHead(HttpServletResponse outboundResponse, HttpResponse inboundResponse) {
     // Copy the client respond header to the server respond.
     outboundResponse.setStatus(inboundResponse.getStatusLine().getStatusCode());
     copyResponseHeaderFields(outboundResponse, inboundResponse);
@@ -162,12 +273,6 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
       //        outboundResponse.setContentLength( (int)contentLength );
       //      }
       //]
-      InputStream stream = entity.getContent();
-      try {
-        writeResponse( inboundRequest, outboundResponse, stream );
-      } finally {
-        closeInboundResponse( inboundResponse, stream );
-      }
     }
   }
 
@@ -33,6 +33,7 @@ import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.KeystoreService;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.dispatch.HttpConnectionPoolService;
 import org.apache.knox.gateway.services.metrics.MetricsService;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
@@ -58,14 +59,23 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContexts;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormatter;
 import org.joda.time.format.PeriodFormatterBuilder;
 
 public class DefaultHttpClientFactory implements HttpClientFactory {
   static final String PARAMETER_USE_TWO_WAY_SSL = "useTwoWaySsl";
+  static final String PARAMETER_ASYNC_IO_THREADS = "httpclient.asyncIoThreads";
+
+  static final String TLS_IDENTITY_ONE_WAY = "one-way-ssl";
+  static final String TLS_IDENTITY_TWO_WAY = "two-way-ssl";
 
   @Override
   public HttpClient createHttpClient(FilterConfig filterConfig) {
@@ -82,8 +92,20 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
     // Conditionally set a custom SSLContext
     SSLContext sslContext = createSSLContext(services, filterConfig);
-    if(sslContext != null) {
-      builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext));
+    HttpConnectionPoolService connectionPoolService = getConnectionPoolService(gatewayConfig, services);
+    if (connectionPoolService != null) {
+      // Connections are leased from the gateway-wide pool for this TLS identity, which also
+      // applies the socket factory and the global/per-route limits.
+      builder.setConnectionManager(connectionPoolService.getConnectionManager(getTlsIdentity(filterConfig), sslContext));
+      builder.setConnectionManagerShared(true);
+    } else {
+      if(sslContext != null) {
+        builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext));
+      }
+
+      int maxConnections = getMaxConnections( filterConfig );
+      builder.setMaxConnTotal( maxConnections );
+      builder.setMaxConnPerRoute( maxConnections );
     }
 
     if (Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
@@ -106,10 +128,6 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     builder.setRedirectStrategy( new NeverRedirectStrategy() );
     builder.setRetryHandler( new NeverRetryHandler() );
 
-    int maxConnections = getMaxConnections( filterConfig );
-    builder.setMaxConnTotal( maxConnections );
-    builder.setMaxConnPerRoute( maxConnections );
-
     builder.setDefaultRequestConfig( getRequestConfig( filterConfig ) );
 
     // See KNOX-1530 for details
@@ -118,6 +136,82 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     return builder.build();
   }
 
+  @Override
+  public CloseableHttpAsyncClient createAsyncHttpClient(FilterConfig filterConfig) {
+    GatewayConfig gatewayConfig = (GatewayConfig) filterConfig.getServletContext().getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE);
+    GatewayServices services = (GatewayServices) filterConfig.getServletContext()
+        .getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE);
+    HttpAsyncClientBuilder builder = HttpAsyncClients.custom();
+
+    SSLContext sslContext = createSSLContext(services, filterConfig);
+    HttpConnectionPoolService connectionPoolService = getConnectionPoolService(gatewayConfig, services);
+    if (connectionPoolService != null) {
+      // Connections are leased from the gateway-wide non-blocking pool for this TLS identity, which
+      // also runs the I/O reactor, so the client neither starts nor stops one of its own.
+      builder.setConnectionManager(connectionPoolService.getAsyncConnectionManager(getTlsIdentity(filterConfig), sslContext));
+      builder.setConnectionManagerShared(true);
+    } else {
+      if (sslContext != null) {
+        builder.setSSLContext(sslContext);
+      }
+
+      int maxConnections = getMaxConnections( filterConfig );
+      builder.setMaxConnTotal( maxConnections );
+      builder.setMaxConnPerRoute( maxConnections );
+
+      // A single reactor thread multiplexes all of the connections for one service; the
+      // response bodies are consumed by container threads so this is rarely the bottleneck.
+      builder.setDefaultIOReactorConfig( IOReactorConfig.custom()
+          .setIoThreadCount( getAsyncIoThreads( filterConfig ) )
+          .build() );
+      builder.setThreadFactory( new BasicThreadFactory.Builder()
+          .namingPattern( "dispatch-io-" + filterConfig.getFilterName() + "-%d" )
+          .daemon( true )
+          .build() );
+    }
+
+    if (Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
+      CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+      credentialsProvider.setCredentials(AuthScope.ANY, new UseJaasCredentials());
+
+      Registry<AuthSchemeProvider> authSchemeRegistry = RegistryBuilder.<AuthSchemeProvider>create()
+          .register(AuthSchemes.SPNEGO, new KnoxSpnegoAuthSchemeFactory(true))
+          .build();
+
+      builder.setDefaultAuthSchemeRegistry(authSchemeRegistry)
+          .setDefaultCookieStore(new HadoopAuthCookieStore(gatewayConfig))
+          .setDefaultCredentialsProvider(credentialsProvider);
+    } else {
+      builder.setDefaultCookieStore(new NoCookieStore());
+    }
+
+    builder.setKeepAliveStrategy( DefaultConnectionKeepAliveStrategy.INSTANCE );
+    builder.setConnectionReuseStrategy( DefaultConnectionReuseStrategy.INSTANCE );
+    builder.setRedirectStrategy( new NeverRedirectStrategy() );
+
+    builder.setDefaultRequestConfig( getRequestConfig( filterConfig ) );
+
+    CloseableHttpAsyncClient client = builder.build();
+    client.start();
+    return client;
+  }
+
+  /**
+   * Returns the gateway-wide {@link HttpConnectionPoolService} if the shared connection pool is enabled
+   * and available; else <code>null</code>, in which case the client gets a pool of its own.
+   */
+  private static HttpConnectionPoolService getConnectionPoolService(GatewayConfig gatewayConfig, GatewayServices services) {
+    if (gatewayConfig != null && services != null && gatewayConfig.isHttpClientSharedConnectionPoolEnabled()) {
+      return services.getService(ServiceType.HTTP_CONNECTION_POOL_SERVICE);
+    }
+    return null;
+  }
+
+  private static String getTlsIdentity(FilterConfig filterConfig) {
+    return Boolean.parseBoolean(filterConfig.getInitParameter(PARAMETER_USE_TWO_WAY_SSL))
+        ? TLS_IDENTITY_TWO_WAY : TLS_IDENTITY_ONE_WAY;
+  }
+
   /**
    * Conditionally creates a custom {@link SSLContext} based on the Gateway's configuration and whether
    * two-way SSL is enabled or not.
@@ -281,6 +375,19 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     return maxConnections;
   }
 
+  private static int getAsyncIoThreads( FilterConfig filterConfig ) {
+    int ioThreads = 1;
+    String str = filterConfig.getInitParameter( PARAMETER_ASYNC_IO_THREADS );
+    if( str != null ) {
+      try {
+        ioThreads = Math.max( 1, Integer.parseInt( str ) );
+      } catch ( NumberFormatException e ) {
+        // Ignore it and use the default.
+      }
+    }
+    return ioThreads;
+  }
+
   private static int getConnectionTimeout( FilterConfig filterConfig ) {
     int timeout = -1;
     GatewayConfig globalConfig =
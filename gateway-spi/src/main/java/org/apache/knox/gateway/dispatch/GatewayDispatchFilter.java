@@ -19,8 +19,10 @@ package org.apache.knox.gateway.dispatch;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.config.ConfigurationInjectorBuilder;
+import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.util.RegExUtils;
@@ -55,6 +57,8 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
 
   private HttpClient httpClient;
 
+  private CloseableHttpAsyncClient asyncHttpClient;
+
   private static Map<String, Adapter> createMethodAdapters() {
     Map<String, Adapter> map = new HashMap<>();
     map.put("GET", new GetAdapter());
@@ -85,6 +89,11 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
       }
       httpClient = httpClientFactory.createHttpClient(filterConfig);
       dispatch.setHttpClient(httpClient);
+      if (isAsyncDispatchEnabled(filterConfig) && dispatch instanceof DefaultDispatch
+          && ((DefaultDispatch) dispatch).supportsAsyncDispatch()) {
+        asyncHttpClient = httpClientFactory.createAsyncHttpClient(filterConfig);
+        ((DefaultDispatch) dispatch).setAsyncHttpClient(asyncHttpClient);
+      }
       dispatch.init();
     }
   }
@@ -100,9 +109,21 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
       } catch ( IOException e ) {
         LOG.errorClosingHttpClient(e);
       }
+      try {
+        if (asyncHttpClient != null) {
+          asyncHttpClient.close();
+        }
+      } catch ( IOException e ) {
+        LOG.errorClosingHttpClient(e);
+      }
     }
   }
 
+  private static boolean isAsyncDispatchEnabled(FilterConfig filterConfig) {
+    GatewayConfig config = (GatewayConfig) filterConfig.getServletContext().getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE);
+    return config != null && config.isAsyncDispatchEnabled();
+  }
+
   public Dispatch getDispatch() {
     synchronized(lock) {
       return dispatch;
@@ -18,9 +18,21 @@
 package org.apache.knox.gateway.dispatch;
 
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import javax.servlet.FilterConfig;
 
 public interface HttpClientFactory {
   HttpClient createHttpClient( FilterConfig filterConfig );
+
+  /**
+   * Creates a started, non-blocking client for dispatches that release the container thread
+   * while waiting on the backend.
+   *
+   * @param filterConfig the dispatch filter configuration
+   * @return the async client, or <code>null</code> if this factory does not support async dispatch
+   */
+  default CloseableHttpAsyncClient createAsyncHttpClient( FilterConfig filterConfig ) {
+    return null;
+  }
 }
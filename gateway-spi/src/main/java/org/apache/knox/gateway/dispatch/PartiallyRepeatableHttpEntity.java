@@ -52,6 +52,11 @@ public class PartiallyRepeatableHttpEntity extends HttpEntityWrapper {
     this( entity, DEFAULT_BUFFER_SIZE );
   }
 
+  // The number of leading bytes that are kept to read the content again.
+  int getReplayBufferSize() {
+    return replayBuffer == null ? 0 : replayBuffer.length;
+  }
+
   @Override
   public boolean isRepeatable() {
     return finalStream == null;
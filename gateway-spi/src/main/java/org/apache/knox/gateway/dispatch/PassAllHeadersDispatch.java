@@ -48,4 +48,9 @@ public class PassAllHeadersDispatch extends ConfigurableDispatch {
   public Set<String> getOutboundRequestExcludeHeaders() {
     return REQUEST_EXCLUDE_HEADERS;
   }
+
+  @Override
+  protected boolean supportsAsyncDispatch() {
+    return getClass() == PassAllHeadersDispatch.class;
+  }
 }
@@ -32,4 +32,9 @@ public class PassAllHeadersNoEncodingDispatch extends PassAllHeadersDispatch {
   public boolean getRemoveUrlEncoding() {
     return Boolean.TRUE;
   }
-}
\ No newline at end of file
+
+  @Override
+  protected boolean supportsAsyncDispatch() {
+    return getClass() == PassAllHeadersNoEncodingDispatch.class;
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a backend response body that isn't rewritten to the client.
+ * <p>
+ * When the output is Jetty's own {@link HttpOutput} the body is read into a direct buffer leased
+ * from the connector's buffer pool and handed to {@link HttpOutput#write(ByteBuffer)}. That write
+ * bypasses the response's aggregation buffer and lets the socket write straight from direct memory,
+ * so the only heap used is the small transfer array of the channel reading the backend stream; it
+ * doesn't grow with the size of the body. The buffer is written when it is full, at the end of the
+ * body, or after a read that had to wait for the backend, so slow streams aren't held back any
+ * longer than one stall. Other outputs, for example those of response wrappers, are copied as
+ * before.
+ * <p>
+ * This copy is the fast path of synchronous dispatch, which blocks the calling thread on both
+ * streams; flushing after a stall keeps a slow backend from delaying the client. Asynchronously dispatched responses are
+ * relayed by {@link AsyncResponseRelay} instead, which writes from buffers leased from the same pool
+ * through {@link #write(OutputStream, ByteBuffer)} only once the output is ready, without waiting on
+ * either side.
+ * <p>
+ * Jetty is provided by the gateway server. Without it on the classpath every output is copied, and
+ * no request is relayed without blocking.
+ */
+public final class PassthroughStreamer {
+
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  /* A read taking longer than this waited for the backend rather than for its socket buffer */
+  static final long STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static final boolean JETTY_AVAILABLE = isJettyAvailable();
+
+  private PassthroughStreamer() {
+  }
+
+  /**
+   * Copies the input to the output without closing either.
+   *
+   * @param input the backend response body
+   * @param output the client response body
+   * @return the number of bytes copied
+   * @throws IOException if either stream fails
+   */
+  public static long copy(InputStream input, OutputStream output) throws IOException {
+    if (JETTY_AVAILABLE && JettyOutput.accepts(output)) {
+      return JettyOutput.copy(input, output);
+    }
+    return IOUtils.copyLarge(input, output);
+  }
+
+  /**
+   * @param output the client response body
+   * @return true if the output is the container's own, which can be written without blocking
+   */
+  static boolean isContainerOutput(OutputStream output) {
+    return JETTY_AVAILABLE && JettyOutput.accepts(output);
+  }
+
+  /**
+   * @param input the client request body
+   * @return true if the input is the container's own, which can be read without blocking
+   */
+  static boolean isContainerInput(InputStream input) {
+    return JETTY_AVAILABLE && JettyOutput.accepts(input);
+  }
+
+  /**
+   * @param output a container output
+   * @return a direct buffer of {@link #BUFFER_SIZE} bytes leased from the connector
+   */
+  static ByteBuffer acquireBuffer(OutputStream output) {
+    return JettyOutput.getPool(output).acquire(BUFFER_SIZE, true);
+  }
+
+  /**
+   * @param output the container output the buffer was acquired for
+   * @param buffer the buffer to return to the connector
+   */
+  static void releaseBuffer(OutputStream output, ByteBuffer buffer) {
+    JettyOutput.getPool(output).release(buffer);
+  }
+
+  /**
+   * Writes the remaining content of the buffer, without blocking once a write listener is set. The
+   * buffer must not be touched until the output is ready again.
+   *
+   * @param output a container output
+   * @param buffer the content to write
+   * @throws IOException if the output fails
+   */
+  static void write(OutputStream output, ByteBuffer buffer) throws IOException {
+    JettyOutput.write(output, buffer);
+  }
+
+  /**
+   * Drops the client connection, so that a response which can't be completed is not mistaken for a
+   * complete one.
+   *
+   * @param output a container output
+   * @param failure the cause
+   */
+  static void abort(OutputStream output, Throwable failure) {
+    JettyOutput.abort(output, failure);
+  }
+
+  private static boolean isJettyAvailable() {
+    try {
+      Class.forName("org.eclipse.jetty.server.HttpOutput", false, PassthroughStreamer.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /* Only loaded when Jetty is available, also handles the container's input */
+  private static final class JettyOutput {
+
+    static boolean accepts(OutputStream output) {
+      return output instanceof HttpOutput;
+    }
+
+    static boolean accepts(InputStream input) {
+      return input instanceof HttpInput;
+    }
+
+    static ByteBufferPool getPool(OutputStream output) {
+      return ((HttpOutput) output).getHttpChannel().getByteBufferPool();
+    }
+
+    static void write(OutputStream output, ByteBuffer buffer) throws IOException {
+      ((HttpOutput) output).write(buffer);
+    }
+
+    static void abort(OutputStream output, Throwable failure) {
+      ((HttpOutput) output).getHttpChannel().abort(failure);
+    }
+
+    static long copy(InputStream input, OutputStream output) throws IOException {
+      HttpOutput httpOutput = (HttpOutput) output;
+      ByteBufferPool pool = httpOutput.getHttpChannel().getByteBufferPool();
+      ByteBuffer buffer = pool.acquire(BUFFER_SIZE, true);
+      try {
+        ReadableByteChannel channel = Channels.newChannel(input);
+        long count = 0;
+        buffer.clear();
+        long start = System.nanoTime();
+        while (channel.read(buffer) >= 0) {
+          // Aggregate what the backend has ready, unless the read had to wait for it
+          boolean stalled = System.nanoTime() - start >= STALL_NANOS;
+          if (!buffer.hasRemaining() || (stalled && buffer.position() > 0)) {
+            count += write(buffer, httpOutput);
+          }
+          start = System.nanoTime();
+        }
+        return count + write(buffer, httpOutput);
+      } finally {
+        pool.release(buffer);
+      }
+    }
+
+    private static int write(ByteBuffer buffer, HttpOutput output) throws IOException {
+      buffer.flip();
+      int length = buffer.remaining();
+      if (length > 0) {
+        output.write(buffer);
+      }
+      buffer.clear();
+      return length;
+    }
+  }
+}
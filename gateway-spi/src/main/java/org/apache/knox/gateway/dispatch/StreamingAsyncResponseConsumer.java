@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * An asynchronous response consumer which hands the response over as soon as the status line and
+ * headers have been received, rather than once the whole entity has been buffered.
+ * <p>
+ * The entity of the handed over response streams content through a bounded {@link SharedInputBuffer}
+ * that is filled by the I/O reactor; input from the backend is suspended while the buffer is full,
+ * so a slow reader applies back pressure to the backend connection instead of growing the heap.
+ * Closing the entity stream before the end of the content aborts the exchange.
+ * <p>
+ * When given an {@link AsyncResponseRelay}, the handed over entity only describes the content, which
+ * is passed to the relay as it arrives instead.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class StreamingAsyncResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+  private final int bufferSize;
+  private final AsyncResponseRelay relay;
+  private final Consumer<HttpResponse> responseHandler;
+  private final Runnable abortHandler;
+
+  private final AtomicReference<SharedInputBuffer> buffer = new AtomicReference<>();
+  private final AtomicBoolean aborted = new AtomicBoolean();
+  private HttpResponse response;
+  private boolean handedOver;
+
+  /**
+   * @param bufferSize      the maximum number of content bytes buffered ahead of the reader
+   * @param relay           the relay that writes the content to the client, or null to stream it
+   *                        through the entity of the handed over response
+   * @param responseHandler invoked on the I/O reactor thread once the response head is available
+   * @param abortHandler    invoked when the reader closes the content before reaching its end
+   */
+  StreamingAsyncResponseConsumer(int bufferSize, AsyncResponseRelay relay,
+                                 Consumer<HttpResponse> responseHandler, Runnable abortHandler) {
+    this.bufferSize = bufferSize;
+    this.relay = relay;
+    this.responseHandler = responseHandler;
+    this.abortHandler = abortHandler;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse response) {
+    this.response = response;
+  }
+
+  @Override
+  protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+    BasicHttpEntity streamingEntity = new BasicHttpEntity();
+    streamingEntity.setContentType(entity.getContentType());
+    streamingEntity.setContentEncoding(entity.getContentEncoding());
+    streamingEntity.setContentLength(entity.getContentLength());
+    streamingEntity.setChunked(entity.isChunked());
+    if (relay == null) {
+      SharedInputBuffer contentBuffer = new SharedInputBuffer(bufferSize, HeapByteBufferAllocator.INSTANCE);
+      buffer.set(contentBuffer);
+      streamingEntity.setContent(new ContentStream(contentBuffer));
+    }
+    response.setEntity(streamingEntity);
+
+    handOver();
+  }
+
+  @Override
+  protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+    if (relay != null) {
+      relay.consumeContent(decoder, ioControl);
+      return;
+    }
+    if (aborted.get()) {
+      ioControl.shutdown();
+      return;
+    }
+    buffer.get().consumeContent(decoder, ioControl);
+  }
+
+  @Override
+  protected HttpResponse buildResult(HttpContext context) {
+    // Responses without an entity are only complete at this point
+    handOver();
+    if (relay != null) {
+      relay.endContent(null);
+    }
+    return response;
+  }
+
+  @Override
+  protected void releaseResources() {
+    if (relay != null && getResult() == null) {
+      // Failed or cancelled; the relay fails the response rather than ending it early
+      Exception cause = getException();
+      relay.endContent(cause == null ? new CancellationException() : cause);
+    }
+    SharedInputBuffer contentBuffer = buffer.get();
+    if (contentBuffer != null) {
+      if (getResult() == null) {
+        // Failed or cancelled; unblock the reader with an error rather than a premature end of stream
+        contentBuffer.shutdown();
+      } else {
+        contentBuffer.close();
+      }
+    }
+  }
+
+  private void handOver() {
+    if (!handedOver) {
+      handedOver = true;
+      responseHandler.accept(response);
+    }
+  }
+
+  private class ContentStream extends InputStream {
+    private final SharedInputBuffer contentBuffer;
+    private boolean endOfStream;
+
+    ContentStream(SharedInputBuffer contentBuffer) {
+      this.contentBuffer = contentBuffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = contentBuffer.read();
+      endOfStream = b == -1;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = contentBuffer.read(b, off, len);
+      endOfStream = count == -1;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return contentBuffer.available();
+    }
+
+    @Override
+    public void close() {
+      if (!endOfStream) {
+        // The reader gave up before the end of the content; drop the backend connection
+        // instead of draining the remaining content.
+        aborted.set(true);
+        contentBuffer.shutdown();
+        abortHandler.run();
+      }
+    }
+  }
+}
@@ -54,4 +54,9 @@ public class URLDecodingDispatch extends DefaultDispatch {
     }
     return URI.create(str.toString());
   }
+
+  @Override
+  protected boolean supportsAsyncDispatch() {
+    return getClass() == URLDecodingDispatch.class;
+  }
 }
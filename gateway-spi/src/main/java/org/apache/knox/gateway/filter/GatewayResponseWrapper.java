@@ -17,7 +17,7 @@
  */
 package org.apache.knox.gateway.filter;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.knox.gateway.dispatch.PassthroughStreamer;
 import org.apache.knox.gateway.util.MimeTypes;
 
 import javax.activation.MimeType;
@@ -60,7 +60,7 @@ public abstract class GatewayResponseWrapper extends HttpServletResponseWrapper
 
   @Override
   public void streamResponse( InputStream input, OutputStream output ) throws IOException {
-    IOUtils.copy(input, output);
+    PassthroughStreamer.copy(input, output);
     output.close();
   }
 }
@@ -22,7 +22,9 @@ public enum ServiceType {
   ALIAS_SERVICE("AliasService"),
   CLUSTER_CONFIGURATION_MONITOR_SERVICE("ClusterConfigurationMonitorService"),
   CRYPTO_SERVICE("CryptoService"),
+  GROUP_LOOKUP_SERVICE("GroupLookupService"),
   HOST_MAPPING_SERVICE("HostMappingService"),
+  HTTP_CONNECTION_POOL_SERVICE("HttpConnectionPoolService"),
   KEYSTORE_SERVICE("KeystoreService"),
   MASTER_SERVICE("MasterService"),
   METRICS_SERVICE("MetricsService"),
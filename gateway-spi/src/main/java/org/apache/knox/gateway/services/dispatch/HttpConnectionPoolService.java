@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.dispatch;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.knox.gateway.services.Service;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A gateway-wide registry of pooled outbound HTTP connections.
+ * <p>
+ * Dispatch clients created for different services and topologies lease their connections from
+ * the same {@link HttpClientConnectionManager} when they share a TLS identity, so that keep-alive
+ * connections to a backend host are reused regardless of which topology issued the request.
+ * Within a connection manager, connections are pooled per backend route.
+ */
+public interface HttpConnectionPoolService extends Service {
+
+  /**
+   * Returns the shared connection manager for the given TLS identity, creating it on first use.
+   * <p>
+   * The returned connection manager is owned by this service and must not be shut down by callers;
+   * HTTP clients using it should be built with <code>setConnectionManagerShared(true)</code>.
+   *
+   * @param tlsIdentity a key identifying the TLS client identity and trust material used for the connections
+   * @param sslContext  the {@link SSLContext} to use for secure connections with this identity, or
+   *                    <code>null</code> to use the default context
+   * @return a pooling {@link HttpClientConnectionManager}
+   */
+  HttpClientConnectionManager getConnectionManager(String tlsIdentity, SSLContext sslContext);
+
+  /**
+   * Returns the shared non-blocking connection manager for the given TLS identity, creating it on first use.
+   * <p>
+   * The connection manager runs on an I/O reactor owned by this service, so HTTP async clients using it
+   * must be built with <code>setConnectionManagerShared(true)</code>.
+   *
+   * @param tlsIdentity a key identifying the TLS client identity and trust material used for the connections
+   * @param sslContext  the {@link SSLContext} to use for secure connections with this identity, or
+   *                    <code>null</code> to use the default context
+   * @return a pooling {@link NHttpClientConnectionManager}
+   */
+  NHttpClientConnectionManager getAsyncConnectionManager(String tlsIdentity, SSLContext sslContext);
+}
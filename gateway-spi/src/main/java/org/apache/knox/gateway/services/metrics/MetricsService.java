@@ -17,6 +17,7 @@
  */
 package org.apache.knox.gateway.services.metrics;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.knox.gateway.services.Service;
 
 public interface MetricsService extends Service {
@@ -25,4 +26,11 @@ public interface MetricsService extends Service {
 
   <T> T getInstrumented(Class<T> clazz);
 
+  /**
+   * @return the registry whose metrics are published by the configured reporters, which
+   * providers may add their own metrics to
+   * @since 1.4.0
+   */
+  MetricRegistry getRegistry();
+
 }
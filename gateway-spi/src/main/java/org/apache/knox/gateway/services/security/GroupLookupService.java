@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.security;
+
+import org.apache.knox.gateway.services.Service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A gateway-wide cache of group memberships resolved by identity assertion providers.
+ * <p>
+ * Lookups are cached per resolver name and user, so that topologies configured with the same
+ * group mapping share the results. Empty results and failures are cached for a shorter period,
+ * entries close to expiry are refreshed in the background, and concurrent lookups of a user who
+ * is not cached are served by a single call to the resolver.
+ */
+public interface GroupLookupService extends Service {
+
+  /**
+   * Resolves the groups of a user from the backing group mapping, e.g. LDAP or the local OS.
+   */
+  @FunctionalInterface
+  interface GroupResolver {
+    /**
+     * @param user the user name
+     * @return the groups of the user, an empty list if the user has no groups
+     * @throws IOException if the groups could not be resolved
+     */
+    List<String> getGroups(String user) throws IOException;
+  }
+
+  /**
+   * Returns the groups of a user, resolving them with the given resolver if they are not cached.
+   *
+   * @param resolverName a name identifying the group mapping of the resolver; callers using the
+   *                     same name must resolve the same groups for a user
+   * @param user         the user name
+   * @param resolver     the resolver used when the groups of the user are not cached
+   * @return an unmodifiable list of the groups of the user
+   * @throws IOException if the groups could not be resolved
+   */
+  List<String> getGroups(String resolverName, String user, GroupResolver resolver) throws IOException;
+}
@@ -17,15 +17,27 @@
  */
 package org.apache.knox.gateway.services.security.impl;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -35,25 +47,60 @@ import org.apache.knox.gateway.i18n.GatewaySpiMessages;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.security.EncryptionResult;
 
+/**
+ * Password based encryptor.
+ * <p>
+ * Values are encrypted with AES/CBC/PKCS5Padding unless another transformation is configured.
+ * AES/GCM/NoPadding may be configured instead, which uses a 12 byte random nonce per message.
+ * The key is derived from the password only once per encryptor and the salt used for that
+ * derivation is returned with every result, so that any encryptor sharing the password can
+ * decrypt it. Derived keys are cached by salt, which also keeps the decryption of values
+ * encrypted by earlier versions, with a random salt per value, from repeating the key derivation
+ * for every call. A result is recognized as GCM encrypted by the length of its nonce, whatever
+ * the configured transformation, so that gateways can switch between CBC and GCM in either
+ * direction without losing the values written before.
+ */
 public class ConfigurableEncryptor {
   private static final GatewaySpiMessages LOG = MessagesFactory.get( GatewaySpiMessages.class );
 
   private static final int ITERATION_COUNT = 65536;
   private static final int KEY_LENGTH = 128;
 
+  static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+  static final String CBC_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+  static final int GCM_NONCE_LENGTH = 12;
+  private static final int GCM_TAG_LENGTH = 128;
+  private static final int MAX_CACHED_KEYS = 1024;
+  private static final int MAX_POOLED_CIPHERS = 64;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  // Cipher lookups are costly, instances are not thread safe but may be re-initialized. They are
+  // pooled rather than kept per thread, which would never be reused on a virtual thread per request.
+  private static final ConcurrentMap<String, Queue<Cipher>> CIPHERS = new ConcurrentHashMap<>();
+
   private char[] passPhrase;
   private String alg = "AES";
   private String pbeAlg = "PBKDF2WithHmacSHA1";
-  private String transformation = "AES/CBC/PKCS5Padding";
+  private String transformation = CBC_TRANSFORMATION;
   private int saltSize = 8;
   private int iterationCount = ITERATION_COUNT;
   private int keyLength = KEY_LENGTH;
 
+  private final Map<ByteBuffer, SecretKey> derivedKeys = Collections.synchronizedMap(
+      new LinkedHashMap<ByteBuffer, SecretKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SecretKey> eldest) {
+          return size() > MAX_CACHED_KEYS;
+        }
+      });
+  private byte[] encryptionSalt;
+
   public ConfigurableEncryptor(String passPhrase) {
     this.passPhrase = passPhrase.toCharArray();
   }
 
-  public void init(GatewayConfig config) {
+  public synchronized void init(GatewayConfig config) {
     if (config != null) {
       String alg = config.getAlgorithm();
       if (alg != null) {
@@ -80,6 +127,16 @@ public class ConfigurableEncryptor {
       this.keyLength = Integer.parseInt(keyLength);
       }
     }
+    derivedKeys.clear();
+    encryptionSalt = null;
+  }
+
+  /**
+   * @param passPhrase password to compare
+   * @return true if this encryptor derives its keys from the given password
+   */
+  public boolean hasPassPhrase(char[] passPhrase) {
+    return Arrays.equals(this.passPhrase, passPhrase);
   }
 
   public SecretKey getKeyFromPassword(String passPhrase, byte[] salt) {
@@ -102,25 +159,80 @@ public class ConfigurableEncryptor {
   }
 
   public EncryptionResult encrypt(byte[] plain) throws Exception {
-    byte[] salt = new byte[saltSize];
-    SecureRandom rnd = new SecureRandom();
-    rnd.nextBytes(salt);
-
-    SecretKey tmp = getKeyFromPassword(new String(passPhrase), salt);
-    SecretKey secret = new SecretKeySpec(tmp.getEncoded(), alg);
-    Cipher ecipher = Cipher.getInstance(transformation);
-    ecipher.init(Cipher.ENCRYPT_MODE, secret);
-    return new EncryptionResult(salt,
-        ecipher.getParameters().getParameterSpec(IvParameterSpec.class).getIV(),
-        ecipher.doFinal(plain));
+    byte[] salt = getEncryptionSalt();
+    SecretKey secret = getKey(salt);
+    String encryptTransformation = transformation;
+    Cipher ecipher = borrowCipher(encryptTransformation);
+    try {
+      if (isGcm(encryptTransformation)) {
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        ecipher.init(Cipher.ENCRYPT_MODE, secret, new GCMParameterSpec(GCM_TAG_LENGTH, nonce));
+        return new EncryptionResult(salt, nonce, ecipher.doFinal(plain));
+      }
+
+      ecipher.init(Cipher.ENCRYPT_MODE, secret, RANDOM);
+      return new EncryptionResult(salt,
+          ecipher.getParameters().getParameterSpec(IvParameterSpec.class).getIV(),
+          ecipher.doFinal(plain));
+    } finally {
+      releaseCipher(encryptTransformation, ecipher);
+    }
   }
 
   public byte[] decrypt(byte[] salt, byte[] iv, byte[] encrypt) throws Exception {
-    SecretKey tmp = getKeyFromPassword(new String(passPhrase), salt);
-    SecretKey secret = new SecretKeySpec(tmp.getEncoded(), alg);
+    SecretKey secret = getKey(salt);
+    boolean gcm = iv != null && iv.length == GCM_NONCE_LENGTH;
+    String decryptTransformation;
+    if (gcm) {
+      decryptTransformation = GCM_TRANSFORMATION;
+    } else {
+      decryptTransformation = isGcm(transformation) ? CBC_TRANSFORMATION : transformation;
+    }
+    Cipher dcipher = borrowCipher(decryptTransformation);
+    try {
+      if (gcm) {
+        dcipher.init(Cipher.DECRYPT_MODE, secret, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+      } else {
+        dcipher.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(iv));
+      }
+      return dcipher.doFinal(encrypt);
+    } finally {
+      releaseCipher(decryptTransformation, dcipher);
+    }
+  }
+
+  private synchronized byte[] getEncryptionSalt() {
+    if (encryptionSalt == null) {
+      byte[] salt = new byte[saltSize];
+      RANDOM.nextBytes(salt);
+      encryptionSalt = salt;
+    }
+    return encryptionSalt;
+  }
+
+  private SecretKey getKey(byte[] salt) {
+    ByteBuffer cacheKey = ByteBuffer.wrap(salt.clone());
+    SecretKey secret = derivedKeys.get(cacheKey);
+    if (secret == null) {
+      SecretKey tmp = getKeyFromPassword(new String(passPhrase), salt);
+      secret = new SecretKeySpec(tmp.getEncoded(), alg);
+      derivedKeys.put(cacheKey, secret);
+    }
+    return secret;
+  }
+
+  private static boolean isGcm(String transformation) {
+    return transformation.toUpperCase(Locale.ROOT).contains("/GCM/");
+  }
+
+  private static Cipher borrowCipher(String transformation) throws GeneralSecurityException {
+    Cipher cipher = CIPHERS.computeIfAbsent(transformation, key -> new ArrayBlockingQueue<>(MAX_POOLED_CIPHERS)).poll();
+    return cipher == null ? Cipher.getInstance(transformation) : cipher;
+  }
 
-    Cipher dcipher = Cipher.getInstance(transformation);
-    dcipher.init(Cipher.DECRYPT_MODE, secret, new IvParameterSpec(iv));
-    return dcipher.doFinal(encrypt);
+  private static void releaseCipher(String transformation, Cipher cipher) {
+    // Dropped once the pool is full
+    CIPHERS.get(transformation).offer(cipher);
   }
 }
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.topology.discovery;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.SpiGatewayMessages;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base of the cluster configuration monitors, which only have to tell whether the configuration of a cluster has
+ * changed since it was discovered.
+ * <p>
+ * Every monitored cluster is checked on its own schedule by a small pool, so a slow or unreachable cluster doesn't
+ * hold back the others. A cluster whose configuration just changed is checked again after a quarter of the polling
+ * interval, since changes tend to come in bursts, and the interval then doubles back up to the polling interval. A
+ * cluster that can't be checked backs off to four times the polling interval. Intervals are jittered, so clusters
+ * registered together don't keep being checked together.
+ * <p>
+ * A change is reported once. While the checks keep finding the same change, e.g. because the affected topologies
+ * haven't been regenerated yet, the listeners aren't notified again until a polling interval has passed. Listeners
+ * are notified on a single thread, with at most one notification per cluster waiting.
+ */
+public abstract class AbstractClusterConfigurationMonitor implements ClusterConfigurationMonitor {
+
+  private static final SpiGatewayMessages log = MessagesFactory.get(SpiGatewayMessages.class);
+
+  /** The default polling interval, in seconds */
+  public static final int DEFAULT_POLLING_INTERVAL = 60;
+
+  private static final int CHECK_THREADS = 4;
+  private static final int CHANGE_INTERVAL_DIVISOR = 4;
+  private static final int ERROR_INTERVAL_FACTOR = 4;
+  private static final double JITTER = 0.1;
+
+  private final String type;
+
+  private final AtomicLong interval = new AtomicLong(TimeUnit.SECONDS.toMillis(DEFAULT_POLLING_INTERVAL));
+
+  private final ConcurrentMap<String, MonitoredCluster> clusters = new ConcurrentHashMap<>();
+
+  private final List<ConfigurationChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+  private final AtomicReference<ScheduledExecutorService> checks = new AtomicReference<>();
+
+  private final AtomicReference<ExecutorService> notifications = new AtomicReference<>();
+
+  protected AbstractClusterConfigurationMonitor(String type) {
+    this.type = type;
+  }
+
+  /**
+   * Checks whether the configuration of a cluster has changed since it was recorded.
+   *
+   * @param source      The address of the discovery source of the cluster.
+   * @param clusterName The name of the cluster.
+   *
+   * @return A description of the change, which stays the same for as long as the same change is found, or null if
+   *         the configuration hasn't changed.
+   *
+   * @throws IOException if the current configuration of the cluster could not be determined.
+   */
+  protected abstract String getConfigurationChange(String source, String clusterName) throws IOException;
+
+  @Override
+  public void setPollingInterval(int interval) {
+    setPollingInterval(interval, TimeUnit.SECONDS);
+  }
+
+  void setPollingInterval(long interval, TimeUnit unit) {
+    this.interval.set(unit.toMillis(interval));
+  }
+
+  /**
+   * @return The polling interval, in milliseconds.
+   */
+  protected long getPollingInterval() {
+    return interval.get();
+  }
+
+  @Override
+  public void start() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(CHECK_THREADS,
+        new BasicThreadFactory.Builder().namingPattern(type + "ConfigurationMonitor-%d").daemon(true).build());
+    executor.setRemoveOnCancelPolicy(true);
+    if (!checks.compareAndSet(null, executor)) {
+      executor.shutdown();
+      return;
+    }
+    notifications.set(Executors.newSingleThreadExecutor(
+        new BasicThreadFactory.Builder().namingPattern(type + "ConfigurationNotifier-%d").daemon(true).build()));
+
+    log.startedClusterConfigurationMonitor(type, TimeUnit.MILLISECONDS.toSeconds(getPollingInterval()));
+
+    // Catch up on changes made while the gateway was down, without checking every cluster at once
+    for (MonitoredCluster cluster : clusters.values()) {
+      startChecking(cluster, ThreadLocalRandom.current().nextLong(getChangeInterval() + 1));
+    }
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService executor = checks.getAndSet(null);
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    for (MonitoredCluster cluster : clusters.values()) {
+      cluster.scheduled.set(false);
+    }
+    ExecutorService notifier = notifications.getAndSet(null);
+    if (notifier != null) {
+      notifier.shutdown();
+      try {
+        notifier.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public void addListener(ConfigurationChangeListener listener) {
+    changeListeners.add(listener);
+  }
+
+  /**
+   * Starts checking the configuration of the cluster, unless it is already being checked.
+   *
+   * @param source      The address of the discovery source of the cluster.
+   * @param clusterName The name of the cluster.
+   */
+  protected void monitorCluster(String source, String clusterName) {
+    MonitoredCluster cluster = clusters.computeIfAbsent(getKey(source, clusterName),
+                                                        k -> new MonitoredCluster(source, clusterName));
+    // The cluster was just discovered, so there is no need to check it right away
+    startChecking(cluster, jitter(getPollingInterval()));
+  }
+
+  /**
+   * Stops checking the configuration of the cluster.
+   *
+   * @param source      The address of the discovery source of the cluster.
+   * @param clusterName The name of the cluster.
+   */
+  protected void unmonitorCluster(String source, String clusterName) {
+    clusters.remove(getKey(source, clusterName));
+  }
+
+  private static String getKey(String source, String clusterName) {
+    return source + '#' + clusterName;
+  }
+
+  private long getChangeInterval() {
+    return getPollingInterval() / CHANGE_INTERVAL_DIVISOR;
+  }
+
+  private static long jitter(long delay) {
+    long range = (long) (delay * JITTER);
+    return delay - range + ThreadLocalRandom.current().nextLong(2 * range + 1);
+  }
+
+  private void startChecking(MonitoredCluster cluster, long delay) {
+    ScheduledExecutorService executor = checks.get();
+    if (executor != null && cluster.scheduled.compareAndSet(false, true)) {
+      cluster.delay = getPollingInterval();
+      schedule(executor, cluster, delay);
+    }
+  }
+
+  private void schedule(ScheduledExecutorService executor, MonitoredCluster cluster, long delay) {
+    // Stop when the monitor was stopped, or restarted with a new executor, or the cluster is no longer monitored
+    if (checks.get() != executor || clusters.get(getKey(cluster.source, cluster.clusterName)) != cluster) {
+      cluster.scheduled.set(false);
+      return;
+    }
+    try {
+      executor.schedule(() -> check(executor, cluster), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The monitor was stopped
+      cluster.scheduled.set(false);
+    }
+  }
+
+  /**
+   * Checks a cluster and schedules its next check. The checks of a cluster never overlap, since the next one is
+   * only scheduled once the current one is done.
+   */
+  private void check(ScheduledExecutorService executor, MonitoredCluster cluster) {
+    long pollingInterval = getPollingInterval();
+    try {
+      String change = getConfigurationChange(cluster.source, cluster.clusterName);
+      if (change == null) {
+        cluster.reportedChange = null;
+        cluster.delay = Math.min(Math.max(cluster.delay, 1L) * 2, pollingInterval);
+      } else {
+        // A change that is still there is reported again at the check closest to a polling interval after it was
+        long now = System.currentTimeMillis();
+        if (!change.equals(cluster.reportedChange) || now - cluster.reportedAt >= pollingInterval - getChangeInterval()) {
+          log.noticedClusterConfigurationChange(type, cluster.source, cluster.clusterName, change);
+          cluster.reportedChange = change;
+          cluster.reportedAt = now;
+          notifyChangeListeners(cluster);
+        }
+        cluster.delay = getChangeInterval();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.failedToCheckClusterConfiguration(type, cluster.source, cluster.clusterName, e);
+      cluster.delay = Math.min(Math.max(cluster.delay, pollingInterval) * 2, pollingInterval * ERROR_INTERVAL_FACTOR);
+    }
+    schedule(executor, cluster, jitter(cluster.delay));
+  }
+
+  private void notifyChangeListeners(MonitoredCluster cluster) {
+    ExecutorService notifier = notifications.get();
+    if (notifier == null || !cluster.notificationPending.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      notifier.execute(() -> {
+        cluster.notificationPending.set(false);
+        for (ConfigurationChangeListener listener : changeListeners) {
+          try {
+            listener.onConfigurationChange(cluster.source, cluster.clusterName);
+          } catch (RuntimeException e) {
+            log.failedToNotifyClusterConfigurationChange(cluster.source, cluster.clusterName, e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // The monitor was stopped
+      cluster.notificationPending.set(false);
+    }
+  }
+
+  private static final class MonitoredCluster {
+    private final String source;
+    private final String clusterName;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean notificationPending = new AtomicBoolean();
+
+    // Only accessed by the checks of this cluster, which run one after the other
+    private long delay;
+    private String reportedChange;
+    private long reportedAt;
+
+    MonitoredCluster(String source, String clusterName) {
+      this.source = source;
+      this.clusterName = clusterName;
+    }
+  }
+}
@@ -61,6 +61,16 @@ public interface ServiceDiscovery {
     Cluster discover(GatewayConfig gwConfig, ServiceDiscoveryConfig config, String clusterName);
 
 
+    /**
+     * Discard any discovery result kept for a cluster, e.g. because its configuration has changed.
+     *
+     * @param address     The address of the discovery source
+     * @param clusterName The name of the cluster
+     */
+    default void clearCache(String address, String clusterName) {
+    }
+
+
     /**
      * A handle to the service discovery result.
      */
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.knox.test.TestUtils;
+import org.apache.knox.test.mock.MockServer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncDispatchExchangeTest {
+
+  private static final byte[] BODY = new byte[3 * PassthroughStreamer.BUFFER_SIZE + 123];
+  private static final AtomicBoolean dispatchedAsync = new AtomicBoolean();
+
+  private static MockServer backend;
+  private static CloseableHttpAsyncClient asyncClient;
+  private static Server gateway;
+  private static String gatewayUrl;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    new Random(42).nextBytes(BODY);
+    backend = new MockServer("ASYNC", true);
+    asyncClient = HttpAsyncClients.createDefault();
+    asyncClient.start();
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    dispatch.setAsyncHttpClient(asyncClient);
+    URI backendUri = URI.create("http://localhost:" + backend.getPort() + "/");
+
+    gateway = new Server(0);
+    ServletContextHandler context = new ServletContextHandler();
+    ServletHolder holder = new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpGet outboundRequest = new HttpGet(backendUri);
+        dispatchedAsync.set(dispatch.isAsyncDispatch(outboundRequest, request));
+        dispatch.executeRequest(outboundRequest, request, response);
+      }
+
+      @Override
+      protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpPost outboundRequest = new HttpPost(backendUri);
+        // A replay buffer smaller than the body, as configured for the gateway
+        outboundRequest.setEntity(new PartiallyRepeatableHttpEntity(
+            new InputStreamEntity(request.getInputStream(), request.getContentLength()), 1024));
+        dispatchedAsync.set(dispatch.isAsyncDispatch(outboundRequest, request));
+        dispatch.executeRequest(outboundRequest, request, response);
+      }
+    });
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/*");
+    gateway.setHandler(context);
+    gateway.start();
+    gatewayUrl = "http://localhost:" + ((ServerConnector) gateway.getConnectors()[0]).getLocalPort() + "/";
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    gateway.stop();
+    asyncClient.close();
+    backend.stop();
+  }
+
+  @Test( timeout = TestUtils.MEDIUM_TIMEOUT )
+  public void testResponseIsRelayedToClient() throws Exception {
+    backend.expect().method("GET")
+        .respond().status(HttpServletResponse.SC_OK).contentType("application/octet-stream").content(BODY);
+
+    try (CloseableHttpClient client = HttpClients.createDefault()) {
+      HttpResponse response = client.execute(new HttpGet(gatewayUrl));
+      assertEquals(HttpServletResponse.SC_OK, response.getStatusLine().getStatusCode());
+      assertEquals("application/octet-stream", response.getEntity().getContentType().getValue());
+      assertArrayEquals(BODY, EntityUtils.toByteArray(response.getEntity()));
+    }
+    assertTrue(dispatchedAsync.get());
+    assertTrue(backend.isEmpty());
+  }
+
+  @Test( timeout = TestUtils.MEDIUM_TIMEOUT )
+  public void testRequestBodyIsRelayedToBackend() throws Exception {
+    backend.expect().method("POST").content(BODY)
+        .respond().status(HttpServletResponse.SC_OK).contentType("text/plain")
+        .content("posted", StandardCharsets.UTF_8);
+
+    try (CloseableHttpClient client = HttpClients.createDefault()) {
+      HttpPost request = new HttpPost(gatewayUrl);
+      request.setEntity(new ByteArrayEntity(BODY));
+      HttpResponse response = client.execute(request);
+      assertEquals(HttpServletResponse.SC_OK, response.getStatusLine().getStatusCode());
+      assertEquals("posted", EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+    }
+    assertTrue(dispatchedAsync.get());
+    assertTrue(backend.isEmpty());
+  }
+}
@@ -28,11 +28,16 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -43,12 +48,20 @@ import org.apache.knox.gateway.servlet.SynchronousServletOutputStreamAdapter;
 import org.apache.knox.test.TestUtils;
 import org.apache.knox.test.category.FastTests;
 import org.apache.knox.test.category.UnitTests;
+import org.apache.knox.test.mock.MockServer;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.RequestLine;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.http.params.BasicHttpParams;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
@@ -241,4 +254,121 @@ public class DefaultDispatchTest {
 
   }
 
+  @Test
+  public void testAsyncDispatchRequiresRelayableRequestAndCapableDispatch() throws Exception {
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.replay( inboundRequest );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    assertTrue( dispatch.supportsAsyncDispatch() );
+    assertFalse( dispatch.isAsyncDispatch( new HttpGet( "http://test-host:42/" ), inboundRequest ) );
+
+    dispatch.setAsyncHttpClient( EasyMock.createNiceMock( HttpAsyncClient.class ) );
+    assertTrue( dispatch.isAsyncDispatch( new HttpGet( "http://test-host:42/" ), inboundRequest ) );
+    assertTrue( dispatch.isAsyncDispatch( new HttpPost( "http://test-host:42/" ), inboundRequest ) );
+    HttpPost post = new HttpPost( "http://test-host:42/" );
+    post.setEntity( new StringEntity( "body", StandardCharsets.UTF_8 ) );
+    assertFalse( dispatch.isAsyncDispatch( post, inboundRequest ) );
+    // Bodies are only relayed from the container's own input
+    post.setEntity( new InputStreamEntity( new ByteArrayInputStream( new byte[] { 1 } ) ) );
+    assertFalse( dispatch.isAsyncDispatch( post, inboundRequest ) );
+
+    // Subclasses don't inherit the opt in
+    DefaultDispatch customDispatch = new DefaultDispatch() {
+      @Override
+      protected HttpResponse executeOutboundRequest( HttpUriRequest outboundRequest ) throws IOException {
+        return super.executeOutboundRequest( outboundRequest );
+      }
+    };
+    assertFalse( customDispatch.supportsAsyncDispatch() );
+    assertFalse( new ConfigurableDispatch() { }.supportsAsyncDispatch() );
+    assertTrue( new ConfigurableDispatch().supportsAsyncDispatch() );
+    assertTrue( new PassAllHeadersDispatch().supportsAsyncDispatch() );
+  }
+
+  @Test( timeout = TestUtils.MEDIUM_TIMEOUT )
+  public void testAsyncDispatchStreamsBackendResponse() throws Exception {
+    MockServer backend = new MockServer( "ASYNC", true );
+    try ( CloseableHttpAsyncClient client = HttpAsyncClients.createDefault() ) {
+      client.start();
+      backend.expect().method( "GET" )
+          .respond().status( HttpServletResponse.SC_OK ).contentType( "text/plain" )
+          .content( "async response", StandardCharsets.UTF_8 );
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      HttpServletResponse outboundResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+      outboundResponse.setStatus( HttpServletResponse.SC_OK );
+      EasyMock.expectLastCall().once();
+      EasyMock.expect( outboundResponse.getOutputStream() ).andReturn( new SynchronousServletOutputStreamAdapter() {
+        @Override
+        public void write( int b ) {
+          content.write( b );
+        }
+      } ).anyTimes();
+
+      CountDownLatch completed = new CountDownLatch( 1 );
+      HttpServletRequest inboundRequest = createAsyncRequest( outboundResponse, completed );
+      EasyMock.replay( outboundResponse );
+
+      DefaultDispatch dispatch = new DefaultDispatch();
+      dispatch.setAsyncHttpClient( client );
+      dispatch.executeRequest( new HttpGet( "http://localhost:" + backend.getPort() + "/" ), inboundRequest, outboundResponse );
+
+      completed.await();
+      assertEquals( "async response", content.toString( StandardCharsets.UTF_8.name() ) );
+      assertTrue( backend.isEmpty() );
+      EasyMock.verify( outboundResponse );
+    } finally {
+      backend.stop();
+    }
+  }
+
+  @Test( timeout = TestUtils.MEDIUM_TIMEOUT )
+  public void testAsyncDispatchConnectionFailureSendsError() throws Exception {
+    MockServer backend = new MockServer( "ASYNC", true );
+    int port = backend.getPort();
+    backend.stop();
+    try ( CloseableHttpAsyncClient client = HttpAsyncClients.createDefault() ) {
+      client.start();
+
+      HttpServletResponse outboundResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+      outboundResponse.sendError( EasyMock.eq( HttpServletResponse.SC_INTERNAL_SERVER_ERROR ), EasyMock.anyString() );
+      EasyMock.expectLastCall().once();
+
+      CountDownLatch completed = new CountDownLatch( 1 );
+      HttpServletRequest inboundRequest = createAsyncRequest( outboundResponse, completed );
+      EasyMock.replay( outboundResponse );
+
+      DefaultDispatch dispatch = new DefaultDispatch();
+      dispatch.setAsyncHttpClient( client );
+      dispatch.executeRequest( new HttpGet( "http://localhost:" + port + "/" ), inboundRequest, outboundResponse );
+
+      completed.await();
+      EasyMock.verify( outboundResponse );
+    }
+  }
+
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  private static HttpServletRequest createAsyncRequest( HttpServletResponse response, CountDownLatch completed ) {
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    AsyncContext asyncContext = EasyMock.createNiceMock( AsyncContext.class );
+    EasyMock.expect( request.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.expect( request.startAsync( request, response ) ).andReturn( asyncContext ).once();
+    EasyMock.expect( asyncContext.getRequest() ).andReturn( request ).anyTimes();
+    EasyMock.expect( asyncContext.getResponse() ).andReturn( response ).anyTimes();
+    asyncContext.start( EasyMock.anyObject( Runnable.class ) );
+    EasyMock.expectLastCall().andAnswer( () -> {
+      new Thread( (Runnable) EasyMock.getCurrentArguments()[0] ).start();
+      return null;
+    } ).once();
+    asyncContext.complete();
+    EasyMock.expectLastCall().andAnswer( () -> {
+      completed.countDown();
+      return null;
+    } ).once();
+    EasyMock.replay( request, asyncContext );
+    return request;
+  }
+
 }
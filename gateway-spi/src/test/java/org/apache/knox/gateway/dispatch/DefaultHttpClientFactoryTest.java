@@ -28,9 +28,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.ServiceType;
 import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.dispatch.HttpConnectionPoolService;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.KeystoreService;
 import org.junit.Test;
@@ -56,6 +61,7 @@ public class DefaultHttpClientFactoryTest {
 
     GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
     expect(gatewayConfig.isMetricsEnabled()).andReturn(false).once();
+    expect(gatewayConfig.isHttpClientSharedConnectionPoolEnabled()).andReturn(false).once();
     expect(gatewayConfig.getHttpClientMaxConnections()).andReturn(32).once();
     expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).once();
     expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).once();
@@ -83,6 +89,91 @@ public class DefaultHttpClientFactoryTest {
     verify(keystoreService, gatewayConfig, gatewayServices, servletContext, filterConfig);
   }
 
+  @Test
+  public void testCreateHttpClientWithSharedConnectionPool() throws Exception {
+    KeystoreService keystoreService = createMock(KeystoreService.class);
+    expect(keystoreService.getTruststoreForHttpClient()).andReturn(null).once();
+
+    HttpClientConnectionManager connectionManager = createMock(HttpClientConnectionManager.class);
+
+    HttpConnectionPoolService connectionPoolService = createMock(HttpConnectionPoolService.class);
+    expect(connectionPoolService.getConnectionManager(DefaultHttpClientFactory.TLS_IDENTITY_ONE_WAY, null))
+        .andReturn(connectionManager).once();
+
+    GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
+    expect(gatewayConfig.isMetricsEnabled()).andReturn(false).once();
+    expect(gatewayConfig.isHttpClientSharedConnectionPoolEnabled()).andReturn(true).once();
+    expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).once();
+    expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).once();
+
+    GatewayServices gatewayServices = createMock(GatewayServices.class);
+    expect(gatewayServices.getService(ServiceType.KEYSTORE_SERVICE)).andReturn(keystoreService).once();
+    expect(gatewayServices.getService(ServiceType.HTTP_CONNECTION_POOL_SERVICE)).andReturn(connectionPoolService).once();
+
+    ServletContext servletContext = createMock(ServletContext.class);
+    expect(servletContext.getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).atLeastOnce();
+    expect(servletContext.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)).andReturn(gatewayServices).atLeastOnce();
+
+    FilterConfig filterConfig = createMock(FilterConfig.class);
+    expect(filterConfig.getServletContext()).andReturn(servletContext).atLeastOnce();
+    expect(filterConfig.getInitParameter("useTwoWaySsl")).andReturn("false").times(2);
+    expect(filterConfig.getInitParameter("httpclient.connectionTimeout")).andReturn(null).once();
+    expect(filterConfig.getInitParameter("httpclient.socketTimeout")).andReturn(null).once();
+
+    replay(keystoreService, connectionManager, connectionPoolService, gatewayConfig, gatewayServices, servletContext, filterConfig);
+
+    DefaultHttpClientFactory factory = new DefaultHttpClientFactory();
+    HttpClient client = factory.createHttpClient(filterConfig);
+    assertNotNull(client);
+
+    // Closing the client must leave the shared connection manager alone
+    ((CloseableHttpClient) client).close();
+
+    verify(keystoreService, connectionManager, connectionPoolService, gatewayConfig, gatewayServices, servletContext, filterConfig);
+  }
+
+  @Test
+  public void testCreateAsyncHttpClientWithSharedConnectionPool() throws Exception {
+    KeystoreService keystoreService = createMock(KeystoreService.class);
+    expect(keystoreService.getTruststoreForHttpClient()).andReturn(null).once();
+
+    NHttpClientConnectionManager connectionManager = createMock(NHttpClientConnectionManager.class);
+
+    HttpConnectionPoolService connectionPoolService = createMock(HttpConnectionPoolService.class);
+    expect(connectionPoolService.getAsyncConnectionManager(DefaultHttpClientFactory.TLS_IDENTITY_ONE_WAY, null))
+        .andReturn(connectionManager).once();
+
+    GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
+    expect(gatewayConfig.isHttpClientSharedConnectionPoolEnabled()).andReturn(true).once();
+    expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).once();
+    expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).once();
+
+    GatewayServices gatewayServices = createMock(GatewayServices.class);
+    expect(gatewayServices.getService(ServiceType.KEYSTORE_SERVICE)).andReturn(keystoreService).once();
+    expect(gatewayServices.getService(ServiceType.HTTP_CONNECTION_POOL_SERVICE)).andReturn(connectionPoolService).once();
+
+    ServletContext servletContext = createMock(ServletContext.class);
+    expect(servletContext.getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).atLeastOnce();
+    expect(servletContext.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)).andReturn(gatewayServices).atLeastOnce();
+
+    FilterConfig filterConfig = createMock(FilterConfig.class);
+    expect(filterConfig.getServletContext()).andReturn(servletContext).atLeastOnce();
+    expect(filterConfig.getInitParameter("useTwoWaySsl")).andReturn("false").times(2);
+    expect(filterConfig.getInitParameter("httpclient.connectionTimeout")).andReturn(null).once();
+    expect(filterConfig.getInitParameter("httpclient.socketTimeout")).andReturn(null).once();
+
+    replay(keystoreService, connectionManager, connectionPoolService, gatewayConfig, gatewayServices, servletContext, filterConfig);
+
+    DefaultHttpClientFactory factory = new DefaultHttpClientFactory();
+    CloseableHttpAsyncClient client = factory.createAsyncHttpClient(filterConfig);
+    assertNotNull(client);
+
+    // Closing the client must leave the shared connection manager and its reactor alone
+    client.close();
+
+    verify(keystoreService, connectionManager, connectionPoolService, gatewayConfig, gatewayServices, servletContext, filterConfig);
+  }
+
   @Test
   public void testCreateSSLContextDefaults() throws Exception {
     KeystoreService keystoreService = createMock(KeystoreService.class);
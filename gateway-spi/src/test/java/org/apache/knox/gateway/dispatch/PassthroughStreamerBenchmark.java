@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to download a body of the given number of gigabytes from a Jetty
+ * servlet that streams it the way {@link AbstractGatewayDispatch} streams a backend response that
+ * isn't rewritten. The <code>baseline</code> mode copies through heap arrays with
+ * {@link IOUtils#copy(InputStream, OutputStream)}, the <code>passthrough</code> mode uses
+ * {@link PassthroughStreamer}. Divide the size by the reported time for the throughput, and add
+ * <code>-prof gc</code> to the runner options to compare the heap allocated per transfer.
+ * <p>
+ * This is not run as part of the build. Run the main method from the test classpath, for example
+ * from an IDE after running <code>mvn test-compile</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class PassthroughStreamerBenchmark {
+
+  private static final long GIGABYTE = 1024L * 1024L * 1024L;
+
+  @Param( { "1", "4" } )
+  public int gigabytes;
+
+  @Param( { "baseline", "passthrough" } )
+  public String mode;
+
+  private Server server;
+  private URL url;
+  private final byte[] sink = new byte[64 * 1024];
+
+  @Setup
+  public void startServer() throws Exception {
+    final long size = gigabytes * GIGABYTE;
+    final boolean passthrough = "passthrough".equals( mode );
+    server = new Server( 0 );
+    ServletContextHandler context = new ServletContextHandler();
+    context.addServlet( new ServletHolder( new HttpServlet() {
+      @Override
+      protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException {
+        response.setContentLengthLong( size );
+        try( InputStream input = new BackendStream( size ); OutputStream output = response.getOutputStream() ) {
+          if( passthrough ) {
+            PassthroughStreamer.copy( input, output );
+          } else {
+            IOUtils.copy( input, output );
+          }
+        }
+      }
+    } ), "/*" );
+    server.setHandler( context );
+    server.start();
+    url = new URL( "http://localhost:" + ( (ServerConnector)server.getConnectors()[ 0 ] ).getLocalPort() + "/" );
+  }
+
+  @TearDown
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Benchmark
+  public long download() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    long total = 0;
+    try( InputStream input = connection.getInputStream() ) {
+      int read;
+      while( ( read = input.read( sink ) ) >= 0 ) {
+        total += read;
+      }
+    } finally {
+      connection.disconnect();
+    }
+    return total;
+  }
+
+  /**
+   * Stands in for the body of a backend response without spending time on producing its content.
+   */
+  private static class BackendStream extends InputStream {
+    private long remaining;
+
+    BackendStream( long size ) {
+      remaining = size;
+    }
+
+    @Override
+    public int read() {
+      if( remaining <= 0 ) {
+        return -1;
+      }
+      remaining--;
+      return 0;
+    }
+
+    @Override
+    public int read( byte[] buffer, int offset, int length ) {
+      if( remaining <= 0 ) {
+        return -1;
+      }
+      int count = (int)Math.min( length, remaining );
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min( Integer.MAX_VALUE, remaining );
+    }
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    new Runner( new OptionsBuilder().include( PassthroughStreamerBenchmark.class.getSimpleName() ).build() ).run();
+  }
+}
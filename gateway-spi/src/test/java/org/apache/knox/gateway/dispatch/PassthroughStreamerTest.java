@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PassthroughStreamerTest {
+
+  private static final byte[] BODY = new byte[3 * PassthroughStreamer.BUFFER_SIZE + 123];
+  private static final AtomicBoolean usedHttpOutput = new AtomicBoolean();
+
+  private static Server server;
+  private static URL url;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    new Random(42).nextBytes(BODY);
+    server = new Server(0);
+    ServletContextHandler context = new ServletContextHandler();
+    context.addServlet(new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (OutputStream output = response.getOutputStream()) {
+          usedHttpOutput.set(output instanceof HttpOutput);
+          // Hands out the body in small pieces, as a backend connection would
+          InputStream input = new ByteArrayInputStream(BODY) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+              return super.read(b, off, Math.min(len, 1000));
+            }
+          };
+          PassthroughStreamer.copy(input, output);
+        }
+      }
+    }), "/*");
+    server.setHandler(context);
+    server.start();
+    url = new URL("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void testBodyIsStreamedToHttpOutput() throws Exception {
+    try (InputStream input = url.openStream()) {
+      assertArrayEquals(BODY, IOUtils.toByteArray(input));
+    }
+    assertTrue(usedHttpOutput.get());
+  }
+
+  @Test
+  public void testOtherOutputsAreCopied() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertEquals(BODY.length, PassthroughStreamer.copy(new ByteArrayInputStream(BODY), output));
+    assertArrayEquals(BODY, output.toByteArray());
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.security.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.services.security.EncryptionResult;
+import org.apache.knox.test.category.FastTests;
+import org.apache.knox.test.category.UnitTests;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Category( { UnitTests.class, FastTests.class } )
+public class ConfigurableEncryptorTest {
+
+  @Test
+  public void testEncryptionReusesDerivedKey() throws Exception {
+    ConfigurableEncryptor encryptor = new ConfigurableEncryptor("password");
+    encryptor.init(null);
+
+    EncryptionResult first = encryptor.encrypt("larry");
+    EncryptionResult second = encryptor.encrypt("larry");
+    // the default transformation is unchanged, so gateways of earlier versions can read the results
+    assertEquals(16, first.iv.length);
+    assertEquals(0, first.cipher.length % 16);
+    assertArrayEquals(first.salt, second.salt);
+    assertFalse(Arrays.equals(first.iv, second.iv));
+
+    assertEquals("larry", new String(encryptor.decrypt(first.salt, first.iv, first.cipher), StandardCharsets.UTF_8));
+
+    // another encryptor sharing the password, e.g. on another gateway instance
+    ConfigurableEncryptor other = new ConfigurableEncryptor("password");
+    assertEquals("larry", new String(other.decrypt(second.salt, second.iv, second.cipher), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testGcmEncryption() throws Exception {
+    ConfigurableEncryptor encryptor = createEncryptor(ConfigurableEncryptor.GCM_TRANSFORMATION);
+
+    EncryptionResult first = encryptor.encrypt("larry");
+    EncryptionResult second = encryptor.encrypt("larry");
+    assertEquals(ConfigurableEncryptor.GCM_NONCE_LENGTH, first.iv.length);
+    assertArrayEquals(first.salt, second.salt);
+    assertFalse(Arrays.equals(first.iv, second.iv));
+    assertEquals("larry".length() + 16, first.cipher.length);
+
+    assertEquals("larry", new String(encryptor.decrypt(first.salt, first.iv, first.cipher), StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = AEADBadTagException.class)
+  public void testGcmDetectsTampering() throws Exception {
+    ConfigurableEncryptor encryptor = createEncryptor(ConfigurableEncryptor.GCM_TRANSFORMATION);
+    EncryptionResult result = encryptor.encrypt("larry");
+    result.cipher[0] ^= 1;
+    encryptor.decrypt(result.salt, result.iv, result.cipher);
+  }
+
+  @Test
+  @SuppressWarnings("PMD.HardCodedCryptoKey")
+  public void testDecryptLegacyCipherText() throws Exception {
+    ConfigurableEncryptor encryptor = new ConfigurableEncryptor("password");
+
+    // encrypted the way earlier versions did, with a fresh salt per value
+    byte[] salt = new byte[8];
+    new SecureRandom().nextBytes(salt);
+    SecretKey tmp = encryptor.getKeyFromPassword("password", salt);
+    Cipher cipher = Cipher.getInstance(ConfigurableEncryptor.CBC_TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(tmp.getEncoded(), "AES"));
+    byte[] iv = cipher.getParameters().getParameterSpec(IvParameterSpec.class).getIV();
+    byte[] legacy = cipher.doFinal("larry".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("larry", new String(encryptor.decrypt(salt, iv, legacy), StandardCharsets.UTF_8));
+    assertEquals("larry", new String(encryptor.decrypt(salt, iv, legacy), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSwitchingTransformation() throws Exception {
+    ConfigurableEncryptor cbc = new ConfigurableEncryptor("password");
+    ConfigurableEncryptor gcm = createEncryptor(ConfigurableEncryptor.GCM_TRANSFORMATION);
+
+    // values written before enabling GCM remain readable
+    EncryptionResult result = cbc.encrypt("larry");
+    assertEquals("larry", new String(gcm.decrypt(result.salt, result.iv, result.cipher), StandardCharsets.UTF_8));
+
+    // and so do values written with GCM after going back to the default
+    result = gcm.encrypt("larry");
+    assertEquals("larry", new String(cbc.decrypt(result.salt, result.iv, result.cipher), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testHasPassPhrase() {
+    ConfigurableEncryptor encryptor = new ConfigurableEncryptor("password");
+    assertTrue(encryptor.hasPassPhrase("password".toCharArray()));
+    assertFalse(encryptor.hasPassPhrase("other".toCharArray()));
+  }
+
+  private static ConfigurableEncryptor createEncryptor(String transformation) {
+    GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getTransformation()).andReturn(transformation).anyTimes();
+    EasyMock.replay(config);
+
+    ConfigurableEncryptor encryptor = new ConfigurableEncryptor("password");
+    encryptor.init(config);
+    return encryptor;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.topology.discovery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractClusterConfigurationMonitorTest {
+
+  private static final String SOURCE = "http://host1:8080";
+
+  private TestMonitor monitor;
+
+  @Before
+  public void setUp() {
+    monitor = new TestMonitor();
+    monitor.setPollingInterval(1, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    monitor.release.countDown();
+    monitor.stop();
+  }
+
+  @Test
+  public void testSlowClusterDoesNotHoldBackOthers() throws Exception {
+    monitor.monitorCluster(SOURCE, "slow");
+    monitor.monitorCluster(SOURCE, "fast");
+    monitor.changes.put("fast", "zoo.cfg 1 -> 2");
+    monitor.start();
+
+    // The check of the slow cluster is blocked, while the change of the fast one gets reported
+    assertTrue(waitFor(() -> monitor.getNotifications("fast"), 1));
+    assertEquals(1, monitor.getChecks("slow"));
+  }
+
+  @Test
+  public void testChangeIsReportedOnce() throws Exception {
+    monitor.monitorCluster(SOURCE, "cluster");
+    monitor.changes.put("cluster", "zoo.cfg 1 -> 2");
+    monitor.start();
+
+    // A change is checked again sooner than the polling interval, but not reported again
+    assertTrue(waitFor(() -> monitor.getChecks("cluster"), 3));
+    assertEquals(1, monitor.getNotifications("cluster"));
+
+    // Another change is reported right away
+    monitor.changes.put("cluster", "zoo.cfg 1 -> 3");
+    assertTrue(waitFor(() -> monitor.getNotifications("cluster"), 2));
+  }
+
+  @Test
+  public void testUnmonitoredClusterIsNotChecked() throws Exception {
+    monitor.monitorCluster(SOURCE, "cluster");
+    monitor.changes.put("cluster", "zoo.cfg 1 -> 2");
+    monitor.start();
+    assertTrue(waitFor(() -> monitor.getChecks("cluster"), 1));
+
+    monitor.unmonitorCluster(SOURCE, "cluster");
+    // A check may have been in progress
+    int checks = monitor.getChecks("cluster") + 1;
+    Thread.sleep(1000);
+    assertTrue(monitor.getChecks("cluster") <= checks);
+  }
+
+  private static boolean waitFor(IntSupplier count, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (count.getAsInt() < expected) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  private static final class TestMonitor extends AbstractClusterConfigurationMonitor {
+    private final ConcurrentMap<String, String> changes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> checks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> notifications = new ConcurrentHashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    TestMonitor() {
+      super("Test");
+      addListener((source, clusterName) ->
+          notifications.computeIfAbsent(clusterName, k -> new AtomicInteger()).incrementAndGet());
+    }
+
+    @Override
+    protected String getConfigurationChange(String source, String clusterName) throws IOException {
+      checks.computeIfAbsent(clusterName, k -> new AtomicInteger()).incrementAndGet();
+      if ("slow".equals(clusterName)) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return changes.get(clusterName);
+    }
+
+    @Override
+    public void clearCache(String source, String clusterName) {
+      unmonitorCluster(source, clusterName);
+    }
+
+    int getChecks(String clusterName) {
+      AtomicInteger count = checks.get(clusterName);
+      return count == null ? 0 : count.get();
+    }
+
+    int getNotifications(String clusterName) {
+      AtomicInteger count = notifications.get(clusterName);
+      return count == null ? 0 : count.get();
+    }
+  }
+}
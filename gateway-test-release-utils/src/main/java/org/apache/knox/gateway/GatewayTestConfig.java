@@ -394,6 +394,76 @@ public class GatewayTestConfig extends Configuration implements GatewayConfig {
     return -1;
   }
 
+  @Override
+  public boolean isHttpClientSharedConnectionPoolEnabled() {
+    return false;
+  }
+
+  @Override
+  public int getHttpClientSharedConnectionPoolMaxTotal() {
+    return 1024;
+  }
+
+  @Override
+  public int getHttpClientSharedConnectionPoolMaxPerRoute() {
+    return 16;
+  }
+
+  @Override
+  public long getHttpClientSharedConnectionPoolIdleTimeout() {
+    return 60000L;
+  }
+
+  @Override
+  public long getHttpClientSharedConnectionPoolTimeToLive() {
+    return -1L;
+  }
+
+  @Override
+  public boolean isAsyncDispatchEnabled() {
+    return false;
+  }
+
+  @Override
+  public long getGroupLookupCacheTTL() {
+    return 300000L;
+  }
+
+  @Override
+  public long getGroupLookupCacheNegativeTTL() {
+    return 30000L;
+  }
+
+  @Override
+  public int getGroupLookupCacheMaxEntries() {
+    return 10000;
+  }
+
+  @Override
+  public boolean isHttp2Enabled() {
+    return false;
+  }
+
+  @Override
+  public int getHttp2MaxConcurrentStreams() {
+    return 128;
+  }
+
+  @Override
+  public int getHttp2InitialStreamRecvWindow() {
+    return 512 * 1024;
+  }
+
+  @Override
+  public int getHttp2InitialSessionRecvWindow() {
+    return 1024 * 1024;
+  }
+
+  @Override
+  public boolean isVirtualThreadsEnabled() {
+    return false;
+  }
+
   @Override
   public String getHttpClientTruststorePath() {
     return null;
@@ -757,4 +827,14 @@ public class GatewayTestConfig extends Configuration implements GatewayConfig {
   public Set<String> getServicesToIgnoreDoAs() {
     return null;
   }
+
+  @Override
+  public long getServiceDiscoverySnapshotTTL() {
+    return 0;
+  }
+
+  @Override
+  public boolean isServiceDiscoverySnapshotPersistenceEnabled() {
+    return false;
+  }
 }
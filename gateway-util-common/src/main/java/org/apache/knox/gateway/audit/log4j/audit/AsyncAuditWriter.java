@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.audit.log4j.audit;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.CorrelationContext;
+import org.apache.knox.gateway.audit.log4j.correlation.Log4jCorrelationContext;
+import org.apache.knox.gateway.audit.log4j.correlation.Log4jCorrelationService;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Writes audit records on a background thread. The request thread only captures an immutable
+ * record and publishes it to an {@link AuditRingBuffer}; masking, event creation and the log4j
+ * appenders run in batches on the writer thread. The event keeps the time and thread name of the
+ * request, so the audit log looks the same as when audit is synchronous.
+ * <p>
+ * When the buffer is full the {@link OverflowPolicy} decides whether the request thread waits for
+ * room, drops the record or waits for only a sample of the records.
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+class AsyncAuditWriter implements Runnable {
+
+  enum OverflowPolicy {
+    /** Wait for room in the buffer; no record is lost. */
+    BLOCK,
+    /** Drop records that don't fit in the buffer. */
+    DROP,
+    /** Wait for room for one in every sample rate records that don't fit and drop the others. */
+    SAMPLE
+  }
+
+  private static final int BATCH_SIZE = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long DROP_REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+  private final AuditRingBuffer<AuditRecord> buffer;
+  private final OverflowPolicy overflowPolicy;
+  private final int sampleRate;
+  private final AtomicLong overflowed = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+  private final AtomicBoolean waiting = new AtomicBoolean();
+  private final AtomicBoolean running = new AtomicBoolean(true);
+  // Set while a batch is drained and written, so flush() also waits for the appenders
+  private final AtomicBoolean writing = new AtomicBoolean();
+  private long reportedDrops;
+  private long lastDropReport;
+
+  AsyncAuditWriter(int bufferSize, OverflowPolicy overflowPolicy, int sampleRate) {
+    this.buffer = new AuditRingBuffer<>(bufferSize);
+    this.overflowPolicy = overflowPolicy;
+    this.sampleRate = Math.max(1, sampleRate);
+    thread = new Thread(this, "knox-audit-writer");
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "knox-audit-writer-shutdown"));
+  }
+
+  static OverflowPolicy parseOverflowPolicy(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return OverflowPolicy.BLOCK;
+    }
+    try {
+      return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      LogLog.warn("Unknown audit overflow policy " + value + ", using " + OverflowPolicy.BLOCK);
+      return OverflowPolicy.BLOCK;
+    }
+  }
+
+  /**
+   * Captures an audit record. The contexts are copied, since they may change once this returns.
+   */
+  void write(Logger logger, String serviceName, String componentName,
+      CorrelationContext correlationContext, AuditContext auditContext,
+      String action, String resourceName, String resourceType, String outcome, String message) {
+    AuditRecord record = new AuditRecord(logger, System.currentTimeMillis(), Thread.currentThread().getName(),
+        serviceName, componentName, copy(correlationContext), copy(auditContext),
+        action, resourceName, resourceType, outcome, message);
+    if (!buffer.offer(record) && !overflow(record)) {
+      dropped.incrementAndGet();
+    }
+    if (waiting.get() && waiting.compareAndSet(true, false)) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private boolean overflow(AuditRecord record) {
+    long count = overflowed.incrementAndGet();
+    if (overflowPolicy == OverflowPolicy.DROP
+        || (overflowPolicy == OverflowPolicy.SAMPLE && count % sampleRate != 0)) {
+      return false;
+    }
+    while (!buffer.offer(record)) {
+      if (!running.get()) {
+        return false;
+      }
+      LockSupport.unpark(thread);
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    return true;
+  }
+
+  long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Waits until every record published so far has been written.
+   *
+   * @return false if the records weren't written within the timeout
+   */
+  boolean flush(long timeout, TimeUnit unit) {
+    long target = buffer.getPublishedCount();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (buffer.getConsumedCount() < target || thread.isAlive() && writing.get()) {
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      LockSupport.unpark(thread);
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    return true;
+  }
+
+  void close() {
+    running.set(false);
+    LockSupport.unpark(thread);
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    AuditRecord[] batch = new AuditRecord[BATCH_SIZE];
+    while (true) {
+      writing.set(true);
+      int count = buffer.drainTo(batch);
+      for (int i = 0; i < count; i++) {
+        append(batch[i]);
+        batch[i] = null;
+      }
+      writing.set(false);
+      if (count > 0) {
+        reportDrops();
+        continue;
+      }
+      if (!running.get()) {
+        break;
+      }
+      waiting.set(true);
+      // Check again, a record may have been published before the flag was seen
+      if (buffer.isEmpty()) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+      waiting.set(false);
+    }
+  }
+
+  private static void append(AuditRecord record) {
+    try {
+      record.logger.callAppenders(record.toEvent());
+    } catch (RuntimeException e) {
+      LogLog.error("Failed to write audit record", e);
+    }
+  }
+
+  private void reportDrops() {
+    long drops = dropped.get();
+    long now = System.currentTimeMillis();
+    if (drops != reportedDrops && now - lastDropReport >= DROP_REPORT_INTERVAL) {
+      LogLog.warn("Dropped " + (drops - reportedDrops) + " audit records because the audit buffer was full");
+      reportedDrops = drops;
+      lastDropReport = now;
+    }
+  }
+
+  private static CorrelationContext copy(CorrelationContext context) {
+    if (context == null) {
+      return null;
+    }
+    return new Log4jCorrelationContext(context.getRequestId(), context.getParentRequestId(), context.getRootRequestId());
+  }
+
+  private static AuditContext copy(AuditContext context) {
+    if (context == null) {
+      return null;
+    }
+    Log4jAuditContext copy = new Log4jAuditContext();
+    copy.setUsername(context.getUsername());
+    copy.setProxyUsername(context.getProxyUsername());
+    copy.setSystemUsername(context.getSystemUsername());
+    copy.setTargetServiceName(context.getTargetServiceName());
+    copy.setRemoteIp(context.getRemoteIp());
+    copy.setRemoteHostname(context.getRemoteHostname());
+    return copy;
+  }
+
+  private static class AuditRecord {
+    private final Logger logger;
+    private final long timestamp;
+    private final String threadName;
+    private final String serviceName;
+    private final String componentName;
+    private final CorrelationContext correlationContext;
+    private final AuditContext auditContext;
+    private final String action;
+    private final String resourceName;
+    private final String resourceType;
+    private final String outcome;
+    private final String message;
+
+    AuditRecord(Logger logger, long timestamp, String threadName, String serviceName, String componentName,
+        CorrelationContext correlationContext, AuditContext auditContext,
+        String action, String resourceName, String resourceType, String outcome, String message) {
+      this.logger = logger;
+      this.timestamp = timestamp;
+      this.threadName = threadName;
+      this.serviceName = serviceName;
+      this.componentName = componentName;
+      this.correlationContext = correlationContext;
+      this.auditContext = auditContext;
+      this.action = action;
+      this.resourceName = resourceName;
+      this.resourceType = resourceType;
+      this.outcome = outcome;
+      this.message = message;
+    }
+
+    LoggingEvent toEvent() {
+      // The event's MDC copy; the writer thread itself never uses the MDC
+      Map<String, Object> mdc = new HashMap<>();
+      put(mdc, AuditConstants.MDC_ACTION_KEY, action);
+      put(mdc, AuditConstants.MDC_RESOURCE_NAME_KEY, Log4jAuditor.maskTokenFromURL(resourceName));
+      put(mdc, AuditConstants.MDC_RESOURCE_TYPE_KEY, resourceType);
+      put(mdc, AuditConstants.MDC_OUTCOME_KEY, outcome);
+      put(mdc, AuditConstants.MDC_SERVICE_KEY, serviceName);
+      put(mdc, AuditConstants.MDC_COMPONENT_KEY, componentName);
+      put(mdc, Log4jAuditService.MDC_AUDIT_CONTEXT_KEY, auditContext);
+      put(mdc, Log4jCorrelationService.MDC_CORRELATION_CONTEXT_KEY, correlationContext);
+      return new LoggingEvent(Logger.class.getName(), logger, timestamp, Level.INFO, message, threadName,
+          null, null, null, mdc);
+    }
+
+    private static void put(Map<String, Object> mdc, String key, Object value) {
+      if (value != null) {
+        mdc.put(key, value);
+      }
+    }
+  }
+}
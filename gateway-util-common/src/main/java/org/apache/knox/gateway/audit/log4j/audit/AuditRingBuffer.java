@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.audit.log4j.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer. Each slot carries a
+ * sequence number that tells producers whether the slot is free and the consumer whether it has
+ * been published, so neither side ever takes a lock.
+ */
+class AuditRingBuffer<E> {
+
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity the number of slots, rounded up to a power of two
+   */
+  AuditRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    elements = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * @return false if the buffer is full
+   */
+  boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long available = sequences.get(index) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          elements.lazySet(index, element);
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (available < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Moves published elements into the batch. Must only be called by the consumer.
+   *
+   * @return the number of elements moved
+   */
+  int drainTo(E[] batch) {
+    long position = head.get();
+    int count = 0;
+    while (count < batch.length) {
+      int index = (int) (position & mask);
+      if (sequences.get(index) != position + 1) {
+        break;
+      }
+      batch[count++] = elements.get(index);
+      elements.lazySet(index, null);
+      sequences.lazySet(index, position + mask + 1);
+      position++;
+    }
+    head.lazySet(position);
+    return count;
+  }
+
+  boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * @return the number of elements offered successfully so far
+   */
+  long getPublishedCount() {
+    return tail.get();
+  }
+
+  /**
+   * @return the number of elements drained so far
+   */
+  long getConsumedCount() {
+    return head.get();
+  }
+}
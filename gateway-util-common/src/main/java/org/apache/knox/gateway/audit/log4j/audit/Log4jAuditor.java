@@ -29,8 +29,12 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Log4jAuditor implements Auditor {
 
@@ -38,17 +42,39 @@ public class Log4jAuditor implements Auditor {
   * e.g. -Dmasked_params=knoxtoken,ccNumber
   **/
   public static final String MASKED_QUERY_PARAMS_OPTION = "masked_params";
+
+  /** Writes audit records on a background thread instead of the request thread
+   * e.g. -Daudit_async=true
+   **/
+  public static final String ASYNC_OPTION = "audit_async";
+  /** Number of audit records the background writer can hold, rounded up to a power of two **/
+  public static final String ASYNC_BUFFER_SIZE_OPTION = "audit_async_buffer_size";
+  /** What to do when the buffer is full: block (default), drop or sample **/
+  public static final String ASYNC_OVERFLOW_POLICY_OPTION = "audit_async_overflow_policy";
+  /** With the sample policy, one in this many records that don't fit in the buffer is kept **/
+  public static final String ASYNC_SAMPLE_RATE_OPTION = "audit_async_sample_rate";
+
+  private static final int DEFAULT_ASYNC_BUFFER_SIZE = 8192;
+  private static final int DEFAULT_ASYNC_SAMPLE_RATE = 10;
+  private static final String MASK = "***************";
+
   private Logger logger;
   private String componentName;
   private String serviceName;
   private AuditService auditService = new Log4jAuditService();
   private CorrelationService correlationService = new Log4jCorrelationService();
+  /* Shared by all auditors, null unless audit is asynchronous */
+  private final AsyncAuditWriter asyncWriter;
   /* List of parameters to be masked */
   private static List<String> maskedParams = new ArrayList<>();
+  /* Matches the masked parameters in a query, compiled whenever the list changes */
+  private static final AtomicReference<Pattern> maskedParamsPattern = new AtomicReference<>();
+  private static AsyncAuditWriter sharedAsyncWriter;
 
   static {
     /* add defaults */
     maskedParams.add("knoxtoken");
+    compileMaskedParams();
   }
 
   public Log4jAuditor( String loggerName, String componentName, String serviceName ) {
@@ -67,7 +93,33 @@ public class Log4jAuditor implements Auditor {
           maskedParams.add(s);
         }
       }
+      compileMaskedParams();
+    }
+
+    asyncWriter = Boolean.getBoolean(ASYNC_OPTION) ? getAsyncWriter() : null;
+  }
+
+  /* Started when the first asynchronous auditor is created */
+  static synchronized AsyncAuditWriter getAsyncWriter() {
+    if (sharedAsyncWriter == null) {
+      sharedAsyncWriter = new AsyncAuditWriter(
+          Integer.getInteger(ASYNC_BUFFER_SIZE_OPTION, DEFAULT_ASYNC_BUFFER_SIZE),
+          AsyncAuditWriter.parseOverflowPolicy(System.getProperty(ASYNC_OVERFLOW_POLICY_OPTION)),
+          Integer.getInteger(ASYNC_SAMPLE_RATE_OPTION, DEFAULT_ASYNC_SAMPLE_RATE));
+      sharedAsyncWriter.start();
+    }
+    return sharedAsyncWriter;
+  }
+
+  private static void compileMaskedParams() {
+    final StringBuilder names = new StringBuilder();
+    for (final String s : maskedParams) {
+      if (names.length() > 0) {
+        names.append('|');
+      }
+      names.append(Pattern.quote(s));
     }
+    maskedParamsPattern.set(Pattern.compile("([?&](?:" + names + ")=)[^&#]*"));
   }
 
   @Override
@@ -101,7 +153,10 @@ public class Log4jAuditor implements Auditor {
   }
 
   private void auditLog( String action, String resourceName, String resourceType, String outcome, String message ) {
-    if ( logger.isInfoEnabled() ) {
+    if ( asyncWriter != null && logger.isInfoEnabled() ) {
+      asyncWriter.write( logger, serviceName, componentName, correlationService.getContext(), auditService.getContext(),
+          action, resourceName, resourceType, outcome, message );
+    } else if ( logger.isInfoEnabled() ) {
       MDC.put( AuditConstants.MDC_ACTION_KEY, action );
       MDC.put( AuditConstants.MDC_RESOURCE_NAME_KEY, maskTokenFromURL(resourceName) );
       MDC.put( AuditConstants.MDC_RESOURCE_TYPE_KEY, resourceType );
@@ -137,44 +192,70 @@ public class Log4jAuditor implements Auditor {
 
   /**
    * If the url contains knoxtoken parameter, mask it when logging.
+   * A query with percent-encoded characters is decoded first, so that masked parameters
+   * nested in the encoded value of another parameter, e.g. an originalUrl, are masked too.
    * @param originalUrl original url to try to mask
    * @return originalUrl masking token value
    */
   public static String maskTokenFromURL(final String originalUrl) {
+    if (originalUrl == null) {
+      return null;
+    }
+    final int query = originalUrl.indexOf('?');
+    final int fragment = originalUrl.indexOf('#');
+    if (query < 0 || (fragment >= 0 && fragment < query)) {
+      return originalUrl;
+    }
+    final int queryEnd = fragment < 0 ? originalUrl.length() : fragment;
+    final int encoded = originalUrl.indexOf('%', query);
+    if (encoded >= 0 && encoded < queryEnd) {
+      final String decoded = maskDecodedQuery(originalUrl);
+      if (decoded != null) {
+        return decoded;
+      }
+    }
+    final Matcher matcher = maskedParamsPattern.get().matcher(originalUrl);
+    matcher.region(query, queryEnd);
+    if (!matcher.find()) {
+      return originalUrl;
+    }
+    final StringBuilder masked = new StringBuilder(originalUrl.length());
+    int last = 0;
+    do {
+      masked.append(originalUrl, last, matcher.end(1)).append(MASK);
+      last = matcher.end();
+    } while (matcher.find());
+    return masked.append(originalUrl, last, originalUrl.length()).toString();
+  }
+
+  /* Masks the parameters of the decoded query, or returns null if the url can't be parsed */
+  private static String maskDecodedQuery(final String originalUrl) {
     try {
       final URI original = new URI(originalUrl);
-
-      if( original.getQuery() != null &&
-          !original.getQuery().isEmpty()) {
-
-        final String[] query = original.getQuery().split("&");
-        final StringBuilder newQuery = new StringBuilder();
-
-        for(int i = 0; i < query.length; i++ ) {
-
-          for(final String s: maskedParams) {
-            /* mask "knoxtoken" param */
-            if(query[i].contains(s+"=")) {
-              newQuery.append(s).append("=***************");
-            } else {
-              newQuery.append(query[i]);
-            }
-          }
-          if (i < (query.length -1) ) {
-            newQuery.append('&');
+      if (original.getQuery() == null || original.getQuery().isEmpty()) {
+        return originalUrl;
+      }
+      final String[] query = original.getQuery().split("&");
+      final StringBuilder newQuery = new StringBuilder();
+      for (int i = 0; i < query.length; i++) {
+        String param = query[i];
+        for (final String s : maskedParams) {
+          /* mask the param, also when it is nested in the value of another one */
+          if (param.contains(s + "=")) {
+            param = s + "=" + MASK;
+            break;
           }
         }
-
-        final URI newURI = new URI(original.getScheme(), original.getAuthority(),
-            original.getPath(), newQuery.toString(), original.getFragment());
-
-        return newURI.toString();
+        newQuery.append(param);
+        if (i < (query.length - 1)) {
+          newQuery.append('&');
+        }
       }
-
-    } catch (final Exception e) {
-      // malformed uri just log the original url
+      return new URI(original.getScheme(), original.getAuthority(),
+          original.getPath(), newQuery.toString(), original.getFragment()).toString();
+    } catch (final URISyntaxException e) {
+      return null;
     }
-    return originalUrl;
   }
 
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import java.util.Arrays;
+
+/**
+ * A binary trie of address prefixes. An address is given as up to 128 bits, most significant bit
+ * first, in a high and a low half. A lookup walks at most one node per bit of the address, so its
+ * cost doesn't depend on the number of prefixes added.
+ */
+class IpAddressTrie {
+  private static final int ROOT = 0;
+
+  // Nodes are kept in parallel arrays, a child index of 0 means there is no child.
+  private int[] zeros = new int[64];
+  private int[] ones = new int[64];
+  private boolean[] terminal = new boolean[64];
+  private int size = 1;
+
+  /**
+   * @param high the first 64 bits of the address
+   * @param low the last 64 bits of the address
+   * @param prefixLength the number of leading bits of the address that have to match
+   */
+  void add(long high, long low, int prefixLength) {
+    int node = ROOT;
+    for (int bit = 0; bit < prefixLength && !terminal[node]; bit++) {
+      int[] children = isSet(high, low, bit) ? ones : zeros;
+      int child = children[node];
+      if (child == ROOT) {
+        child = newNode();
+        // The arrays may have been grown by newNode()
+        children = isSet(high, low, bit) ? ones : zeros;
+        children[node] = child;
+      }
+      node = child;
+    }
+    terminal[node] = true;
+  }
+
+  /**
+   * @param high the first 64 bits of the address
+   * @param low the last 64 bits of the address
+   * @param length the number of bits in the address
+   * @return true if any of the added prefixes matches the address
+   */
+  boolean contains(long high, long low, int length) {
+    int node = ROOT;
+    for (int bit = 0; bit < length; bit++) {
+      if (terminal[node]) {
+        return true;
+      }
+      node = isSet(high, low, bit) ? ones[node] : zeros[node];
+      if (node == ROOT) {
+        return false;
+      }
+    }
+    return terminal[node];
+  }
+
+  private int newNode() {
+    if (size == terminal.length) {
+      int capacity = size * 2;
+      zeros = Arrays.copyOf(zeros, capacity);
+      ones = Arrays.copyOf(ones, capacity);
+      terminal = Arrays.copyOf(terminal, capacity);
+    }
+    return size++;
+  }
+
+  private static boolean isSet(long high, long low, int bit) {
+    if (bit < 64) {
+      return (high >>> (63 - bit) & 1L) != 0;
+    } else {
+      return (low >>> (127 - bit) & 1L) != 0;
+    }
+  }
+}
@@ -19,19 +19,46 @@ package org.apache.knox.gateway.util;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Validate a given IP Address against a list of comma separated list of addresses.
+ * <p>
+ * The list may contain IPv4 and IPv6 addresses, CIDR ranges such as 192.168.0.0/16 or
+ * fe80::/10, and wildcards that replace the trailing octets or groups of an address such as
+ * 192.168.* or 0:0:0:0:0:0:*. These are compiled into tries of address bits, so validating an
+ * address takes the same time however long the list is and doesn't allocate. Any other entry is
+ * compared with the address as a string, or as a string prefix if it contains a wildcard.
  */
 public class IpAddressValidator {
+  private static final int IPV4_LENGTH = 32;
+  private static final int IPV6_LENGTH = 128;
+
   /**
    * The parsed list of ip addresses
    */
   private List<String> ipaddr = new ArrayList<>();
 
   /**
-   * IP addresses from the ipaddr list that contain a wildcard character '*'
+   * The IPv4 addresses and ranges from the ipaddr list
+   */
+  private final IpAddressTrie ipv4 = new IpAddressTrie();
+
+  /**
+   * The IPv6 addresses and ranges from the ipaddr list
+   */
+  private final IpAddressTrie ipv6 = new IpAddressTrie();
+
+  /**
+   * Entries from the ipaddr list that are not addresses or ranges
+   */
+  private Set<String> otherIPs = new HashSet<>();
+
+  /**
+   * Prefixes of the entries from the ipaddr list that contain a wildcard character '*' but are not
+   * ranges, example: 29*
    */
   private List<String> wildCardIPs = new ArrayList<>();
 
@@ -56,19 +83,108 @@ public class IpAddressValidator {
   private void parseIpAddesses(String commaSeparatedIpAddresses) {
     String[] ips = commaSeparatedIpAddresses.split(",");
     ipaddr = new ArrayList<>();
-    wildCardIPs = new ArrayList<>();
     Collections.addAll(ipaddr, ips);
     if (!ipaddr.contains("*")) {
       anyIP = false;
-      // check whether there are any wildcarded ip's - example: 192.* or 192.168.* or 192.168.1.*
       for (String addr : ipaddr) {
-        if (addr.contains("*")) {
-          wildCardIPs.add(addr.substring(0, addr.lastIndexOf('*')));
+        if (!addRange(addr)) {
+          if (addr.contains("*")) {
+            wildCardIPs.add(addr.substring(0, addr.lastIndexOf('*')));
+          } else {
+            otherIPs.add(addr);
+          }
         }
       }
     }
   }
 
+  /**
+   * Adds an address, CIDR range or wildcard range to the tries.
+   *
+   * @return false if the entry is none of these
+   */
+  private boolean addRange(String addr) {
+    int end = addr.length();
+    int prefixLength = -1;
+    int slash = addr.indexOf('/');
+    if (slash >= 0) {
+      try {
+        prefixLength = Integer.parseInt(addr.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      if (prefixLength < 0) {
+        return false;
+      }
+      end = slash;
+    } else if (end > 0 && addr.charAt(end - 1) == '*') {
+      return addWildcardRange(addr);
+    }
+
+    if (addr.indexOf(':') < 0) {
+      long address = parseIpv4(addr, 0, end);
+      if (address < 0 || prefixLength > IPV4_LENGTH) {
+        return false;
+      }
+      ipv4.add(address << IPV4_LENGTH, 0L, prefixLength < 0 ? IPV4_LENGTH : prefixLength);
+    } else {
+      int fill = scanIpv6(addr, 0, end);
+      if (fill < 0 || prefixLength > IPV6_LENGTH) {
+        return false;
+      }
+      ipv6.add(ipv6Bits(addr, 0, end, fill, true), ipv6Bits(addr, 0, end, fill, false),
+          prefixLength < 0 ? IPV6_LENGTH : prefixLength);
+    }
+    return true;
+  }
+
+  /**
+   * Adds a wildcard such as 192.168.* or 0:0:0:0:0:0:* that stands for whole trailing octets or
+   * groups, which is the range of addresses it matches as a string prefix.
+   */
+  private boolean addWildcardRange(String addr) {
+    String[] parts = addr.substring(0, addr.length() - 1).split("[.:]", -1);
+    boolean v4 = addr.indexOf(':') < 0;
+    int partCount = parts.length - 1;
+    // The wildcard has to follow a separator and replace at least one octet or group
+    if (partCount < 1 || !parts[partCount].isEmpty() || partCount >= (v4 ? 4 : 8)
+        || !v4 && addr.indexOf('.') >= 0) {
+      return false;
+    }
+    long high = 0L;
+    long low = 0L;
+    for (int i = 0; i < partCount; i++) {
+      String part = parts[i];
+      if (part.isEmpty() || part.length() > (v4 ? 3 : 4)) {
+        return false;
+      }
+      int value = 0;
+      for (int j = 0; j < part.length(); j++) {
+        int digit = Character.digit(part.charAt(j), v4 ? 10 : 16);
+        if (digit < 0) {
+          return false;
+        }
+        value = value * (v4 ? 10 : 16) + digit;
+      }
+      if (v4) {
+        if (value > 255) {
+          return false;
+        }
+        high |= (long) value << (56 - 8 * i);
+      } else if (i < 4) {
+        high |= (long) value << (48 - 16 * i);
+      } else {
+        low |= (long) value << (48 - 16 * (i - 4));
+      }
+    }
+    if (v4) {
+      ipv4.add(high, low, 8 * partCount);
+    } else {
+      ipv6.add(high, low, 16 * partCount);
+    }
+    return true;
+  }
+
   public boolean validateIpAddress(String addr) {
     boolean valid = false;
     if (addr == null) {
@@ -80,7 +196,7 @@ public class IpAddressValidator {
       valid = true;
     }
     else {
-      if (ipaddr.contains(addr)) {
+      if (containsAddress(addr) || otherIPs.contains(addr)) {
         valid = true;
       }
       else {
@@ -98,6 +214,157 @@ public class IpAddressValidator {
     return valid;
   }
 
+  private boolean containsAddress(String addr) {
+    int start = 0;
+    int end = addr.length();
+    if (end > 1 && addr.charAt(0) == '[' && addr.charAt(end - 1) == ']') {
+      start++;
+      end--;
+    }
+    int zone = addr.indexOf('%', start);
+    if (zone >= 0 && zone < end) {
+      end = zone;
+    }
+    if (addr.indexOf(':', start) < 0) {
+      long address = parseIpv4(addr, start, end);
+      return address >= 0 && ipv4.contains(address << IPV4_LENGTH, 0L, IPV4_LENGTH);
+    }
+    int fill = scanIpv6(addr, start, end);
+    return fill >= 0
+        && ipv6.contains(ipv6Bits(addr, start, end, fill, true), ipv6Bits(addr, start, end, fill, false), IPV6_LENGTH);
+  }
+
+  /**
+   * @return the address as an unsigned 32 bit value or -1 if it isn't a dotted decimal IPv4 address
+   */
+  private static long parseIpv4(String addr, int start, int end) {
+    long address = 0L;
+    int octets = 0;
+    int i = start;
+    while (true) {
+      int value = 0;
+      int digits = 0;
+      while (i < end && digits <= 3 && Character.isDigit(addr.charAt(i))) {
+        value = value * 10 + Character.digit(addr.charAt(i), 10);
+        digits++;
+        i++;
+      }
+      if (digits == 0 || digits > 3 || value > 255) {
+        return -1L;
+      }
+      address = address << 8 | value;
+      octets++;
+      if (i == end) {
+        break;
+      }
+      if (addr.charAt(i) != '.' || octets == 4) {
+        return -1L;
+      }
+      i++;
+    }
+    return octets == 4 ? address : -1L;
+  }
+
+  /**
+   * Checks that the characters from start to end are an IPv6 address.
+   *
+   * @return the number of zero groups that '::' stands for, 0 if there is no '::', or -1 if it
+   * isn't an IPv6 address
+   */
+  private static int scanIpv6(String addr, int start, int end) {
+    int groups = 0;
+    boolean compressed = false;
+    int i = start;
+    if (end - start >= 2 && addr.charAt(i) == ':' && addr.charAt(i + 1) == ':') {
+      compressed = true;
+      i += 2;
+    }
+    while (i < end) {
+      int groupStart = i;
+      while (i < end && i - groupStart <= 4 && Character.digit(addr.charAt(i), 16) >= 0) {
+        i++;
+      }
+      if (i < end && addr.charAt(i) == '.') {
+        // An embedded IPv4 address takes up the last two groups
+        if (parseIpv4(addr, groupStart, end) < 0) {
+          return -1;
+        }
+        groups += 2;
+        break;
+      }
+      int digits = i - groupStart;
+      if (digits == 0 || digits > 4) {
+        return -1;
+      }
+      groups++;
+      if (i == end) {
+        break;
+      }
+      if (addr.charAt(i) != ':') {
+        return -1;
+      }
+      i++;
+      if (i < end && addr.charAt(i) == ':') {
+        if (compressed) {
+          return -1;
+        }
+        compressed = true;
+        i++;
+      } else if (i == end) {
+        return -1;
+      }
+    }
+    if (compressed) {
+      return groups < 8 ? 8 - groups : -1;
+    }
+    return groups == 8 ? 0 : -1;
+  }
+
+  /**
+   * @param fill the number of zero groups that '::' stands for, as returned by scanIpv6
+   * @param high whether to return the first or the last 64 bits of the address
+   */
+  private static long ipv6Bits(String addr, int start, int end, int fill, boolean high) {
+    long bits = 0L;
+    int group = 0;
+    int i = start;
+    if (end - start >= 2 && addr.charAt(i) == ':' && addr.charAt(i + 1) == ':') {
+      group = fill;
+      i += 2;
+    }
+    while (i < end) {
+      int groupStart = i;
+      int value = 0;
+      while (i < end && addr.charAt(i) != ':' && addr.charAt(i) != '.') {
+        value = value << 4 | Character.digit(addr.charAt(i), 16);
+        i++;
+      }
+      if (i < end && addr.charAt(i) == '.') {
+        long ipv4Address = parseIpv4(addr, groupStart, end);
+        bits = setGroup(bits, group++, (int) (ipv4Address >>> 16), high);
+        bits = setGroup(bits, group, (int) ipv4Address & 0xffff, high);
+        break;
+      }
+      bits = setGroup(bits, group++, value, high);
+      if (i == end) {
+        break;
+      }
+      i++;
+      if (i < end && addr.charAt(i) == ':') {
+        group += fill;
+        i++;
+      }
+    }
+    return bits;
+  }
+
+  private static long setGroup(long bits, int group, int value, boolean high) {
+    if (high == group < 4) {
+      return bits | (long) value << (48 - 16 * (group & 3));
+    }
+    return bits;
+  }
+
   public boolean allowsAnyIP() {
     return anyIP;
   }
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.audit.log4j.audit;
+
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.CorrelationContext;
+import org.apache.knox.gateway.audit.log4j.correlation.Log4jCorrelationContext;
+import org.apache.knox.gateway.audit.log4j.correlation.Log4jCorrelationService;
+import org.apache.knox.test.log.CollectAppender;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AsyncAuditWriterTest {
+
+  private Logger logger;
+
+  @Before
+  public void setUp() {
+    LogManager.shutdown();
+    PropertyConfigurator.configure( ClassLoader.getSystemResourceAsStream( "audit-log4j.properties" ) );
+    CollectAppender.queue.clear();
+    logger = Logger.getLogger( "audit.forward" );
+  }
+
+  @After
+  public void tearDown() {
+    CollectAppender.queue.clear();
+  }
+
+  @Test
+  public void testRecordIsWrittenWithSnapshotOfContexts() {
+    AsyncAuditWriter writer = new AsyncAuditWriter( 16, AsyncAuditWriter.OverflowPolicy.BLOCK, 1 );
+    writer.start();
+    try {
+      Log4jAuditContext auditContext = new Log4jAuditContext();
+      auditContext.setUsername( "user" );
+      CorrelationContext correlationContext = new Log4jCorrelationContext( "request", "parent", "root" );
+
+      writer.write( logger, AuditConstants.KNOX_SERVICE_NAME, AuditConstants.KNOX_COMPONENT_NAME, correlationContext, auditContext,
+          "action", "/gateway/knoxsso/api/v1/websso?knoxtoken=secret&test=value", "uri", "success", "message" );
+      // Changes after the record was written must not show up in the audit log
+      auditContext.setUsername( "other" );
+      correlationContext.setRequestId( "other" );
+
+      assertThat( writer.flush( 10, TimeUnit.SECONDS ), is( true ) );
+      assertThat( CollectAppender.queue.size(), is( 1 ) );
+      LoggingEvent event = CollectAppender.queue.iterator().next();
+      assertThat( event.getMDC( AuditConstants.MDC_ACTION_KEY ), is( "action" ) );
+      assertThat( event.getMDC( AuditConstants.MDC_RESOURCE_NAME_KEY ),
+          is( "/gateway/knoxsso/api/v1/websso?knoxtoken=***************&test=value" ) );
+      assertThat( event.getMDC( AuditConstants.MDC_SERVICE_KEY ), is( AuditConstants.KNOX_SERVICE_NAME ) );
+      assertThat( event.getRenderedMessage(), is( "message" ) );
+      assertThat( event.getThreadName(), is( Thread.currentThread().getName() ) );
+      assertThat( ((AuditContext) event.getMDC( Log4jAuditService.MDC_AUDIT_CONTEXT_KEY )).getUsername(), is( "user" ) );
+      assertThat( ((CorrelationContext) event.getMDC( Log4jCorrelationService.MDC_CORRELATION_CONTEXT_KEY )).getRequestId(),
+          is( "request" ) );
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testDropPolicyDropsRecordsThatDontFit() {
+    AsyncAuditWriter writer = new AsyncAuditWriter( 4, AsyncAuditWriter.OverflowPolicy.DROP, 1 );
+    // Not started yet, so nothing drains the buffer
+    for( int i = 0; i < 10; i++ ) {
+      writer.write( logger, "service", "component", null, null, "action" + i, "resource", "uri", "success", null );
+    }
+    assertThat( writer.getDroppedCount(), is( 6L ) );
+
+    writer.start();
+    try {
+      assertThat( writer.flush( 10, TimeUnit.SECONDS ), is( true ) );
+      assertThat( CollectAppender.queue.size(), is( 4 ) );
+      assertThat( CollectAppender.queue.iterator().next().getMDC( AuditConstants.MDC_ACTION_KEY ), is( "action0" ) );
+    } finally {
+      writer.close();
+    }
+  }
+
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  @Test
+  public void testBlockPolicyKeepsEveryRecord() throws Exception {
+    AsyncAuditWriter writer = new AsyncAuditWriter( 2, AsyncAuditWriter.OverflowPolicy.BLOCK, 1 );
+    writer.start();
+    try {
+      Thread[] producers = new Thread[4];
+      for( int p = 0; p < producers.length; p++ ) {
+        producers[p] = new Thread( () -> {
+          for( int i = 0; i < 250; i++ ) {
+            writer.write( logger, "service", "component", null, null, "action", "resource", "uri", "success", null );
+          }
+        } );
+        producers[p].start();
+      }
+      for( Thread producer : producers ) {
+        producer.join();
+      }
+      assertThat( writer.flush( 10, TimeUnit.SECONDS ), is( true ) );
+      assertThat( writer.getDroppedCount(), is( 0L ) );
+      assertThat( CollectAppender.queue.size(), is( 1000 ) );
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testRingBufferIsBounded() {
+    AuditRingBuffer<String> buffer = new AuditRingBuffer<>( 3 );
+    assertThat( buffer.capacity(), is( 4 ) );
+    for( int i = 0; i < 4; i++ ) {
+      assertThat( buffer.offer( "element" + i ), is( true ) );
+    }
+    assertThat( buffer.offer( "element4" ), is( false ) );
+
+    String[] batch = new String[3];
+    assertThat( buffer.drainTo( batch ), is( 3 ) );
+    assertThat( batch[0], is( "element0" ) );
+    assertThat( buffer.offer( "element4" ), is( true ) );
+    assertThat( buffer.drainTo( batch ), is( 2 ) );
+    assertThat( batch[1], is( "element4" ) );
+    assertThat( buffer.isEmpty(), is( true ) );
+    assertThat( buffer.getConsumedCount(), is( 5L ) );
+  }
+}
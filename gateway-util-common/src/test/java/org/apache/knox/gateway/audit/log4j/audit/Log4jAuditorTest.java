@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.audit.log4j.audit;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class Log4jAuditorTest {
+
+  @Test
+  public void testMaskTokenInQuery() {
+    assertThat( Log4jAuditor.maskTokenFromURL( "https://host/path?a=1&knoxtoken=secret#top" ),
+        is( "https://host/path?a=1&knoxtoken=***************#top" ) );
+    assertThat( Log4jAuditor.maskTokenFromURL( "https://host/path?a=1" ), is( "https://host/path?a=1" ) );
+    assertThat( Log4jAuditor.maskTokenFromURL( "https://host/path#knoxtoken=secret" ),
+        is( "https://host/path#knoxtoken=secret" ) );
+  }
+
+  @Test
+  public void testMaskTokenNestedInEncodedParameter() {
+    assertThat( Log4jAuditor.maskTokenFromURL( "/gateway/knoxsso/api/v1/websso?"
+            + "originalUrl=https%3A%2F%2Fh%2Fp%3Fx%3D1%26knoxtoken%3Dsecret" ),
+        is( "/gateway/knoxsso/api/v1/websso?originalUrl=https://h/p?x=1&knoxtoken=***************" ) );
+    assertThat( Log4jAuditor.maskTokenFromURL( "/gateway/knoxsso/api/v1/websso?"
+            + "originalUrl=https%3A%2F%2Fh%2Fp%3Fknoxtoken%3Dsecret" ),
+        is( "/gateway/knoxsso/api/v1/websso?knoxtoken=***************" ) );
+  }
+}
@@ -75,4 +75,61 @@ public class IpAddressValidatorTest {
 
     assertTrue("Should have validated 293.168.1.1", ipv.validateIpAddress("293.168.1.1"));
   }
+
+  @Test
+  public void testCidrRanges() throws Exception {
+    IpAddressValidator ipv = new IpAddressValidator("10.0.0.0/8,192.168.4.0/22,172.16.1.1/32,fe80::/10,2001:db8::/32");
+
+    assertTrue("Should have validated 10.255.0.1", ipv.validateIpAddress("10.255.0.1"));
+    assertFalse("Should not have validated 11.0.0.1", ipv.validateIpAddress("11.0.0.1"));
+    assertTrue("Should have validated 192.168.7.255", ipv.validateIpAddress("192.168.7.255"));
+    assertFalse("Should not have validated 192.168.8.0", ipv.validateIpAddress("192.168.8.0"));
+    assertTrue("Should have validated 172.16.1.1", ipv.validateIpAddress("172.16.1.1"));
+    assertFalse("Should not have validated 172.16.1.2", ipv.validateIpAddress("172.16.1.2"));
+
+    assertTrue("Should have validated fe80::1%eth0", ipv.validateIpAddress("fe80::1%eth0"));
+    assertTrue("Should have validated febf:0:0:0:0:0:0:1", ipv.validateIpAddress("febf:0:0:0:0:0:0:1"));
+    assertFalse("Should not have validated fec0::1", ipv.validateIpAddress("fec0::1"));
+    assertTrue("Should have validated [2001:db8:0:1::1]", ipv.validateIpAddress("[2001:db8:0:1::1]"));
+    assertFalse("Should not have validated 2001:db9::1", ipv.validateIpAddress("2001:db9::1"));
+
+    ipv = new IpAddressValidator("0.0.0.0/0");
+    assertTrue("Should have validated 8.8.8.8", ipv.validateIpAddress("8.8.8.8"));
+    assertFalse("Should not have validated ::1", ipv.validateIpAddress("::1"));
+  }
+
+  @Test
+  public void testIpv6AddressForms() throws Exception {
+    IpAddressValidator ipv = new IpAddressValidator("::1,2001:db8::ff00:42:8329,::ffff:192.0.2.128");
+
+    assertTrue("Should have validated 0:0:0:0:0:0:0:1", ipv.validateIpAddress("0:0:0:0:0:0:0:1"));
+    assertTrue("Should have validated ::1", ipv.validateIpAddress("::1"));
+    assertTrue("Should have validated 2001:0DB8:0000:0000:0000:FF00:0042:8329",
+        ipv.validateIpAddress("2001:0DB8:0000:0000:0000:FF00:0042:8329"));
+    assertTrue("Should have validated ::ffff:c000:280", ipv.validateIpAddress("::ffff:c000:280"));
+    assertFalse("Should not have validated ::2", ipv.validateIpAddress("::2"));
+    assertFalse("Should not have validated 1::1::1", ipv.validateIpAddress("1::1::1"));
+    assertFalse("Should not have validated 1:2:3:4:5:6:7", ipv.validateIpAddress("1:2:3:4:5:6:7"));
+    assertFalse("Should not have validated 192.0.2.128", ipv.validateIpAddress("192.0.2.128"));
+  }
+
+  @Test
+  public void testLargeAddressList() throws Exception {
+    StringBuilder addresses = new StringBuilder(65536);
+    for (int i = 0; i < 5000; i++) {
+      if (i > 0) {
+        addresses.append(',');
+      }
+      addresses.append("10.").append(i / 256).append('.').append(i % 256).append(".1");
+    }
+    addresses.append(",192.168.*");
+    IpAddressValidator ipv = new IpAddressValidator(addresses.toString());
+
+    assertTrue("Should have validated 10.0.0.1", ipv.validateIpAddress("10.0.0.1"));
+    assertTrue("Should have validated 10.19.135.1", ipv.validateIpAddress("10.19.135.1"));
+    assertFalse("Should not have validated 10.19.136.1", ipv.validateIpAddress("10.19.136.1"));
+    assertFalse("Should not have validated 10.0.0.2", ipv.validateIpAddress("10.0.0.2"));
+    assertTrue("Should have validated 192.168.200.3", ipv.validateIpAddress("192.168.200.3"));
+    assertTrue(ipv.getIPAddresses().contains("10.0.0.1"));
+  }
 }
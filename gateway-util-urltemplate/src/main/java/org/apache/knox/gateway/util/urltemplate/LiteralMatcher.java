@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util.urltemplate;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, precompiled snapshot of a {@link Matcher} that matches literal request strings
+ * (a path optionally followed by a query) without first parsing them into a {@link Template}.
+ * <p>
+ * The path segment tree of the matcher is compiled so that each node indexes its static children
+ * by their literal value, and only the children with wildcard or pattern segments are tested one
+ * by one. The best match is selected exactly as {@link Matcher#match(Template)} selects it; the
+ * input query is only parsed if a candidate template has named query parameters. Inputs that are
+ * not a plain absolute path (an authority, a fragment) are delegated to the source matcher.
+ * <p>
+ * Instances are created by {@link Matcher#compile()} and are thread safe.
+ */
+public class LiteralMatcher<V> {
+
+  private final Matcher<V> matcher;
+  private final Node<V> root;
+
+  LiteralMatcher( Matcher<V> matcher, Node<V> root ) {
+    this.matcher = matcher;
+    this.root = root;
+  }
+
+  /**
+   * Finds the value of the template that best matches a literal path and query, for example
+   * <code>/webhdfs/v1/tmp?op=LISTSTATUS</code>.
+   *
+   * @param literal the literal path, optionally followed by a '?' and the query string
+   * @return the value of the best matching template, or <code>null</code> if none match
+   * @throws URISyntaxException if the input needs to be parsed and is not a valid URL
+   */
+  public V match( String literal ) throws URISyntaxException {
+    if( !isAbsolutePath( literal ) ) {
+      Matcher<V>.Match match = matcher.match( Parser.parseLiteral( literal ) );
+      return match == null ? null : match.getValue();
+    }
+    int queryIndex = literal.indexOf( '?' );
+    int pathEnd = queryIndex < 0 ? literal.length() : queryIndex;
+
+    List<Node<V>> candidates = new ArrayList<>();
+    List<Node<V>> matches = new ArrayList<>();
+    List<Node<V>> temp;
+    candidates.add( root );
+    int start = 0;
+    while( start < pathEnd && !candidates.isEmpty() ) {
+      // Empty segments are skipped, as they are when a literal is parsed into a template.
+      if( literal.charAt( start ) == '/' ) {
+        start++;
+        continue;
+      }
+      int end = literal.indexOf( '/', start );
+      if( end < 0 || end > pathEnd ) {
+        end = pathEnd;
+      }
+      String segment = literal.substring( start, end );
+      for( Node<V> parent : candidates ) {
+        parent.pickMatchingChildren( segment, matches );
+      }
+      temp = candidates; candidates = matches; matches = temp;
+      matches.clear();
+      start = end;
+    }
+    return candidates.isEmpty() ? null : pickBestMatch( literal, candidates );
+  }
+
+  // The scheme, authority and fragment parts of a template are only present if the input contains
+  // '//' before the path or a '#'.
+  private static boolean isAbsolutePath( String literal ) {
+    return !literal.isEmpty()
+        && literal.charAt( 0 ) == '/'
+        && !literal.startsWith( "//" )
+        && literal.indexOf( '#' ) < 0;
+  }
+
+  // Mirrors Matcher.pickBestMatch and Matcher.createMatch.
+  private V pickBestMatch( String literal, List<Node<V>> candidates ) throws URISyntaxException {
+    Node<V> bestPath = null;
+    Entry<V> bestQuery = null;
+    InputQuery input = new InputQuery( literal );
+    for( Node<V> node : candidates ) {
+      if( ( bestPath == null ) ||
+          ( node.depth > bestPath.depth ) ||
+          ( ( node.depth == bestPath.depth ) && ( node.type < bestPath.type ) ) ) {
+        if( node.template != null ) {
+          bestPath = node;
+          bestQuery = null;
+        }
+        if( !node.queries.isEmpty() ) {
+          bestQuery = pickBestQueryMatch( input, node );
+          if( bestQuery != null ) {
+            bestPath = node;
+          }
+        }
+      }
+    }
+    if( bestPath == null ) {
+      return null;
+    }
+    return bestQuery != null ? bestQuery.value : bestPath.value;
+  }
+
+  // Mirrors Matcher.pickBestQueryMatch.
+  private Entry<V> pickBestQueryMatch( InputQuery input, Node<V> node ) throws URISyntaxException {
+    Entry<V> bestEntry = null;
+    int bestMatchCount = 0;
+    for( Entry<V> entry : node.queries ) {
+      Query extra = entry.template.getExtra();
+      int nodeQuerySize = entry.template.getQuery().size();
+      boolean matchesNamedQueries;
+      boolean matchesExtraQuery;
+      int queryMatchCount;
+      if( nodeQuerySize == 0 && ( extra == null || Segment.GLOB_PATTERN.equals( extra.getQueryName() ) ) ) {
+        // Templates such as /path?** match any query without needing to look at it.
+        queryMatchCount = 0;
+        matchesNamedQueries = true;
+        matchesExtraQuery = true;
+      } else {
+        Map<String,Query> inputQuery = input.get();
+        queryMatchCount = calcQueryMatchCount( entry.template, inputQuery );
+        matchesNamedQueries = queryMatchCount >= nodeQuerySize;
+        matchesExtraQuery =
+            ( ( extra == null ) ||
+              ( Segment.GLOB_PATTERN.equals( extra.getQueryName() ) ) ||
+              ( inputQuery.size() > nodeQuerySize ) );
+      }
+      if( ( bestEntry == null || queryMatchCount > bestMatchCount ) && ( matchesNamedQueries && matchesExtraQuery ) ) {
+        bestMatchCount = queryMatchCount;
+        bestEntry = entry;
+      }
+    }
+    return bestEntry;
+  }
+
+  private static int calcQueryMatchCount( Template template, Map<String,Query> inputQuery ) {
+    int matchCount = 0;
+    for( Query templateSegment : template.getQuery().values() ) {
+      Query inputSegment = inputQuery.get( templateSegment.getQueryName() );
+      if( inputSegment != null && templateSegment.matches( inputSegment ) ) {
+        matchCount++ ;
+      } else {
+        matchCount = 0;
+        break;
+      }
+    }
+    return matchCount;
+  }
+
+  /**
+   * Parses the query of the input the first time it is needed.
+   */
+  private static class InputQuery {
+    private final String literal;
+    private Map<String,Query> query;
+
+    InputQuery( String literal ) {
+      this.literal = literal;
+    }
+
+    Map<String,Query> get() throws URISyntaxException {
+      if( query == null ) {
+        query = Parser.parseLiteral( literal ).getQuery();
+      }
+      return query;
+    }
+  }
+
+  static class Entry<V> {
+    final Template template;
+    final V value;
+
+    Entry( Template template, V value ) {
+      this.template = template;
+      this.value = value;
+    }
+  }
+
+  static class Node<V> {
+    final int depth;
+    final int type;
+    final boolean glob;
+    final Template template;
+    final V value;
+    final List<Entry<V>> queries = new ArrayList<>();
+
+    private final Segment segment;
+    private int childCount;
+    // Children with only static values indexed by value, and the remaining children in order.
+    private final Map<String,List<Child<V>>> staticChildren = new HashMap<>();
+    private final List<Child<V>> dynamicChildren = new ArrayList<>();
+
+    Node( int depth, int type, boolean glob, Segment segment, Template template, V value ) {
+      this.depth = depth;
+      this.type = type;
+      this.glob = glob;
+      this.segment = segment;
+      this.template = template;
+      this.value = value;
+    }
+
+    void addQuery( Template template, V value ) {
+      queries.add( new Entry<>( template, value ) );
+    }
+
+    void addChild( Node<V> node ) {
+      Child<V> child = new Child<>( childCount++, node );
+      if( isStatic( node.segment ) ) {
+        for( Segment.Value value : node.segment.getValues() ) {
+          staticChildren.computeIfAbsent( value.getOriginalPattern(), k -> new ArrayList<>( 1 ) ).add( child );
+        }
+      } else {
+        dynamicChildren.add( child );
+      }
+    }
+
+    private static boolean isStatic( Segment segment ) {
+      for( Segment.Value value : segment.getValues() ) {
+        if( value.getType() != Segment.STATIC || value.getOriginalPattern() == null ) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // Mirrors Matcher.pickMatchingChildren: a glob node first matches itself, followed by the
+    // matching children in the order they were added.
+    void pickMatchingChildren( String input, List<Node<V>> matches ) {
+      if( glob ) {
+        matches.add( this );
+      }
+      List<Child<V>> statics = staticChildren.getOrDefault( input, Collections.emptyList() );
+      int s = 0;
+      for( Child<V> dynamic : dynamicChildren ) {
+        if( dynamic.node.matches( input ) ) {
+          while( s < statics.size() && statics.get( s ).order < dynamic.order ) {
+            matches.add( statics.get( s++ ).node );
+          }
+          matches.add( dynamic.node );
+        }
+      }
+      while( s < statics.size() ) {
+        matches.add( statics.get( s++ ).node );
+      }
+    }
+
+    // Mirrors Segment.Value.matches for a literal input value.
+    private boolean matches( String input ) {
+      for( Segment.Value value : segment.getValues() ) {
+        switch( value.getType() ) {
+          case Segment.STATIC:
+            if( input.equals( value.getOriginalPattern() ) ) {
+              return true;
+            }
+            break;
+          case Segment.DEFAULT:
+          case Segment.STAR:
+          case Segment.GLOB:
+            return true;
+          case Segment.REGEX:
+            if( value.getRegex().matcher( input ).matches() ) {
+              return true;
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class Child<V> {
+    final int order;
+    final Node<V> node;
+
+    Child( int order, Node<V> node ) {
+      this.order = order;
+      this.node = node;
+    }
+  }
+}
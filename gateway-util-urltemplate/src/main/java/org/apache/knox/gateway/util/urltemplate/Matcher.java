@@ -135,6 +135,36 @@ public class Matcher<V> {
     return winner;
   }
 
+  /**
+   * Compiles the templates added so far into a {@link LiteralMatcher} that matches literal request
+   * strings without parsing them. Templates added after compiling are not seen by the result.
+   *
+   * @return a thread safe snapshot of this matcher
+   */
+  public LiteralMatcher<V> compile() {
+    return new LiteralMatcher<>( this, compile( root ) );
+  }
+
+  private LiteralMatcher.Node<V> compile( PathNode node ) {
+    LiteralMatcher.Node<V> compiled = new LiteralMatcher.Node<>(
+        node.depth, node.getType(), node.hasGlob(), node.segment, node.template, node.value );
+    if( node.queries != null ) {
+      for( QueryNode query : node.queries ) {
+        compiled.addQuery( query.template, query.value );
+      }
+    }
+    if( node.children != null ) {
+      for( PathNode child : node.children.values() ) {
+        // Scheme, authority and fragment nodes can only be reached by input that is matched by this
+        // matcher rather than by the literal matcher.
+        if( child.segment instanceof Path ) {
+          compiled.addChild( compile( child ) );
+        }
+      }
+    }
+    return compiled;
+  }
+
   private boolean matchScheme( Template input, Status status ) {
     pickMatchingChildren( input.getScheme(), status );
     return status.hasCandidates();
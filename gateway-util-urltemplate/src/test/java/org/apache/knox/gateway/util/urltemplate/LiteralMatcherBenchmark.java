@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util.urltemplate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares routing a request through {@link Matcher}, which requires the request to be parsed into
+ * a {@link Template} first, with routing the literal request through a compiled {@link LiteralMatcher}.
+ * The routes resemble a topology with the given number of services, each contributing several
+ * routes in the style of the bundled service definitions.
+ * <p>
+ * This is not run as part of the build. Run the main method from the test classpath, for example
+ * from an IDE after running <code>mvn test-compile</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class LiteralMatcherBenchmark {
+
+  private static final String[] ROUTES = {
+      "/%s/?**",
+      "/%s/**?**",
+      "/%s/v1/**?**",
+      "/%s/api/**",
+      "/%s/*/regions?**",
+      "/%s/static/*.js",
+      "/%s/status?format={format}",
+  };
+
+  private static final String[] REQUESTS = {
+      "/%s/v1/tmp/data/part-00000?op=OPEN&user.name=guest",
+      "/%s/api/v2/entities/12345",
+      "/%s/table/regions?x=1",
+      "/%s/static/vendor.js",
+      "/%s/status?format=json",
+      "/%s/index.html",
+  };
+
+  @Param( { "100", "500" } )
+  public int services;
+
+  private Matcher<String> matcher;
+  private LiteralMatcher<String> literalMatcher;
+  private String[] requests;
+  private int next;
+
+  @Setup
+  public void buildRoutes() throws URISyntaxException {
+    matcher = new Matcher<>();
+    for( int i = 0; i < services; i++ ) {
+      String service = "service" + i;
+      for( String route : ROUTES ) {
+        matcher.add( Parser.parseTemplate( String.format( Locale.ROOT, route, service ) ), service );
+      }
+    }
+    literalMatcher = matcher.compile();
+    requests = new String[ 1024 ];
+    for( int i = 0; i < requests.length; i++ ) {
+      String service = "service" + ( ( i * 31 ) % services );
+      requests[ i ] = String.format( Locale.ROOT, REQUESTS[ i % REQUESTS.length ], service );
+    }
+  }
+
+  private String nextRequest() {
+    next = ( next + 1 ) & ( requests.length - 1 );
+    return requests[ next ];
+  }
+
+  @Benchmark
+  public String parseAndMatch() throws URISyntaxException {
+    Matcher<String>.Match match = matcher.match( Parser.parseLiteral( nextRequest() ) );
+    return match == null ? null : match.getValue();
+  }
+
+  @Benchmark
+  public String literalMatch() throws URISyntaxException {
+    return literalMatcher.match( nextRequest() );
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    new Runner( new OptionsBuilder().include( LiteralMatcherBenchmark.class.getSimpleName() ).build() ).run();
+  }
+}
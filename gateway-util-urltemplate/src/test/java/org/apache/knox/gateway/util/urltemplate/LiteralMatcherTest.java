@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util.urltemplate;
+
+import org.apache.knox.test.category.FastTests;
+import org.apache.knox.test.category.UnitTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.net.URISyntaxException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Category( { UnitTests.class, FastTests.class } )
+public class LiteralMatcherTest {
+
+  // A sample of the route templates used by the bundled service definitions.
+  private static final String[] TEMPLATES = {
+      "/webhdfs/v1/?**",
+      "/webhdfs/v1/**?**",
+      "/webhdfs/data/v1/**?**",
+      "/hbase/?**",
+      "/hbase/**?**",
+      "/hbase/*/regions?**",
+      "/hbase/status/cluster?**",
+      "/hbase/webui/**",
+      "/hbase/webui/**?**",
+      "/hbase/webui/conf?{**}",
+      "/hbase/webui/master?**",
+      "/ambari/**",
+      "/ambari/**?**",
+      "/ambari/**/app.js",
+      "/ambari/api/v1/**",
+      "/ambari/api/v1/persist/*?*",
+      "/ambari/views/TEZ/*/*/ambari-scripts/init-view.js",
+      "/ambari/views/SMARTSENSE/**/assets/hstapp-*.js",
+      "/zeppelin/",
+      "/zeppelin/*.js",
+      "/zeppelin/*.css",
+      "/zeppelin/ws**",
+      "/zeppelin/app/**",
+      "/zeppelin/favicon.ico",
+      "/hdfs/dfshealth.html#tab-datanode",
+      "/hdfs/",
+      "/hdfs/**",
+      "/hdfs/**?**",
+      "/hdfs/logs?**",
+      "/resourcemanager/v1/cluster/apps?**",
+      "/resourcemanager/v1/cluster/apps?state={state}",
+      "/oozie/**?**",
+      "/{path=**}?{**}",
+      "/templeton/v1/{path=*}/status?user.name={user}",
+  };
+
+  private static final String[] INPUTS = {
+      "/",
+      "/webhdfs",
+      "/webhdfs/v1",
+      "/webhdfs/v1/",
+      "/webhdfs/v1/tmp?op=LISTSTATUS",
+      "/webhdfs/v1/tmp/a/b/c?op=OPEN&user.name=guest",
+      "/webhdfs//v1/tmp",
+      "/webhdfs/data/v1/tmp?op=CREATE",
+      "/hbase",
+      "/hbase/?x=1",
+      "/hbase/table/regions",
+      "/hbase/table/regions?x=1",
+      "/hbase/status/cluster",
+      "/hbase/webui/",
+      "/hbase/webui/conf",
+      "/hbase/webui/conf?format=json",
+      "/hbase/webui/master?host=h",
+      "/ambari/scripts/app.js",
+      "/ambari/a/b/app.js",
+      "/ambari/api/v1/persist/user?x",
+      "/ambari/api/v1/persist/user",
+      "/ambari/views/TEZ/1.0/INSTANCE/ambari-scripts/init-view.js",
+      "/ambari/views/SMARTSENSE/1.0/x/assets/hstapp-1.2.js",
+      "/zeppelin/",
+      "/zeppelin/vendor.js",
+      "/zeppelin/main.css",
+      "/zeppelin/ws",
+      "/zeppelin/wsx",
+      "/zeppelin/app/x/y",
+      "/zeppelin/favicon.ico",
+      "/hdfs/dfshealth.html",
+      "/hdfs/dfshealth.html#tab-datanode",
+      "/hdfs/logs?dir=x",
+      "/hdfs/logs",
+      "/resourcemanager/v1/cluster/apps",
+      "/resourcemanager/v1/cluster/apps?state=RUNNING",
+      "/resourcemanager/v1/cluster/apps?user=guest",
+      "/oozie/v1/jobs?len=10",
+      "/templeton/v1/jobs/status?user.name=guest",
+      "/templeton/v1/jobs/status",
+      "/unknown/path?x=y",
+      "//host/webhdfs/v1/tmp",
+      "",
+      "?x=y",
+      "webhdfs/v1/tmp",
+  };
+
+  @Test
+  public void testSameMatchesAsMatcher() throws Exception {
+    Matcher<String> matcher = new Matcher<>();
+    for( String template : TEMPLATES ) {
+      matcher.add( Parser.parseTemplate( template ), template );
+    }
+    assertSameMatches( matcher, INPUTS );
+
+    // Without the catch-all template many of the inputs don't match at all.
+    matcher = new Matcher<>();
+    for( String template : TEMPLATES ) {
+      if( !template.startsWith( "/{path=**}" ) ) {
+        matcher.add( Parser.parseTemplate( template ), template );
+      }
+    }
+    assertSameMatches( matcher, INPUTS );
+  }
+
+  @Test
+  public void testFirstTemplateAddedWinsTies() throws Exception {
+    Matcher<String> matcher = new Matcher<>();
+    matcher.add( Parser.parseTemplate( "/a/{x=*}" ), "first" );
+    matcher.add( Parser.parseTemplate( "/a/{y=*}" ), "second" );
+    matcher.add( Parser.parseTemplate( "/a/b" ), "static" );
+    LiteralMatcher<String> compiled = matcher.compile();
+    assertThat( compiled.match( "/a/c" ), is( "first" ) );
+    assertThat( compiled.match( "/a/b" ), is( "static" ) );
+    assertThat( compiled.match( "/b/c" ), nullValue() );
+  }
+
+  @Test
+  public void testCompiledMatcherIsSnapshot() throws Exception {
+    Matcher<String> matcher = new Matcher<>();
+    matcher.add( Parser.parseTemplate( "/a/**" ), "a" );
+    LiteralMatcher<String> compiled = matcher.compile();
+    matcher.add( Parser.parseTemplate( "/b/**" ), "b" );
+    assertThat( compiled.match( "/b/c" ), nullValue() );
+    assertThat( matcher.compile().match( "/b/c" ), is( "b" ) );
+  }
+
+  private static void assertSameMatches( Matcher<String> matcher, String... inputs ) throws URISyntaxException {
+    LiteralMatcher<String> compiled = matcher.compile();
+    for( String input : inputs ) {
+      Matcher<String>.Match expected = matcher.match( Parser.parseLiteral( input ) );
+      assertThat( input, compiled.match( input ), is( expected == null ? null : expected.getValue() ) );
+    }
+  }
+}